@@ -25,6 +25,7 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
+import com.wwidesigner.geometry.calculation.HemisphericalBoreHead;
 import com.wwidesigner.geometry.calculation.Tube;
 import com.wwidesigner.note.Fingering;
 import com.wwidesigner.util.Constants.LengthType;
@@ -55,6 +56,23 @@ public class Instrument implements InstrumentInterface
 	// than the mouthpiece (below the mouthpiece), from smallest position to
 	// largest position. Does not include the mouthpiece.
 	protected List<ComponentInterface> components;
+	// True if the top of the bore is meant as a hemispherical head, to be
+	// modelled as such when the bore points still describe one. Set by the
+	// hemi-head objective functions, and saved with the instrument.
+	protected boolean hemisphericalHead = false;
+	// Hemispherical head at the top of the bore, if any, found
+	// by updateComponents.
+	protected HemisphericalBoreHead.HeadPoint hemiHead;
+	// Tolerance for simplifying the bore profile in updateComponents: the
+	// largest change in bore cross-section area, relative to the measured
+	// area, at any bore point left out of the sections. This is a geometric
+	// tolerance, not a bound on the change in impedance or predicted
+	// frequencies. Zero makes a section between every pair of bore points.
+	protected double boreSimplificationTolerance = 0.0;
+	// Incremented each time the components are rebuilt or the dimensions
+	// converted, so that calculators can tell when results they have kept
+	// for this geometry are stale.
+	protected long geometryVersion = 0;
 
 	// mouthpiece.headspace contains the list of bore sections with positions
 	// less than the mouthpiece (above the mouthpiece).
@@ -292,6 +310,7 @@ public class Instrument implements InstrumentInterface
 
 	protected void convertDimensions(double multiplier)
 	{
+		++geometryVersion;
 		if (mouthpiece != null)
 		{
 			mouthpiece.convertDimensions(multiplier);
@@ -383,6 +402,7 @@ public class Instrument implements InstrumentInterface
 	 */
 	public void updateComponents()
 	{
+		++geometryVersion;
 		components = new ArrayList<ComponentInterface>();
 
 		if (borePoint != null && !borePoint.isEmpty())
@@ -391,6 +411,18 @@ public class Instrument implements InstrumentInterface
 			// (right-most)
 			// position.
 			SortedPositionList<BorePoint> borePointList = makePositionList(borePoint);
+			hemiHead = null;
+			if (hemisphericalHead)
+			{
+				hemiHead = HemisphericalBoreHead.findHemiHead(borePoint,
+						Tube.MINIMUM_CONE_LENGTH);
+			}
+			if (boreSimplificationTolerance > 0.0)
+			{
+				// Evaluate with fewer sections; the bore points themselves
+				// are left as they are.
+				borePointList = simplifyBore(borePointList);
+			}
 
 			// Put any bore sections to the left of the mouthpiece position
 			// into the mouthpiece headspace.
@@ -419,6 +451,7 @@ public class Instrument implements InstrumentInterface
 			// Process the rest of the sections. There must be at least one
 			double lastPosition = borePointList.getLast().getBorePosition() + 1.;
 			makeSections(borePointList, lastPosition);
+			mergeHeadSections();
 		}
 	}
 
@@ -435,6 +468,55 @@ public class Instrument implements InstrumentInterface
 		return components;
 	}
 
+	/**
+	 * @return a number that changes whenever updateComponents() rebuilds the
+	 *         components or the dimensions are converted to other units.
+	 */
+	public long getGeometryVersion()
+	{
+		return geometryVersion;
+	}
+
+	public boolean isHemisphericalHead()
+	{
+		return hemisphericalHead;
+	}
+
+	/**
+	 * Mark the top of the bore as a hemispherical head, or not. While set,
+	 * updateComponents models a head whose bore points lie on a sphere, from
+	 * the pole to the equator, with SphericalCapSections; otherwise every
+	 * bore section is a cone.
+	 */
+	public void setHemisphericalHead(boolean hemisphericalHead)
+	{
+		this.hemisphericalHead = hemisphericalHead;
+	}
+
+	public double getBoreSimplificationTolerance()
+	{
+		return boreSimplificationTolerance;
+	}
+
+	/**
+	 * Set the tolerance for simplifying the bore profile, for calculation
+	 * only. Takes effect at the next call to updateComponents. The tolerance
+	 * is geometric: it limits the bore area error at the bore points left
+	 * out, and does not bound the resulting change in input impedance or
+	 * predicted note frequencies, which callers should check for their own
+	 * instruments.
+	 *
+	 * @param boreSimplificationTolerance
+	 *            Largest relative change in bore cross-section area at any
+	 *            bore point left out of the bore sections, or zero to use
+	 *            every bore point.
+	 */
+	public void setBoreSimplificationTolerance(
+			double boreSimplificationTolerance)
+	{
+		this.boreSimplificationTolerance = boreSimplificationTolerance;
+	}
+
 	protected void processTermination(
 			SortedPositionList<BorePoint> borePointList)
 	{
@@ -454,6 +536,8 @@ public class Instrument implements InstrumentInterface
 		// Set mouthpiece boreDiameter
 		processPosition(borePointList, mouthpiece);
 
+		mergeHeadSections();
+
 		// Move the bore sections above the mouthpiece into the mouthpiece
 		// headspace.
 
@@ -482,6 +566,158 @@ public class Instrument implements InstrumentInterface
 		// firstPoint.setBorePosition(newPosition);
 	}
 
+	/**
+	 * Select a subset of the sorted bore points, such that interpolating
+	 * linearly between the selected points changes the bore cross-section
+	 * area at each omitted point by no more than boreSimplificationTolerance,
+	 * relative to its measured area (Douglas-Peucker simplification). The
+	 * area error is only a geometric proxy for the acoustic error: the
+	 * characteristic impedance at an omitted point changes by the same
+	 * ratio, but errors between points, and their effect on the input
+	 * impedance, are not bounded. Points of a hemispherical head are always
+	 * kept.
+	 *
+	 * @param borePointList
+	 *            All bore points, sorted by position.
+	 * @return A new list of the selected bore points, sorted by position.
+	 */
+	protected SortedPositionList<BorePoint> simplifyBore(
+			SortedPositionList<BorePoint> borePointList)
+	{
+		BorePoint[] points = borePointList.toArray(new BorePoint[borePointList
+				.size()]);
+		int lastIndex = points.length - 1;
+		if (lastIndex < 2)
+		{
+			return borePointList;
+		}
+		boolean[] keep = new boolean[points.length];
+		keep[0] = true;
+		keep[lastIndex] = true;
+		if (hemiHead != null)
+		{
+			// Keep the points of the hemispherical head.
+			double equator = hemiHead.getPolePosition()
+					+ hemiHead.getHeadDiameter() / 2.;
+			for (int i = 1; i < lastIndex; i++)
+			{
+				if (points[i].getBorePosition() <= equator
+						+ Tube.MINIMUM_CONE_LENGTH)
+				{
+					keep[i] = true;
+				}
+			}
+		}
+		int first = 0;
+		for (int i = 1; i <= lastIndex; i++)
+		{
+			if (keep[i])
+			{
+				simplifySpan(points, keep, first, i);
+				first = i;
+			}
+		}
+
+		SortedPositionList<BorePoint> simplified = new SortedPositionList<BorePoint>();
+		for (int i = 0; i <= lastIndex; i++)
+		{
+			if (keep[i])
+			{
+				simplified.add(points[i]);
+			}
+		}
+		return simplified;
+	}
+
+	/**
+	 * Mark the points to keep between two kept points, first and last.
+	 */
+	protected void simplifySpan(BorePoint[] points, boolean[] keep,
+			int first, int last)
+	{
+		if (last - first < 2)
+		{
+			return;
+		}
+		double firstPosition = points[first].getBorePosition();
+		double firstDiameter = points[first].getBoreDiameter();
+		double length = points[last].getBorePosition() - firstPosition;
+		double slope = 0.;
+		if (length > 0.)
+		{
+			slope = (points[last].getBoreDiameter() - firstDiameter) / length;
+		}
+		int worstPoint = -1;
+		double worstError = boreSimplificationTolerance;
+		for (int i = first + 1; i < last; i++)
+		{
+			double diameter = points[i].getBoreDiameter();
+			double interpolated = firstDiameter + slope
+					* (points[i].getBorePosition() - firstPosition);
+			double error = Math.abs(interpolated * interpolated - diameter
+					* diameter)
+					/ (diameter * diameter);
+			if (error > worstError)
+			{
+				worstError = error;
+				worstPoint = i;
+			}
+		}
+		if (worstPoint > 0)
+		{
+			keep[worstPoint] = true;
+			simplifySpan(points, keep, first, worstPoint);
+			simplifySpan(points, keep, worstPoint, last);
+		}
+	}
+
+	/**
+	 * If the bore has an intact hemispherical head, replace each run of
+	 * adjacent bore sections within the head by a single SphericalCapSection.
+	 */
+	protected void mergeHeadSections()
+	{
+		if (hemiHead == null)
+		{
+			return;
+		}
+		double polePosition = hemiHead.getPolePosition();
+		double headRadius = hemiHead.getHeadDiameter() / 2.;
+		double tolerance = Tube.MINIMUM_CONE_LENGTH;
+		List<ComponentInterface> merged = new ArrayList<ComponentInterface>();
+		SphericalCapSection cap = null;
+		for (ComponentInterface component : components)
+		{
+			if (component instanceof BoreSection)
+			{
+				BoreSection section = (BoreSection) component;
+				double rightPosition = section.getRightBorePosition();
+				double leftPosition = rightPosition - section.getLength();
+				if (leftPosition >= polePosition - tolerance
+						&& rightPosition <= polePosition + headRadius
+								+ tolerance)
+				{
+					double leftDepth = leftPosition - polePosition;
+					if (cap != null)
+					{
+						// Extend the section from the previous run.
+						leftDepth = cap.getRightBorePosition()
+								- cap.getLength() - polePosition;
+						merged.remove(merged.size() - 1);
+					}
+					cap = new SphericalCapSection(headRadius, leftDepth,
+							rightPosition - polePosition);
+					cap.setRightBorePosition(rightPosition);
+					merged.add(cap);
+					continue;
+				}
+			}
+			cap = null;
+			merged.add(component);
+		}
+		components = merged;
+	}
+
 	protected void processPosition(SortedPositionList<BorePoint> borePointList,
 			BorePointInterface currentPosition)
 	{
@@ -641,4 +877,18 @@ public class Instrument implements InstrumentInterface
 			iHole.setOpenHole(isOpen);
 		}
 	}
+
+	/**
+	 * Set the open holes from a bit mask, as in CompactFingering.
+	 * @param openHoleMask - bit i set if hole i is open.
+	 */
+	public void setOpenHoles(long openHoleMask)
+	{
+		long holeBit = 1L;
+		for (Hole iHole : hole)
+		{
+			iHole.setOpenHole((openHoleMask & holeBit) != 0L);
+			holeBit <<= 1;
+		}
+	}
 }
@@ -0,0 +1,159 @@
+/**
+ * Bore section within a hemispherical bore head.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.geometry;
+
+import com.wwidesigner.geometry.calculation.HemisphericalBoreHead;
+
+/**
+ * A bore section that is a zone of a hemispherical bore head: the part of a
+ * sphere between two planes perpendicular to the bore axis, no lower than the
+ * equator of the hemisphere. Depths are measured down the bore from the pole
+ * of the hemisphere, at the top of the bore.
+ * <p>
+ * Calculators that recognize this section treat it as a single element,
+ * using the exact spherical profile, rather than as a cone between the
+ * section's end radii. The section holds the frequency-independent parts of
+ * that calculation, computed on first use.
+ */
+public class SphericalCapSection extends BoreSection
+{
+	protected double headRadius;
+	protected double leftDepth;
+	protected double rightDepth;
+	// Coefficients of the horn-equation series solutions at each end,
+	// from HemisphericalBoreHead.calcSeriesCoefficients.
+	protected double[][] leftSeries;
+	protected double[][] rightSeries;
+	protected double meanInverseRadius = -1.0;
+
+	/**
+	 * @param headRadius - radius of the hemisphere, at its equator.
+	 * @param leftDepth - depth of the left (upper) end of the section, below
+	 *            the pole.
+	 * @param rightDepth - depth of the right (lower) end of the section,
+	 *            below the pole.
+	 */
+	public SphericalCapSection(double headRadius, double leftDepth,
+			double rightDepth)
+	{
+		this.headRadius = headRadius;
+		this.leftDepth = clampDepth(leftDepth);
+		this.rightDepth = clampDepth(rightDepth);
+		setLength(rightDepth - leftDepth);
+		setLeftRadius(radiusAt(this.leftDepth));
+		setRightRadius(radiusAt(this.rightDepth));
+	}
+
+	public double getHeadRadius()
+	{
+		return headRadius;
+	}
+
+	public double getLeftDepth()
+	{
+		return leftDepth;
+	}
+
+	public double getRightDepth()
+	{
+		return rightDepth;
+	}
+
+	public double[][] getLeftSeries()
+	{
+		if (leftSeries == null)
+		{
+			leftSeries = HemisphericalBoreHead
+					.calcSeriesCoefficients(HemisphericalBoreHead.depthRatio(
+							leftDepth, headRadius));
+		}
+		return leftSeries;
+	}
+
+	public double[][] getRightSeries()
+	{
+		if (rightSeries == null)
+		{
+			rightSeries = HemisphericalBoreHead
+					.calcSeriesCoefficients(HemisphericalBoreHead.depthRatio(
+							rightDepth, headRadius));
+		}
+		return rightSeries;
+	}
+
+	/**
+	 * @return the mean of 1/r over the length of the section.
+	 */
+	public double getMeanInverseRadius()
+	{
+		if (meanInverseRadius < 0.0)
+		{
+			double uLeft = HemisphericalBoreHead.depthRatio(leftDepth,
+					headRadius);
+			double uRight = HemisphericalBoreHead.depthRatio(rightDepth,
+					headRadius);
+			if (uRight - uLeft <= 1.0e-6 * uRight)
+			{
+				meanInverseRadius = 1.0 / (headRadius * Math.sqrt(uRight
+						* (2.0 - uRight)));
+			}
+			else
+			{
+				// The integral of 1/r over depth is asin(u - 1).
+				meanInverseRadius = (Math.asin(uRight - 1.0) - Math
+						.asin(uLeft - 1.0)) / (headRadius * (uRight - uLeft));
+			}
+		}
+		return meanInverseRadius;
+	}
+
+	/**
+	 * @return the exact volume of the spherical zone.
+	 */
+	public double getVolume()
+	{
+		return capVolume(rightDepth) - capVolume(leftDepth);
+	}
+
+	/**
+	 * @return volume of the cap from the pole down to a specified depth.
+	 */
+	protected double capVolume(double depth)
+	{
+		return Math.PI * depth * depth * (headRadius - depth / 3.0);
+	}
+
+	protected double radiusAt(double depth)
+	{
+		return Math.sqrt(depth * (2.0 * headRadius - depth));
+	}
+
+	protected double clampDepth(double depth)
+	{
+		if (depth < 0.0)
+		{
+			return 0.0;
+		}
+		if (depth > headRadius)
+		{
+			return headRadius;
+		}
+		return depth;
+	}
+}
@@ -36,6 +36,7 @@ import javax.xml.bind.annotation.XmlType;
  *         &lt;element name="lengthType" type="{http://www.wwidesigner.com/Instrument}LengthType"/>
  *         &lt;element name="mouthpiece" type="{http://www.wwidesigner.com/Instrument}Mouthpiece" minOccurs="0"/>
  *         &lt;element name="borePoint" type="{http://www.wwidesigner.com/Instrument}BorePoint" maxOccurs="unbounded"/>
+ *         &lt;element name="hemisphericalHead" type="{http://www.w3.org/2001/XMLSchema}boolean" minOccurs="0"/>
  *         &lt;element name="hole" type="{http://www.wwidesigner.com/Instrument}Hole" maxOccurs="unbounded" minOccurs="0"/>
  *         &lt;element name="termination" type="{http://www.wwidesigner.com/Instrument}Termination"/>
  *       &lt;/sequence>
@@ -48,7 +49,8 @@ import javax.xml.bind.annotation.XmlType;
  */
 @XmlAccessorType(XmlAccessType.FIELD)
 @XmlType(name = "Instrument", propOrder = { "name", "description",
-		"lengthType", "mouthpiece", "borePoint", "hole", "termination" })
+		"lengthType", "mouthpiece", "borePoint", "hemisphericalHead", "hole",
+		"termination" })
 public class Instrument
 {
 
@@ -60,6 +62,7 @@ public class Instrument
 	protected Mouthpiece mouthpiece;
 	@XmlElement(required = true)
 	protected List<BorePoint> borePoint;
+	protected Boolean hemisphericalHead;
 	protected List<Hole> hole;
 	@XmlElement(required = true)
 	protected Termination termination;
@@ -237,6 +240,30 @@ public class Instrument
 		this.hole = hole;
 	}
 
+	/**
+	 * Gets the value of the hemisphericalHead property.
+	 * 
+	 * @return true if the top of the bore is a hemispherical head.
+	 * 
+	 */
+	public boolean isHemisphericalHead()
+	{
+		return hemisphericalHead != null && hemisphericalHead;
+	}
+
+	/**
+	 * Sets the value of the hemisphericalHead property. The element is
+	 * written only when true, so other instruments are saved as before.
+	 * 
+	 * @param value
+	 *            true if the top of the bore is a hemispherical head.
+	 * 
+	 */
+	public void setHemisphericalHead(boolean value)
+	{
+		this.hemisphericalHead = value ? Boolean.TRUE : null;
+	}
+
 	/**
 	 * Gets the value of the termination property.
 	 * 
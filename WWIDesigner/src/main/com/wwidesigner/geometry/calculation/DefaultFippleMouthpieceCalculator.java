@@ -23,16 +23,36 @@ import org.apache.commons.math3.util.FastMath;
 
 import com.wwidesigner.geometry.BoreSection;
 import com.wwidesigner.geometry.Mouthpiece;
+import com.wwidesigner.geometry.SphericalCapSection;
 import com.wwidesigner.math.TransferMatrix;
 import com.wwidesigner.util.PhysicalParameters;
 import com.wwidesigner.util.SimplePhysicalParameters;
 
 public class DefaultFippleMouthpieceCalculator extends MouthpieceCalculator
 {
-	private SimplePhysicalParameters mParams;
 	private static final double DEFAULT_WINDWAY_HEIGHT = 0.00078740d;
 	private static final double AIR_GAMMA = 1.4018297351222222d;
 
+	/**
+	 * Frequency-independent values for the current mouthpiece and air
+	 * properties.
+	 */
+	protected static class Prepared extends PreparedMouthpiece
+	{
+		protected double radius;
+		protected double z0;
+		protected double characteristicLength;
+		protected double headspaceVolume;
+		protected double speedOfSound;
+
+		public Prepared(Mouthpiece mouthpiece, PhysicalParameters params)
+		{
+			super(mouthpiece, params);
+		}
+	}
+
+	protected Prepared prepared;
+
 	@Override
 	protected TransferMatrix calcTransferMatrix(Mouthpiece mouthpiece,
 			double waveNumber, PhysicalParameters parameters)
@@ -42,19 +62,13 @@ public class DefaultFippleMouthpieceCalculator extends MouthpieceCalculator
 			// Resort to default if this is not a flow-node mouthpiece.
 			return super.calcTransferMatrix(mouthpiece, waveNumber, parameters);
 		}
-		// Use a simplified version of PhysicalParameters: no editable pressure
-		// nor CO2 concentration. This mouthpiece representation gives very
-		// wrong answers when they are varied.
-		// The SimplePhysicalParameters gives correct answers for varying
-		// temperature and humidity, all that a NAF maker is likely to measure.
-		mParams = new SimplePhysicalParameters(parameters);
+		Prepared mp = prepare(mouthpiece, parameters);
 
-		double radius = 0.5*mouthpiece.getBoreDiameter();
-		double z0 = parameters.calcZ0(radius);
+		double z0 = mp.z0;
 		double omega = waveNumber * parameters.getSpeedOfSound();
-		double k_delta_l = calcKDeltaL(mouthpiece, omega, z0);
+		double k_delta_l = calcKDeltaL(mp, omega);
 		// Add a series resistance for radiation loss.
-		double r_rad = Tube.calcR(omega/(2*Math.PI), radius, parameters);
+		double r_rad = Tube.calcR(omega/(2*Math.PI), mp.radius, parameters);
 		double cos_kl = FastMath.cos(k_delta_l);
 		double sin_kl = FastMath.sin(k_delta_l);
 
@@ -65,28 +79,58 @@ public class DefaultFippleMouthpieceCalculator extends MouthpieceCalculator
 		return new TransferMatrix(A, B, C, D);
 	}
 
-	protected double calcKDeltaL(Mouthpiece mouthpiece, double omega, double z0)
+	/**
+	 * Return the frequency-independent values for a mouthpiece, calculating
+	 * them only if the mouthpiece or air properties have changed since the
+	 * last call.
+	 */
+	protected Prepared prepare(Mouthpiece mouthpiece,
+			PhysicalParameters parameters)
+	{
+		Prepared mp = prepared;
+		if (mp != null && mp.isValidFor(mouthpiece, parameters))
+		{
+			return mp;
+		}
+		mp = new Prepared(mouthpiece, parameters);
+		mp.radius = 0.5*mouthpiece.getBoreDiameter();
+		mp.z0 = parameters.calcZ0(mp.radius);
+
+		// Use a simplified version of PhysicalParameters: no editable pressure
+		// nor CO2 concentration. This mouthpiece representation gives very
+		// wrong answers when they are varied.
+		// The SimplePhysicalParameters gives correct answers for varying
+		// temperature and humidity, all that a NAF maker is likely to measure.
+		SimplePhysicalParameters simpleParams = new SimplePhysicalParameters(parameters);
+		mp.speedOfSound = simpleParams.getSpeedOfSound();
+		mp.headspaceVolume = calcHeadspaceVolume(mouthpiece);
+		mp.characteristicLength = getCharacteristicLength(mouthpiece);
+
+		prepared = mp;
+		return mp;
+	}
+
+	protected double calcKDeltaL(Prepared mp, double omega)
 	{
 		double result = Math
-				.atan(1.0 / (z0 * (calcJYE(mouthpiece, omega) + calcJYC(
-						mouthpiece, omega))));
+				.atan(1.0 / (mp.z0 * (calcJYE(mp, omega) + calcJYC(mp, omega))));
 
 		return result;
 	}
 
-	protected double calcJYE(Mouthpiece mouthpiece, double omega)
+	protected double calcJYE(Prepared mp, double omega)
 	{
-		double gamma = AIR_GAMMA; // mParams.getGamma();
-		double result = getCharacteristicLength(mouthpiece) / (gamma * omega);
+		double gamma = AIR_GAMMA; // SimplePhysicalParameters.getGamma();
+		double result = mp.characteristicLength / (gamma * omega);
 
 		return result;
 	}
 
-	protected double calcJYC(Mouthpiece mouthpiece, double omega)
+	protected double calcJYC(Prepared mp, double omega)
 	{
-		double gamma = AIR_GAMMA; // mParams.getGamma();
-		double speedOfSound = mParams.getSpeedOfSound();
-		double v = 2. * calcHeadspaceVolume(mouthpiece);
+		double gamma = AIR_GAMMA; // SimplePhysicalParameters.getGamma();
+		double speedOfSound = mp.speedOfSound;
+		double v = 2. * mp.headspaceVolume;
 
 		double result = -(omega * v) / (gamma * speedOfSound * speedOfSound);
 
@@ -109,6 +153,10 @@ public class DefaultFippleMouthpieceCalculator extends MouthpieceCalculator
 
 	protected double getSectionVolume(BoreSection section)
 	{
+		if (section instanceof SphericalCapSection)
+		{
+			return ((SphericalCapSection) section).getVolume();
+		}
 		double leftRadius = section.getLeftRadius();
 		double rightRadius = section.getRightRadius();
 		double length = section.getLength();
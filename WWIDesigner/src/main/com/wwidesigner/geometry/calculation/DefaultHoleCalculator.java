@@ -22,6 +22,7 @@ import org.apache.commons.math3.complex.Complex;
 import org.apache.commons.math3.util.FastMath;
 
 import com.wwidesigner.geometry.Hole;
+import com.wwidesigner.math.ComplexTrig;
 import com.wwidesigner.math.TransferMatrix;
 import com.wwidesigner.util.PhysicalParameters;
 
@@ -167,15 +168,17 @@ public class DefaultHoleCalculator extends HoleCalculator
 			ta = (-0.35 + 0.06 * FastMath.tanh(2.7 * hole.getHeight() / radius))
 					* radius * delta2;
 
-			Complex Zr = new Complex(0.25 * kb * kb,
-					(0.822 - 0.47 * FastMath
-							.pow(radius / (boreRadius + hole.getHeight()), 0.8))
-					* waveNumber * radius);
+			double ZrRe = 0.25 * kb * kb;
+			double ZrIm = (0.822 - 0.47 * FastMath
+					.pow(radius / (boreRadius + hole.getHeight()), 0.8))
+					* waveNumber * radius;
 			double cos = FastMath.cos(waveNumber * te);
-			Complex jsin = new Complex(0, FastMath.sin(waveNumber * te));
+			double sin = FastMath.sin(waveNumber * te);
 
-			Complex Zo = (Zr.multiply(cos).add(jsin))
-					.divide(Zr.multiply(jsin).add(cos));
+			// Zo = (Zr * cos + j*sin) / (Zr * j*sin + cos).
+			double[] quotient = new double[2];
+			ComplexTrig.divide(ZrRe * cos, ZrIm * cos + sin,
+					cos - ZrIm * sin, ZrRe * sin, quotient, 0);
 
 			double ti = radius
 					* (0.822 + delta * (-0.095 + delta * (-1.566 + delta
@@ -183,8 +186,10 @@ public class DefaultHoleCalculator extends HoleCalculator
 					* (1. + (1. - 4.56 * delta + 6.55 * delta2) * ka
 							* (0.17 + ka * (0.92 + ka * (0.16 - 0.29 * ka))));
 
-			Ys = Complex.ONE.divide(
-					Complex.I.multiply(waveNumber * ti).add(Zo).multiply(Z0h));
+			// Ys = 1 / ((j*k*ti + Zo) * Z0h).
+			ComplexTrig.divide(1.0, 0.0, quotient[0] * Z0h,
+					(quotient[1] + waveNumber * ti) * Z0h, quotient, 0);
+			Ys = new Complex(quotient[0], quotient[1]);
 
 		}
 		else if (hole.getKey() == null)
@@ -26,6 +26,7 @@ import org.apache.commons.math3.util.FastMath;
 import com.wwidesigner.geometry.BoreSection;
 import com.wwidesigner.geometry.ComponentInterface;
 import com.wwidesigner.geometry.Mouthpiece;
+import com.wwidesigner.geometry.SphericalCapSection;
 import com.wwidesigner.math.StateVector;
 import com.wwidesigner.math.TransferMatrix;
 import com.wwidesigner.util.PhysicalParameters;
@@ -39,6 +40,27 @@ import com.wwidesigner.util.PhysicalParameters;
  */
 public class FluteMouthpieceCalculator extends MouthpieceCalculator
 {
+	/**
+	 * Frequency-independent values for the current mouthpiece and air
+	 * properties.
+	 */
+	protected static class Prepared extends PreparedMouthpiece
+	{
+		protected double radius;
+		protected double effSize;
+		protected double effSizeCubed;
+		protected double windowHeight;
+		// Dimensionless factor in the window reactance.
+		protected double reactanceFactor;
+
+		public Prepared(Mouthpiece mouthpiece, PhysicalParameters params)
+		{
+			super(mouthpiece, params);
+		}
+	}
+
+	protected Prepared prepared;
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -94,6 +116,30 @@ public class FluteMouthpieceCalculator extends MouthpieceCalculator
 	public Complex calcZ(Mouthpiece mouthpiece,
 			double freq, PhysicalParameters physicalParams)
 	{
+		Prepared mp = prepare(mouthpiece, physicalParams);
+		double Xw = physicalParams.getRho() * freq/mp.effSize
+				* mp.reactanceFactor;
+		double Rw = Tube.calcR(freq, mp.radius, physicalParams)
+			  + physicalParams.getRho() * 0.0184 * FastMath.sqrt(freq)*mp.windowHeight
+				/ mp.effSizeCubed;
+		return new Complex(Rw,Xw);
+	}
+
+	/**
+	 * Return the frequency-independent values for a mouthpiece, calculating
+	 * them only if the mouthpiece or air properties have changed since the
+	 * last call.
+	 */
+	protected Prepared prepare(Mouthpiece mouthpiece,
+			PhysicalParameters physicalParams)
+	{
+		Prepared mp = prepared;
+		if (mp != null && mp.isValidFor(mouthpiece, physicalParams))
+		{
+			return mp;
+		}
+		mp = new Prepared(mouthpiece, physicalParams);
+
 		// Prototype reactance model taken from empirical whistle model
 		// in SimpleFippleMouthpieceCalculator.
 		double holeWidth = mouthpiece.getEmbouchureHole().getWidth();
@@ -105,16 +151,17 @@ public class FluteMouthpieceCalculator extends MouthpieceCalculator
 				* mouthpiece.getEmbouchureHole().getLength() );
 		// Model for use in absence of blade height measurement.
 		double windowHeight = mouthpiece.getEmbouchureHole().getHeight();
-		double Xw = physicalParams.getRho() * freq/effSize
-				* ( 4.30 + 2.87 * windowHeight/effSize );
+		mp.effSize = effSize;
+		mp.windowHeight = windowHeight;
+		mp.reactanceFactor = 4.30 + 2.87 * windowHeight/effSize;
 		
 		// Resistance modeled as radiation resistance from end of bore,
 		// plus short cylindrical tube with same area as window.
-		double radius = 0.5 * mouthpiece.getBoreDiameter();
-		double Rw = Tube.calcR(freq, radius, physicalParams)
-			  + physicalParams.getRho() * 0.0184 * FastMath.sqrt(freq)*windowHeight
-				/ (effSize*effSize*effSize);
-		return new Complex(Rw,Xw);
+		mp.radius = 0.5 * mouthpiece.getBoreDiameter();
+		mp.effSizeCubed = effSize*effSize*effSize;
+
+		prepared = mp;
+		return mp;
 	}
 
 	/**
@@ -135,9 +182,17 @@ public class FluteMouthpieceCalculator extends MouthpieceCalculator
 			ComponentInterface component = headspace.get(componentNr);
 			assert component instanceof BoreSection;
 			BoreSection section = (BoreSection) component;
-			tm = Tube.calcConeMatrix(waveNumber, section.getLength(),
-					section.getRightRadius(), section.getLeftRadius(),
-					physicalParams);
+			if (section instanceof SphericalCapSection)
+			{
+				tm = HemisphericalBoreHead.calcTransferMatrix(waveNumber,
+						(SphericalCapSection) section, true, physicalParams);
+			}
+			else
+			{
+				tm = Tube.calcConeMatrix(waveNumber, section.getLength(),
+						section.getRightRadius(), section.getLeftRadius(),
+						physicalParams);
+			}
 			headspaceState = tm.multiply(headspaceState);
 		}
 		return headspaceState;
@@ -172,6 +227,10 @@ public class FluteMouthpieceCalculator extends MouthpieceCalculator
 
 	protected double getSectionVolume(BoreSection section)
 	{
+		if (section instanceof SphericalCapSection)
+		{
+			return ((SphericalCapSection) section).getVolume();
+		}
 		double leftRadius = section.getLeftRadius();
 		double rightRadius = section.getRightRadius();
 		double volume = Math.PI / 3.0
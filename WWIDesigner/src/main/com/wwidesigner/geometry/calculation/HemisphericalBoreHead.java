@@ -2,16 +2,77 @@ package com.wwidesigner.geometry.calculation;
 
 import java.util.List;
 
+import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.util.FastMath;
+
 import com.wwidesigner.geometry.BorePoint;
+import com.wwidesigner.geometry.Instrument;
 import com.wwidesigner.geometry.PositionInterface;
+import com.wwidesigner.geometry.SphericalCapSection;
+import com.wwidesigner.math.TransferMatrix;
+import com.wwidesigner.util.PhysicalParameters;
 
 public class HemisphericalBoreHead
 {
 	private static final int NUM_HEMI_POINTS = 10;
+	// A head is recognized from at least this many bore points: the pole,
+	// the equator, and points between them that fix the curvature.
+	private static final int MINIMUM_HEAD_POINTS = 4;
+	// Largest pole diameter, as a fraction of the head diameter.
+	private static final double MAXIMUM_POLE_RATIO = 0.01;
+
+	// Smallest depth, as a fraction of the head radius, used in the
+	// transfer matrix. The second solution is singular at the pole.
+	private static final double MINIMUM_DEPTH_RATIO = 1.0e-9;
+	// Terms of the series solutions: powers of u, which converge
+	// geometrically for u <= 1, and powers of (k*R)^2, which converge
+	// factorially.
+	private static final int MAXIMUM_U_POWER = 80;
+	private static final int MAXIMUM_C2_POWER = 24;
+	// Series terms in (k*R)^2 are dropped once they fall below this,
+	// relative to the sums.
+	private static final double SERIES_TOLERANCE = 1.0e-14;
+	private static final double[][] SERIES_P = makeSeries(false);
+	private static final double[][] SERIES_D = makeSeries(true);
+
+	/**
+	 * The pole of a hemispherical head found by findHemiHead, with the
+	 * diameter of the head, so that Instrument.updateComponents can replace
+	 * the cone sections within the head with SphericalCapSections.
+	 */
+	public static class HeadPoint extends BorePoint
+	{
+		protected double polePosition;
+		protected double headDiameter;
+
+		public HeadPoint(double polePosition, double headDiameter)
+		{
+			this.polePosition = polePosition;
+			this.headDiameter = headDiameter;
+		}
+
+		public double getPolePosition()
+		{
+			return polePosition;
+		}
+
+		public double getHeadDiameter()
+		{
+			return headDiameter;
+		}
+
+		@Override
+		public void convertDimensions(double multiplier)
+		{
+			super.convertDimensions(multiplier);
+			polePosition *= multiplier;
+			headDiameter *= multiplier;
+		}
+	}
 
 	/**
 	 * Adds a set of BorePoints that define the hemispherical head of the bore.
-	 * 
+	 *
 	 * @param origin
 	 *            The position of the top of the bore.
 	 * @param headDiameter
@@ -46,7 +107,7 @@ public class HemisphericalBoreHead
 	 * Determine the BorePoint representing the equator of the hemisphere to be
 	 * created. This method makes no assumptions on the regularity of the bore
 	 * profile.
-	 * 
+	 *
 	 * @param sortedPoints
 	 *            The array of BorePoints in the flute before adding the
 	 *            hemispherical head.
@@ -72,4 +133,308 @@ public class HemisphericalBoreHead
 		return hemiTopPoint;
 	}
 
+	/**
+	 * Find a hemispherical head at the top of a bore, from the geometry
+	 * alone, for instruments flagged as having one: the top bore point has a nearly zero diameter, and it and the following
+	 * points, up to the first point as far below the top as its radius, all
+	 * lie on a sphere. The points need not be the ones addHemiHead creates.
+	 *
+	 * @param borePoints
+	 *            The bore points of an instrument, in any order.
+	 * @param tolerance
+	 *            Tolerance on bore point positions.
+	 * @return The pole of the head, or null if the bore has no hemispherical
+	 *         head.
+	 */
+	public static HeadPoint findHemiHead(List<BorePoint> borePoints,
+			double tolerance)
+	{
+		if (borePoints.size() < MINIMUM_HEAD_POINTS)
+		{
+			return null;
+		}
+		PositionInterface[] points = Instrument.sortList(borePoints);
+		BorePoint pole = (BorePoint) points[0];
+		double polePosition = pole.getBorePosition();
+
+		// The equator is the first point as far below the pole as its radius.
+		int equator = 0;
+		for (int i = 1; i < points.length && equator == 0; i++)
+		{
+			BorePoint point = (BorePoint) points[i];
+			double depth = point.getBorePosition() - polePosition;
+			double radius = point.getBoreDiameter() / 2.;
+			if (Math.abs(depth - radius) <= tolerance)
+			{
+				equator = i;
+			}
+			else if (depth > radius)
+			{
+				return null;
+			}
+		}
+		if (equator < MINIMUM_HEAD_POINTS - 1)
+		{
+			return null;
+		}
+		double headDiameter = ((BorePoint) points[equator]).getBoreDiameter();
+		if (pole.getBoreDiameter() > MAXIMUM_POLE_RATIO * headDiameter)
+		{
+			return null;
+		}
+
+		// Every point between must lie on the sphere.
+		for (int i = 1; i < equator; i++)
+		{
+			BorePoint point = (BorePoint) points[i];
+			double diameter = point.getBoreDiameter();
+			if (diameter > headDiameter)
+			{
+				return null;
+			}
+			double depth = (headDiameter - Math.sqrt(headDiameter
+					* headDiameter - diameter * diameter)) / 2.;
+			if (Math.abs(point.getBorePosition() - polePosition - depth) > tolerance)
+			{
+				return null;
+			}
+		}
+
+		HeadPoint head = new HeadPoint(polePosition, headDiameter);
+		head.setBorePosition(polePosition);
+		head.setBoreDiameter(pole.getBoreDiameter());
+		return head;
+	}
+
+	/**
+	 * Calculate the transfer matrix of a zone of a hemispherical head.
+	 * <p>
+	 * With bore area S(x) proportional to x*(2R - x), the Webster horn
+	 * equation has a regular singular point at the pole, and two series
+	 * solutions about the pole, P(u) and Q(u) = P(u)*ln(u) + D(u), with u =
+	 * x/R, that converge for u < 2. Both are power series in c2 = (k*R)^2,
+	 * whose coefficients depend only on u; the section holds these
+	 * coefficients for each of its ends, so each call need only sum short
+	 * series in c2. The transfer matrix follows from the two solutions at
+	 * either end of the zone. Wall losses use a complex wave number, with the
+	 * mean of 1/r over the zone, in the manner of Tube.calcConeMatrix.
+	 *
+	 * @param waveNumber
+	 *            2 pi f / c
+	 * @param section
+	 *            The zone of the hemispherical head.
+	 * @param upward
+	 *            If true, the source is the lower (right) end of the zone,
+	 *            as in the mouthpiece headspace; if false, the source is the
+	 *            upper (left) end.
+	 * @param params
+	 * @return Transfer matrix from load state vector to source state vector.
+	 */
+	public static TransferMatrix calcTransferMatrix(double waveNumber,
+			SphericalCapSection section, boolean upward,
+			PhysicalParameters params)
+	{
+		double headRadius = section.getHeadRadius();
+		double alpha_0 = params.getAlphaConstant() / FastMath.sqrt(waveNumber);
+		double epsilon = alpha_0 * section.getMeanInverseRadius();
+		Complex kMean = new Complex(1.0 + epsilon, -epsilon)
+				.multiply(waveNumber);
+		Complex cR = kMean.multiply(headRadius);
+		Complex c2 = cR.multiply(cR);
+
+		double[] left = new double[8];
+		double[] right = new double[8];
+		sumSeries(c2.getReal(), c2.getImaginary(), section.getLeftSeries(),
+				section.getRightSeries(), left, right);
+		double uLeft = depthRatio(section.getLeftDepth(), headRadius);
+		double uRight = depthRatio(section.getRightDepth(), headRadius);
+
+		// Volume flow from source to load is U = j*S*dp/dx / (kMean*rho*c),
+		// with dp/dx = (dp/du) / R.
+		Complex flowFactor = Complex.I.divide(kMean.multiply(params.getRho()
+				* params.getSpeedOfSound()));
+		double sign = upward ? -1.0 : 1.0;
+		Complex[] mLeft = solutionMatrix(left, uLeft, headRadius, sign,
+				flowFactor);
+		Complex[] mRight = solutionMatrix(right, uRight, headRadius, sign,
+				flowFactor);
+		Complex[] mSource = upward ? mRight : mLeft;
+		Complex[] mLoad = upward ? mLeft : mRight;
+
+		// Transfer matrix is mSource * inverse(mLoad).
+		Complex det = mLoad[0].multiply(mLoad[3]).subtract(
+				mLoad[1].multiply(mLoad[2]));
+		Complex A = mSource[0].multiply(mLoad[3])
+				.subtract(mSource[1].multiply(mLoad[2])).divide(det);
+		Complex B = mSource[1].multiply(mLoad[0])
+				.subtract(mSource[0].multiply(mLoad[1])).divide(det);
+		Complex C = mSource[2].multiply(mLoad[3])
+				.subtract(mSource[3].multiply(mLoad[2])).divide(det);
+		Complex D = mSource[3].multiply(mLoad[0])
+				.subtract(mSource[2].multiply(mLoad[1])).divide(det);
+
+		return new TransferMatrix(A, B, C, D);
+	}
+
+	/**
+	 * Express a depth below the pole as a fraction of the head radius,
+	 * limited to the range of the series solutions.
+	 */
+	public static double depthRatio(double depth, double headRadius)
+	{
+		double u = depth / headRadius;
+		if (u < MINIMUM_DEPTH_RATIO)
+		{
+			return MINIMUM_DEPTH_RATIO;
+		}
+		if (u > 1.0)
+		{
+			return 1.0;
+		}
+		return u;
+	}
+
+	/**
+	 * Matrix mapping the coefficients of the two series solutions to the
+	 * state vector (p, U) at one end of a zone.
+	 *
+	 * @param solutions
+	 *            { P, dP/du, Q, dQ/du } at u, as real and imaginary parts.
+	 * @return { p from P, p from Q, U from P, U from Q }.
+	 */
+	protected static Complex[] solutionMatrix(double[] solutions, double u,
+			double headRadius, double sign, Complex flowFactor)
+	{
+		double area = FastMath.PI * headRadius * headRadius * u * (2.0 - u);
+		Complex flowScale = flowFactor.multiply(sign * area / headRadius);
+		return new Complex[] {
+				new Complex(solutions[0], solutions[1]),
+				new Complex(solutions[4], solutions[5]),
+				flowScale.multiply(new Complex(solutions[2], solutions[3])),
+				flowScale.multiply(new Complex(solutions[6], solutions[7])) };
+	}
+
+	/**
+	 * Calculate the coefficients, in powers of c2 = (k*R)^2, of the series
+	 * solutions of u(2-u)p'' + 2(1-u)p' + c2*u(2-u)p = 0 at a given u.
+	 *
+	 * @param u
+	 *            Depth below the pole, as a fraction of the head radius,
+	 *            0 < u <= 1.
+	 * @return Coefficients of { P, dP/du, Q, dQ/du }, each indexed by power
+	 *         of c2.
+	 */
+	public static double[][] calcSeriesCoefficients(double u)
+	{
+		double[][] series = new double[4][MAXIMUM_C2_POWER + 1];
+		double logU = FastMath.log(u);
+		for (int m = 0; m <= MAXIMUM_C2_POWER; ++m)
+		{
+			double p = 0.0;
+			double dp = 0.0;
+			double d = 0.0;
+			double dd = 0.0;
+			// power is u^(n-1).
+			double power = 1.0 / u;
+			for (int n = 0; n <= MAXIMUM_U_POWER; ++n)
+			{
+				p += SERIES_P[n][m] * power * u;
+				dp += n * SERIES_P[n][m] * power;
+				d += SERIES_D[n][m] * power * u;
+				dd += n * SERIES_D[n][m] * power;
+				power *= u;
+			}
+			series[0][m] = p;
+			series[1][m] = dp;
+			series[2][m] = p * logU + d;
+			series[3][m] = dp * logU + p / u + dd;
+		}
+		return series;
+	}
+
+	/**
+	 * Sum the series in c2 for both ends of a zone, stopping once the terms
+	 * become negligible.
+	 *
+	 * @param left
+	 *            On return, { P, dP/du, Q, dQ/du } at the left end, as real
+	 *            and imaginary parts.
+	 * @param right
+	 *            On return, { P, dP/du, Q, dQ/du } at the right end.
+	 */
+	protected static void sumSeries(double c2Re, double c2Im,
+			double[][] leftSeries, double[][] rightSeries, double[] left,
+			double[] right)
+	{
+		double c2Abs = FastMath.hypot(c2Re, c2Im);
+		// c2^m, and its magnitude.
+		double powerRe = 1.0;
+		double powerIm = 0.0;
+		double powerAbs = 1.0;
+		double size = 0.0;
+		for (int m = 0; m <= MAXIMUM_C2_POWER; ++m)
+		{
+			double termSize = 0.0;
+			for (int i = 0; i < 4; ++i)
+			{
+				double coefficient = leftSeries[i][m];
+				left[2 * i] += coefficient * powerRe;
+				left[2 * i + 1] += coefficient * powerIm;
+				termSize += FastMath.abs(coefficient);
+				coefficient = rightSeries[i][m];
+				right[2 * i] += coefficient * powerRe;
+				right[2 * i + 1] += coefficient * powerIm;
+				termSize += FastMath.abs(coefficient);
+			}
+			termSize *= powerAbs;
+			size += termSize;
+			if (m >= 2 && termSize < SERIES_TOLERANCE * size)
+			{
+				break;
+			}
+			double nextRe = powerRe * c2Re - powerIm * c2Im;
+			powerIm = powerRe * c2Im + powerIm * c2Re;
+			powerRe = nextRe;
+			powerAbs *= c2Abs;
+		}
+	}
+
+	/**
+	 * Coefficients of u^n * c2^m in P(u) and D(u), from the recurrences
+	 * b[0] = 1,
+	 * b[n+1] = (n(n+1)b[n] - 2c2 b[n-1] + c2 b[n-2]) / (2(n+1)^2);
+	 * d[0] = 0,
+	 * d[n+1] = (n(n+1)d[n] - 2c2 d[n-1] + c2 d[n-2] - 4(n+1)b[n+1]
+	 * + (2n+1)b[n]) / (2(n+1)^2),
+	 * for the coefficients of u^n, separated by powers of c2.
+	 */
+	private static double[][] makeSeries(boolean second)
+	{
+		double[][] b = new double[MAXIMUM_U_POWER + 1][MAXIMUM_C2_POWER + 1];
+		double[][] d = new double[MAXIMUM_U_POWER + 1][MAXIMUM_C2_POWER + 1];
+		b[0][0] = 1.0;
+		for (int n = 0; n < MAXIMUM_U_POWER; ++n)
+		{
+			double scale = 1.0 / (2.0 * (n + 1) * (n + 1));
+			for (int m = 0; m <= MAXIMUM_C2_POWER; ++m)
+			{
+				double bNext = n * (n + 1) * b[n][m];
+				double dNext = n * (n + 1) * d[n][m];
+				if (m > 0 && n >= 1)
+				{
+					bNext -= 2.0 * b[n - 1][m - 1];
+					dNext -= 2.0 * d[n - 1][m - 1];
+				}
+				if (m > 0 && n >= 2)
+				{
+					bNext += b[n - 2][m - 1];
+					dNext += d[n - 2][m - 1];
+				}
+				b[n + 1][m] = bNext * scale;
+				d[n + 1][m] = (dNext - 4.0 * (n + 1) * b[n + 1][m]
+						+ (2 * n + 1) * b[n][m]) * scale;
+			}
+		}
+		return second ? d : b;
+	}
 }
@@ -0,0 +1,161 @@
+/**
+ * Frequency-independent values of a mouthpiece model.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.geometry.calculation;
+
+import java.util.List;
+
+import com.wwidesigner.geometry.BoreSection;
+import com.wwidesigner.geometry.Mouthpiece;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Base class for the frequency-independent values that a mouthpiece
+ * calculator derives from the mouthpiece geometry and the air properties.
+ * Calculators extend this class with the values they need, calculate them
+ * once, and keep the object until isValidFor() reports that the mouthpiece
+ * or the air properties have changed.
+ * <p>
+ * The object records the mouthpiece and PhysicalParameters instances, and
+ * the window dimensions, bore diameter, headspace list and air properties
+ * it was built from, so that an edited mouthpiece or a call to
+ * PhysicalParameters.setProperties() is detected without recalculating
+ * anything.
+ */
+public class PreparedMouthpiece
+{
+	protected static final int NR_WINDOW_DIMENSIONS = 6;
+
+	protected final Mouthpiece mouthpiece;
+	protected final PhysicalParameters params;
+	private final double boreDiameter;
+	private final List<BoreSection> headspace;
+	private final int headspaceSize;
+	private final double[] windowDimensions;
+	private final double temperature;
+	private final double pressure;
+	private final double humidity;
+	private final double xCO2;
+
+	public PreparedMouthpiece(Mouthpiece mouthpiece, PhysicalParameters params)
+	{
+		this.mouthpiece = mouthpiece;
+		this.params = params;
+		boreDiameter = mouthpiece.getBoreDiameter();
+		headspace = mouthpiece.getHeadspace();
+		headspaceSize = headspace == null ? 0 : headspace.size();
+		windowDimensions = new double[NR_WINDOW_DIMENSIONS];
+		for (int i = 0; i < NR_WINDOW_DIMENSIONS; ++i)
+		{
+			windowDimensions[i] = windowDimension(mouthpiece, i);
+		}
+		temperature = params.getTemperature();
+		pressure = params.getPressure();
+		humidity = params.getHumidity();
+		xCO2 = params.get_xCO2();
+	}
+
+	/**
+	 * Test whether the prepared values still apply.
+	 * @return true if mouthpiece and params are the instances this object
+	 *         was built from, and neither has changed since.
+	 */
+	public boolean isValidFor(Mouthpiece mouthpiece, PhysicalParameters params)
+	{
+		if (mouthpiece != this.mouthpiece || params != this.params)
+		{
+			return false;
+		}
+		if (params.getTemperature() != temperature
+				|| params.getPressure() != pressure
+				|| params.getHumidity() != humidity
+				|| params.get_xCO2() != xCO2)
+		{
+			return false;
+		}
+		if (mouthpiece.getBoreDiameter() != boreDiameter
+				|| mouthpiece.getHeadspace() != headspace
+				|| (headspace != null && headspace.size() != headspaceSize))
+		{
+			return false;
+		}
+		for (int i = 0; i < NR_WINDOW_DIMENSIONS; ++i)
+		{
+			double dimension = windowDimension(mouthpiece, i);
+			if (dimension != windowDimensions[i]
+					&& !(Double.isNaN(dimension) && Double
+							.isNaN(windowDimensions[i])))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Return one of the dimensions of the fipple window or embouchure hole,
+	 * or NaN if the mouthpiece does not have that dimension.
+	 */
+	protected static double windowDimension(Mouthpiece mouthpiece, int index)
+	{
+		Mouthpiece.Fipple fipple = mouthpiece.getFipple();
+		if (fipple != null)
+		{
+			switch (index)
+			{
+				case 0:
+					return fipple.getWindowLength();
+				case 1:
+					return fipple.getWindowWidth();
+				case 2:
+					return valueOf(fipple.getWindowHeight());
+				case 3:
+					return valueOf(fipple.getWindwayHeight());
+				case 4:
+					return valueOf(fipple.getWindwayLength());
+				default:
+					return valueOf(fipple.getFippleFactor());
+			}
+		}
+		Mouthpiece.EmbouchureHole hole = mouthpiece.getEmbouchureHole();
+		if (hole != null)
+		{
+			switch (index)
+			{
+				case 0:
+					return hole.getLength();
+				case 1:
+					return hole.getWidth();
+				case 2:
+					return hole.getHeight();
+				case 3:
+					return hole.getAirstreamLength();
+				case 4:
+					return hole.getAirstreamHeight();
+				default:
+					return Double.NaN;
+			}
+		}
+		return Double.NaN;
+	}
+
+	private static double valueOf(Double value)
+	{
+		return value == null ? Double.NaN : value;
+	}
+}
@@ -4,6 +4,7 @@
 package com.wwidesigner.geometry.calculation;
 
 import com.wwidesigner.geometry.BoreSection;
+import com.wwidesigner.geometry.SphericalCapSection;
 import com.wwidesigner.math.TransferMatrix;
 import com.wwidesigner.util.PhysicalParameters;
 
@@ -24,6 +25,11 @@ public class SimpleBoreSectionCalculator extends BoreSectionCalculator
 	public TransferMatrix calcTransferMatrix(BoreSection section,
 			double waveNumber, PhysicalParameters params)
 	{
+		if (section instanceof SphericalCapSection)
+		{
+			return HemisphericalBoreHead.calcTransferMatrix(waveNumber,
+					(SphericalCapSection) section, false, params);
+		}
 		double leftRadius = section.getLeftRadius();
 		double rightRadius = section.getRightRadius();
 		double length = section.getLength();
@@ -21,6 +21,7 @@ package com.wwidesigner.geometry.calculation;
 import org.apache.commons.math3.complex.Complex;
 import org.apache.commons.math3.util.FastMath;
 
+import com.wwidesigner.math.ComplexTrig;
 import com.wwidesigner.math.TransferMatrix;
 import com.wwidesigner.util.PhysicalParameters;
 
@@ -161,14 +162,48 @@ public class Tube
 	{
 		double Zc = params.calcZ0(radius);
 		double epsilon = params.getAlphaConstant()/(radius * FastMath.sqrt(waveNumber));
-		Complex gammaL = new Complex( epsilon, 1.0+epsilon ).multiply( waveNumber * length );
-		Complex coshL = gammaL.cosh();
-		Complex sinhL = gammaL.sinh();
-        TransferMatrix result = new TransferMatrix(coshL, sinhL.multiply(Zc), sinhL.divide(Zc), coshL);
+		// gamma * L = (epsilon + i*(1+epsilon)) * k * L.
+		double kL = waveNumber * length;
+		double[] sinhCoshL = new double[4];
+		ComplexTrig.sinhCosh(epsilon * kL, (1.0 + epsilon) * kL, sinhCoshL);
+		Complex coshL = new Complex(sinhCoshL[2], sinhCoshL[3]);
+        TransferMatrix result = new TransferMatrix(coshL,
+        		new Complex(sinhCoshL[0] * Zc, sinhCoshL[1] * Zc),
+        		new Complex(sinhCoshL[0] / Zc, sinhCoshL[1] / Zc), coshL);
         
 		return result;
 	}
 
+	/**
+	 * Calculate the transfer matrix of a cylinder, given the complex
+	 * propagation constant and characteristic impedance as ratios to their
+	 * lossless values.
+	 * @param waveNumber - 2*pi*f/c, in radians per metre
+	 * @param length - length of the cylinder, in metres.
+	 * @param radius - radius of the cylinder, in metres.
+	 * @param kRatio - complex wave number divided by waveNumber.
+	 * @param zRatio - characteristic impedance divided by params.calcZ0(radius).
+	 * @param params - physical parameters
+	 * @return Transfer matrix
+	 */
+	public static TransferMatrix calcCylinderMatrix(double waveNumber, 
+			double length, double radius, Complex kRatio, Complex zRatio,
+			PhysicalParameters params)
+	{
+		Complex Zc = zRatio.multiply(params.calcZ0(radius));
+		// gamma * L = i * kRatio * k * L.
+		double kL = waveNumber * length;
+		double[] sinhCoshL = new double[4];
+		ComplexTrig.sinhCosh(- kRatio.getImaginary() * kL, kRatio.getReal() * kL,
+				sinhCoshL);
+		Complex sinhL = new Complex(sinhCoshL[0], sinhCoshL[1]);
+		Complex coshL = new Complex(sinhCoshL[2], sinhCoshL[3]);
+		TransferMatrix result = new TransferMatrix(coshL, sinhL.multiply(Zc),
+				sinhL.divide(Zc), coshL);
+
+		return result;
+	}
+
 	/**
 	 * Calculate the transfer matrix of a conical tube.
 	 * @param waveNumber - 2*pi*f/c, in radians per metre
@@ -202,6 +237,29 @@ public class Tube
 					* FastMath.log(loadRadius / sourceRadius);
 		}
 		Complex mean = new Complex( 1.0 + epsilon, - epsilon );
+		return calcConeMatrix(waveNumber, length, sourceRadius, loadRadius,
+				mean, Complex.ONE, params);
+	}
+
+	/**
+	 * Calculate the transfer matrix of a conical tube, given the mean complex
+	 * wave number along the cone and the characteristic impedance,
+	 * as ratios to their lossless values.
+	 * @param waveNumber - 2*pi*f/c, in radians per metre
+	 * @param length - length of the tube, in metres.
+	 * @param sourceRadius - radius of source end the tube, in metres.
+	 * @param loadRadius - radius of load end the tube, in metres.
+	 * @param kRatio - mean complex wave number divided by waveNumber.
+	 * @param zRatio - characteristic impedance divided by its lossless value,
+	 * 			at either end of the tube.
+	 * @param params - physical parameters
+	 * @return Transfer matrix
+	 */
+	public static TransferMatrix calcConeMatrix(double waveNumber, 
+			double length, double sourceRadius, double loadRadius,
+			Complex kRatio, Complex zRatio, PhysicalParameters params)
+	{
+		Complex mean = kRatio;
 		Complex kMeanL;
 		if (length >= MINIMUM_CONE_LENGTH)
 		{
@@ -221,8 +279,10 @@ public class Tube
 							.divide(kMeanL);
 
 		// sine and cosine of kMean * L.
-		Complex sin_kL = kMeanL.sin();
-		Complex cos_kL = kMeanL.cos();
+		double[] sinCos_kL = new double[4];
+		ComplexTrig.sinCos(kMeanL.getReal(), kMeanL.getImaginary(), sinCos_kL);
+		Complex sin_kL = new Complex(sinCos_kL[0], sinCos_kL[1]);
+		Complex cos_kL = new Complex(sinCos_kL[2], sinCos_kL[3]);
 
 		Complex A = cos_kL.multiply(loadRadius/sourceRadius).subtract(sin_kL.multiply(cot_in));
 		Complex B = Complex.I.multiply(sin_kL)
@@ -230,6 +290,11 @@ public class Tube
 		Complex C = Complex.I.multiply(loadRadius/(sourceRadius*params.calcZ0(sourceRadius))).multiply(
 				sin_kL.multiply(cot_out.multiply(cot_in).add(1.0))
 				.add(cos_kL.multiply(cot_out.subtract(cot_in))));
+		if (! Complex.ONE.equals(zRatio))
+		{
+			B = B.multiply(zRatio);
+			C = C.divide(zRatio);
+		}
 		Complex D = cos_kL.multiply(sourceRadius/loadRadius).add(sin_kL.multiply(cot_out));
 
 		TransferMatrix tm = new TransferMatrix(A, B, C, D); 
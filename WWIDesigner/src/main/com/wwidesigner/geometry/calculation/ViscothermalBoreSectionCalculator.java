@@ -0,0 +1,99 @@
+/**
+ * Bore section calculator using the full viscothermal loss model.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.geometry.calculation;
+
+import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.util.FastMath;
+
+import com.wwidesigner.geometry.BoreSection;
+import com.wwidesigner.geometry.SphericalCapSection;
+import com.wwidesigner.math.TransferMatrix;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Bore section calculator that uses the Zwikker-Kosten propagation constant
+ * and characteristic impedance, rather than the first-order wall-loss
+ * correction used by SimpleBoreSectionCalculator. The two agree for wide
+ * bores; this calculator remains accurate for narrow windways and tubes,
+ * where the boundary layers fill much of the cross-section.
+ * <p>
+ * The loss ratios come from tables in ViscothermalLosses, built on first use
+ * for the current air properties. Cones use the ratios at their logarithmic
+ * mean radius, which gives the mean attenuation along the cone in the
+ * wide-bore limit.
+ */
+public class ViscothermalBoreSectionCalculator extends BoreSectionCalculator
+{
+	protected ViscothermalLosses losses;
+
+	@Override
+	public TransferMatrix calcTransferMatrix(BoreSection section,
+			double waveNumber, PhysicalParameters params)
+	{
+		if (section instanceof SphericalCapSection)
+		{
+			return HemisphericalBoreHead.calcTransferMatrix(waveNumber,
+					(SphericalCapSection) section, false, params);
+		}
+		double leftRadius = section.getLeftRadius();
+		double rightRadius = section.getRightRadius();
+		double length = section.getLength();
+		double[] ratios = new double[4];
+
+		if (leftRadius == rightRadius)
+		{
+			getLosses(params).calcRatios(ViscothermalLosses.shearNumber(
+					leftRadius, waveNumber, params), ratios);
+			return Tube.calcCylinderMatrix(waveNumber, length, leftRadius,
+					new Complex(ratios[0], ratios[1]), new Complex(ratios[2],
+							ratios[3]), params);
+		}
+
+		double meanRadius;
+		if (FastMath.abs(rightRadius - leftRadius) <= 0.00001 * leftRadius)
+		{
+			meanRadius = rightRadius;
+		}
+		else
+		{
+			meanRadius = (rightRadius - leftRadius)
+					/ FastMath.log(rightRadius / leftRadius);
+		}
+		getLosses(params).calcRatios(ViscothermalLosses.shearNumber(
+				meanRadius, waveNumber, params), ratios);
+		return Tube.calcConeMatrix(waveNumber, length, leftRadius, rightRadius,
+				new Complex(ratios[0], ratios[1]), new Complex(ratios[2],
+						ratios[3]), params);
+	}
+
+	/**
+	 * @return loss tables for the air properties in params, building them if
+	 * 		the properties have changed.
+	 */
+	protected ViscothermalLosses getLosses(PhysicalParameters params)
+	{
+		ViscothermalLosses current = losses;
+		if (current == null || ! current.isValidFor(params))
+		{
+			current = new ViscothermalLosses(params);
+			losses = current;
+		}
+		return current;
+	}
+}
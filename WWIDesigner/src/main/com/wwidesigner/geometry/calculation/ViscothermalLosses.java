@@ -0,0 +1,261 @@
+/**
+ * Tabulated viscothermal loss factors for cylindrical ducts.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.geometry.calculation;
+
+import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.util.FastMath;
+
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Viscothermal propagation constant and characteristic impedance of a
+ * cylindrical duct, from the Zwikker-Kosten model, as ratios to their
+ * lossless values:
+ * <p>
+ * kRatio = sqrt((1 + (gamma-1)*F(s*sqrt(Pr))) / (1 - F(s))), <br>
+ * zRatio = 1 / sqrt((1 - F(s)) * (1 + (gamma-1)*F(s*sqrt(Pr)))),
+ * <p>
+ * where F(x) = 2*J1(z)/(z*J0(z)), z = x*exp(-i*pi/4), s is the shear number
+ * r*sqrt(omega*rho/eta), and Pr is the Prandtl number.
+ * <p>
+ * F depends only on its dimensionless argument, so it is tabulated once,
+ * over equal steps in ln(x), from Bessel-function ratios evaluated by
+ * continued fraction. An instance of this class tabulates kRatio and zRatio
+ * over the same steps in ln(s), for one value of gamma and Pr, and looks them
+ * up by cubic Lagrange interpolation. Beyond the range of the tables, the
+ * ratios are calculated directly.
+ */
+public class ViscothermalLosses
+{
+	/** Smallest shear number in the tables. */
+	public static final double MINIMUM_SHEAR_NUMBER = 0.05;
+	/** Largest shear number in the tables. */
+	public static final double MAXIMUM_SHEAR_NUMBER = 1.0e4;
+
+	// Table spacing in ln(shear number), and number of interpolation points.
+	protected static final double STEP = 1.0 / 64.0;
+	protected static final double LN_MINIMUM = Math.log(MINIMUM_SHEAR_NUMBER);
+	protected static final double LN_MAXIMUM = Math.log(MAXIMUM_SHEAR_NUMBER);
+	// One table entry below LN_MINIMUM and two above LN_MAXIMUM,
+	// for cubic interpolation at the ends.
+	protected static final int TABLE_SIZE = (int) Math
+			.ceil((LN_MAXIMUM - LN_MINIMUM) / STEP) + 4;
+
+	// F(x), as { re, im } pairs, at x = exp(LN_MINIMUM + (i - 1) * STEP).
+	private static final double[] F_TABLE = tabulateF();
+
+	protected final double gamma;
+	protected final double prandtl;
+	// { kRatio.re, kRatio.im, zRatio.re, zRatio.im } at each table point.
+	protected final double[] ratioTable;
+
+	/**
+	 * Tabulate the loss ratios for specified air properties.
+	 * @param gamma - ratio of specific heats.
+	 * @param prandtl - Prandtl number.
+	 */
+	public ViscothermalLosses(double gamma, double prandtl)
+	{
+		this.gamma = gamma;
+		this.prandtl = prandtl;
+		ratioTable = new double[4 * TABLE_SIZE];
+		double sqrtPrandtl = Math.sqrt(prandtl);
+		for (int i = 0; i < TABLE_SIZE; ++i)
+		{
+			double x = Math.exp(LN_MINIMUM + (i - 1) * STEP);
+			Complex viscousF = new Complex(F_TABLE[2 * i], F_TABLE[2 * i + 1]);
+			Complex[] ratios = calcRatios(viscousF, lookupF(x * sqrtPrandtl));
+			ratioTable[4 * i] = ratios[0].getReal();
+			ratioTable[4 * i + 1] = ratios[0].getImaginary();
+			ratioTable[4 * i + 2] = ratios[1].getReal();
+			ratioTable[4 * i + 3] = ratios[1].getImaginary();
+		}
+	}
+
+	/**
+	 * Tabulate the loss ratios for the air properties in params.
+	 */
+	public ViscothermalLosses(PhysicalParameters params)
+	{
+		this(params.getGamma(), params.getPrandtl());
+	}
+
+	/**
+	 * @return true if the tables in this object apply to params.
+	 */
+	public boolean isValidFor(PhysicalParameters params)
+	{
+		return gamma == params.getGamma() && prandtl == params.getPrandtl();
+	}
+
+	/**
+	 * Calculate the shear number, r*sqrt(omega*rho/eta), of a duct.
+	 * @param radius - radius of the duct, in metres.
+	 * @param waveNumber - 2*pi*f/c, in radians per metre
+	 * @param params - physical parameters
+	 */
+	public static double shearNumber(double radius, double waveNumber,
+			PhysicalParameters params)
+	{
+		return radius
+				* FastMath.sqrt(waveNumber * params.getSpeedOfSound()
+						* params.getRho() / params.getEta());
+	}
+
+	/**
+	 * Look up the loss ratios at a specified shear number.
+	 * @param shearNumber - r*sqrt(omega*rho/eta)
+	 * @param result - array of at least 4 elements, for
+	 * 			{ kRatio.re, kRatio.im, zRatio.re, zRatio.im }.
+	 */
+	public void calcRatios(double shearNumber, double[] result)
+	{
+		if (shearNumber >= MINIMUM_SHEAR_NUMBER
+				&& shearNumber <= MAXIMUM_SHEAR_NUMBER)
+		{
+			interpolate(ratioTable, 4, shearNumber, result);
+			return;
+		}
+		Complex[] ratios = calcExactRatios(shearNumber);
+		result[0] = ratios[0].getReal();
+		result[1] = ratios[0].getImaginary();
+		result[2] = ratios[1].getReal();
+		result[3] = ratios[1].getImaginary();
+	}
+
+	/**
+	 * Calculate the loss ratios at a specified shear number, without using
+	 * the tables.
+	 * @param shearNumber - r*sqrt(omega*rho/eta)
+	 * @return { kRatio, zRatio }
+	 */
+	public Complex[] calcExactRatios(double shearNumber)
+	{
+		return calcRatios(calcF(shearNumber),
+				calcF(shearNumber * Math.sqrt(prandtl)));
+	}
+
+	protected Complex[] calcRatios(Complex viscousF, Complex thermalF)
+	{
+		Complex viscous = Complex.ONE.subtract(viscousF);
+		Complex thermal = thermalF.multiply(gamma - 1.0).add(1.0);
+		Complex kRatio = thermal.divide(viscous).sqrt();
+		Complex zRatio = viscous.multiply(thermal).sqrt().reciprocal();
+		return new Complex[] { kRatio, zRatio };
+	}
+
+	/**
+	 * Calculate F(x) = 2*J1(z)/(z*J0(z)), for z = x*exp(-i*pi/4).
+	 * Uses the continued fraction for J1(z)/J0(z), from the backward
+	 * recurrence J(n-1)/J(n) = 2n/z - J(n+1)/J(n), except for
+	 * very large x, where it uses the asymptotic expansion.
+	 */
+	public static Complex calcF(double x)
+	{
+		if (x <= 0.0)
+		{
+			return Complex.ONE;
+		}
+		if (x > MAXIMUM_SHEAR_NUMBER)
+		{
+			// J1(z)/J0(z) -> -i - 1/(2z) + ..., so
+			// F -> sqrt(2)*(1 - i)/x + i/x^2 + ...
+			return new Complex(Math.sqrt(2.0) / x, -Math.sqrt(2.0) / x
+					+ 1.0 / (x * x));
+		}
+		// 2n/z = (n*sqrt(2)/x) * (1 + i).
+		double scale = Math.sqrt(2.0) / x;
+		double ratioRe = 0.0;
+		double ratioIm = 0.0;
+		for (int n = (int) x + 60; n >= 1; --n)
+		{
+			// ratio = 1/(2n/z - ratio).
+			double re = n * scale - ratioRe;
+			double im = n * scale - ratioIm;
+			double denominator = re * re + im * im;
+			ratioRe = re / denominator;
+			ratioIm = -im / denominator;
+		}
+		// F = 2 * ratio / z = (scale * (1 + i)) * ratio.
+		return new Complex(scale * (ratioRe - ratioIm), scale
+				* (ratioRe + ratioIm));
+	}
+
+	/**
+	 * Look up F(x) in the table, if x is within its range.
+	 */
+	protected static Complex lookupF(double x)
+	{
+		if (x < MINIMUM_SHEAR_NUMBER || x > MAXIMUM_SHEAR_NUMBER)
+		{
+			return calcF(x);
+		}
+		double[] f = new double[2];
+		interpolate(F_TABLE, 2, x, f);
+		return new Complex(f[0], f[1]);
+	}
+
+	private static double[] tabulateF()
+	{
+		double[] table = new double[2 * TABLE_SIZE];
+		for (int i = 0; i < TABLE_SIZE; ++i)
+		{
+			Complex f = calcF(Math.exp(LN_MINIMUM + (i - 1) * STEP));
+			table[2 * i] = f.getReal();
+			table[2 * i + 1] = f.getImaginary();
+		}
+		return table;
+	}
+
+	/**
+	 * Cubic Lagrange interpolation in a table over equal steps in ln(x),
+	 * using the four table points nearest to x.
+	 * @param table - table values, stride values per point.
+	 * @param stride - number of values at each table point.
+	 * @param x - argument, between MINIMUM_SHEAR_NUMBER and
+	 * 			MAXIMUM_SHEAR_NUMBER.
+	 * @param result - array to receive stride interpolated values.
+	 */
+	protected static void interpolate(double[] table, int stride, double x,
+			double[] result)
+	{
+		double position = (Math.log(x) - LN_MINIMUM) / STEP;
+		int base = (int) position;
+		if (base > TABLE_SIZE - 4)
+		{
+			base = TABLE_SIZE - 4;
+		}
+		// Points used are at t = -1, 0, 1, 2 relative to table point base + 1.
+		double t = position - base;
+		double tPlus1 = t + 1.0;
+		double tMinus1 = t - 1.0;
+		double tMinus2 = t - 2.0;
+		double w0 = -t * tMinus1 * tMinus2 / 6.0;
+		double w1 = tPlus1 * tMinus1 * tMinus2 / 2.0;
+		double w2 = -tPlus1 * t * tMinus2 / 2.0;
+		double w3 = tPlus1 * t * tMinus1 / 6.0;
+		int index = base * stride;
+		for (int j = 0; j < stride; ++j, ++index)
+		{
+			result[j] = w0 * table[index] + w1 * table[index + stride]
+					+ w2 * table[index + 2 * stride] + w3
+					* table[index + 3 * stride];
+		}
+	}
+}
@@ -81,6 +81,7 @@ import com.wwidesigner.gui.util.DataChangedListener;
 import com.wwidesigner.gui.util.DataChangedProvider;
 import com.wwidesigner.gui.util.NumberFormatTableCellRenderer;
 import com.wwidesigner.gui.util.NumericTableModel;
+import com.wwidesigner.modelling.TuningPreview;
 import com.wwidesigner.util.BindFactory;
 import com.wwidesigner.util.Constants.LengthType;
 import com.wwidesigner.util.DoubleFormatter;
@@ -122,6 +123,7 @@ public class InstrumentPanel extends JPanel implements FocusListener,
 	protected JFormattedTextField terminationFlange;
 	protected JideTable holeList;
 	protected JideTable boreList;
+	protected TuningPreviewPanel tuningPreviewPanel;
 	
 	protected int dimensionalDecimalPrecision;
 	protected int dimensionlessDecimalPrecision = 5;
@@ -460,6 +462,54 @@ public class InstrumentPanel extends JPanel implements FocusListener,
 		bindery.marshalToXml(instrument, file);
 	}
 
+	/**
+	 * Show a live preview of the tuning of the instrument on this panel,
+	 * updated as the instrument is edited. Replaces any prior preview.
+	 * 
+	 * @param preview
+	 *            - preview to show, or null to remove the preview.
+	 */
+	public void setTuningPreview(TuningPreview preview)
+	{
+		if (tuningPreviewPanel != null)
+		{
+			tuningPreviewPanel.getPreview().shutdown();
+			remove(tuningPreviewPanel);
+			tuningPreviewPanel = null;
+		}
+		if (preview != null)
+		{
+			tuningPreviewPanel = new TuningPreviewPanel(preview);
+			preview.setListener(tuningPreviewPanel);
+			GridBagConstraints gbc = new GridBagConstraints();
+			gbc.anchor = GridBagConstraints.NORTHWEST;
+			gbc.gridx = 2;
+			gbc.gridy = 0;
+			gbc.gridheight = GridBagConstraints.REMAINDER;
+			gbc.insets = new Insets(0, 10, 0, 0);
+			add(tuningPreviewPanel, gbc);
+			updateTuningPreview();
+		}
+		revalidate();
+		repaint();
+	}
+
+	/**
+	 * Update the tuning preview, if any, with the instrument on this panel.
+	 */
+	protected void updateTuningPreview()
+	{
+		if (tuningPreviewPanel == null)
+		{
+			return;
+		}
+		Instrument instrument = getData();
+		if (instrument != null)
+		{
+			tuningPreviewPanel.getPreview().update(instrument);
+		}
+	}
+
 	public void stopTextEditing()
 	{
 		Component focusedComponent = KeyboardFocusManager
@@ -1453,6 +1503,7 @@ public class InstrumentPanel extends JPanel implements FocusListener,
 		if (isDataChanged)
 		{
 			fireDataChanged();
+			updateTuningPreview();
 		}
 	}
 
@@ -1468,6 +1519,7 @@ public class InstrumentPanel extends JPanel implements FocusListener,
 			enableMouthpieceFields();
 		}
 		fireDataChanged();
+		updateTuningPreview();
 	}
 
 	@Override
@@ -1475,6 +1527,7 @@ public class InstrumentPanel extends JPanel implements FocusListener,
 	{
 		updateHoleSpacing(event.getSource());
 		fireDataChanged();
+		updateTuningPreview();
 	}
 
 	private void updateHoleSpacing(Object source)
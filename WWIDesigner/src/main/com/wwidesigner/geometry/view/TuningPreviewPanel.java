@@ -0,0 +1,171 @@
+/**
+ * JPanel to display a live preview of the tuning of an instrument being edited.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.geometry.view;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Insets;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
+import javax.swing.border.LineBorder;
+import javax.swing.table.DefaultTableModel;
+
+import com.jidesoft.grid.JideTable;
+import com.wwidesigner.modelling.TuningPreview;
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.note.Tuning;
+
+/**
+ * Shows the predicted frequency and deviation of each note from a
+ * TuningPreview, with whether the values are exact or estimated. Refreshes
+ * on the event dispatch thread whenever the preview changes.
+ */
+public class TuningPreviewPanel extends JPanel implements
+		TuningPreview.PreviewListener
+{
+	public static final int PREVIEW_TABLE_WIDTH = 300;
+
+	protected TuningPreview preview;
+	protected JLabel statusLabel;
+	protected JideTable noteList;
+
+	public TuningPreviewPanel(TuningPreview preview)
+	{
+		this.preview = preview;
+		setLayout(new GridBagLayout());
+
+		JLabel label = new JLabel("Tuning preview: ");
+		GridBagConstraints gbc = new GridBagConstraints();
+		gbc.anchor = GridBagConstraints.NORTHWEST;
+		gbc.gridx = 0;
+		gbc.gridy = 0;
+		add(label, gbc);
+
+		statusLabel = new JLabel(" ");
+		gbc.gridx = 1;
+		add(statusLabel, gbc);
+
+		DefaultTableModel model = new DefaultTableModel()
+		{
+			@Override
+			public boolean isCellEditable(int row, int column)
+			{
+				return false;
+			}
+		};
+		model.setColumnIdentifiers(new Object[] { "Note", "Target",
+				"Predicted", "Cents" });
+		noteList = new JideTable(model);
+		noteList.setAutoscrolls(true);
+		JScrollPane scrollPane = new JScrollPane(noteList);
+		scrollPane.setBorder(new LineBorder(Color.BLACK));
+		scrollPane.setPreferredSize(new Dimension(PREVIEW_TABLE_WIDTH, 300));
+		scrollPane.setMinimumSize(new Dimension(PREVIEW_TABLE_WIDTH, 160));
+		gbc.gridx = 0;
+		gbc.gridy = 1;
+		gbc.gridwidth = 2;
+		gbc.weighty = 1.0;
+		gbc.insets = new Insets(0, 15, 0, 0);
+		add(scrollPane, gbc);
+	}
+
+	public TuningPreview getPreview()
+	{
+		return preview;
+	}
+
+	@Override
+	public void previewChanged(TuningPreview changedPreview)
+	{
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				refresh();
+			}
+		});
+	}
+
+	/**
+	 * Load the table and status from the current state of the preview.
+	 */
+	public void refresh()
+	{
+		DefaultTableModel model = (DefaultTableModel) noteList.getModel();
+		synchronized (preview)
+		{
+			if (preview.getErrorMessage() != null)
+			{
+				statusLabel.setText("cannot predict: "
+						+ preview.getErrorMessage());
+			}
+			else if (preview.isPending())
+			{
+				statusLabel.setText("recalculating...");
+			}
+			else if (preview.isExact())
+			{
+				statusLabel.setText("exact");
+			}
+			else
+			{
+				statusLabel.setText("estimated");
+			}
+			Tuning tuning = preview.getTargetTuning();
+			int nrNotes = preview.getNumberOfNotes();
+			model.setRowCount(nrNotes);
+			for (int note = 0; note < nrNotes; ++note)
+			{
+				Fingering fingering = tuning.getFingering().get(note);
+				String name = "";
+				String target = "";
+				if (fingering.getNote() != null)
+				{
+					name = fingering.getNote().getName();
+					if (fingering.getNote().getFrequency() != null)
+					{
+						target = String.format("%.2f", fingering.getNote()
+								.getFrequency());
+					}
+				}
+				model.setValueAt(name, note, 0);
+				model.setValueAt(target, note, 1);
+				model.setValueAt(format(preview.getFrequency(note), "%.2f"),
+						note, 2);
+				model.setValueAt(format(preview.getDeviation(note), "%+.1f"),
+						note, 3);
+			}
+		}
+	}
+
+	protected static String format(double value, String format)
+	{
+		if (Double.isNaN(value))
+		{
+			return "";
+		}
+		return String.format(format, value);
+	}
+}
@@ -29,6 +29,7 @@ import com.wwidesigner.geometry.bind.GeometryBindFactory;
 import com.wwidesigner.geometry.view.InstrumentPanel;
 import com.wwidesigner.gui.util.DataChangedEvent;
 import com.wwidesigner.gui.util.DataChangedListener;
+import com.wwidesigner.modelling.TuningPreview;
 import com.wwidesigner.util.BindFactory;
 import com.wwidesigner.util.Constants.LengthType;
 
@@ -54,6 +55,14 @@ public class ContainedInstrumentView extends ContainedXmlView implements DataCha
 		instrumentPanel = new InstrumentPanel();
 	}
 
+	/**
+	 * Show a live preview of the tuning of the instrument in this view.
+	 */
+	public void setTuningPreview(TuningPreview preview)
+	{
+		instrumentPanel.setTuningPreview(preview);
+	}
+
 	@Override
 	protected void setDataDirty()
 	{
@@ -52,6 +52,7 @@ import com.wwidesigner.optimization.SingleTaperNoHoleGroupingFromTopHemiHeadObje
 import com.wwidesigner.optimization.SingleTaperNoHoleGroupingFromTopObjectiveFunction;
 import com.wwidesigner.optimization.HolePositionObjectiveFunction.BoreLengthAdjustmentType;
 import com.wwidesigner.optimization.multistart.GridRangeProcessor;
+import com.wwidesigner.optimization.multistart.LowDiscrepancyRangeProcessor;
 import com.wwidesigner.util.Constants.LengthType;
 import com.wwidesigner.util.Constants.TemperatureType;
 import com.wwidesigner.util.PhysicalParameters;
@@ -794,7 +795,8 @@ public class NafStudyModel extends StudyModel
 			}
 			else if (multiStartSelected == VARY_ALL_MULTI_START_SUB_CATEGORY_ID)
 			{
-				GridRangeProcessor rangeProcessor = new GridRangeProcessor(
+				// A grid with 30 points leaves most dimensions unvaried.
+				LowDiscrepancyRangeProcessor rangeProcessor = new LowDiscrepancyRangeProcessor(
 						objective.getLowerBounds(), objective.getUpperBounds(),
 						null, 30);
 				objective.setRangeProcessor(rangeProcessor);
@@ -45,15 +45,21 @@ import com.wwidesigner.gui.util.DataOpenException;
 import com.wwidesigner.gui.util.HoleNumberMismatchException;
 import com.wwidesigner.modelling.InstrumentCalculator;
 import com.wwidesigner.modelling.InstrumentTuner;
+import com.wwidesigner.modelling.InstrumentTunerFactory;
 import com.wwidesigner.modelling.PlayingRangeSpectrum;
 import com.wwidesigner.modelling.SupplementaryInfoTable;
+import com.wwidesigner.modelling.TuningPredictionCache;
+import com.wwidesigner.modelling.TuningPreview;
+import com.wwidesigner.modelling.TuningResponseModel;
 import com.wwidesigner.note.Fingering;
 import com.wwidesigner.note.Tuning;
 import com.wwidesigner.note.bind.NoteBindFactory;
 import com.wwidesigner.optimization.BaseObjectiveFunction;
 import com.wwidesigner.optimization.Constraints;
+import com.wwidesigner.optimization.GeometrySensitivity;
 import com.wwidesigner.optimization.ObjectiveFunctionOptimizer;
 import com.wwidesigner.optimization.bind.OptimizationBindFactory;
+import com.wwidesigner.optimization.view.GeometrySensitivityTable;
 import com.wwidesigner.util.BindFactory;
 import com.wwidesigner.util.Constants.LengthType;
 import com.wwidesigner.util.PhysicalParameters;
@@ -102,6 +108,12 @@ public abstract class StudyModel implements CategoryType
 	 */
 	protected PhysicalParameters params;
 
+	/**
+	 * Predicted tunings, shared between the tuning table, tuning graph and
+	 * supplementary information of the same instrument and tuning.
+	 */
+	protected TuningPredictionCache predictionCache = new TuningPredictionCache();
+
 	public StudyModel()
 	{
 		setCategories();
@@ -786,6 +798,7 @@ public abstract class StudyModel implements CategoryType
 		tuner.setTuning(getTuning());
 
 		tuner.setCalculator(getCalculator());
+		tuner.setPredictionCache(predictionCache);
 
 		tuner.showTuning(title + ": " + instrumentName + "/" + tuningName,
 				false);
@@ -804,6 +817,7 @@ public abstract class StudyModel implements CategoryType
 		tuner.setTuning(getTuning());
 
 		tuner.setCalculator(getCalculator());
+		tuner.setPredictionCache(predictionCache);
 
 		SupplementaryInfoTable table = new SupplementaryInfoTable(title + ": " + instrumentName + "/" + tuningName);
 		table.buildTable(tuner, false);
@@ -823,10 +837,83 @@ public abstract class StudyModel implements CategoryType
 		tuner.setTuning(getTuning());
 
 		tuner.setCalculator(getCalculator());
+		tuner.setPredictionCache(predictionCache);
 
 		tuner.plotTuning(title + ": " + instrumentName + "/" + tuningName,
 				false);
 	}
+
+	/**
+	 * Show the change in predicted cents of each note for a change in each
+	 * geometry value of the selected optimizer, at the current geometry.
+	 */
+	public void calculateSensitivity(String title) throws Exception
+	{
+		if (!validHoleCount())
+		{
+			return;
+		}
+		Category category = this.getCategory(INSTRUMENT_CATEGORY_ID);
+		String instrumentName = category.getSelectedSub();
+		category = getCategory(TUNING_CATEGORY_ID);
+		String tuningName = category.getSelectedSub();
+
+		BaseObjectiveFunction objective = getObjectiveFunction(BaseObjectiveFunction.OPTIMIZATION_INTENT);
+		if (objective.getNrDimensions() < 1)
+		{
+			throw new ZeroException();
+		}
+		objective.setObjectiveFactory(new StudyObjectiveFactory(this));
+		GeometrySensitivity sensitivity = new GeometrySensitivity(objective,
+				getTunerFactory());
+		sensitivity.calculate();
+
+		GeometrySensitivityTable table = new GeometrySensitivityTable(title
+				+ ": " + instrumentName + "/" + tuningName);
+		table.buildTable(sensitivity);
+		table.showTable(false);
+	}
+
+	/**
+	 * @return a source of independent tuners for the selected instrument
+	 *         and tuning, for studies that evaluate on several threads.
+	 */
+	protected InstrumentTunerFactory getTunerFactory()
+	{
+		return new InstrumentTunerFactory()
+		{
+			public InstrumentTuner createTuner() throws Exception
+			{
+				InstrumentTuner tuner = getInstrumentTuner();
+				tuner.setInstrument(getInstrument());
+				tuner.setTuning(getTuning());
+				tuner.setCalculator(getCalculator());
+				return tuner;
+			}
+		};
+	}
+
+	/**
+	 * Create a live preview of the tuning of an instrument being edited,
+	 * against the selected tuning. The preview uses the tuning and
+	 * physical parameters selected now, and its own copy of the edited
+	 * instrument.
+	 */
+	public TuningPreview createTuningPreview() throws Exception
+	{
+		final Tuning tuning = getTuning();
+		InstrumentTunerFactory factory = new InstrumentTunerFactory()
+		{
+			public InstrumentTuner createTuner() throws Exception
+			{
+				InstrumentTuner tuner = getInstrumentTuner();
+				tuner.setTuning(tuning);
+				tuner.setCalculator(getCalculator());
+				return tuner;
+			}
+		};
+		return new TuningPreview(new TuningResponseModel(factory));
+	}
 	
 	public void graphNote(Fingering fingering) throws Exception
 	{
@@ -895,6 +982,10 @@ public abstract class StudyModel implements CategoryType
 			throw new ZeroException();
 		}
 
+		// Let the optimizer build independent copies of the objective
+		// function, for concurrent evaluations here or on distributed workers.
+		objective.setObjectiveFactory(new StudyObjectiveFactory(this));
+
 		BaseObjectiveFunction.OptimizerType optimizerType = objective
 				.getOptimizerType();
 		if (preferredOptimizerType != null
@@ -1162,6 +1253,25 @@ public abstract class StudyModel implements CategoryType
 		}
 	}
 
+	/**
+	 * Record settings specific to this study model, other than category
+	 * selections and physical parameters, so that an equivalent study model
+	 * can be built in another process.
+	 * 
+	 * @param settings
+	 *            - map of setting names to values, to add to.
+	 */
+	protected void saveSettings(Map<String, String> settings)
+	{
+	}
+
+	/**
+	 * Apply settings recorded by saveSettings.
+	 */
+	protected void restoreSettings(Map<String, String> settings)
+	{
+	}
+
 	// Methods to return statistics from an optimization.
 
 	public double getInitialNorm()
@@ -0,0 +1,153 @@
+/**
+ * Serializable factory for the optimization objective function of a study model.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.gui;
+
+import java.awt.Frame;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.jidesoft.app.framework.file.FileDataModel;
+import com.wwidesigner.optimization.BaseObjectiveFunction;
+import com.wwidesigner.optimization.ObjectiveFunctionFactory;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Builds the optimization objective function of a study model, using
+ * StudyModel.getObjectiveFunction. Records a snapshot of the study model's
+ * state: its class, the XML of its selected instrument, tuning and
+ * constraints, its other category selections, its physical parameters, and
+ * any study-specific settings. In the process that created it, the factory
+ * uses the live study model; after serialization, for instance to an
+ * OptimizationWorker in another JVM, it rebuilds an equivalent study model from
+ * the snapshot.
+ */
+public class StudyObjectiveFactory implements ObjectiveFunctionFactory,
+		Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	protected transient StudyModel study;
+
+	protected String studyClassName;
+	// For categories whose selection is a data model:
+	// category name to data model name and XML.
+	protected Map<String, String[]> selectedData = new LinkedHashMap<String, String[]>();
+	// For other categories: category name to selected subcategory name.
+	protected Map<String, String> selections = new LinkedHashMap<String, String>();
+	protected double temperature; // Celsius.
+	protected double pressure; // kPa.
+	protected double humidity; // Percent of saturation.
+	protected double xCO2; // mol/mol.
+	protected Map<String, String> settings = new HashMap<String, String>();
+
+	public StudyObjectiveFactory(StudyModel study) throws Exception
+	{
+		this.study = study;
+		studyClassName = study.getClass().getName();
+		for (StudyModel.Category category : study.categories)
+		{
+			String selectedSub = category.getSelectedSub();
+			if (selectedSub == null)
+			{
+				continue;
+			}
+			if (category.getSelectedSubValue() instanceof FileDataModel)
+			{
+				String xml = study.getSelectedXmlString(category.toString());
+				selectedData.put(category.toString(), new String[] {
+						selectedSub, xml });
+			}
+			else
+			{
+				selections.put(category.toString(), selectedSub);
+			}
+		}
+		PhysicalParameters params = study.getParams();
+		temperature = params.getTemperature();
+		pressure = params.getPressure();
+		humidity = params.getHumidity();
+		xCO2 = params.get_xCO2();
+		study.saveSettings(settings);
+	}
+
+	@Override
+	public BaseObjectiveFunction createObjectiveFunction() throws Exception
+	{
+		if (study == null)
+		{
+			study = rebuildStudy();
+		}
+		return study.getObjectiveFunction(BaseObjectiveFunction.OPTIMIZATION_INTENT);
+	}
+
+	/**
+	 * Create a study model from the snapshot, by adding the selected data
+	 * models in their original order, then re-applying the other selections.
+	 */
+	protected StudyModel rebuildStudy() throws Exception
+	{
+		com.jidesoft.utils.Lm.verifyLicense("Edward Kort", "WWIDesigner",
+				"DfuwPRAUR5KQYgePf:CH0LWIp63V8cs2");
+		// Check the class before initializing it, since the name comes
+		// from the coordinator.
+		Class<?> studyClass = Class.forName(studyClassName, false,
+				StudyModel.class.getClassLoader());
+		if (!StudyModel.class.isAssignableFrom(studyClass))
+		{
+			throw new RuntimeException(studyClassName
+					+ " is not a study model.");
+		}
+		StudyModel newStudy;
+		try
+		{
+			newStudy = (StudyModel) studyClass.getConstructor(Frame.class)
+					.newInstance((Frame) null);
+		}
+		catch (NoSuchMethodException e)
+		{
+			newStudy = (StudyModel) studyClass.getDeclaredConstructor()
+					.newInstance();
+		}
+		newStudy.getParams().setProperties(temperature, pressure, humidity,
+				xCO2);
+		newStudy.restoreSettings(settings);
+
+		for (String[] data : selectedData.values())
+		{
+			FileDataModel dataModel = new FileDataModel();
+			dataModel.setName(data[0]);
+			dataModel.setData(data[1]);
+			newStudy.addDataModel(dataModel, true);
+		}
+		for (Map.Entry<String, String> selection : selections.entrySet())
+		{
+			newStudy.setCategorySelection(selection.getKey(),
+					selection.getValue());
+		}
+
+		return newStudy;
+	}
+
+	public String getStudyClassName()
+	{
+		return studyClassName;
+	}
+}
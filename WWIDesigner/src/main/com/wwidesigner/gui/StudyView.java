@@ -335,6 +335,30 @@ public class StudyView extends DataViewPane implements EventSubscriber
 		}
 	}
 
+	public void getSensitivity()
+	{
+		try
+		{
+			study.calculateSensitivity("Geometry Sensitivity");
+		}
+		catch (Exception ex)
+		{
+			showException(ex);
+		}
+	}
+
+	public void showTuningPreview(ContainedInstrumentView view)
+	{
+		try
+		{
+			view.setTuningPreview(study.createTuningPreview());
+		}
+		catch (Exception ex)
+		{
+			showException(ex);
+		}
+	}
+
 	public void graphTuning()
 	{
 		try
@@ -113,6 +113,8 @@ public class WIDesigner extends FileBasedApplication implements EventSubscriber
 	static final String OPTIMIZE_INSTRUMENT_ACTION_ID = "Optimize instrument";
 	static final String SKETCH_INSTRUMENT_ACTION_ID = "Sketch instrument";
 	static final String CALCULATE_SUPPLEMENTARY_INFO_ACTION_ID = "Supplementary Info";
+	static final String CALCULATE_SENSITIVITY_ACTION_ID = "Geometry sensitivity";
+	static final String TUNING_PREVIEW_ACTION_ID = "Live tuning preview";
 	static final String CREATE_INSTRUMENT_FILE_ACTION_ID = "New Instrument";
 	static final String CREATE_TUNING_FILE_ACTION_ID = "New Tuning ...";
 	static final String COMPARE_INSTRUMENT_ACTION_ID = "Compare instruments";
@@ -202,6 +204,8 @@ public class WIDesigner extends FileBasedApplication implements EventSubscriber
 		addGraphNoteAction();
 		addSketchInstrumentAction();
 		addSupplementaryInfoAction();
+		addSensitivityAction();
+		addTuningPreviewAction();
 		addCreatingTuningFileAction();
 		addCompareInstrumentsAction();
 		addClearConsoleAction();
@@ -293,6 +297,12 @@ public class WIDesigner extends FileBasedApplication implements EventSubscriber
 				menuItem = menu.add(menuBarUI
 						.getAction(CALCULATE_SUPPLEMENTARY_INFO_ACTION_ID));
 				menuItem.setMnemonic('u');
+				menuItem = menu.add(menuBarUI
+						.getAction(CALCULATE_SENSITIVITY_ACTION_ID));
+				menuItem.setMnemonic('y');
+				menuItem = menu.add(menuBarUI
+						.getAction(TUNING_PREVIEW_ACTION_ID));
+				menuItem.setMnemonic('L');
 				menu.setMnemonic('T');
 				return new JMenu[] { menu };
 			}
@@ -921,6 +931,68 @@ public class WIDesigner extends FileBasedApplication implements EventSubscriber
 		getActionMap().put(CALCULATE_SUPPLEMENTARY_INFO_ACTION_ID, action);
 	}
 
+	protected void addSensitivityAction()
+	{
+		Action action;
+		String message;
+		final Activity activity = new Activity(CALCULATE_SENSITIVITY_ACTION_ID)
+		{
+
+			@Override
+			public void activityPerformed() throws Exception
+			{
+				StudyView studyView = getStudyView();
+				if (studyView != null)
+				{
+					studyView.getSensitivity();
+				}
+			}
+		};
+		message = "Calculating geometry sensitivity.\nThis may take several seconds.";
+		activity.addProgressListener(new BlockingProgressListener(
+				getApplicationUIManager().getWindowsUI(),
+				CALCULATE_SENSITIVITY_ACTION_ID, message));
+		action = new ActivityAction(activity)
+		{
+			@Override
+			public void actionPerformed(ActionEvent e)
+			{
+				getActivityManager().run(activity);
+			}
+		};
+		action.putValue(Action.SHORT_DESCRIPTION,
+				"Calculate change in each note for a change in each optimizer dimension");
+		action.setEnabled(false);
+		getActionMap().put(CALCULATE_SENSITIVITY_ACTION_ID, action);
+	}
+
+	protected void addTuningPreviewAction()
+	{
+		Action action = new GUIApplicationAction(TUNING_PREVIEW_ACTION_ID)
+		{
+			public void actionPerformedDetached(ActionEvent event)
+			{
+				DataView view = getFocusedView();
+				if (view instanceof XmlToggleView
+						&& ((XmlToggleView) view).getCurrentView() instanceof ContainedInstrumentView)
+				{
+					getStudyView().showTuningPreview(
+							(ContainedInstrumentView) ((XmlToggleView) view)
+									.getCurrentView());
+				}
+				else
+				{
+					System.out
+							.println("Select an instrument editor tab to preview its tuning.");
+				}
+			}
+		};
+		action.putValue(Action.SHORT_DESCRIPTION,
+				"Show predicted tuning of the current instrument tab, updated as it is edited");
+		action.setEnabled(false);
+		getActionMap().put(TUNING_PREVIEW_ACTION_ID, action);
+	}
+
 	protected void addWindowMenuToggles()
 	{
 		Action action = new ToggleFrameAction(CONSOLE_ACTION_ID, true);
@@ -1276,6 +1348,11 @@ public class WIDesigner extends FileBasedApplication implements EventSubscriber
 			{
 				action.setEnabled((Boolean) e.getSource());
 			}
+			action = getActionMap().get(TUNING_PREVIEW_ACTION_ID);
+			if (action != null)
+			{
+				action.setEnabled((Boolean) e.getSource());
+			}
 		}
 		else if (OPTIMIZATION_ACTIVE_EVENT_ID.equals(eventName))
 		{
@@ -1284,6 +1361,11 @@ public class WIDesigner extends FileBasedApplication implements EventSubscriber
 			{
 				action.setEnabled((Boolean) e.getSource());
 			}
+			action = getActionMap().get(CALCULATE_SENSITIVITY_ACTION_ID);
+			if (action != null)
+			{
+				action.setEnabled((Boolean) e.getSource());
+			}
 		}
 		else if (CONSTRAINTS_ACTIVE_EVENT_ID.equals(eventName))
 		{
@@ -51,7 +51,7 @@ import com.wwidesigner.optimization.LengthObjectiveFunction;
 import com.wwidesigner.optimization.WindowHeightObjectiveFunction;
 import com.wwidesigner.optimization.HolePositionObjectiveFunction.BoreLengthAdjustmentType;
 import com.wwidesigner.optimization.bind.OptimizationBindFactory;
-import com.wwidesigner.optimization.multistart.GridRangeProcessor;
+import com.wwidesigner.optimization.multistart.LowDiscrepancyRangeProcessor;
 import com.wwidesigner.util.Constants.TemperatureType;
 import com.wwidesigner.util.BindFactory;
 import com.wwidesigner.util.PhysicalParameters;
@@ -160,6 +160,23 @@ public class WhistleStudyModel extends StudyModel
 		this.blowingLevel = blowingLevel;
 	}
 
+	@Override
+	protected void saveSettings(Map<String, String> settings)
+	{
+		settings.put(OptimizationPreferences.BLOWING_LEVEL_OPT,
+				Integer.toString(blowingLevel));
+	}
+
+	@Override
+	protected void restoreSettings(Map<String, String> settings)
+	{
+		String level = settings.get(OptimizationPreferences.BLOWING_LEVEL_OPT);
+		if (level != null)
+		{
+			setBlowingLevel(Integer.parseInt(level));
+		}
+	}
+
 	@Override
 	protected InstrumentCalculator getCalculator()
 	{
@@ -304,7 +321,7 @@ public class WhistleStudyModel extends StudyModel
 					objective.setFirstStageEvaluator(
 							new ReactanceEvaluator(calculator));
 					int nrOfStarts = 4 * numberOfHoles;
-					GridRangeProcessor rangeProcessor = new GridRangeProcessor(
+					LowDiscrepancyRangeProcessor rangeProcessor = new LowDiscrepancyRangeProcessor(
 							lowerBound, upperBound, null, nrOfStarts);
 					objective.setRangeProcessor(rangeProcessor);
 					objective.setMaxEvaluations(nrOfStarts
@@ -0,0 +1,133 @@
+/**
+ * Complex circular and hyperbolic functions on primitive doubles.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.math;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Kernel for the complex sin/cos and sinh/cosh pairs used in transfer
+ * matrices. Complex.sin(), cos(), sinh() and cosh() each evaluate their own
+ * real exponential, sine and cosine, and allocate a new Complex; these
+ * functions compute both members of a pair from a single expm1, sin and cos,
+ * and return the results in a caller-supplied array.
+ * <p>
+ * Results are stored as { f.re, f.im, g.re, g.im }, with f the sine (or
+ * hyperbolic sine) and g the cosine (or hyperbolic cosine).
+ */
+public class ComplexTrig
+{
+	private ComplexTrig()
+	{
+	}
+
+	/**
+	 * Calculate sin(z) and cos(z) for z = re + i*im.
+	 * sin(z) = sin(re)*cosh(im) + i*cos(re)*sinh(im);
+	 * cos(z) = cos(re)*cosh(im) - i*sin(re)*sinh(im).
+	 * @param re - real part of the argument.
+	 * @param im - imaginary part of the argument.
+	 * @param result - array of at least 4 elements, for
+	 * 			{ sin.re, sin.im, cos.re, cos.im }.
+	 */
+	public static void sinCos(double re, double im, double[] result)
+	{
+		double sinRe = FastMath.sin(re);
+		double cosRe = FastMath.cos(re);
+		calcSinhCosh(im, result);
+		double sinhIm = result[0];
+		double coshIm = result[1];
+		result[0] = sinRe * coshIm;
+		result[1] = cosRe * sinhIm;
+		result[2] = cosRe * coshIm;
+		result[3] = -sinRe * sinhIm;
+	}
+
+	/**
+	 * Calculate sinh(z) and cosh(z) for z = re + i*im.
+	 * sinh(z) = sinh(re)*cos(im) + i*cosh(re)*sin(im);
+	 * cosh(z) = cosh(re)*cos(im) + i*sinh(re)*sin(im).
+	 * @param re - real part of the argument.
+	 * @param im - imaginary part of the argument.
+	 * @param result - array of at least 4 elements, for
+	 * 			{ sinh.re, sinh.im, cosh.re, cosh.im }.
+	 */
+	public static void sinhCosh(double re, double im, double[] result)
+	{
+		double sinIm = FastMath.sin(im);
+		double cosIm = FastMath.cos(im);
+		calcSinhCosh(re, result);
+		double sinhRe = result[0];
+		double coshRe = result[1];
+		result[0] = sinhRe * cosIm;
+		result[1] = coshRe * sinIm;
+		result[2] = coshRe * cosIm;
+		result[3] = sinhRe * sinIm;
+	}
+
+	/**
+	 * Calculate the real sinh(x) and cosh(x) from a single exponential,
+	 * storing them in result[0] and result[1].  Uses expm1, so that sinh
+	 * keeps full relative precision for small x, as in lightly-damped bores.
+	 */
+	protected static void calcSinhCosh(double x, double[] result)
+	{
+		if (FastMath.abs(x) > 20.0)
+		{
+			// exp(-|x|) is negligible; avoid overflow in the product below.
+			double half = 0.5 * FastMath.exp(FastMath.abs(x));
+			result[0] = (x > 0.0) ? half : -half;
+			result[1] = half;
+			return;
+		}
+		double em1 = FastMath.expm1(x);
+		double ex = em1 + 1.0;
+		// sinh(x) = (e^x - e^-x)/2 = em1 * (em1 + 2) / (2 * e^x).
+		result[0] = 0.5 * em1 * (em1 + 2.0) / ex;
+		// cosh(x) = (e^x + e^-x)/2.
+		result[1] = 0.5 * (ex + 1.0 / ex);
+	}
+
+	/**
+	 * Divide two complex numbers given as primitive doubles, storing the
+	 * quotient in result[offset] and result[offset+1].
+	 * Uses Smith's algorithm, as Complex.divide does, to avoid overflow.
+	 */
+	public static void divide(double nRe, double nIm, double dRe, double dIm,
+			double[] result, int offset)
+	{
+		double quotRe;
+		double quotIm;
+		if (FastMath.abs(dRe) < FastMath.abs(dIm))
+		{
+			double q = dRe / dIm;
+			double denominator = dRe * q + dIm;
+			quotRe = (nRe * q + nIm) / denominator;
+			quotIm = (nIm * q - nRe) / denominator;
+		}
+		else
+		{
+			double q = dIm / dRe;
+			double denominator = dIm * q + dRe;
+			quotRe = (nIm * q + nRe) / denominator;
+			quotIm = (nIm - nRe * q) / denominator;
+		}
+		result[offset] = quotRe;
+		result[offset + 1] = quotIm;
+	}
+}
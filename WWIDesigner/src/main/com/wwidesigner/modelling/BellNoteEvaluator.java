@@ -2,6 +2,8 @@ package com.wwidesigner.modelling;
 
 import java.util.List;
 
+import com.wwidesigner.note.CompactFingering;
+import com.wwidesigner.note.CompactTuning;
 import com.wwidesigner.note.Fingering;
 
 /**
@@ -9,9 +11,12 @@ import com.wwidesigner.note.Fingering;
  * 
  * @author Burton Patkau
  */
-public class BellNoteEvaluator implements EvaluatorInterface
+public class BellNoteEvaluator implements IncrementalEvaluatorInterface,
+		BufferedEvaluatorInterface
 {
 	protected InstrumentCalculator  calculator;
+	// Compact form of the most recent list of targets.
+	protected CompactTuning compactTargets;
 	
 	// Aim for fmax slightly greater than nominal frequency:
 	// fmax = FmaxRatio * fnom.
@@ -22,18 +27,6 @@ public class BellNoteEvaluator implements EvaluatorInterface
 		this.calculator = calculator;
 	}
 	
-	protected static boolean allHolesClosed(Fingering fingering)
-	{
-		for (boolean isOpen: fingering.getOpenHole() )
-		{
-			if (isOpen)
-			{
-				return false;
-			}
-		}
-		return true;
-	}
-
 	/**
 	 * Return the signed reactance at the target fmax,
 	 * for notes with all holes closed.
@@ -44,22 +37,43 @@ public class BellNoteEvaluator implements EvaluatorInterface
 	public double[] calculateErrorVector(List<Fingering> fingeringTargets)
 	{
 		double[] errorVector = new double[fingeringTargets.size()];
+		calculateErrorVector(fingeringTargets, errorVector);
+		return errorVector;
+	}
+
+	public void calculateErrorVector(List<Fingering> fingeringTargets,
+			double[] errorVector)
+	{
+		compactTargets = CompactTuning.forList(compactTargets, fingeringTargets);
 
-		int i = 0;
-		for (Fingering target: fingeringTargets)
+		for (int i = 0; i < errorVector.length; ++i)
 		{
-			if ( ! allHolesClosed( target )
-				|| target.getNote() == null 
-				|| target.getNote().getFrequency() == null )
-			{
-				errorVector[i++] = 0.0;
-			}
-			else
-			{
-				double fmax = FmaxRatio * target.getNote().getFrequency();
-				errorVector[i++] = calculator.calcZ(fmax, target).getImaginary();
-			}
+			errorVector[i] = calculateError(compactTargets.get(i));
 		}
-		return errorVector;
+	}
+
+	public void prepareErrors(List<Fingering> fingeringTargets)
+	{
+		compactTargets = CompactTuning.forList(compactTargets, fingeringTargets);
+	}
+
+	public double calculateError(Fingering target)
+	{
+		if (compactTargets == null)
+		{
+			return calculateError(CompactFingering.valueOf(target));
+		}
+		return calculateError(compactTargets.get(target));
+	}
+
+	protected double calculateError(CompactFingering target)
+	{
+		if ( ! target.allHolesClosed()
+			|| ! target.hasFrequency() )
+		{
+			return 0.0;
+		}
+		double fmax = FmaxRatio * target.getFrequency();
+		return calculator.calcZ(fmax, target).getImaginary();
 	}
 }
\ No newline at end of file
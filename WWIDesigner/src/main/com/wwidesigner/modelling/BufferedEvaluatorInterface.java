@@ -0,0 +1,41 @@
+/**
+ * Interface for evaluators that can store errors in a caller's array.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.modelling;
+
+import java.util.List;
+
+import com.wwidesigner.note.Fingering;
+
+/**
+ * Evaluator that can store its error vector in an array supplied by the
+ * caller, so that an objective function evaluated many thousands of times
+ * reuses one array rather than allocating a new one for each evaluation.
+ */
+public interface BufferedEvaluatorInterface extends EvaluatorInterface
+{
+	/**
+	 * Calculate the same errors as calculateErrorVector(fingeringTargets),
+	 * storing them in errorVector.
+	 * @param fingeringTargets  - Fingerings, with target note for each.
+	 * @param errorVector - array to hold the errors. Every element is set.
+	 * 			length = fingeringTargets.size().
+	 */
+	public abstract void calculateErrorVector(List<Fingering> fingeringTargets,
+			double[] errorVector);
+}
@@ -18,6 +18,7 @@
  */
 package com.wwidesigner.modelling;
 
+import java.util.Arrays;
 import java.util.List;
 
 import com.wwidesigner.note.Fingering;
@@ -31,10 +32,12 @@ import com.wwidesigner.note.Tuning;
  * @author kort
  * 
  */
-public class CentDeviationEvaluator implements EvaluatorInterface
+public class CentDeviationEvaluator implements BufferedEvaluatorInterface
 {
 	protected InstrumentCalculator calculator;
 	protected InstrumentTuner tuner;
+	// Tuning holding the fingering targets, reused for each evaluation.
+	protected Tuning targetTuning = new Tuning();
 
 	public CentDeviationEvaluator(InstrumentCalculator calculator)
 	{
@@ -58,8 +61,14 @@ public class CentDeviationEvaluator implements EvaluatorInterface
 	public double[] calculateErrorVector(List<Fingering> fingeringTargets)
 	{
 		double[] errorValues = new double[fingeringTargets.size()];
+		calculateErrorVector(fingeringTargets, errorValues);
+		return errorValues;
+	}
 
-		Tuning targetTuning = new Tuning();
+	@Override
+	public void calculateErrorVector(List<Fingering> fingeringTargets,
+			double[] errorValues)
+	{
 		targetTuning.setFingering(fingeringTargets);
 		tuner.setTuning(targetTuning);
 
@@ -86,8 +95,8 @@ public class CentDeviationEvaluator implements EvaluatorInterface
 				centDeviation = 0.0;
 			}
 		}
-
-		return errorValues;
+		// Fingerings without targets leave zeros at the end.
+		Arrays.fill(errorValues, index, errorValues.length, 0.0);
 	}
 
 	protected void setTuner(InstrumentTuner tuner)
@@ -0,0 +1,262 @@
+/**
+ * Predict an instrument's tuning over a grid of climate conditions.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.modelling;
+
+import java.util.List;
+
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.note.Note;
+import com.wwidesigner.note.Tuning;
+import com.wwidesigner.util.PhysicalParameters;
+import com.wwidesigner.util.PhysicalParametersCache;
+
+/**
+ * Predicts the full tuning of an instrument at each cell of a grid of
+ * temperature, relative humidity and elevation, to show how a design drifts
+ * between playing conditions. Air pressure at each elevation comes from
+ * PhysicalParameters.pressureAt, and the physical parameters for each cell
+ * from PhysicalParametersCache.
+ * <p>
+ * Grid cells are evaluated concurrently by a PerThreadExecutor, one thread
+ * per available processor. Each thread uses its own tuner, with its own
+ * instrument, tuning and calculator, from an InstrumentTunerFactory; the
+ * instrument is set up once per thread and re-used for all the cells that
+ * thread evaluates.
+ * <p>
+ * Results are reported in cents, for each cell and note, relative to the
+ * prediction at a reference condition, or relative to the target tuning.
+ */
+public class ClimateSweep
+{
+	public static final double DEFAULT_TEMPERATURE = 20.0; // Celsius.
+	public static final double DEFAULT_HUMIDITY = 45.0; // Percent.
+	public static final double DEFAULT_ELEVATION = 0.0; // Metres.
+	public static final double DEFAULT_CO2 = 0.000390; // mol/mol.
+
+	protected InstrumentTunerFactory tunerFactory;
+	protected double[] temperatures;
+	protected double[] humidities;
+	protected double[] elevations;
+	protected double referenceTemperature = DEFAULT_TEMPERATURE;
+	protected double referenceHumidity = DEFAULT_HUMIDITY;
+	protected double referenceElevation = DEFAULT_ELEVATION;
+	// If not null, overrides the reference temperature, humidity and
+	// elevation.
+	protected PhysicalParameters referenceParams;
+	protected double xCO2 = DEFAULT_CO2;
+	protected int maxThreads = Runtime.getRuntime().availableProcessors();
+
+	// Results of the last sweep.
+	protected Tuning targetTuning;
+	// Predicted nominal frequency [cell][note]; the last cell is the
+	// reference condition. NaN where there is no prediction.
+	protected double[][] predicted;
+
+	/**
+	 * Create a sweep over a grid of conditions.
+	 * @param tunerFactory - source of a tuner for each thread.
+	 * @param temperatures - temperatures to evaluate, in Celsius.
+	 * @param humidities - relative humidities to evaluate, in percent.
+	 * @param elevations - elevations to evaluate, in metres.
+	 */
+	public ClimateSweep(InstrumentTunerFactory tunerFactory,
+			double[] temperatures, double[] humidities, double[] elevations)
+	{
+		this.tunerFactory = tunerFactory;
+		this.temperatures = temperatures.clone();
+		this.humidities = humidities.clone();
+		this.elevations = elevations.clone();
+	}
+
+	/**
+	 * Set the condition against which drift is measured.
+	 * @param temperature - in Celsius.
+	 * @param humidity - relative humidity, in percent.
+	 * @param elevation - in metres.
+	 */
+	public void setReference(double temperature, double humidity,
+			double elevation)
+	{
+		referenceTemperature = temperature;
+		referenceHumidity = humidity;
+		referenceElevation = elevation;
+		referenceParams = null;
+	}
+
+	/**
+	 * Set the condition against which drift is measured, from existing
+	 * physical parameters, such as those of a study model.
+	 */
+	public void setReference(PhysicalParameters params)
+	{
+		referenceParams = params;
+		referenceTemperature = params.getTemperature();
+		referenceHumidity = params.getHumidity();
+		referenceElevation = Double.NaN;
+	}
+
+	public void setCO2(double xCO2)
+	{
+		this.xCO2 = xCO2;
+	}
+
+	public void setMaxThreads(int maxThreads)
+	{
+		this.maxThreads = Math.max(maxThreads, 1);
+	}
+
+	/**
+	 * @return number of grid cells, not counting the reference condition.
+	 */
+	public int getNumberOfCells()
+	{
+		return temperatures.length * humidities.length * elevations.length;
+	}
+
+	public double getTemperature(int cell)
+	{
+		if (cell == getNumberOfCells())
+		{
+			return referenceTemperature;
+		}
+		return temperatures[cell / (humidities.length * elevations.length)];
+	}
+
+	public double getHumidity(int cell)
+	{
+		if (cell == getNumberOfCells())
+		{
+			return referenceHumidity;
+		}
+		return humidities[(cell / elevations.length) % humidities.length];
+	}
+
+	public double getElevation(int cell)
+	{
+		if (cell == getNumberOfCells())
+		{
+			return referenceElevation;
+		}
+		return elevations[cell % elevations.length];
+	}
+
+	/**
+	 * @return physical parameters for a grid cell, or for the reference
+	 *         condition if cell == getNumberOfCells().
+	 */
+	public PhysicalParameters getParams(int cell)
+	{
+		if (cell == getNumberOfCells() && referenceParams != null)
+		{
+			return referenceParams;
+		}
+		return PhysicalParametersCache.getAtElevation(getTemperature(cell),
+				getElevation(cell), getHumidity(cell), xCO2);
+	}
+
+	/**
+	 * Predict the tuning at every grid cell, and at the reference condition.
+	 */
+	public void sweep() throws Exception
+	{
+		final int nrCells = getNumberOfCells() + 1;
+		PerThreadExecutor<InstrumentTuner> executor = new PerThreadExecutor<InstrumentTuner>(
+				"Climate sweep");
+		executor.addWorkers(PerThreadExecutor.tunersFrom(tunerFactory),
+				Math.min(maxThreads, nrCells));
+		targetTuning = executor.getWorker(0).getTuning();
+		predicted = new double[nrCells][];
+		executor.run(nrCells, new PerThreadExecutor.Task<InstrumentTuner>()
+		{
+			public void run(InstrumentTuner tuner, int cell)
+			{
+				predicted[cell] = predictCell(tuner, cell);
+			}
+		});
+	}
+
+	/**
+	 * Predict nominal frequencies of all notes at one grid cell.
+	 */
+	protected double[] predictCell(InstrumentTuner tuner, int cell)
+	{
+		tuner.setParams(getParams(cell));
+		List<Fingering> notes = tuner.getPredictedTuning().getFingering();
+		double[] frequencies = new double[notes.size()];
+		for (int i = 0; i < frequencies.length; ++i)
+		{
+			Note note = notes.get(i).getNote();
+			if (note != null && note.getFrequency() != null)
+			{
+				frequencies[i] = note.getFrequency();
+			}
+			else
+			{
+				frequencies[i] = Double.NaN;
+			}
+		}
+		return frequencies;
+	}
+
+	/**
+	 * @return the target tuning used in the last sweep.
+	 */
+	public Tuning getTargetTuning()
+	{
+		return targetTuning;
+	}
+
+	public int getNumberOfNotes()
+	{
+		return predicted[0].length;
+	}
+
+	/**
+	 * @return predicted nominal frequency of a note at a grid cell, or NaN.
+	 */
+	public double getPredictedFrequency(int cell, int note)
+	{
+		return predicted[cell][note];
+	}
+
+	/**
+	 * @return deviation, in cents, of a note's predicted frequency at a grid
+	 *         cell from its predicted frequency at the reference condition,
+	 *         or NaN.
+	 */
+	public double getDrift(int cell, int note)
+	{
+		return Note.cents(predicted[getNumberOfCells()][note],
+				predicted[cell][note]);
+	}
+
+	/**
+	 * @return deviation, in cents, of a note's predicted frequency at a grid
+	 *         cell from its target frequency, or NaN.
+	 */
+	public double getDeviation(int cell, int note)
+	{
+		Note target = targetTuning.getFingering().get(note).getNote();
+		if (target == null || target.getFrequency() == null)
+		{
+			return Double.NaN;
+		}
+		return Note.cents(target.getFrequency(), predicted[cell][note]);
+	}
+}
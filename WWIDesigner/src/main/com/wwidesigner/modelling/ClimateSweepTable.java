@@ -0,0 +1,157 @@
+/**
+ * Display a tabular report of tuning drift over a grid of climate conditions.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.modelling;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+
+import javax.swing.JFrame;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+
+import com.wwidesigner.note.Note;
+
+/**
+ * Display a tabular report of a climate sweep: for each note, the predicted
+ * frequency at the reference condition, and the deviation in cents at each
+ * grid condition. Deviations are from the reference prediction, or,
+ * optionally, from the target tuning.
+ */
+public class ClimateSweepTable extends DefaultTableModel
+{
+	protected static final int COLUMN_WIDTH = 14;
+
+	String title;
+	boolean relativeToTarget;
+	DecimalFormat format_0;
+	DecimalFormat format_00;
+
+	/**
+	 * @param title - title for the table.
+	 * @param relativeToTarget - if true, show deviations from the target
+	 *            tuning; otherwise, show drift from the reference condition.
+	 */
+	public ClimateSweepTable(String title, boolean relativeToTarget)
+	{
+		this.title = title;
+		this.relativeToTarget = relativeToTarget;
+		format_0 = new DecimalFormat("#0.0");
+		format_00 = new DecimalFormat("#0.00");
+	}
+
+	public void buildTable(ClimateSweep sweep)
+	{
+		int nrCells = sweep.getNumberOfCells();
+		addColumn("Note");
+		addColumn("Ref (Hz)");
+		for (int cell = 0; cell < nrCells; ++cell)
+		{
+			addColumn(format_0.format(sweep.getTemperature(cell)) + "C/"
+					+ format_0.format(sweep.getHumidity(cell)) + "%/"
+					+ Math.round(sweep.getElevation(cell)) + "m");
+		}
+
+		double[] maxDeviation = new double[nrCells];
+		for (int note = 0; note < sweep.getNumberOfNotes(); ++note)
+		{
+			Object[] row = new Object[nrCells + 2];
+			Note target = sweep.getTargetTuning().getFingering().get(note)
+					.getNote();
+			row[0] = target == null ? "" : target.getName();
+			row[1] = formatted(
+					sweep.getPredictedFrequency(nrCells, note), format_00);
+			for (int cell = 0; cell < nrCells; ++cell)
+			{
+				double deviation = relativeToTarget ? sweep.getDeviation(
+						cell, note) : sweep.getDrift(cell, note);
+				row[cell + 2] = formatted(deviation, format_0);
+				if (Math.abs(deviation) > maxDeviation[cell])
+				{
+					maxDeviation[cell] = Math.abs(deviation);
+				}
+			}
+			addRow(row);
+		}
+		Object[] maxRow = new Object[nrCells + 2];
+		maxRow[0] = "Max |dev|";
+		maxRow[1] = " ";
+		for (int cell = 0; cell < nrCells; ++cell)
+		{
+			maxRow[cell + 2] = format_0.format(maxDeviation[cell]);
+		}
+		addRow(maxRow);
+	}
+
+	protected String formatted(double value, DecimalFormat format)
+	{
+		if (Double.isNaN(value))
+		{
+			return " ";
+		}
+		return format.format(value);
+	}
+
+	public void printTable(OutputStream os)
+	{
+		PrintWriter pw = new PrintWriter(os);
+		pw.println(title);
+		String columnFormat = "%" + COLUMN_WIDTH + "s";
+		pw.printf("%-" + COLUMN_WIDTH + "s", getColumnName(0));
+		for (int col = 1; col < getColumnCount(); col++)
+		{
+			pw.printf(columnFormat, getColumnName(col));
+		}
+		pw.println();
+		for (int row = 0; row < getRowCount(); row++)
+		{
+			pw.printf("%-" + COLUMN_WIDTH + "s", getValueAt(row, 0));
+			for (int col = 1; col < getColumnCount(); col++)
+			{
+				pw.printf(columnFormat, getValueAt(row, col));
+			}
+			pw.println();
+		}
+		pw.println();
+		pw.flush();
+	}
+
+	public void showTable(final boolean exitOnClose)
+	{
+		final TableModel model = this;
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				JTable table = new JTable(model);
+				JFrame frame = new JFrame(title);
+				if (exitOnClose)
+				{
+					frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+				}
+				frame.setSize(800, 400);
+				frame.getContentPane().add(new JScrollPane(table));
+				frame.setVisible(true);
+			}
+		});
+	}
+}
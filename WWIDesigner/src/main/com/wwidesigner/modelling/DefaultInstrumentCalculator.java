@@ -126,7 +126,13 @@ public class DefaultInstrumentCalculator extends InstrumentCalculator
 	@Override
 	public Complex calcZ(double freq)
 	{
-		return calcInputStateVector(freq).getImpedance();
+		Complex z = lookupZ(freq);
+		if (z == null)
+		{
+			z = calcInputStateVector(freq).getImpedance();
+			storeZ(freq, z);
+		}
+		return z;
 	}
 
 	@Override
@@ -30,10 +30,13 @@ import com.wwidesigner.note.Tuning;
  * 
  * @author Burton Patkau
  */
-public class FmaxEvaluator implements EvaluatorInterface
+public class FmaxEvaluator implements IncrementalEvaluatorInterface,
+		BufferedEvaluatorInterface
 {
 	protected InstrumentCalculator  calculator;
 	protected InstrumentTuner tuner;
+	// Tuning holding the fingerings, reused for each evaluation.
+	protected Tuning targetTuning = new Tuning();
 
 	public FmaxEvaluator( InstrumentCalculator calculator )
 	{
@@ -57,36 +60,53 @@ public class FmaxEvaluator implements EvaluatorInterface
 	public double[] calculateErrorVector(List<Fingering> fingeringActualData)
 	{
 		double[] errorVector = new double[fingeringActualData.size()];
+		calculateErrorVector(fingeringActualData, errorVector);
+		return errorVector;
+	}
 
-		Tuning targetTuning = new Tuning();
-		targetTuning.setFingering(fingeringActualData);
-		tuner.setTuning(targetTuning);
+	@Override
+	public void calculateErrorVector(List<Fingering> fingeringActualData,
+			double[] errorVector)
+	{
+		prepareErrors(fingeringActualData);
 
 		int i = 0;
 		for (Fingering actual: fingeringActualData)
 		{
-			double centDeviation = 400.0;
-			if ( actual.getNote() != null && actual.getNote().getFrequencyMax() != null )
+			errorVector[i++] = calculateError(actual);
+		}
+	}
+
+	@Override
+	public void prepareErrors(List<Fingering> fingeringActualData)
+	{
+		targetTuning.setFingering(fingeringActualData);
+		tuner.setTuning(targetTuning);
+	}
+
+	@Override
+	public double calculateError(Fingering actual)
+	{
+		double centDeviation = 400.0;
+		if ( actual.getNote() != null && actual.getNote().getFrequencyMax() != null )
+		{
+			try
 			{
-				try
-				{
-					Note predicted = tuner.predictedNote(actual);
-					centDeviation = Note.cents(actual.getNote().getFrequencyMax(),
-							predicted.getFrequencyMax());
-				}
-				catch (RuntimeException e)
-				{
-				}
+				Note predicted = tuner.predictedNote(actual);
+				centDeviation = Note.cents(actual.getNote().getFrequencyMax(),
+						predicted.getFrequencyMax());
 			}
-			else
+			catch (RuntimeException e)
 			{
-				// No actual available for this fingering.
-				// Don't include it in optimization.
-				centDeviation = 0.0;
 			}
-			errorVector[i++] = centDeviation;
 		}
-		return errorVector;
+		else
+		{
+			// No actual available for this fingering.
+			// Don't include it in optimization.
+			centDeviation = 0.0;
+		}
+		return centDeviation;
 	}
 
 	protected void setTuner(InstrumentTuner tuner)
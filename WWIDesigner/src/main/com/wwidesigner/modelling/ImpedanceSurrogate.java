@@ -0,0 +1,322 @@
+/**
+ * Rational approximation to the impedance of one fingering over a frequency band.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.modelling;
+
+import org.apache.commons.math3.complex.Complex;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.DecompositionSolver;
+import org.apache.commons.math3.linear.QRDecomposition;
+import org.apache.commons.math3.linear.RealVector;
+
+/**
+ * Rational (Pade-type) approximation Z(f) ~ P(f)/Q(f) to the impedance of an
+ * instrument, for its current fingering, over a band of frequencies.
+ * Input impedance is a ratio of trigonometric functions of frequency,
+ * so a rational function of modest degree follows it closely through
+ * resonances, where a polynomial would not.
+ * <p>
+ * P and Q are complex combinations of Chebyshev polynomials on the band.
+ * The coefficients come from a linearized least-squares fit to calcZ at
+ * Chebyshev nodes, P(f) - Z(f)*Q(f) = 0, re-weighted by 1/|Q| for a few
+ * iterations (Sanathanan-Koerner), to remove the bias of the linearization.
+ * A few extra calcZ evaluations, between the nodes, give an estimate of the
+ * approximation error, relative to the largest |Z| in the band.
+ */
+public class ImpedanceSurrogate
+{
+	// Degree of numerator and denominator.
+	public static final int DEFAULT_DEGREE = 4;
+	// Largest error bound, relative to |Z|, for an acceptable surrogate.
+	public static final double DEFAULT_TOLERANCE = 1.0e-3;
+	// Samples for the fit, beyond the minimum needed.
+	protected static final int EXTRA_SAMPLES = 2;
+	// Evaluations between the samples, used to estimate the error.
+	protected static final int CHECK_POINTS = 2;
+	// Sanathanan-Koerner iterations.
+	protected static final int ITERATIONS = 3;
+
+	protected double lowerFreq;
+	protected double upperFreq;
+	protected int degree;
+	// Scale of impedance values, to condition the fit.
+	protected double zScale;
+	// Chebyshev coefficients of P (degree+1 values) and Q (degree+1 values,
+	// with q[0] == 1), as real and imaginary parts.
+	protected double[] pRe;
+	protected double[] pIm;
+	protected double[] qRe;
+	protected double[] qIm;
+	protected double errorBound;
+	protected int evaluations;
+
+	/**
+	 * Fit a surrogate of default degree to the impedance of the calculator's
+	 * current instrument and fingering.
+	 * @param calculator - calculator for the instrument being modeled.
+	 * @param lowerFreq - lower bound of frequency band.
+	 * @param upperFreq - upper bound of frequency band.
+	 */
+	public ImpedanceSurrogate(InstrumentCalculator calculator,
+			double lowerFreq, double upperFreq)
+	{
+		this(calculator, lowerFreq, upperFreq, DEFAULT_DEGREE);
+	}
+
+	/**
+	 * Fit a surrogate of specified degree to the impedance of the calculator's
+	 * current instrument and fingering.
+	 * @param calculator - calculator for the instrument being modeled.
+	 * @param lowerFreq - lower bound of frequency band.
+	 * @param upperFreq - upper bound of frequency band.
+	 * @param degree - degree of numerator and denominator polynomials.
+	 */
+	public ImpedanceSurrogate(InstrumentCalculator calculator,
+			double lowerFreq, double upperFreq, int degree)
+	{
+		this.lowerFreq = lowerFreq;
+		this.upperFreq = upperFreq;
+		this.degree = degree;
+
+		int nrSamples = 2 * degree + 1 + EXTRA_SAMPLES;
+		double[] x = new double[nrSamples];
+		Complex[] z = new Complex[nrSamples];
+		zScale = 0.0;
+		for (int i = 0; i < nrSamples; ++i)
+		{
+			// Chebyshev nodes of the first kind.
+			x[i] = -Math.cos(Math.PI * (i + 0.5) / nrSamples);
+			z[i] = calculator.calcZ(toFrequency(x[i]));
+			zScale = Math.max(zScale, z[i].abs());
+		}
+		evaluations = nrSamples;
+		if (zScale <= 0.0 || Double.isNaN(zScale) || Double.isInfinite(zScale))
+		{
+			errorBound = Double.POSITIVE_INFINITY;
+			return;
+		}
+		try
+		{
+			fit(x, z);
+		}
+		catch (RuntimeException e)
+		{
+			// Singular least-squares problem.
+			errorBound = Double.POSITIVE_INFINITY;
+			return;
+		}
+
+		// Estimate error midway between the central samples,
+		// and at the band edges, beyond the outer samples.
+		errorBound = 0.0;
+		double[] checkX = new double[CHECK_POINTS + 2];
+		int centre = nrSamples / 2;
+		for (int j = 0; j < CHECK_POINTS; ++j)
+		{
+			int i = centre - CHECK_POINTS / 2 + j;
+			checkX[j] = 0.5 * (x[i - 1] + x[i]);
+		}
+		checkX[CHECK_POINTS] = -1.0;
+		checkX[CHECK_POINTS + 1] = 1.0;
+		for (double xc : checkX)
+		{
+			double freq = toFrequency(xc);
+			Complex zTrue = calculator.calcZ(freq);
+			++evaluations;
+			double error = zTrue.subtract(value(freq)).abs() / zScale;
+			if (Double.isNaN(error))
+			{
+				error = Double.POSITIVE_INFINITY;
+			}
+			errorBound = Math.max(errorBound, error);
+		}
+	}
+
+	/**
+	 * Linearized least-squares fit, with Sanathanan-Koerner re-weighting.
+	 */
+	protected void fit(double[] x, Complex[] z)
+	{
+		int nrSamples = x.length;
+		int nrTerms = degree + 1;
+		// Unknowns: p[0..degree], q[1..degree], real parts then imaginary.
+		int nrUnknowns = nrTerms + degree;
+		pRe = new double[nrTerms];
+		pIm = new double[nrTerms];
+		qRe = new double[nrTerms];
+		qIm = new double[nrTerms];
+		qRe[0] = 1.0;
+
+		double[][] chebyshev = new double[nrSamples][];
+		double[] weight = new double[nrSamples];
+		for (int i = 0; i < nrSamples; ++i)
+		{
+			chebyshev[i] = chebyshev(x[i]);
+			weight[i] = 1.0;
+		}
+		for (int iteration = 0; iteration < ITERATIONS; ++iteration)
+		{
+			double[][] a = new double[2 * nrSamples][2 * nrUnknowns];
+			double[] b = new double[2 * nrSamples];
+			for (int i = 0; i < nrSamples; ++i)
+			{
+				double w = weight[i];
+				double zRe = w * z[i].getReal() / zScale;
+				double zIm = w * z[i].getImaginary() / zScale;
+				double[] t = chebyshev[i];
+				int re = 2 * i;
+				int im = 2 * i + 1;
+				for (int k = 0; k < nrTerms; ++k)
+				{
+					// P term: (pRe + i pIm) * w * t[k].
+					a[re][k] = w * t[k];
+					a[re][nrUnknowns + k] = 0.0;
+					a[im][k] = 0.0;
+					a[im][nrUnknowns + k] = w * t[k];
+				}
+				for (int k = 1; k < nrTerms; ++k)
+				{
+					// Q term: -(qRe + i qIm) * z * w * t[k].
+					int col = nrTerms + k - 1;
+					a[re][col] = -zRe * t[k];
+					a[re][nrUnknowns + col] = zIm * t[k];
+					a[im][col] = -zIm * t[k];
+					a[im][nrUnknowns + col] = -zRe * t[k];
+				}
+				// Right-hand side: z * w * q[0] * t[0], with q[0] = 1.
+				b[re] = zRe;
+				b[im] = zIm;
+			}
+			DecompositionSolver solver = new QRDecomposition(
+					new Array2DRowRealMatrix(a, false)).getSolver();
+			RealVector solution = solver.solve(new ArrayRealVector(b, false));
+			for (int k = 0; k < nrTerms; ++k)
+			{
+				pRe[k] = solution.getEntry(k);
+				pIm[k] = solution.getEntry(nrUnknowns + k);
+			}
+			for (int k = 1; k < nrTerms; ++k)
+			{
+				qRe[k] = solution.getEntry(nrTerms + k - 1);
+				qIm[k] = solution.getEntry(nrUnknowns + nrTerms + k - 1);
+			}
+			for (int i = 0; i < nrSamples; ++i)
+			{
+				double[] q = evaluate(qRe, qIm, chebyshev[i]);
+				double qAbs = Math.hypot(q[0], q[1]);
+				weight[i] = (qAbs > 0.0) ? 1.0 / qAbs : 1.0;
+			}
+		}
+	}
+
+	/**
+	 * @return approximate impedance at a frequency within the band.
+	 */
+	public Complex value(double freq)
+	{
+		double[] t = chebyshev(toUnit(freq));
+		double[] p = evaluate(pRe, pIm, t);
+		double[] q = evaluate(qRe, qIm, t);
+		return new Complex(p[0], p[1]).divide(new Complex(q[0], q[1]))
+				.multiply(zScale);
+	}
+
+	/**
+	 * @return true if freq lies within the band of this surrogate.
+	 */
+	public boolean covers(double freq)
+	{
+		return lowerFreq <= freq && freq <= upperFreq;
+	}
+
+	/**
+	 * @return estimated maximum error of the approximation within the band,
+	 *         relative to the largest impedance magnitude in the band.
+	 */
+	public double getErrorBound()
+	{
+		return errorBound;
+	}
+
+	/**
+	 * @return true if the estimated error is within DEFAULT_TOLERANCE.
+	 */
+	public boolean isAccurate()
+	{
+		return errorBound <= DEFAULT_TOLERANCE;
+	}
+
+	/**
+	 * @return number of calls to calcZ used to build the surrogate.
+	 */
+	public int getNumberOfEvaluations()
+	{
+		return evaluations;
+	}
+
+	public double getLowerFreq()
+	{
+		return lowerFreq;
+	}
+
+	public double getUpperFreq()
+	{
+		return upperFreq;
+	}
+
+	protected double toUnit(double freq)
+	{
+		return (2.0 * freq - upperFreq - lowerFreq) / (upperFreq - lowerFreq);
+	}
+
+	protected double toFrequency(double x)
+	{
+		return 0.5 * (lowerFreq + upperFreq + x * (upperFreq - lowerFreq));
+	}
+
+	/**
+	 * @return Chebyshev polynomials T[0..degree] at x.
+	 */
+	protected double[] chebyshev(double x)
+	{
+		double[] t = new double[degree + 1];
+		t[0] = 1.0;
+		if (degree > 0)
+		{
+			t[1] = x;
+		}
+		for (int k = 2; k <= degree; ++k)
+		{
+			t[k] = 2.0 * x * t[k - 1] - t[k - 2];
+		}
+		return t;
+	}
+
+	protected static double[] evaluate(double[] cRe, double[] cIm, double[] t)
+	{
+		double re = 0.0;
+		double im = 0.0;
+		for (int k = 0; k < t.length; ++k)
+		{
+			re += cRe[k] * t[k];
+			im += cIm[k] * t[k];
+		}
+		return new double[] { re, im };
+	}
+}
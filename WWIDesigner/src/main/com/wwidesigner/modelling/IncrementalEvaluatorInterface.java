@@ -0,0 +1,49 @@
+/**
+ * Interface for evaluators that can calculate errors one fingering at a time.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.modelling;
+
+import java.util.List;
+
+import com.wwidesigner.note.Fingering;
+
+/**
+ * Evaluator that can calculate the error for individual fingerings, in any
+ * order, so that a caller can stop once it has seen enough. For a given
+ * instrument geometry, calculateError(target) must return the same value as
+ * the corresponding element of calculateErrorVector.
+ */
+public interface IncrementalEvaluatorInterface extends EvaluatorInterface
+{
+	/**
+	 * Prepare to calculate errors for fingerings from a list, with the
+	 * current instrument geometry. Must be called after any change to the
+	 * geometry, before calling calculateError.
+	 * @param fingeringTargets  - all fingerings, with target note for each.
+	 */
+	public abstract void prepareErrors(List<Fingering> fingeringTargets);
+
+	/**
+	 * Calculate the (signed) difference between target performance and
+	 * predicted performance for one fingering.
+	 * @param target  - Fingering and target note, from the list
+	 * 			passed to prepareErrors.
+	 * @return difference between target and predicted performance.
+	 */
+	public abstract double calculateError(Fingering target);
+}
@@ -20,13 +20,17 @@ package com.wwidesigner.modelling;
 
 import org.apache.commons.math3.complex.Complex;
 
+import com.wwidesigner.geometry.Hole;
 import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.geometry.Mouthpiece;
+import com.wwidesigner.note.CompactFingering;
 import com.wwidesigner.note.Fingering;
 import com.wwidesigner.util.PhysicalParameters;
 import com.wwidesigner.geometry.calculation.BoreSectionCalculator;
 import com.wwidesigner.geometry.calculation.HoleCalculator;
 import com.wwidesigner.geometry.calculation.DefaultHoleCalculator;
 import com.wwidesigner.geometry.calculation.MouthpieceCalculator;
+import com.wwidesigner.geometry.calculation.PreparedMouthpiece;
 import com.wwidesigner.geometry.calculation.SimpleBoreSectionCalculator;
 import com.wwidesigner.geometry.calculation.TerminationCalculator;
 import com.wwidesigner.geometry.calculation.IdealOpenEndCalculator;
@@ -52,6 +56,17 @@ import com.wwidesigner.geometry.calculation.IdealOpenEndCalculator;
  *   reflection (coefficient of flow reflection) seen by driving source.
  *   Expect resonance when coefficient is -1 or phase angle is pi.<br/>
  *
+ * Implementations of calcZ(double) may keep the most recent impedances in a
+ * small memo, with lookupZ() and storeZ().  A playing-range search or a
+ * tuning prediction often asks for the impedance at the same frequency more
+ * than once, for the same fingering; the memo answers these repeats without
+ * recalculating.  Entries apply only to the instrument geometry, open holes
+ * and air properties they were calculated for: the memo is discarded when
+ * any of these change.  Changes to the mouthpiece, the hole sizes and the
+ * air properties are detected directly; callers that change bore points or
+ * hole positions must call instrument.updateComponents(), as they already
+ * must before calculating.<br/>
+ *
  * @author kort
  * 
  */
@@ -68,6 +83,26 @@ public abstract class InstrumentCalculator
 
 	protected PhysicalParameters params;
 
+	// Number of recent impedances kept for reuse.
+	public static final int Z_MEMO_SIZE = 8;
+
+	// Recent impedances, in a circular buffer, for the geometry, open holes
+	// and air properties recorded below.
+	private boolean zMemoEnabled = true;
+	private final double[] zMemoFrequency = new double[Z_MEMO_SIZE];
+	private final Complex[] zMemoValue = new Complex[Z_MEMO_SIZE];
+	private int zMemoCount = 0;
+	private int zMemoNext = 0;
+	private Instrument zMemoInstrument;
+	private long zMemoGeometryVersion;
+	private PreparedMouthpiece zMemoMouthpiece;
+	private double zMemoMouthpieceBeta;
+	private double zMemoReedAlpha;
+	private double zMemoFlangeDiameter;
+	private double[] zMemoHoles = new double[0];
+	private long zCalls = 0;
+	private long zMemoHits = 0;
+
 	public InstrumentCalculator()
 	{
 	}
@@ -122,6 +157,7 @@ public abstract class InstrumentCalculator
 		this.instrument = instrument;
 		this.instrument.convertToMetres();
 		this.instrument.updateComponents();
+		clearZMemo();
 	}
 
 	/**
@@ -132,6 +168,7 @@ public abstract class InstrumentCalculator
 			MouthpieceCalculator mouthpieceCalculator)
 	{
 		this.mouthpieceCalculator = mouthpieceCalculator;
+		clearZMemo();
 	}
 
 	/**
@@ -142,6 +179,7 @@ public abstract class InstrumentCalculator
 			TerminationCalculator terminationCalculator)
 	{
 		this.terminationCalculator = terminationCalculator;
+		clearZMemo();
 	}
 
 	/**
@@ -151,6 +189,7 @@ public abstract class InstrumentCalculator
 	public void setHoleCalculator(HoleCalculator holeCalculator)
 	{
 		this.holeCalculator = holeCalculator;
+		clearZMemo();
 	}
 
 	/**
@@ -161,6 +200,7 @@ public abstract class InstrumentCalculator
 			BoreSectionCalculator boreSectionCalculator)
 	{
 		this.boreSectionCalculator = boreSectionCalculator;
+		clearZMemo();
 	}
 
 	public Instrument getInstrument()
@@ -176,6 +216,7 @@ public abstract class InstrumentCalculator
 	public void setPhysicalParameters(PhysicalParameters physicalParams)
 	{
 		this.params = physicalParams;
+		clearZMemo();
 	}
 
 	public void setFingering(Fingering fingering)
@@ -183,6 +224,11 @@ public abstract class InstrumentCalculator
 		instrument.setOpenHoles(fingering);
 	}
 
+	public void setFingering(CompactFingering fingering)
+	{
+		instrument.setOpenHoles(fingering.getOpenHoleMask());
+	}
+
 	/**
 	 * Calculate the reflection coefficient at the nominal frequency for a
 	 * specified fingering.
@@ -220,6 +266,19 @@ public abstract class InstrumentCalculator
 	 */
 	public abstract Complex calcReflectionCoefficient(double freq);
 
+	/**
+	 * Calculate the reflection coefficient at the target frequency of a
+	 * compact fingering.
+	 * 
+	 * @param fingering
+	 * @return coefficient of pressure reflection
+	 */
+	public Complex calcReflectionCoefficient(CompactFingering fingering)
+	{
+		instrument.setOpenHoles(fingering.getOpenHoleMask());
+		return calcReflectionCoefficient(fingering.getFrequency());
+	}
+
 	/**
 	 * Calculate the overall impedance at the nominal frequency for a specified
 	 * fingering.
@@ -256,6 +315,242 @@ public abstract class InstrumentCalculator
 	 */
 	public abstract Complex calcZ(double freq);
 
+	/**
+	 * Calculate the overall impedance at the target frequency of a compact
+	 * fingering.
+	 * 
+	 * @param fingering
+	 * @return impedance
+	 */
+	public Complex calcZ(CompactFingering fingering)
+	{
+		instrument.setOpenHoles(fingering.getOpenHoleMask());
+		return calcZ(fingering.getFrequency());
+	}
+
+	/**
+	 * Calculate the overall impedance at a specified frequency and compact
+	 * fingering.
+	 * 
+	 * @param freq
+	 * @param fingering
+	 * @return impedance
+	 */
+	public Complex calcZ(double freq, CompactFingering fingering)
+	{
+		instrument.setOpenHoles(fingering.getOpenHoleMask());
+		return calcZ(freq);
+	}
+
+	/**
+	 * Look up the impedance at a specified frequency in the memo of recent
+	 * impedances, for the instrument's current geometry, fingering and air
+	 * properties.  Counts a call to calcZ.
+	 * 
+	 * @param freq
+	 * @return impedance previously stored for exactly this frequency, or null
+	 *         if there is none, and the caller must calculate it.
+	 */
+	protected Complex lookupZ(double freq)
+	{
+		++zCalls;
+		if (!zMemoEnabled || zMemoCount == 0 || !isZMemoCurrent())
+		{
+			return null;
+		}
+		for (int i = 0; i < zMemoCount; ++i)
+		{
+			if (zMemoFrequency[i] == freq)
+			{
+				++zMemoHits;
+				return zMemoValue[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Store a newly calculated impedance in the memo of recent impedances,
+	 * replacing the oldest entry if the memo is full.
+	 * 
+	 * @param freq
+	 * @param z
+	 *            impedance at freq, for the current geometry, fingering and
+	 *            air properties.
+	 */
+	protected void storeZ(double freq, Complex z)
+	{
+		if (!zMemoEnabled || instrument == null || params == null)
+		{
+			return;
+		}
+		if (zMemoCount > 0 && !isZMemoCurrent())
+		{
+			zMemoCount = 0;
+			zMemoNext = 0;
+		}
+		if (zMemoCount == 0)
+		{
+			recordZMemoState();
+		}
+		zMemoFrequency[zMemoNext] = freq;
+		zMemoValue[zMemoNext] = z;
+		zMemoNext = (zMemoNext + 1) % Z_MEMO_SIZE;
+		if (zMemoCount < Z_MEMO_SIZE)
+		{
+			++zMemoCount;
+		}
+	}
+
+	/**
+	 * Test whether the memo entries apply to the instrument's current
+	 * geometry, fingering and air properties.
+	 */
+	private boolean isZMemoCurrent()
+	{
+		if (instrument != zMemoInstrument
+				|| instrument.getGeometryVersion() != zMemoGeometryVersion)
+		{
+			return false;
+		}
+		Mouthpiece mouthpiece = instrument.getMouthpiece();
+		if (!zMemoMouthpiece.isValidFor(mouthpiece, params)
+				|| !sameValue(mouthpiece.getBeta(), zMemoMouthpieceBeta)
+				|| !sameValue(reedAlpha(mouthpiece), zMemoReedAlpha)
+				|| !sameValue(flangeDiameter(), zMemoFlangeDiameter))
+		{
+			return false;
+		}
+		int nrHoles = instrument.getHole() == null ? 0 : instrument.getHole()
+				.size();
+		if (3 * nrHoles != zMemoHoles.length)
+		{
+			return false;
+		}
+		for (int holeNr = 0; holeNr < nrHoles; ++holeNr)
+		{
+			Hole hole = instrument.getHole().get(holeNr);
+			if ((hole.isOpenHole() ? 1.0 : 0.0) != zMemoHoles[3 * holeNr]
+					|| hole.getDiameter() != zMemoHoles[3 * holeNr + 1]
+					|| hole.getHeight() != zMemoHoles[3 * holeNr + 2])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void recordZMemoState()
+	{
+		zMemoInstrument = instrument;
+		zMemoGeometryVersion = instrument.getGeometryVersion();
+		Mouthpiece mouthpiece = instrument.getMouthpiece();
+		zMemoMouthpiece = new PreparedMouthpiece(mouthpiece, params);
+		zMemoMouthpieceBeta = valueOf(mouthpiece.getBeta());
+		zMemoReedAlpha = reedAlpha(mouthpiece);
+		zMemoFlangeDiameter = flangeDiameter();
+		int nrHoles = instrument.getHole() == null ? 0 : instrument.getHole()
+				.size();
+		if (zMemoHoles.length != 3 * nrHoles)
+		{
+			zMemoHoles = new double[3 * nrHoles];
+		}
+		for (int holeNr = 0; holeNr < nrHoles; ++holeNr)
+		{
+			Hole hole = instrument.getHole().get(holeNr);
+			zMemoHoles[3 * holeNr] = hole.isOpenHole() ? 1.0 : 0.0;
+			zMemoHoles[3 * holeNr + 1] = hole.getDiameter();
+			zMemoHoles[3 * holeNr + 2] = hole.getHeight();
+		}
+	}
+
+	private double flangeDiameter()
+	{
+		if (instrument.getTermination() == null)
+		{
+			return Double.NaN;
+		}
+		return instrument.getTermination().getFlangeDiameter();
+	}
+
+	private static double reedAlpha(Mouthpiece mouthpiece)
+	{
+		if (mouthpiece.getSingleReed() != null)
+		{
+			return mouthpiece.getSingleReed().getAlpha();
+		}
+		if (mouthpiece.getDoubleReed() != null)
+		{
+			return mouthpiece.getDoubleReed().getAlpha();
+		}
+		if (mouthpiece.getLipReed() != null)
+		{
+			return mouthpiece.getLipReed().getAlpha();
+		}
+		return Double.NaN;
+	}
+
+	private static double valueOf(Double value)
+	{
+		return value == null ? Double.NaN : value;
+	}
+
+	private static boolean sameValue(Double value, double recorded)
+	{
+		double current = valueOf(value);
+		return current == recorded
+				|| (Double.isNaN(current) && Double.isNaN(recorded));
+	}
+
+	/**
+	 * Discard all impedances in the memo.
+	 */
+	public void clearZMemo()
+	{
+		zMemoCount = 0;
+		zMemoNext = 0;
+		zMemoInstrument = null;
+		zMemoMouthpiece = null;
+	}
+
+	/**
+	 * Enable or disable the memo of recent impedances.  Enabled by default.
+	 */
+	public void setZMemoEnabled(boolean enabled)
+	{
+		this.zMemoEnabled = enabled;
+		clearZMemo();
+	}
+
+	public boolean isZMemoEnabled()
+	{
+		return zMemoEnabled;
+	}
+
+	/**
+	 * @return number of impedances requested from calcZ(double) since the
+	 *         counters were last reset, by calculators that use the memo.
+	 */
+	public long getNumberOfZCalls()
+	{
+		return zCalls;
+	}
+
+	/**
+	 * @return number of requested impedances that were found in the memo,
+	 *         rather than calculated.
+	 */
+	public long getNumberOfZMemoHits()
+	{
+		return zMemoHits;
+	}
+
+	public void resetZMemoCounters()
+	{
+		zCalls = 0;
+		zMemoHits = 0;
+	}
+
 	/**
 	 * Calculate the loop gain at the nominal frequency for a specified
 	 * fingering.
@@ -41,6 +41,12 @@ public abstract class InstrumentTuner
 	protected Tuning tuning;
 	protected InstrumentCalculator calculator;
 	protected PhysicalParameters params;
+	// Locate playing ranges on a rational approximation to impedance.
+	protected boolean useImpedanceSurrogate = false;
+	// Source of previously calculated predictions, or null.
+	protected TuningPredictionCache predictionCache = null;
+	// Playing-range calculator, reused for each note.
+	protected PlayingRange playingRange = null;
 
 	/**
 	 * 
@@ -84,6 +90,7 @@ public abstract class InstrumentTuner
 		calculator.setPhysicalParameters(params);
 		Tuning predicted = getPredictedTuning();
 		PlotPlayingRanges plot = new PlotPlayingRanges(title);
+		plot.setUseImpedanceSurrogate(useImpedanceSurrogate);
 		plot.buildGraph(calculator, tuning, predicted);
 		plot.plotGraph(exitOnTableClose);
 	}
@@ -242,12 +249,99 @@ public abstract class InstrumentTuner
 		}
 	}
 
+	public boolean isUseImpedanceSurrogate()
+	{
+		return useImpedanceSurrogate;
+	}
+
+	/**
+	 * @param useImpedanceSurrogate
+	 *            true to locate playing ranges on a rational approximation
+	 *            to impedance, fitted for each fingering; see
+	 *            PlayingRange.setUseSurrogate().
+	 */
+	public void setUseImpedanceSurrogate(boolean useImpedanceSurrogate)
+	{
+		this.useImpedanceSurrogate = useImpedanceSurrogate;
+	}
+
+	public TuningPredictionCache getPredictionCache()
+	{
+		return predictionCache;
+	}
+
+	/**
+	 * @param predictionCache
+	 *            cache to take predicted tunings from, and add them to, in
+	 *            getPredictedTuning(); null to calculate every prediction.
+	 */
+	public void setPredictionCache(TuningPredictionCache predictionCache)
+	{
+		this.predictionCache = predictionCache;
+	}
+
+	/**
+	 * Identify the tuner settings that affect its predictions, for
+	 * TuningPredictionCache. Derived classes with additional settings
+	 * should append them.
+	 * @return tuner class and settings.
+	 */
+	public String getPredictionKey()
+	{
+		return getClass().getName() + " " + useImpedanceSurrogate;
+	}
+
+	/**
+	 * Return the tuner's playing-range calculator, for the instrument's
+	 * current fingering, without an impedance surrogate.  The same object,
+	 * with its solvers and functions, is reused for every note for as long
+	 * as the calculator is unchanged, so callers must finish with it before
+	 * asking for another.
+	 */
+	protected PlayingRange getPlayingRange()
+	{
+		if (playingRange == null || playingRange.getCalculator() != calculator)
+		{
+			playingRange = new PlayingRange(calculator);
+		}
+		playingRange.setUseSurrogate(false);
+		return playingRange;
+	}
+
+	/**
+	 * Set up the tuner's playing-range calculator for a specified fingering,
+	 * using an impedance surrogate if this tuner is set to use one.
+	 * @param fingering
+	 */
+	protected PlayingRange createPlayingRange(Fingering fingering)
+	{
+		PlayingRange range = getPlayingRange();
+		range.setFingering(fingering);
+		range.setUseSurrogate(useImpedanceSurrogate);
+		return range;
+	}
+
 	/**
 	 * Construct a predicted tuning for the instrument,
-	 * with a predicted note for each note in the target tuning.
+	 * with a predicted note for each note in the target tuning,
+	 * from the prediction cache if one is set.
 	 * @return predicted tuning
 	 */
 	public Tuning getPredictedTuning()
+	{
+		if (predictionCache != null)
+		{
+			return predictionCache.getPredictedTuning(this);
+		}
+		return calculatePredictedTuning();
+	}
+
+	/**
+	 * Calculate a predicted tuning for the instrument,
+	 * with a predicted note for each note in the target tuning.
+	 * @return predicted tuning
+	 */
+	public Tuning calculatePredictedTuning()
 	{
 		Tuning predicted = new Tuning();
 		predicted.setName(tuning.getName());
@@ -0,0 +1,35 @@
+/**
+ * Interface for sources of independent instrument tuners.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.modelling;
+
+/**
+ * Builds independent tuners for the same instrument, tuning and calculator
+ * configuration, one for each thread of a concurrent study. Each tuner must
+ * have its own instrument, tuning and calculator, not shared with any other
+ * tuner from the factory.
+ */
+public interface InstrumentTunerFactory
+{
+	/**
+	 * @return a new, independent tuner.
+	 * @throws Exception
+	 *             if the tuner cannot be built.
+	 */
+	public InstrumentTuner createTuner() throws Exception;
+}
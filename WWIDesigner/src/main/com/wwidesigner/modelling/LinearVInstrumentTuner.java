@@ -207,7 +207,7 @@ public class LinearVInstrumentTuner extends InstrumentTuner
 		double vMax, vMin;
 
 		calculator.setFingering(noteLow);
-		PlayingRange range = new PlayingRange(calculator);
+		PlayingRange range = getPlayingRange();
 		try 
 		{
 			// Find playing range for lowest note.
@@ -262,6 +262,16 @@ public class LinearVInstrumentTuner extends InstrumentTuner
 		return slope * f + intercept;
 	}
 
+	/* (non-Javadoc)
+	 * @see com.wwidesigner.modelling.InstrumentTuner#getPredictionKey()
+	 */
+	@Override
+	public String getPredictionKey()
+	{
+		return super.getPredictionKey() + " " + BottomFraction + " "
+				+ TopFraction;
+	}
+
 	/* (non-Javadoc)
 	 * @see com.wwidesigner.modelling.InstrumentTuner#setTuning(com.wwidesigner.note.Tuning)
 	 */
@@ -309,7 +319,7 @@ public class LinearVInstrumentTuner extends InstrumentTuner
 	public Double predictedFrequency(Fingering fingering)
 	{
 		Note targetNote = fingering.getNote();
-		PlayingRange range = new PlayingRange(calculator, fingering);
+		PlayingRange range = createPlayingRange(fingering);
 		try
 		{
 			double target = getFrequencyTarget(targetNote);
@@ -342,7 +352,7 @@ public class LinearVInstrumentTuner extends InstrumentTuner
 		}
 
 		// Predict playing range.
-		PlayingRange range = new PlayingRange(calculator, fingering);
+		PlayingRange range = createPlayingRange(fingering);
 		double fmax, fmin, fnom;
 		try {
 			fmax = range.findXZero(target);
@@ -162,7 +162,7 @@ public class LinearXInstrumentTuner extends InstrumentTuner
 		Complex z;
 
 		calculator.setFingering(noteLow);
-		PlayingRange range = new PlayingRange(calculator);
+		PlayingRange range = getPlayingRange();
 		try 
 		{
 			fmax = range.findXZero(fLow);
@@ -208,6 +208,16 @@ public class LinearXInstrumentTuner extends InstrumentTuner
 		return slope * f + intercept;
 	}
 
+	/* (non-Javadoc)
+	 * @see com.wwidesigner.modelling.InstrumentTuner#getPredictionKey()
+	 */
+	@Override
+	public String getPredictionKey()
+	{
+		return super.getPredictionKey() + " " + BottomFraction + " "
+				+ TopFraction;
+	}
+
 	/* (non-Javadoc)
 	 * @see com.wwidesigner.modelling.InstrumentTuner#setTuning(com.wwidesigner.note.Tuning)
 	 */
@@ -255,7 +265,7 @@ public class LinearXInstrumentTuner extends InstrumentTuner
 	public Double predictedFrequency(Fingering fingering)
 	{
 		Note targetNote = fingering.getNote();
-		PlayingRange range = new PlayingRange(calculator, fingering);
+		PlayingRange range = createPlayingRange(fingering);
 		try
 		{
 			double target = getFrequencyTarget(targetNote);
@@ -287,7 +297,7 @@ public class LinearXInstrumentTuner extends InstrumentTuner
 		}
 
 		// Predict playing range.
-		PlayingRange range = new PlayingRange(calculator, fingering);
+		PlayingRange range = createPlayingRange(fingering);
 		double fmax, fmin, fnom;
 		try {
 			fmax = range.findXZero(target);
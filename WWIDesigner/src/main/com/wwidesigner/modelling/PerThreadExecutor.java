@@ -0,0 +1,249 @@
+/**
+ * Runs indexed tasks concurrently, each thread with its own worker object.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.modelling;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a set of tasks, numbered from zero, on a fixed set of workers, one
+ * thread per worker. A worker is whatever state a thread needs to itself,
+ * typically an InstrumentTuner with its own instrument and calculator.
+ * Thread t runs tasks t, t + n, t + 2n, ..., for n workers, so each task
+ * always runs on the same worker for a given number of workers. With a
+ * single worker, tasks run on the calling thread.
+ * <p>
+ * Workers are kept between runs, so a study can set them up once and re-use
+ * them. The executor also counts predictions that fail within tasks, so that
+ * studies can report them rather than leave silent gaps in their results.
+ *
+ * @param <W>
+ *            type of the per-thread worker.
+ */
+public class PerThreadExecutor<W>
+{
+	/**
+	 * Source of new workers.
+	 */
+	public interface WorkerFactory<W>
+	{
+		public W createWorker() throws Exception;
+	}
+
+	/**
+	 * One task, run with the worker of the thread that runs it.
+	 */
+	public interface Task<W>
+	{
+		public void run(W worker, int taskNumber);
+	}
+
+	protected String description;
+	protected List<W> workers;
+	protected int failedPredictions;
+	protected RuntimeException firstFailure;
+
+	/**
+	 * @param description
+	 *            - name of the study, such as "Climate sweep", for messages.
+	 */
+	public PerThreadExecutor(String description)
+	{
+		this(description, new ArrayList<W>());
+	}
+
+	/**
+	 * Create an executor that uses, and adds to, an existing list of
+	 * workers, such as those of an earlier executor. The two executors must
+	 * not run at the same time.
+	 */
+	public PerThreadExecutor(String description, List<W> workers)
+	{
+		this.description = description;
+		this.workers = workers;
+	}
+
+	/**
+	 * Create workers until there are nrThreads of them. If the first worker
+	 * cannot be created, the exception is passed on; if a later one cannot,
+	 * tasks run with the workers created so far.
+	 */
+	public void addWorkers(WorkerFactory<W> factory, int nrThreads)
+			throws Exception
+	{
+		if (workers.isEmpty())
+		{
+			workers.add(factory.createWorker());
+		}
+		try
+		{
+			while (workers.size() < nrThreads)
+			{
+				workers.add(factory.createWorker());
+			}
+		}
+		catch (Exception e)
+		{
+			System.out.println(description
+					+ ": cannot create worker, running with "
+					+ workers.size() + " threads: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return a worker factory that creates tuners from an
+	 *         InstrumentTunerFactory.
+	 */
+	public static WorkerFactory<InstrumentTuner> tunersFrom(
+			final InstrumentTunerFactory tunerFactory)
+	{
+		return new WorkerFactory<InstrumentTuner>()
+		{
+			public InstrumentTuner createWorker() throws Exception
+			{
+				return tunerFactory.createTuner();
+			}
+		};
+	}
+
+	public List<W> getWorkers()
+	{
+		return workers;
+	}
+
+	public W getWorker(int thread)
+	{
+		return workers.get(thread);
+	}
+
+	public int getNumberOfThreads()
+	{
+		return workers.size();
+	}
+
+	/**
+	 * Run tasks 0 to nrTasks - 1, and wait for all of them to complete.
+	 */
+	public void run(final int nrTasks, final Task<W> task)
+	{
+		int nrThreads = Math.min(workers.size(), nrTasks);
+		if (nrThreads <= 1)
+		{
+			for (int i = 0; i < nrTasks; ++i)
+			{
+				task.run(workers.get(0), i);
+			}
+			return;
+		}
+
+		final int stride = nrThreads;
+		ExecutorService executor = Executors.newFixedThreadPool(stride);
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		for (int t = 0; t < stride; ++t)
+		{
+			final int firstTask = t;
+			final W worker = workers.get(t);
+			results.add(executor.submit(new Callable<Integer>()
+			{
+				public Integer call()
+				{
+					int nrRun = 0;
+					for (int i = firstTask; i < nrTasks; i += stride)
+					{
+						task.run(worker, i);
+						++nrRun;
+					}
+					return nrRun;
+				}
+			}));
+		}
+		try
+		{
+			for (Future<Integer> result : results)
+			{
+				result.get();
+			}
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException(description + " failed: "
+					+ e.getMessage(), e);
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Forget the failures recorded so far.
+	 */
+	public synchronized void clearFailures()
+	{
+		failedPredictions = 0;
+		firstFailure = null;
+	}
+
+	/**
+	 * Record a prediction that threw an exception.
+	 */
+	public synchronized void recordFailure(RuntimeException e)
+	{
+		if (firstFailure == null)
+		{
+			firstFailure = e;
+		}
+		++failedPredictions;
+	}
+
+	/**
+	 * Report the failures recorded since clearFailures() on System.out, if
+	 * there were any.
+	 */
+	public synchronized void reportFailures()
+	{
+		if (failedPredictions > 0)
+		{
+			System.out.println(description + ": " + failedPredictions
+					+ " predictions failed. First failure: "
+					+ firstFailure.getMessage());
+		}
+	}
+
+	/**
+	 * @return number of predictions that threw an exception since
+	 *         clearFailures().
+	 */
+	public synchronized int getNumberOfFailedPredictions()
+	{
+		return failedPredictions;
+	}
+
+	/**
+	 * @return the first exception recorded since clearFailures(), or null.
+	 */
+	public synchronized RuntimeException getFirstFailure()
+	{
+		return firstFailure;
+	}
+}
@@ -66,10 +66,24 @@ public class PlayingRange
 	protected static final double Granularity = 0.012;	// About 20 cents.
 	/* Loop gain that defines fmin for a playing range. */
 	protected static final double MinimumGain = 1.0;
+	/* An impedance surrogate covers frequencies within this ratio
+	 * of the frequency for which it is built. */
+	protected static final double SurrogateBandRatio = 1.2;
+	/* Largest acceptable correction, as a fraction of frequency, when
+	 * polishing a solution found on the surrogate.  A larger correction
+	 * means the surrogate is not trustworthy here, and we repeat the search
+	 * with the true impedance. */
+	protected static final double PolishTolerance = 1.0e-4;
 	
 	// A calculator for the instrument being modeled.
 	protected InstrumentCalculator calculator;
 
+	// Optional rational approximation to impedance, for the current fingering.
+	protected boolean useSurrogate = false;
+	protected ImpedanceSurrogate surrogate;
+	protected boolean surrogateActive = false;	// True while searching on surrogate.
+	protected int surrogateFallbacks = 0;
+
 	// Classes used to find solutions.
 	
 	/**
@@ -110,7 +124,7 @@ public class PlayingRange
 
 		public double value(double f)
 		{
-			Complex z = calculator.calcZ(f);
+			Complex z = calcZ(f);
 			return z.getImaginary() - targetX;
 		}
 
@@ -148,7 +162,7 @@ public class PlayingRange
 
 		public double value(double f)
 		{
-			return calculator.calcGain(f) - targetGain;
+			return calculator.calcGain(f, calcZ(f)) - targetGain;
 		}
 	}
 
@@ -185,7 +199,7 @@ public class PlayingRange
 
 		public double value(double f)
 		{
-			Complex z = calculator.calcZ(f);
+			Complex z = calcZ(f);
 			return z.getImaginary()/z.getReal() - targetRatio;
 		}
 	}
@@ -223,7 +237,7 @@ public class PlayingRange
 
 		public double value(double f)
 		{
-			Complex z = calculator.calcZ(f);
+			Complex z = calcZ(f);
 			return z.abs() - targetMagnitude;
 		}
 	}
@@ -282,9 +296,172 @@ public class PlayingRange
 		this.optimizer = new BrentOptimizer(0.0001, 0.0001);	// Approximate minimum is sufficient.
 	}
 
+	public InstrumentCalculator getCalculator()
+	{
+		return calculator;
+	}
+
+	/**
+	 * Change the fingering, so that one playing-range calculator, with its
+	 * solvers and functions, can be reused for each note of a tuning.
+	 * Discards any impedance surrogate for the prior fingering.
+	 * @param fingering
+	 */
+	public void setFingering(Fingering fingering)
+	{
+		calculator.setFingering(fingering);
+		surrogateActive = false;
+		clearSurrogate();
+	}
+
+	/**
+	 * Enable or disable use of an impedance surrogate.  With the surrogate,
+	 * each search samples calcZ once to fit a rational approximation
+	 * to Z(f) within SurrogateBandRatio of the search frequency, runs the
+	 * search on the approximation, and then polishes the solution
+	 * with one or two calls to calcZ.  If the approximation's error bound
+	 * is too large, or polishing needs too large a correction, the search
+	 * falls back to calcZ alone.
+	 * The surrogate pays off when several searches use the same fingering,
+	 * as when predicting fmin, fmax and fnom for a note.  It assumes the
+	 * instrument geometry and fingering do not change; call clearSurrogate()
+	 * after changing either.
+	 */
+	public void setUseSurrogate(boolean useSurrogate)
+	{
+		this.useSurrogate = useSurrogate;
+		clearSurrogate();
+	}
+
+	public boolean isUseSurrogate()
+	{
+		return useSurrogate;
+	}
+
+	/**
+	 * Discard any impedance surrogate, following a change to instrument
+	 * geometry or fingering.
+	 */
+	public void clearSurrogate()
+	{
+		surrogate = null;
+	}
+
+	/**
+	 * @return number of searches on the surrogate that had to be repeated
+	 * with the true impedance.
+	 */
+	public int getNumberOfSurrogateFallbacks()
+	{
+		return surrogateFallbacks;
+	}
+
+	/**
+	 * Calculate impedance at a specified frequency, for the current fingering:
+	 * from the surrogate while searching on it, if the surrogate covers freq,
+	 * otherwise from the calculator.
+	 */
+	protected Complex calcZ(double freq)
+	{
+		if (surrogateActive && surrogate.covers(freq))
+		{
+			return surrogate.value(freq);
+		}
+		return calculator.calcZ(freq);
+	}
+
+	/**
+	 * Ensure there is a surrogate covering a specified frequency,
+	 * if surrogates are in use.
+	 * @return true if the surrogate is usable for searches near nearFreq.
+	 */
+	protected boolean prepareSurrogate(double nearFreq)
+	{
+		if (! useSurrogate)
+		{
+			return false;
+		}
+		if (surrogate == null || ! surrogate.covers(nearFreq))
+		{
+			surrogate = new ImpedanceSurrogate(calculator,
+					nearFreq / SurrogateBandRatio, nearFreq * SurrogateBandRatio);
+		}
+		return surrogate.isAccurate();
+	}
+
+	/**
+	 * Polish a root of function found on the surrogate: a Newton step from
+	 * the true function value, using the surrogate slope, then a secant step.
+	 * Uses two true function values.
+	 * @param f0 - root of the function on the surrogate.
+	 * @return polished root, or null if the correction needed is too large.
+	 */
+	protected Double polishRoot(double f0, UnivariateFunction function)
+	{
+		double h = 1.0e-6 * f0;
+		surrogateActive = true;
+		double slope = (function.value(f0 + h) - function.value(f0 - h))
+				/ (2.0 * h);
+		surrogateActive = false;
+		double g0 = function.value(f0);
+		if (slope == 0.0 || Double.isNaN(slope) || Double.isNaN(g0))
+		{
+			return null;
+		}
+		double f1 = f0 - g0 / slope;
+		if (Math.abs(f1 - f0) > PolishTolerance * f0)
+		{
+			return null;
+		}
+		double g1 = function.value(f1);
+		if (Double.isNaN(g1))
+		{
+			return null;
+		}
+		if (g1 == g0)
+		{
+			return f1;
+		}
+		double f2 = f1 - g1 * (f1 - f0) / (g1 - g0);
+		if (Math.abs(f2 - f1) > Math.abs(f1 - f0))
+		{
+			// Not converging.
+			return null;
+		}
+		return f2;
+	}
+
+	/**
+	 * Polish a local minimum of function found on the surrogate: a Newton
+	 * step from the true slope, using the surrogate curvature.
+	 * Uses two true function values.
+	 * @param f0 - minimum of the function on the surrogate.
+	 * @return polished minimum, or null if the correction needed is too large.
+	 */
+	protected Double polishMinimum(double f0, UnivariateFunction function)
+	{
+		double h = 1.0e-4 * f0;
+		surrogateActive = true;
+		double curvature = (function.value(f0 + h) - 2.0 * function.value(f0)
+				+ function.value(f0 - h)) / (h * h);
+		surrogateActive = false;
+		double slope = (function.value(f0 + h) - function.value(f0 - h))
+				/ (2.0 * h);
+		if (! (curvature > 0.0) || Double.isNaN(slope))
+		{
+			return null;
+		}
+		double f1 = f0 - slope / curvature;
+		if (Math.abs(f1 - f0) > PolishTolerance * f0)
+		{
+			return null;
+		}
+		return f1;
+	}
+
 	/**
 	 * Find a bracket for a root of function.value(calcZ(f)) above a specified frequency.
-	 * Pre:  zNear = calculator.calcZ(nearFreq)
+	 * Pre:  zNear = calcZ(nearFreq)
 	 * Post: Either returns {lowerFreq,upperFreq} that satisfy
 	 *       function(lowerFreq) < 0 and function(upperFreq) > 0.
 	 *       and nearFreq <= lowerFreq < upperFreq <= upperBound
@@ -315,13 +492,13 @@ public class PlayingRange
 				double[] bracket = {-1.0,0.0};
 				return bracket;
 			}
-			zLower = calculator.calcZ(lowerFreq);
+			zLower = calcZ(lowerFreq);
 		}
 
 		// Search up until function(upperFreq) > 0.
 
 		upperFreq = lowerFreq + stepSize;
-		zUpper = calculator.calcZ(upperFreq);
+		zUpper = calcZ(upperFreq);
 		
 		while (function.value(zUpper) <= 0.0)
 		{
@@ -337,7 +514,7 @@ public class PlayingRange
 				double[] bracket = {-1.0,0.0};
 				return bracket;
 			}
-			zUpper = calculator.calcZ(upperFreq);
+			zUpper = calcZ(upperFreq);
 		}
 
 		double[] bracket = {lowerFreq, upperFreq};
@@ -346,7 +523,7 @@ public class PlayingRange
 
 	/**
 	 * Find a bracket for a root of function.value(calcZ(f)) below a specified frequency.
-	 * Pre:  zNear = calculator.calcZ(nearFreq)
+	 * Pre:  zNear = calcZ(nearFreq)
 	 * Post: Either returns {lowerFreq,upperFreq} that satisfy
 	 *       function(lowerFreq) < 0 and function(upperFreq) > 0.
 	 *       and lowerBound <= lowerFreq < upperFreq <= nearFreq
@@ -377,13 +554,13 @@ public class PlayingRange
 				double[] bracket = {-1.0,0.0};
 				return bracket;
 			}
-			zUpper = calculator.calcZ(upperFreq);
+			zUpper = calcZ(upperFreq);
 		}
 
 		// Search down until function(lowerFreq) < 0.
 
 		lowerFreq = upperFreq - stepSize;
-		zLower = calculator.calcZ(lowerFreq);
+		zLower = calcZ(lowerFreq);
 		
 		while (function.value(zLower) >= 0.0)
 		{
@@ -399,7 +576,7 @@ public class PlayingRange
 				double[] bracket = {-1.0,0.0};
 				return bracket;
 			}
-			zLower = calculator.calcZ(lowerFreq);
+			zLower = calcZ(lowerFreq);
 		}
 
 		double[] bracket = {lowerFreq, upperFreq};
@@ -426,7 +603,7 @@ public class PlayingRange
 			throws NoPlayingRange
 	{
 		double freq = nearFreq;
-		Complex zNear = calculator.calcZ(freq);
+		Complex zNear = calcZ(freq);
 		double limitFreq;
 		double [] upwardBracket;
 		double [] downwardBracket;
@@ -437,7 +614,7 @@ public class PlayingRange
 			// adjust the frequency slightly.
 			// We don't know whether slope is positive or negative.
 			freq = freq * 0.999;
-			zNear = calculator.calcZ(freq);
+			zNear = calcZ(freq);
 		}
 		
 		if (function.value(zNear) < 0.0)
@@ -507,31 +684,86 @@ public class PlayingRange
 	} // findBracket
 
 	/**
-	 * Find the zero of reactance nearest to nearFreq
-	 * satisfying nearFreq/SearchBoundRatio <= f <= nearFreq*SearchBoundRatio
+	 * Find the root of a function nearest to nearFreq, searching on the
+	 * impedance surrogate if it is in use and accurate enough,
+	 * and on the true impedance otherwise.
 	 * @param nearFreq
-	 * @throws NoPlayingRange if there is no zero of X
+	 * @param function - function of impedance with a zero at the target.
+	 * @param caller - name of calling function, for error messages.
+	 * @throws NoPlayingRange if there is no root
 	 * within the specified range of nearFreq.
 	 */
-	public double findXZero(double nearFreq) throws NoPlayingRange
+	protected double findRoot(double nearFreq, UnivariateZFunction function,
+			String caller) throws NoPlayingRange
 	{
-		double rootFreq;		// Frequency at which Z.imag == 0.
-		double[] bracket = findBracket(nearFreq, reactance);
+		if (prepareSurrogate(nearFreq))
+		{
+			Double rootFreq = null;
+			surrogateActive = true;
+			try {
+				rootFreq = solveRoot(nearFreq, function, caller);
+			}
+			catch (NoPlayingRange e)
+			{
+				// Confirm with the true impedance, below.
+			}
+			finally
+			{
+				surrogateActive = false;
+			}
+			if (rootFreq != null)
+			{
+				rootFreq = polishRoot(rootFreq, function);
+				if (rootFreq != null)
+				{
+					return rootFreq;
+				}
+			}
+			++surrogateFallbacks;
+		}
+		return solveRoot(nearFreq, function, caller);
+	}
+
+	/**
+	 * Bracket and solve for the root of a function nearest to nearFreq.
+	 */
+	protected double solveRoot(double nearFreq, UnivariateZFunction function,
+			String caller) throws NoPlayingRange
+	{
+		double rootFreq;
+		double[] bracket = findBracket(nearFreq, function);
 
 		try {
-			rootFreq = solver.solve( 50, reactance, bracket[0], bracket[1] );
+			rootFreq = solver.solve( 50, function, bracket[0], bracket[1] );
 		}
 		catch (Exception e)
 		{
 			// For step tapers, this exception is hit with no other consequences.
 			// Comment out the system message so as not to raise unneeded flags.
-			 System.out.println("Exception in findXZero: " + e.getMessage());
+			// Failures on the surrogate are repeated with the true impedance,
+			// so report only the latter.
+			if (! surrogateActive)
+			{
+				System.out.println("Exception in " + caller + ": " + e.getMessage());
+			}
 			// e.printStackTrace();
 			throw new NoPlayingRange(nearFreq);
 		}
 		return rootFreq;
 	}
 
+	/**
+	 * Find the zero of reactance nearest to nearFreq
+	 * satisfying nearFreq/SearchBoundRatio <= f <= nearFreq*SearchBoundRatio
+	 * @param nearFreq
+	 * @throws NoPlayingRange if there is no zero of X
+	 * within the specified range of nearFreq.
+	 */
+	public double findXZero(double nearFreq) throws NoPlayingRange
+	{
+		return findRoot(nearFreq, reactance, "findXZero");
+	}
+
 	/**
 	 * Find the frequency with a specified reactance nearest to nearFreq
 	 * satisfying nearFreq/SearchBoundRatio <= f <= nearFreq*SearchBoundRatio
@@ -542,20 +774,7 @@ public class PlayingRange
 	 */
 	public double findX(double nearFreq, double targetX) throws NoPlayingRange
 	{
-		double rootFreq;		// Frequency at which Z.imag == targetX.
-		Reactance reactance = new Reactance( targetX );
-		double[] bracket = findBracket(nearFreq, reactance);
-
-		try {
-			rootFreq = solver.solve( 50, reactance, bracket[0], bracket[1] );
-		}
-		catch (Exception e)
-		{
-			System.out.println("Exception in findX: " + e.getMessage());
-			// e.printStackTrace();
-			throw new NoPlayingRange(nearFreq);
-		}
-		return rootFreq;
+		return findRoot(nearFreq, new Reactance( targetX ), "findX");
 	}
 
 	/**
@@ -566,13 +785,65 @@ public class PlayingRange
 	 * @param fmax - maximum frequency, as returned by findFmax().
 	 */
 	public double findFmin(double fmax)
+	{
+		double[] candidates;
+		if (prepareSurrogate(fmax))
+		{
+			candidates = null;
+			surrogateActive = true;
+			try {
+				candidates = findFminCandidates(fmax);
+			}
+			catch (NoPlayingRange e)
+			{
+				// Confirm with the true impedance, below.
+			}
+			finally
+			{
+				surrogateActive = false;
+			}
+			if (candidates != null)
+			{
+				Double fmin;
+				if ( candidates[1] > candidates[0] ) {
+					fmin = polishMinimum(candidates[1], zRatio);
+				}
+				else if ( candidates[2] > 0.0 ) {
+					fmin = polishRoot(candidates[0], gainOne);
+				}
+				else {
+					fmin = candidates[0];
+				}
+				if (fmin != null)
+				{
+					return fmin;
+				}
+			}
+			++surrogateFallbacks;
+		}
+		candidates = findFminCandidates(fmax);
+		if ( candidates[1] > candidates[0] ) {
+			return candidates[1];
+		}
+		return candidates[0];
+	}
+
+	/**
+	 * Find candidates for fmin, given fmax.
+	 * @param fmax - maximum frequency, as returned by findFmax().
+	 * @return { frequency at which gain == MinimumGain, or lower bound of the
+	 * 		search if gain is above MinimumGain throughout;
+	 * 		frequency of local minimum of Im(Z)/Re(Z);
+	 * 		1.0 if the first value is a solution for gain, otherwise 0.0 }
+	 */
+	protected double[] findFminCandidates(double fmax)
 	{
 		final double stepSize = fmax * Granularity;		// Step size for search.
 
 		// Upper bound on fmin is fmax.
 		// findFmax ensures Im(Z(fmax)) == 0.0.
 		double lowerFreq = fmax;
-		Complex z_lo = calculator.calcZ(fmax);
+		Complex z_lo = calcZ(fmax);
 		double g_lo = calculator.calcGain(lowerFreq,z_lo);
 		double ratio = z_lo.getImaginary()/z_lo.getReal();
 		double minRatio = ratio + 1.0;
@@ -593,23 +864,28 @@ public class PlayingRange
 			{
 				throw new NoPlayingRange(fmax);
 			}
-			z_lo = calculator.calcZ(lowerFreq);
+			z_lo = calcZ(lowerFreq);
 			g_lo = calculator.calcGain(lowerFreq,z_lo);
 			ratio = z_lo.getImaginary()/z_lo.getReal();
 		}
 		
 		double freqGain;		// Frequency at which gain == MinimumGain.
 		double freqRatio;		// Frequency of local minimum of Im(Z)/Re(Z).
+		double gainSolved = 0.0;
 
 		if ( g_lo < MinimumGain )
 		{
+			gainSolved = 1.0;
 			// Find the point at which gain == MinimumGain.
 			try {
 				freqGain = solver.solve( 50, gainOne, lowerFreq, fmax );
 			}
 			catch (Exception e)
 			{
-				System.out.println("Exception solving for fmin (gain): " + e.getMessage());
+				if (! surrogateActive)
+				{
+					System.out.println("Exception solving for fmin (gain): " + e.getMessage());
+				}
 				// e.printStackTrace();
 				throw new NoPlayingRange(fmax);
 			}
@@ -628,14 +904,14 @@ public class PlayingRange
 		}
 		catch (Exception e)
 		{
-			System.out.println("Exception solving for fmin (ratio): " + e.getMessage());
+			if (! surrogateActive)
+			{
+				System.out.println("Exception solving for fmin (ratio): " + e.getMessage());
+			}
 			// e.printStackTrace();
 			throw new NoPlayingRange(fmax);
 		}
-		if ( freqRatio > freqGain ) {
-			return freqRatio;
-		}
-		return freqGain;
+		return new double[] { freqGain, freqRatio, gainSolved };
 	}
 	
 	/**
@@ -648,20 +924,7 @@ public class PlayingRange
 	 */
 	public double findZRatio(double nearFreq, double targetRatio) throws NoPlayingRange
 	{
-		double rootFreq;		// Frequency at which Z.imag == targetX.
-		ZRatio ratio = new ZRatio( targetRatio );
-		double[] bracket = findBracket(nearFreq, ratio);
-
-		try {
-			rootFreq = solver.solve( 50, ratio, bracket[0], bracket[1] );
-		}
-		catch (Exception e)
-		{
-			System.out.println("Exception in findZRatio: " + e.getMessage());
-			// e.printStackTrace();
-			throw new NoPlayingRange(nearFreq);
-		}
-		return rootFreq;
+		return findRoot(nearFreq, new ZRatio( targetRatio ), "findZRatio");
 	}
 
 	/**
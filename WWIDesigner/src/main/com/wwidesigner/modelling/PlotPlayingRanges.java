@@ -51,6 +51,11 @@ public class PlotPlayingRanges
 	 * false to use predicted min/max, if available.
 	 */
 	protected boolean useActuals;
+	/**
+	 * true to draw playing ranges from a rational approximation
+	 * to impedance, if the approximation is accurate enough.
+	 */
+	protected boolean useImpedanceSurrogate = false;
 	
 	protected static final Color darkGreen = new Color(0,192,0);
 	protected static final Color darkYellow = new Color(255,192,0);
@@ -98,6 +103,32 @@ public class PlotPlayingRanges
 		return x;
 	}
 	
+	public void setUseImpedanceSurrogate(boolean useImpedanceSurrogate)
+	{
+		this.useImpedanceSurrogate = useImpedanceSurrogate;
+	}
+
+	/**
+	 * If surrogates are in use, fit an impedance surrogate for the current
+	 * fingering over the band between two frequencies.
+	 * @return the surrogate, or null if not in use or not accurate enough.
+	 */
+	protected ImpedanceSurrogate buildSurrogate(InstrumentCalculator calculator,
+			double freq1, double freq2)
+	{
+		if ( ! useImpedanceSurrogate || freq1 == freq2 )
+		{
+			return null;
+		}
+		ImpedanceSurrogate surrogate = new ImpedanceSurrogate(calculator,
+				Math.min(freq1, freq2), Math.max(freq1, freq2));
+		if ( ! surrogate.isAccurate() )
+		{
+			return null;
+		}
+		return surrogate;
+	}
+
 	protected static final String Y_VALUE_NAME = "Reactance Ratio, X/R";
 	/**
 	 * Calculate a y value for a point on the graph.
@@ -111,6 +142,25 @@ public class PlotPlayingRanges
 		return z.getImaginary()/z.getReal();
 	}
 
+	/**
+	 * Calculate a y value for a point on the graph, from a surrogate
+	 * if one is available that covers freq.
+	 * @param calculator - instrument calculator to calculate y value.
+	 * @param surrogate - impedance surrogate, or null.
+	 * @param freq - frequency at which to calculate y value.
+	 * @return y value.
+	 */
+	protected static double yValue(InstrumentCalculator calculator,
+			ImpedanceSurrogate surrogate, double freq)
+	{
+		if ( surrogate == null || ! surrogate.covers(freq) )
+		{
+			return yValue(calculator, freq);
+		}
+		Complex z = surrogate.value(freq);
+		return z.getImaginary()/z.getReal();
+	}
+
 	/**
 	 * Return true if f is a tonic or dominant in the key fLow.
 	 * @param f
@@ -357,10 +407,12 @@ public class PlotPlayingRanges
 			{
 				DefaultChartModel rangeModel  = new DefaultChartModel();
 				double step = (frequencyMax - frequencyMin)/32.0;
+				ImpedanceSurrogate surrogate = buildSurrogate(calculator,
+						frequencyMin, frequencyMax);
 				f = frequencyMin;
 				for (int i = 0; i <= 32; i++ )
 				{
-					y = yValue(calculator, f);
+					y = yValue(calculator, surrogate, f);
 					rangeModel.addPoint(f, y);
 					f += step;
 				}
@@ -378,10 +430,12 @@ public class PlotPlayingRanges
 			{
 				DefaultChartModel rangeModel  = new DefaultChartModel();
 				double step = (tgt.getFrequency() - pred.getFrequency())/32.0;
+				ImpedanceSurrogate surrogate = buildSurrogate(calculator,
+						pred.getFrequency(), tgt.getFrequency());
 				f = pred.getFrequency();
 				for (int i = 0; i <= 32; i++ )
 				{
-					y = yValue(calculator, f);
+					y = yValue(calculator, surrogate, f);
 					y = clamp(y,minY,maxY);
 					rangeModel.addPoint(f, y);
 					f += step;
@@ -2,6 +2,8 @@ package com.wwidesigner.modelling;
 
 import java.util.List;
 
+import com.wwidesigner.note.CompactFingering;
+import com.wwidesigner.note.CompactTuning;
 import com.wwidesigner.note.Fingering;
 
 /**
@@ -10,9 +12,12 @@ import com.wwidesigner.note.Fingering;
  * 
  * @author Burton Patkau
  */
-public class ReactanceEvaluator implements EvaluatorInterface
+public class ReactanceEvaluator implements IncrementalEvaluatorInterface,
+		BufferedEvaluatorInterface
 {
 	protected InstrumentCalculator  calculator;
+	// Compact form of the most recent list of targets.
+	protected CompactTuning compactTargets;
 
 	public ReactanceEvaluator( InstrumentCalculator calculator )
 	{
@@ -29,22 +34,43 @@ public class ReactanceEvaluator implements EvaluatorInterface
 	public double[] calculateErrorVector(List<Fingering> fingeringTargets)
 	{
 		double[] errorVector = new double[fingeringTargets.size()];
+		calculateErrorVector(fingeringTargets, errorVector);
+		return errorVector;
+	}
 
-		int i = 0;
-		for (Fingering target: fingeringTargets)
+	public void calculateErrorVector(List<Fingering> fingeringTargets,
+			double[] errorVector)
+	{
+		compactTargets = CompactTuning.forList(compactTargets, fingeringTargets);
+
+		for (int i = 0; i < errorVector.length; ++i)
 		{
-			if ( target.getNote() == null || target.getNote().getFrequency() == null )
-			{
-				errorVector[i++] = 0.0;
-			}
-			else
-			{
-				// Return negative reactance, so sign is positive for sharp notes
-				// and negative for flat notes.
-				errorVector[i++] = - calculator.calcZ(target.getNote().getFrequency(), target)
-						.getImaginary();
-			}
+			errorVector[i] = calculateError(compactTargets.get(i));
 		}
-		return errorVector;
+	}
+
+	public void prepareErrors(List<Fingering> fingeringTargets)
+	{
+		compactTargets = CompactTuning.forList(compactTargets, fingeringTargets);
+	}
+
+	public double calculateError(Fingering target)
+	{
+		if (compactTargets == null)
+		{
+			return calculateError(CompactFingering.valueOf(target));
+		}
+		return calculateError(compactTargets.get(target));
+	}
+
+	protected double calculateError(CompactFingering target)
+	{
+		if ( ! target.hasFrequency() )
+		{
+			return 0.0;
+		}
+		// Return negative reactance, so sign is positive for sharp notes
+		// and negative for flat notes.
+		return - calculator.calcZ(target).getImaginary();
 	}
 }
\ No newline at end of file
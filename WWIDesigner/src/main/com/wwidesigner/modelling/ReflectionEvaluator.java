@@ -4,6 +4,8 @@ import java.util.List;
 
 import org.apache.commons.math3.complex.Complex;
 
+import com.wwidesigner.note.CompactFingering;
+import com.wwidesigner.note.CompactTuning;
 import com.wwidesigner.note.Fingering;
 
 /**
@@ -12,9 +14,12 @@ import com.wwidesigner.note.Fingering;
  * 
  * @author Burton Patkau
  */
-public class ReflectionEvaluator implements EvaluatorInterface
+public class ReflectionEvaluator implements IncrementalEvaluatorInterface,
+		BufferedEvaluatorInterface
 {
 	protected InstrumentCalculator  calculator;
+	// Compact form of the most recent list of targets.
+	protected CompactTuning compactTargets;
 
 	public ReflectionEvaluator( InstrumentCalculator calculator )
 	{
@@ -32,21 +37,43 @@ public class ReflectionEvaluator implements EvaluatorInterface
 	public double[] calculateErrorVector(List<Fingering> fingeringTargets)
 	{
 		double[] errorVector = new double[fingeringTargets.size()];
+		calculateErrorVector(fingeringTargets, errorVector);
+		return errorVector;
+	}
 
-		int i = 0;
-		for (Fingering target: fingeringTargets)
+	public void calculateErrorVector(List<Fingering> fingeringTargets,
+			double[] errorVector)
+	{
+		compactTargets = CompactTuning.forList(compactTargets, fingeringTargets);
+
+		for (int i = 0; i < errorVector.length; ++i)
 		{
-			if ( target.getNote() == null || target.getNote().getFrequency() == null )
-			{
-				errorVector[i++] = 0.0;
-			}
-			else
-			{
-				// Multiply reflectance by -1, so that reflectance of -1 has phase angle of zero.
-				Complex reflectionCoeff = calculator.calcReflectionCoefficient(target).multiply(-1.0);
-				errorVector[i++] = reflectionCoeff.getArgument();
-			}
+			errorVector[i] = calculateError(compactTargets.get(i));
 		}
-		return errorVector;
+	}
+
+	public void prepareErrors(List<Fingering> fingeringTargets)
+	{
+		compactTargets = CompactTuning.forList(compactTargets, fingeringTargets);
+	}
+
+	public double calculateError(Fingering target)
+	{
+		if (compactTargets == null)
+		{
+			return calculateError(CompactFingering.valueOf(target));
+		}
+		return calculateError(compactTargets.get(target));
+	}
+
+	protected double calculateError(CompactFingering target)
+	{
+		if ( ! target.hasFrequency() )
+		{
+			return 0.0;
+		}
+		// Multiply reflectance by -1, so that reflectance of -1 has phase angle of zero.
+		Complex reflectionCoeff = calculator.calcReflectionCoefficient(target).multiply(-1.0);
+		return reflectionCoeff.getArgument();
 	}
 }
\ No newline at end of file
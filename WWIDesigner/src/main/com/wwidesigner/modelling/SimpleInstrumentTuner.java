@@ -33,7 +33,7 @@ public class SimpleInstrumentTuner extends InstrumentTuner
 	@Override
 	public Double predictedFrequency(Fingering fingering)
 	{
-		PlayingRange range = new PlayingRange(calculator, fingering);
+		PlayingRange range = createPlayingRange(fingering);
 		try {
 			return range.findXZero(fingering.getNote().getFrequency());
 		}
@@ -0,0 +1,463 @@
+/**
+ * Monte Carlo analysis of tuning errors from manufacturing tolerances.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.modelling;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+import com.wwidesigner.geometry.BorePoint;
+import com.wwidesigner.geometry.Hole;
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.geometry.Mouthpiece;
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.note.Note;
+import com.wwidesigner.note.Tuning;
+
+/**
+ * Estimates the distribution of tuning errors that an instrument design will
+ * show in production. Each sample perturbs the instrument dimensions at
+ * random, within specified manufacturing tolerances, and predicts the
+ * tuning of the perturbed instrument. Results are the deviation, in cents,
+ * of each predicted note from its target, with percentiles over all
+ * samples.
+ * <p>
+ * Samples are evaluated concurrently by a PerThreadExecutor. Each thread has
+ * its own tuner from an InstrumentTunerFactory, and perturbs its tuner's
+ * instrument in place, restoring the nominal dimensions before each sample,
+ * rather than building a new instrument for each sample. Each sample draws from a random
+ * generator seeded from the sample number, so results do not depend on the
+ * number of threads.
+ * <p>
+ * A prediction that throws an exception counts as a failed prediction, and
+ * the note is left without a prediction in that sample. The analysis
+ * reports the number of failures and the first exception on System.out.
+ */
+public class ToleranceAnalysis
+{
+	/**
+	 * Dimensions that can have a tolerance. WINDOW_LENGTH, WINDOW_WIDTH and
+	 * WINDOW_HEIGHT apply to a fipple window or to an embouchure hole.
+	 * Each hole and bore point is perturbed independently.
+	 */
+	public enum Dimension
+	{
+		HOLE_POSITION, HOLE_DIAMETER, HOLE_HEIGHT, BORE_DIAMETER, WINDOW_LENGTH, WINDOW_WIDTH, WINDOW_HEIGHT, WINDWAY_HEIGHT
+	}
+
+	/**
+	 * Distribution of manufacturing errors. For NORMAL, the tolerance is the
+	 * standard deviation; for UNIFORM, it is the largest error.
+	 */
+	public enum Distribution
+	{
+		NORMAL, UNIFORM
+	}
+
+	public static final long DEFAULT_SEED = 20140101L;
+
+	protected InstrumentTunerFactory tunerFactory;
+	protected Map<Dimension, Distribution> distributions = new EnumMap<Dimension, Distribution>(
+			Dimension.class);
+	protected Map<Dimension, Double> tolerances = new EnumMap<Dimension, Double>(
+			Dimension.class);
+	protected long seed = DEFAULT_SEED;
+	protected int maxThreads = Runtime.getRuntime().availableProcessors();
+
+	// Results of the last analysis.
+	protected Tuning targetTuning;
+	protected double[] nominalDeviation; // [note]
+	protected double[][] deviation; // [note][sample]; NaN if not predicted.
+	protected double[][] sortedDeviation; // [note][], without NaN.
+	// Threads of the last analysis, with the predictions that threw an
+	// exception.
+	protected PerThreadExecutor<PerturbedInstrument> executor;
+
+	/**
+	 * @param tunerFactory - source of a tuner for each thread. Tolerances
+	 *            apply to the tuner's instrument, in metres.
+	 */
+	public ToleranceAnalysis(InstrumentTunerFactory tunerFactory)
+	{
+		this.tunerFactory = tunerFactory;
+	}
+
+	/**
+	 * Set the tolerance of one kind of dimension.
+	 * @param dimension - kind of dimension.
+	 * @param distribution - distribution of errors.
+	 * @param tolerance - standard deviation or largest error, in metres;
+	 *            zero for no error.
+	 */
+	public void setTolerance(Dimension dimension, Distribution distribution,
+			double tolerance)
+	{
+		distributions.put(dimension, distribution);
+		tolerances.put(dimension, tolerance);
+	}
+
+	public void setSeed(long seed)
+	{
+		this.seed = seed;
+	}
+
+	public void setMaxThreads(int maxThreads)
+	{
+		this.maxThreads = Math.max(maxThreads, 1);
+	}
+
+	/**
+	 * Predict the tuning of the nominal instrument, and of nrSamples
+	 * perturbed instruments.
+	 */
+	public void analyze(final int nrSamples) throws Exception
+	{
+		executor = new PerThreadExecutor<PerturbedInstrument>(
+				"Tolerance analysis");
+		executor.addWorkers(
+				new PerThreadExecutor.WorkerFactory<PerturbedInstrument>()
+				{
+					public PerturbedInstrument createWorker() throws Exception
+					{
+						return new PerturbedInstrument(tunerFactory
+								.createTuner());
+					}
+				}, Math.min(maxThreads, Math.max(nrSamples, 1)));
+		targetTuning = executor.getWorker(0).tuner.getTuning();
+		int nrNotes = targetTuning.getFingering().size();
+		nominalDeviation = executor.getWorker(0).predictDeviations();
+		deviation = new double[nrNotes][nrSamples];
+		sortedDeviation = null;
+
+		executor.run(nrSamples,
+				new PerThreadExecutor.Task<PerturbedInstrument>()
+				{
+					public void run(PerturbedInstrument sampler, int sample)
+					{
+						sampler.evaluate(sample);
+					}
+				});
+		executor.reportFailures();
+	}
+
+	/**
+	 * Record a prediction that threw an exception.
+	 */
+	protected void recordFailure(RuntimeException e)
+	{
+		executor.recordFailure(e);
+	}
+
+	/**
+	 * @return number of predictions, nominal or sampled, that threw an
+	 *         exception in the last analysis.
+	 */
+	public int getNumberOfFailedPredictions()
+	{
+		return executor == null ? 0 : executor.getNumberOfFailedPredictions();
+	}
+
+	/**
+	 * @return the first exception thrown by a prediction in the last
+	 *         analysis, or null if none failed.
+	 */
+	public RuntimeException getFirstFailure()
+	{
+		return executor == null ? null : executor.getFirstFailure();
+	}
+
+	/**
+	 * @return the target tuning used in the last analysis.
+	 */
+	public Tuning getTargetTuning()
+	{
+		return targetTuning;
+	}
+
+	public int getNumberOfNotes()
+	{
+		return deviation.length;
+	}
+
+	public int getNumberOfSamples()
+	{
+		return deviation.length > 0 ? deviation[0].length : 0;
+	}
+
+	/**
+	 * @return deviation, in cents, of a note of the nominal instrument from
+	 *         its target, or NaN.
+	 */
+	public double getNominalDeviation(int note)
+	{
+		return nominalDeviation[note];
+	}
+
+	/**
+	 * @return deviation, in cents, of a note of one sample from its target,
+	 *         or NaN if it has no target or prediction.
+	 */
+	public double getDeviation(int sample, int note)
+	{
+		return deviation[note][sample];
+	}
+
+	/**
+	 * @return number of samples with a prediction for a note.
+	 */
+	public int getNumberOfPredictions(int note)
+	{
+		return getSortedDeviations()[note].length;
+	}
+
+	/**
+	 * Return a percentile of the deviations of a note over all samples,
+	 * interpolating between samples.
+	 * @param note - index of note in the target tuning.
+	 * @param percent - percentile, from 0 to 100.
+	 * @return deviation in cents, or NaN if the note has no predictions.
+	 */
+	public double getPercentile(int note, double percent)
+	{
+		double[] sorted = getSortedDeviations()[note];
+		if (sorted.length == 0)
+		{
+			return Double.NaN;
+		}
+		double position = 0.01 * percent * (sorted.length - 1);
+		if (position <= 0.0)
+		{
+			return sorted[0];
+		}
+		if (position >= sorted.length - 1)
+		{
+			return sorted[sorted.length - 1];
+		}
+		int lower = (int) position;
+		double fraction = position - lower;
+		return sorted[lower] + fraction * (sorted[lower + 1] - sorted[lower]);
+	}
+
+	protected double[][] getSortedDeviations()
+	{
+		if (sortedDeviation == null)
+		{
+			double[][] sorted = new double[deviation.length][];
+			for (int note = 0; note < deviation.length; ++note)
+			{
+				double[] values = new double[deviation[note].length];
+				int nrValues = 0;
+				for (double value : deviation[note])
+				{
+					if (!Double.isNaN(value))
+					{
+						values[nrValues++] = value;
+					}
+				}
+				sorted[note] = Arrays.copyOf(values, nrValues);
+				Arrays.sort(sorted[note]);
+			}
+			sortedDeviation = sorted;
+		}
+		return sortedDeviation;
+	}
+
+	/**
+	 * The instrument of one tuner, with its nominal dimensions, perturbed in
+	 * place for each sample.
+	 */
+	protected class PerturbedInstrument
+	{
+		protected InstrumentTuner tuner;
+		protected Instrument instrument;
+		protected RandomGenerator random;
+		protected double[] holePosition;
+		protected double[] holeDiameter;
+		protected double[] holeHeight;
+		protected double[] boreDiameter;
+		protected double windowLength;
+		protected double windowWidth;
+		protected double windowHeight;
+		protected double windwayHeight;
+
+		public PerturbedInstrument(InstrumentTuner tuner)
+		{
+			this.tuner = tuner;
+			instrument = tuner.getInstrument();
+			random = new MersenneTwister();
+			List<Hole> holes = instrument.getHole();
+			holePosition = new double[holes.size()];
+			holeDiameter = new double[holes.size()];
+			holeHeight = new double[holes.size()];
+			for (int i = 0; i < holes.size(); ++i)
+			{
+				holePosition[i] = holes.get(i).getBorePosition();
+				holeDiameter[i] = holes.get(i).getDiameter();
+				holeHeight[i] = holes.get(i).getHeight();
+			}
+			List<BorePoint> borePoints = instrument.getBorePoint();
+			boreDiameter = new double[borePoints.size()];
+			for (int i = 0; i < borePoints.size(); ++i)
+			{
+				boreDiameter[i] = borePoints.get(i).getBoreDiameter();
+			}
+			Mouthpiece.Fipple fipple = instrument.getMouthpiece().getFipple();
+			Mouthpiece.EmbouchureHole hole = instrument.getMouthpiece()
+					.getEmbouchureHole();
+			if (fipple != null)
+			{
+				windowLength = fipple.getWindowLength();
+				windowWidth = fipple.getWindowWidth();
+				windowHeight = valueOf(fipple.getWindowHeight());
+				windwayHeight = valueOf(fipple.getWindwayHeight());
+			}
+			else if (hole != null)
+			{
+				windowLength = hole.getLength();
+				windowWidth = hole.getWidth();
+				windowHeight = hole.getHeight();
+			}
+		}
+
+		/**
+		 * Perturb the instrument for one sample, and record its deviations.
+		 */
+		public void evaluate(int sample)
+		{
+			random.setSeed(seed + sample);
+			perturb();
+			double[] deviations = predictDeviations();
+			for (int note = 0; note < deviations.length; ++note)
+			{
+				deviation[note][sample] = deviations[note];
+			}
+		}
+
+		/**
+		 * Set each dimension to its nominal value plus a random error, and
+		 * update the instrument components.
+		 */
+		protected void perturb()
+		{
+			List<Hole> holes = instrument.getHole();
+			for (int i = 0; i < holes.size(); ++i)
+			{
+				Hole hole = holes.get(i);
+				hole.setBorePosition(holePosition[i]
+						+ error(Dimension.HOLE_POSITION));
+				hole.setDiameter(holeDiameter[i]
+						+ error(Dimension.HOLE_DIAMETER));
+				hole.setHeight(holeHeight[i] + error(Dimension.HOLE_HEIGHT));
+			}
+			List<BorePoint> borePoints = instrument.getBorePoint();
+			for (int i = 0; i < borePoints.size(); ++i)
+			{
+				borePoints.get(i).setBoreDiameter(
+						boreDiameter[i] + error(Dimension.BORE_DIAMETER));
+			}
+			Mouthpiece.Fipple fipple = instrument.getMouthpiece().getFipple();
+			Mouthpiece.EmbouchureHole hole = instrument.getMouthpiece()
+					.getEmbouchureHole();
+			if (fipple != null)
+			{
+				fipple.setWindowLength(windowLength
+						+ error(Dimension.WINDOW_LENGTH));
+				fipple.setWindowWidth(windowWidth
+						+ error(Dimension.WINDOW_WIDTH));
+				if (!Double.isNaN(windowHeight))
+				{
+					fipple.setWindowHeight(windowHeight
+							+ error(Dimension.WINDOW_HEIGHT));
+				}
+				if (!Double.isNaN(windwayHeight))
+				{
+					fipple.setWindwayHeight(windwayHeight
+							+ error(Dimension.WINDWAY_HEIGHT));
+				}
+			}
+			else if (hole != null)
+			{
+				hole.setLength(windowLength + error(Dimension.WINDOW_LENGTH));
+				hole.setWidth(windowWidth + error(Dimension.WINDOW_WIDTH));
+				hole.setHeight(windowHeight + error(Dimension.WINDOW_HEIGHT));
+			}
+			instrument.updateComponents();
+		}
+
+		/**
+		 * @return a random error for one dimension.
+		 */
+		protected double error(Dimension dimension)
+		{
+			Double tolerance = tolerances.get(dimension);
+			if (tolerance == null || tolerance == 0.0)
+			{
+				return 0.0;
+			}
+			if (distributions.get(dimension) == Distribution.UNIFORM)
+			{
+				return tolerance * (2.0 * random.nextDouble() - 1.0);
+			}
+			return tolerance * random.nextGaussian();
+		}
+
+		/**
+		 * @return deviation of each predicted note from its target, in
+		 *         cents, or NaN.
+		 */
+		protected double[] predictDeviations()
+		{
+			List<Fingering> targets = tuner.getTuning().getFingering();
+			double[] deviations = new double[targets.size()];
+			for (int note = 0; note < deviations.length; ++note)
+			{
+				deviations[note] = Double.NaN;
+				Note target = targets.get(note).getNote();
+				if (target == null || target.getFrequency() == null)
+				{
+					continue;
+				}
+				try
+				{
+					Double predicted = tuner.predictedFrequency(targets
+							.get(note));
+					if (predicted != null)
+					{
+						deviations[note] = Note.cents(target.getFrequency(),
+								predicted);
+					}
+				}
+				catch (RuntimeException e)
+				{
+					recordFailure(e);
+				}
+			}
+			return deviations;
+		}
+
+		private double valueOf(Double value)
+		{
+			return value == null ? Double.NaN : value;
+		}
+	}
+}
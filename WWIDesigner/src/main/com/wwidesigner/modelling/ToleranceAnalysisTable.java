@@ -0,0 +1,143 @@
+/**
+ * Display a tabular report of tuning errors from manufacturing tolerances.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.modelling;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+
+import javax.swing.JFrame;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+
+import com.wwidesigner.note.Note;
+
+/**
+ * Display a tabular report of a tolerance analysis: for each note, the
+ * target frequency, the deviation of the nominal instrument, and
+ * percentiles of the deviation over all samples, all in cents.
+ */
+public class ToleranceAnalysisTable extends DefaultTableModel
+{
+	protected static final int COLUMN_WIDTH = 12;
+	protected static final int NOTE_COLUMN_WIDTH = 18;
+	public static final double[] PERCENTILES = { 5.0, 25.0, 50.0, 75.0, 95.0 };
+
+	String title;
+	int failedPredictions;
+	DecimalFormat format_0;
+	DecimalFormat format_00;
+
+	public ToleranceAnalysisTable(String title)
+	{
+		this.title = title;
+		format_0 = new DecimalFormat("#0.0");
+		format_00 = new DecimalFormat("#0.00");
+	}
+
+	public void buildTable(ToleranceAnalysis analysis)
+	{
+		failedPredictions = analysis.getNumberOfFailedPredictions();
+		addColumn("Note");
+		addColumn("Target (Hz)");
+		addColumn("Nominal");
+		for (double percent : PERCENTILES)
+		{
+			addColumn("P" + Math.round(percent));
+		}
+
+		for (int note = 0; note < analysis.getNumberOfNotes(); ++note)
+		{
+			Object[] row = new Object[PERCENTILES.length + 3];
+			Note target = analysis.getTargetTuning().getFingering().get(note)
+					.getNote();
+			row[0] = target == null ? "" : target.getName();
+			row[1] = target == null || target.getFrequency() == null ? " "
+					: format_00.format(target.getFrequency());
+			row[2] = formatted(analysis.getNominalDeviation(note));
+			for (int i = 0; i < PERCENTILES.length; ++i)
+			{
+				row[i + 3] = formatted(analysis.getPercentile(note,
+						PERCENTILES[i]));
+			}
+			addRow(row);
+		}
+	}
+
+	protected String formatted(double value)
+	{
+		if (Double.isNaN(value))
+		{
+			return " ";
+		}
+		return format_0.format(value);
+	}
+
+	public void printTable(OutputStream os)
+	{
+		PrintWriter pw = new PrintWriter(os);
+		pw.println(title);
+		String columnFormat = "%" + COLUMN_WIDTH + "s";
+		pw.printf("%-" + NOTE_COLUMN_WIDTH + "s", getColumnName(0));
+		for (int col = 1; col < getColumnCount(); col++)
+		{
+			pw.printf(columnFormat, getColumnName(col));
+		}
+		pw.println();
+		for (int row = 0; row < getRowCount(); row++)
+		{
+			pw.printf("%-" + NOTE_COLUMN_WIDTH + "s", getValueAt(row, 0));
+			for (int col = 1; col < getColumnCount(); col++)
+			{
+				pw.printf(columnFormat, getValueAt(row, col));
+			}
+			pw.println();
+		}
+		if (failedPredictions > 0)
+		{
+			pw.println(failedPredictions + " predictions failed.");
+		}
+		pw.println();
+		pw.flush();
+	}
+
+	public void showTable(final boolean exitOnClose)
+	{
+		final TableModel model = this;
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				JTable table = new JTable(model);
+				JFrame frame = new JFrame(failedPredictions > 0 ? title + " ("
+						+ failedPredictions + " predictions failed)" : title);
+				if (exitOnClose)
+				{
+					frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+				}
+				frame.setSize(800, 400);
+				frame.getContentPane().add(new JScrollPane(table));
+				frame.setVisible(true);
+			}
+		});
+	}
+}
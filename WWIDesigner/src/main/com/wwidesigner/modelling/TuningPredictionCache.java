@@ -0,0 +1,184 @@
+/**
+ * Cache of predicted tunings, shared between views of the same instrument.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.modelling;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.wwidesigner.geometry.bind.GeometryBindFactory;
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.note.Tuning;
+import com.wwidesigner.note.bind.NoteBindFactory;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Holds the predicted tunings of recently evaluated instruments, so that a
+ * tuning table, a tuning graph and other views of the same instrument
+ * share one set of predictions, with the nominal, minimum and maximum
+ * frequency of each note.
+ * <p>
+ * A prediction is keyed on everything that affects it: the instrument
+ * geometry and target tuning, as XML; the calculator class; the tuner
+ * class and its settings, such as blowing level; and the physical
+ * parameters. Tuners normally hold instruments converted to metres, so
+ * equal instruments give equal keys. The least recently used predictions
+ * are discarded beyond a fixed capacity. Callers receive their own copy of
+ * each prediction.
+ */
+public class TuningPredictionCache
+{
+	public static final int DEFAULT_CAPACITY = 16;
+
+	protected Map<String, Tuning> predictions;
+	protected int hitCount = 0;
+	protected int missCount = 0;
+
+	public TuningPredictionCache()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity - largest number of predictions to keep.
+	 */
+	public TuningPredictionCache(final int capacity)
+	{
+		predictions = new LinkedHashMap<String, Tuning>(capacity + 1, 0.75f,
+				true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Tuning> eldest)
+			{
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Return the predicted tuning of a tuner's instrument, from the cache if
+	 * available, otherwise from the tuner.
+	 * @return a copy of the predicted tuning, which the caller may change.
+	 */
+	public Tuning getPredictedTuning(InstrumentTuner tuner)
+	{
+		String key;
+		try
+		{
+			key = getKey(tuner);
+		}
+		catch (Exception e)
+		{
+			// Instrument or tuning cannot be represented in XML; predict
+			// without caching.
+			return tuner.calculatePredictedTuning();
+		}
+		Tuning predicted;
+		synchronized (this)
+		{
+			predicted = predictions.get(key);
+			if (predicted != null)
+			{
+				++hitCount;
+				return copyOf(predicted);
+			}
+			++missCount;
+		}
+		predicted = tuner.calculatePredictedTuning();
+		synchronized (this)
+		{
+			predictions.put(key, copyOf(predicted));
+		}
+		return predicted;
+	}
+
+	/**
+	 * @return a key that identifies the prediction a tuner would make.
+	 */
+	public static String getKey(InstrumentTuner tuner) throws Exception
+	{
+		StringBuilder key = new StringBuilder();
+		key.append(tuner.getPredictionKey());
+		key.append('\n');
+		key.append(tuner.getCalculator().getClass().getName());
+		key.append('\n');
+		PhysicalParameters params = tuner.getCalculator()
+				.getPhysicalParameters();
+		key.append(params.getTemperature()).append(' ')
+				.append(params.getPressure()).append(' ')
+				.append(params.getHumidity()).append(' ')
+				.append(params.get_xCO2()).append(' ')
+				.append(params.getSpeedOfSound());
+		key.append('\n');
+		StringWriter writer = new StringWriter();
+		GeometryBindFactory.getInstance().marshalToXml(tuner.getInstrument(),
+				writer);
+		NoteBindFactory.getInstance().marshalToXml(tuner.getTuning(), writer);
+		key.append(writer.toString());
+		return key.toString();
+	}
+
+	/**
+	 * @return a copy of a tuning, with copies of its fingerings and notes.
+	 */
+	protected static Tuning copyOf(Tuning tuning)
+	{
+		Tuning copy = new Tuning();
+		copy.setName(tuning.getName());
+		copy.setComment(tuning.getComment());
+		copy.setNumberOfHoles(tuning.getNumberOfHoles());
+		List<Fingering> fingerings = new ArrayList<Fingering>();
+		for (Fingering fingering : tuning.getFingering())
+		{
+			fingerings.add(new Fingering(fingering));
+		}
+		copy.setFingering(fingerings);
+		return copy;
+	}
+
+	public synchronized int size()
+	{
+		return predictions.size();
+	}
+
+	public synchronized void clear()
+	{
+		predictions.clear();
+	}
+
+	/**
+	 * @return number of predictions served from the cache.
+	 */
+	public synchronized int getHitCount()
+	{
+		return hitCount;
+	}
+
+	/**
+	 * @return number of predictions calculated by a tuner.
+	 */
+	public synchronized int getMissCount()
+	{
+		return missCount;
+	}
+}
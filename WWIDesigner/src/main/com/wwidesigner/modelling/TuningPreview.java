@@ -0,0 +1,301 @@
+/**
+ * Live preview of the predicted tuning of an instrument being edited.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.modelling;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.note.Note;
+import com.wwidesigner.note.Tuning;
+
+/**
+ * Keeps a preview of the predicted tuning of an instrument up to date as
+ * the instrument is edited. Edits within the trust region of the current
+ * TuningResponseModel are estimated immediately, on the caller's thread.
+ * Other edits schedule an exact prediction, and a new model about the
+ * edited instrument, on a background thread; the preview keeps its prior
+ * values, marked as pending, until the exact prediction is available.
+ * <p>
+ * Only the most recent rebuild request is honoured: requests superseded
+ * before they start are skipped. The listener is called on the thread
+ * that changed the preview, which is the background thread for exact
+ * predictions.
+ */
+public class TuningPreview
+{
+	public interface PreviewListener
+	{
+		void previewChanged(TuningPreview preview);
+	}
+
+	protected TuningResponseModel model; // Most recently built model.
+	protected TuningResponseModel prototype; // Source of settings and tuners.
+	protected ExecutorService executor;
+	protected PreviewListener listener;
+
+	// State of the preview, guarded by this.
+	protected Instrument latestInstrument;
+	protected int rebuildRequest = 0;
+	protected boolean pending = false;
+	protected boolean exact = false;
+	protected double[] frequencies;
+	protected Tuning targetTuning;
+	protected String errorMessage;
+
+	/**
+	 * @param prototype - an unbuilt model, with the tuner factory and
+	 *            settings to use for each rebuild.
+	 */
+	public TuningPreview(TuningResponseModel prototype)
+	{
+		this.prototype = prototype;
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public synchronized void setListener(PreviewListener listener)
+	{
+		this.listener = listener;
+	}
+
+	/**
+	 * Update the preview for an edited instrument.
+	 * @param instrument - instrument in its own length type, not yet
+	 *            converted to metres. The preview keeps a reference to the
+	 *            instrument, so callers must not change it afterwards.
+	 */
+	public void update(Instrument instrument)
+	{
+		PreviewListener notify;
+		synchronized (this)
+		{
+			latestInstrument = instrument;
+			TuningResponseModel currentModel = model;
+			if (currentModel != null
+					&& currentModel.isWithinTrustRegion(instrument))
+			{
+				frequencies = currentModel.estimateFrequencies(instrument);
+				targetTuning = currentModel.getTargetTuning();
+				exact = false;
+				errorMessage = null;
+			}
+			else
+			{
+				scheduleRebuild(instrument);
+			}
+			notify = listener;
+		}
+		if (notify != null)
+		{
+			notify.previewChanged(this);
+		}
+	}
+
+	/**
+	 * Queue an exact prediction and a new model for an instrument, on the
+	 * background thread. Caller must hold the lock on this.
+	 */
+	protected void scheduleRebuild(final Instrument instrument)
+	{
+		final int request = ++rebuildRequest;
+		pending = true;
+		executor.submit(new Runnable()
+		{
+			public void run()
+			{
+				rebuild(instrument, request);
+			}
+		});
+	}
+
+	/**
+	 * Predict the tuning of an instrument exactly, publish it, then build a
+	 * model about it for subsequent estimates.
+	 */
+	protected void rebuild(Instrument instrument, int request)
+	{
+		TuningResponseModel newModel;
+		synchronized (this)
+		{
+			if (request != rebuildRequest)
+			{
+				return;
+			}
+			newModel = new TuningResponseModel(prototype);
+		}
+		try
+		{
+			newModel.predictBase(instrument);
+			publishExact(newModel, instrument, request);
+			newModel.calculateSensitivity();
+		}
+		catch (Exception e)
+		{
+			PreviewListener notify;
+			synchronized (this)
+			{
+				if (request != rebuildRequest)
+				{
+					return;
+				}
+				pending = false;
+				errorMessage = e.getMessage() == null ? e.toString() : e
+						.getMessage();
+				notify = listener;
+			}
+			if (notify != null)
+			{
+				notify.previewChanged(this);
+			}
+			return;
+		}
+
+		PreviewListener notify = null;
+		synchronized (this)
+		{
+			model = newModel;
+			if (request == rebuildRequest)
+			{
+				pending = false;
+				if (latestInstrument != instrument)
+				{
+					// Edits made during the rebuild were estimated from the
+					// prior model; re-estimate them from the new one.
+					double[] estimate = newModel
+							.estimateFrequencies(latestInstrument);
+					if (estimate != null
+							&& newModel.isWithinTrustRegion(latestInstrument))
+					{
+						frequencies = estimate;
+						exact = false;
+					}
+					else
+					{
+						scheduleRebuild(latestInstrument);
+					}
+				}
+				notify = listener;
+			}
+		}
+		if (notify != null)
+		{
+			notify.previewChanged(this);
+		}
+	}
+
+	protected void publishExact(TuningResponseModel newModel,
+			Instrument instrument, int request)
+	{
+		PreviewListener notify;
+		synchronized (this)
+		{
+			if (request != rebuildRequest || latestInstrument != instrument)
+			{
+				return;
+			}
+			frequencies = newModel.getBaseFrequencies();
+			targetTuning = newModel.getTargetTuning();
+			exact = true;
+			errorMessage = null;
+			notify = listener;
+		}
+		if (notify != null)
+		{
+			notify.previewChanged(this);
+		}
+	}
+
+	/**
+	 * @return true if an exact prediction is waiting or in progress.
+	 */
+	public synchronized boolean isPending()
+	{
+		return pending;
+	}
+
+	/**
+	 * @return true if the preview values are an exact prediction, rather
+	 *         than an estimate.
+	 */
+	public synchronized boolean isExact()
+	{
+		return exact;
+	}
+
+	/**
+	 * @return message from the last failed prediction, or null.
+	 */
+	public synchronized String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	/**
+	 * @return the target tuning, or null before the first prediction.
+	 */
+	public synchronized Tuning getTargetTuning()
+	{
+		return targetTuning;
+	}
+
+	public synchronized int getNumberOfNotes()
+	{
+		return frequencies == null ? 0 : frequencies.length;
+	}
+
+	/**
+	 * @return predicted or estimated frequency of a note, or NaN.
+	 */
+	public synchronized double getFrequency(int note)
+	{
+		return frequencies[note];
+	}
+
+	/**
+	 * @return deviation of a note from its target, in cents, or NaN if the
+	 *         note has no target or prediction.
+	 */
+	public synchronized double getDeviation(int note)
+	{
+		Note target = targetTuning.getFingering().get(note).getNote();
+		if (target == null || target.getFrequency() == null
+				|| Double.isNaN(frequencies[note]))
+		{
+			return Double.NaN;
+		}
+		return Note.cents(target.getFrequency(), frequencies[note]);
+	}
+
+	/**
+	 * Stop the background thread. Pending predictions are abandoned.
+	 */
+	public void shutdown()
+	{
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,609 @@
+/**
+ * Local quadratic model of predicted tuning as a function of instrument dimensions.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.modelling;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.wwidesigner.geometry.BorePoint;
+import com.wwidesigner.geometry.Hole;
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.geometry.Mouthpiece;
+import com.wwidesigner.geometry.bind.GeometryBindFactory;
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.note.Note;
+import com.wwidesigner.note.Tuning;
+
+/**
+ * Models the predicted frequency of each note of a tuning as a quadratic
+ * function of each editable dimension of an instrument, about a base
+ * geometry. After one exact prediction at the base geometry, and central
+ * differences in each dimension, the model estimates the tuning of an
+ * edited instrument without running the calculator.
+ * <p>
+ * Editable dimensions are the position, diameter and height of each hole,
+ * the position and diameter of each bore point, and the window or embouchure
+ * hole dimensions. The model has no cross terms, so it is accurate only
+ * for edits within a trust region about the base geometry: a ball whose
+ * radius is a length in each dimension.
+ * <p>
+ * Dimensions are divided among threads by a PerThreadExecutor; each thread
+ * has its own tuner from an InstrumentTunerFactory, with its own copy of the
+ * instrument, perturbed in place. A model can reuse the tuners of an earlier
+ * model, so that successive rebuilds need not create new tuners and
+ * calculators. Predictions that throw an exception leave the note without a
+ * prediction, and are counted and reported on System.out.
+ */
+public class TuningResponseModel
+{
+	// Default radius of the trust region, in metres.
+	public static final double DEFAULT_TRUST_RADIUS = 0.0005;
+	// Central difference step, in metres.
+	protected static final double DIFFERENCE_STEP = 0.0001;
+	// Largest relative difference in a fixed value, in the trust region.
+	protected static final double FIXED_VALUE_TOLERANCE = 1.0e-9;
+
+	protected InstrumentTunerFactory tunerFactory;
+	// Holds a tuner for each thread, and counts failed predictions.
+	protected PerThreadExecutor<InstrumentTuner> executor;
+	protected double trustRadius = DEFAULT_TRUST_RADIUS;
+	protected int maxThreads = Runtime.getRuntime().availableProcessors();
+
+	// Model state, set by build().
+	protected Tuning targetTuning;
+	protected int nrHoles;
+	protected int nrBorePoints;
+	protected double[] baseDimension; // In metres.
+	protected double[] baseFixedValue; // See getFixedValues().
+	protected double[] baseFrequency; // [note]; NaN if not predicted.
+	protected double[][] gradient; // [note][dimension], in cents per metre.
+	protected double[][] curvature; // [note][dimension], in cents per m^2.
+
+	/**
+	 * @param tunerFactory - source of tuners with the target tuning,
+	 *            physical parameters and calculator. The tuner's instrument
+	 *            is replaced.
+	 */
+	public TuningResponseModel(InstrumentTunerFactory tunerFactory)
+	{
+		this.tunerFactory = tunerFactory;
+		this.executor = new PerThreadExecutor<InstrumentTuner>(
+				"Tuning response calculation");
+	}
+
+	/**
+	 * Create an empty model that shares the tuners and settings of an
+	 * earlier model. The two models must not be built at the same time.
+	 */
+	public TuningResponseModel(TuningResponseModel prior)
+	{
+		this.tunerFactory = prior.tunerFactory;
+		this.executor = new PerThreadExecutor<InstrumentTuner>(
+				"Tuning response calculation", prior.executor.getWorkers());
+		this.trustRadius = prior.trustRadius;
+		this.maxThreads = prior.maxThreads;
+	}
+
+	/**
+	 * @param trustRadius - radius of the trust region, in metres.
+	 */
+	public void setTrustRadius(double trustRadius)
+	{
+		this.trustRadius = trustRadius;
+	}
+
+	public double getTrustRadius()
+	{
+		return trustRadius;
+	}
+
+	public void setMaxThreads(int maxThreads)
+	{
+		this.maxThreads = Math.max(maxThreads, 1);
+	}
+
+	/**
+	 * Predict the tuning of an instrument exactly, and make it the base
+	 * geometry of the model. The sensitivities are not calculated until
+	 * calculateSensitivity().
+	 * @param instrument - instrument in its own length type, not yet
+	 *            converted to metres. The instrument is not changed.
+	 */
+	public void predictBase(Instrument instrument) throws Exception
+	{
+		String xmlInstrument = marshal(instrument);
+		executor.clearFailures();
+		executor.addWorkers(PerThreadExecutor.tunersFrom(tunerFactory), 1);
+		InstrumentTuner tuner = executor.getWorker(0);
+		tuner.setInstrument(xmlInstrument);
+		Instrument baseInstrument = tuner.getInstrument();
+		targetTuning = tuner.getTuning();
+		nrHoles = baseInstrument.getHole().size();
+		nrBorePoints = baseInstrument.getBorePoint().size();
+		baseDimension = getDimensions(baseInstrument, 1.0);
+		baseFixedValue = getFixedValues(baseInstrument, 1.0);
+		baseFrequency = predictFrequencies(tuner);
+		gradient = null;
+		curvature = null;
+		executor.reportFailures();
+
+		executor.addWorkers(PerThreadExecutor.tunersFrom(tunerFactory),
+				Math.min(maxThreads, baseDimension.length));
+		for (int t = 1; t < executor.getNumberOfThreads(); ++t)
+		{
+			executor.getWorker(t).setInstrument(xmlInstrument);
+		}
+	}
+
+	/**
+	 * Calculate the first and second derivatives of each note with respect
+	 * to each dimension, about the base geometry from predictBase().
+	 */
+	public void calculateSensitivity() throws Exception
+	{
+		int nrDimensions = baseDimension.length;
+		int nrNotes = baseFrequency.length;
+		final double[][] newGradient = new double[nrNotes][nrDimensions];
+		final double[][] newCurvature = new double[nrNotes][nrDimensions];
+		executor.clearFailures();
+		executor.run(nrDimensions, new PerThreadExecutor.Task<InstrumentTuner>()
+		{
+			public void run(InstrumentTuner tuner, int dimension)
+			{
+				calcDimension(tuner, dimension, newGradient, newCurvature);
+			}
+		});
+		executor.reportFailures();
+		gradient = newGradient;
+		curvature = newCurvature;
+	}
+
+	/**
+	 * Predict the tuning of an instrument exactly, and calculate the
+	 * sensitivities about it.
+	 */
+	public void build(Instrument instrument) throws Exception
+	{
+		predictBase(instrument);
+		calculateSensitivity();
+	}
+
+	/**
+	 * @return true if the model has sensitivities, and can estimate.
+	 */
+	public boolean isBuilt()
+	{
+		return gradient != null;
+	}
+
+	/**
+	 * Calculate the derivatives of every note with respect to one
+	 * dimension, by central differences about the base geometry.
+	 */
+	protected void calcDimension(InstrumentTuner tuner, int dimension,
+			double[][] newGradient, double[][] newCurvature)
+	{
+		Instrument instrument = tuner.getInstrument();
+		double step = DIFFERENCE_STEP;
+		setDimension(instrument, dimension, baseDimension[dimension] + step);
+		double[] upper = predictFrequencies(tuner);
+		setDimension(instrument, dimension, baseDimension[dimension] - step);
+		double[] lower = predictFrequencies(tuner);
+		setDimension(instrument, dimension, baseDimension[dimension]);
+		for (int note = 0; note < upper.length; ++note)
+		{
+			if (Double.isNaN(upper[note]) || Double.isNaN(lower[note])
+					|| Double.isNaN(baseFrequency[note]))
+			{
+				newGradient[note][dimension] = Double.NaN;
+				newCurvature[note][dimension] = Double.NaN;
+			}
+			else
+			{
+				double upperCents = Note.cents(baseFrequency[note],
+						upper[note]);
+				double lowerCents = Note.cents(baseFrequency[note],
+						lower[note]);
+				newGradient[note][dimension] = (upperCents - lowerCents)
+						/ (2.0 * step);
+				newCurvature[note][dimension] = (upperCents + lowerCents)
+						/ (step * step);
+			}
+		}
+	}
+
+	/**
+	 * @return predicted frequency of each note in the target tuning, or NaN.
+	 */
+	protected double[] predictFrequencies(InstrumentTuner tuner)
+	{
+		List<Fingering> targets = tuner.getTuning().getFingering();
+		double[] frequencies = new double[targets.size()];
+		for (int note = 0; note < frequencies.length; ++note)
+		{
+			frequencies[note] = Double.NaN;
+			try
+			{
+				Double predicted = tuner.predictedFrequency(targets.get(note));
+				if (predicted != null)
+				{
+					frequencies[note] = predicted;
+				}
+			}
+			catch (RuntimeException e)
+			{
+				executor.recordFailure(e);
+			}
+		}
+		return frequencies;
+	}
+
+	/**
+	 * Test whether the model can estimate the tuning of an edited
+	 * instrument: the instrument has the same components as the base
+	 * geometry, the same values for dimensions the model does not vary,
+	 * and each edited dimension is within the trust region.
+	 * @param instrument - instrument in its own length type, not yet
+	 *            converted to metres.
+	 */
+	public boolean isWithinTrustRegion(Instrument instrument)
+	{
+		double[] distance = getNormalizedChange(instrument);
+		if (distance == null)
+		{
+			return false;
+		}
+		double sumSquares = 0.0;
+		for (double d : distance)
+		{
+			sumSquares += d * d;
+		}
+		return sumSquares <= 1.0;
+	}
+
+	/**
+	 * @return change in each dimension from the base geometry, in multiples
+	 *         of the trust radius, or null if the instrument is not
+	 *         comparable with the base geometry.
+	 */
+	protected double[] getNormalizedChange(Instrument instrument)
+	{
+		if (!isBuilt() || instrument == null
+				|| instrument.getHole().size() != nrHoles
+				|| instrument.getBorePoint().size() != nrBorePoints
+				|| instrument.getMouthpiece() == null)
+		{
+			return null;
+		}
+		double multiplier = instrument.getLengthType().getMultiplierToMetres();
+		double[] dimension = getDimensions(instrument, multiplier);
+		double[] fixedValue = getFixedValues(instrument, multiplier);
+		if (dimension.length != baseDimension.length
+				|| fixedValue.length != baseFixedValue.length)
+		{
+			return null;
+		}
+		for (int i = 0; i < fixedValue.length; ++i)
+		{
+			if (Double.isNaN(fixedValue[i]) != Double.isNaN(baseFixedValue[i])
+					|| Math.abs(fixedValue[i] - baseFixedValue[i]) > FIXED_VALUE_TOLERANCE
+							* Math.abs(baseFixedValue[i]))
+			{
+				return null;
+			}
+		}
+		double[] distance = new double[dimension.length];
+		for (int i = 0; i < dimension.length; ++i)
+		{
+			if (Double.isNaN(dimension[i]))
+			{
+				return null;
+			}
+			distance[i] = (dimension[i] - baseDimension[i]) / trustRadius;
+		}
+		return distance;
+	}
+
+	/**
+	 * Estimate the predicted frequencies of an edited instrument from the
+	 * model, without checking the trust region.
+	 * @param instrument - instrument in its own length type, not yet
+	 *            converted to metres.
+	 * @return estimated frequency of each note in the target tuning, NaN if
+	 *         the note has no prediction; or null if the instrument is not
+	 *         comparable with the base geometry.
+	 */
+	public double[] estimateFrequencies(Instrument instrument)
+	{
+		double[] distance = getNormalizedChange(instrument);
+		if (distance == null)
+		{
+			return null;
+		}
+		double[] frequencies = new double[baseFrequency.length];
+		for (int note = 0; note < frequencies.length; ++note)
+		{
+			double cents = 0.0;
+			for (int i = 0; i < distance.length; ++i)
+			{
+				double delta = distance[i] * trustRadius;
+				if (delta != 0.0)
+				{
+					cents += delta
+							* (gradient[note][i] + 0.5 * delta
+									* curvature[note][i]);
+				}
+			}
+			frequencies[note] = baseFrequency[note]
+					* Math.pow(2.0, cents / 1200.0);
+		}
+		return frequencies;
+	}
+
+	/**
+	 * @return number of predictions that threw an exception in the last call
+	 *         to predictBase() or calculateSensitivity(); their notes have no
+	 *         prediction, or NaN sensitivities.
+	 */
+	public int getNumberOfFailedPredictions()
+	{
+		return executor.getNumberOfFailedPredictions();
+	}
+
+	/**
+	 * @return the target tuning of the model.
+	 */
+	public Tuning getTargetTuning()
+	{
+		return targetTuning;
+	}
+
+	public int getNumberOfNotes()
+	{
+		return baseFrequency.length;
+	}
+
+	public int getNumberOfDimensions()
+	{
+		return baseDimension.length;
+	}
+
+	/**
+	 * @return exact predicted frequency of a note at the base geometry, or
+	 *         NaN.
+	 */
+	public double getBaseFrequency(int note)
+	{
+		return baseFrequency[note];
+	}
+
+	/**
+	 * @return exact predicted frequencies at the base geometry.
+	 */
+	public double[] getBaseFrequencies()
+	{
+		return baseFrequency.clone();
+	}
+
+	/**
+	 * @return change in predicted cents of a note per metre change in a
+	 *         dimension, at the base geometry.
+	 */
+	public double getGradient(int note, int dimension)
+	{
+		return gradient[note][dimension];
+	}
+
+	/**
+	 * @return second derivative of predicted cents of a note with respect to
+	 *         a dimension, in cents per square metre.
+	 */
+	public double getCurvature(int note, int dimension)
+	{
+		return curvature[note][dimension];
+	}
+
+	protected static String marshal(Instrument instrument) throws Exception
+	{
+		StringWriter writer = new StringWriter();
+		GeometryBindFactory.getInstance().marshalToXml(instrument, writer);
+		return writer.toString();
+	}
+
+	/**
+	 * @return the editable dimensions of an instrument, in the order holes,
+	 *         bore points, mouthpiece.
+	 * @param multiplier - conversion from the instrument's lengths to
+	 *            metres.
+	 */
+	protected static double[] getDimensions(Instrument instrument,
+			double multiplier)
+	{
+		List<Double> values = new ArrayList<Double>();
+		for (Hole hole : instrument.getHole())
+		{
+			values.add(hole.getBorePosition());
+			values.add(hole.getDiameter());
+			values.add(hole.getHeight());
+		}
+		for (BorePoint borePoint : instrument.getBorePoint())
+		{
+			values.add(borePoint.getBorePosition());
+			values.add(borePoint.getBoreDiameter());
+		}
+		Mouthpiece.Fipple fipple = instrument.getMouthpiece().getFipple();
+		Mouthpiece.EmbouchureHole embouchureHole = instrument.getMouthpiece()
+				.getEmbouchureHole();
+		if (fipple != null)
+		{
+			values.add(fipple.getWindowLength());
+			values.add(fipple.getWindowWidth());
+			if (fipple.getWindowHeight() != null)
+			{
+				values.add(fipple.getWindowHeight());
+			}
+			if (fipple.getWindwayHeight() != null)
+			{
+				values.add(fipple.getWindwayHeight());
+			}
+		}
+		else if (embouchureHole != null)
+		{
+			values.add(embouchureHole.getLength());
+			values.add(embouchureHole.getWidth());
+			values.add(embouchureHole.getHeight());
+		}
+		double[] dimensions = new double[values.size()];
+		for (int i = 0; i < dimensions.length; ++i)
+		{
+			Double value = values.get(i);
+			dimensions[i] = value == null ? Double.NaN : value * multiplier;
+		}
+		return dimensions;
+	}
+
+	/**
+	 * Set one editable dimension of an instrument in metres, in the order of
+	 * getDimensions(), and update the instrument components.
+	 */
+	protected static void setDimension(Instrument instrument, int dimension,
+			double value)
+	{
+		List<Hole> holes = instrument.getHole();
+		if (dimension < 3 * holes.size())
+		{
+			Hole hole = holes.get(dimension / 3);
+			switch (dimension % 3)
+			{
+				case 0:
+					hole.setBorePosition(value);
+					break;
+				case 1:
+					hole.setDiameter(value);
+					break;
+				default:
+					hole.setHeight(value);
+					break;
+			}
+			instrument.updateComponents();
+			return;
+		}
+		dimension -= 3 * holes.size();
+		List<BorePoint> borePoints = instrument.getBorePoint();
+		if (dimension < 2 * borePoints.size())
+		{
+			BorePoint borePoint = borePoints.get(dimension / 2);
+			if (dimension % 2 == 0)
+			{
+				borePoint.setBorePosition(value);
+			}
+			else
+			{
+				borePoint.setBoreDiameter(value);
+			}
+			instrument.updateComponents();
+			return;
+		}
+		dimension -= 2 * borePoints.size();
+		Mouthpiece.Fipple fipple = instrument.getMouthpiece().getFipple();
+		Mouthpiece.EmbouchureHole embouchureHole = instrument.getMouthpiece()
+				.getEmbouchureHole();
+		if (fipple != null)
+		{
+			if (dimension == 0)
+			{
+				fipple.setWindowLength(value);
+			}
+			else if (dimension == 1)
+			{
+				fipple.setWindowWidth(value);
+			}
+			else if (dimension == 2 && fipple.getWindowHeight() != null)
+			{
+				fipple.setWindowHeight(value);
+			}
+			else
+			{
+				fipple.setWindwayHeight(value);
+			}
+		}
+		else if (embouchureHole != null)
+		{
+			if (dimension == 0)
+			{
+				embouchureHole.setLength(value);
+			}
+			else if (dimension == 1)
+			{
+				embouchureHole.setWidth(value);
+			}
+			else
+			{
+				embouchureHole.setHeight(value);
+			}
+		}
+		instrument.updateComponents();
+	}
+
+	/**
+	 * @return values that affect the tuning but are not modelled: the
+	 *         mouthpiece position, termination flange diameter, fipple
+	 *         windway length, embouchure airstream length, beta and fipple
+	 *         factor. Lengths are in metres; absent values are NaN.
+	 * @param multiplier - conversion from the instrument's lengths to
+	 *            metres.
+	 */
+	protected static double[] getFixedValues(Instrument instrument,
+			double multiplier)
+	{
+		Mouthpiece mouthpiece = instrument.getMouthpiece();
+		double[] values = new double[6];
+		Arrays.fill(values, Double.NaN);
+		values[0] = mouthpiece.getPosition() * multiplier;
+		if (instrument.getTermination() != null)
+		{
+			values[1] = instrument.getTermination().getFlangeDiameter()
+					* multiplier;
+		}
+		Mouthpiece.Fipple fipple = mouthpiece.getFipple();
+		if (fipple != null)
+		{
+			if (fipple.getWindwayLength() != null)
+			{
+				values[2] = fipple.getWindwayLength() * multiplier;
+			}
+			if (fipple.getFippleFactor() != null)
+			{
+				values[5] = fipple.getFippleFactor();
+			}
+		}
+		if (mouthpiece.getEmbouchureHole() != null)
+		{
+			values[3] = mouthpiece.getEmbouchureHole().getAirstreamLength()
+					* multiplier;
+		}
+		if (mouthpiece.getBeta() != null)
+		{
+			values[4] = mouthpiece.getBeta();
+		}
+		return values;
+	}
+}
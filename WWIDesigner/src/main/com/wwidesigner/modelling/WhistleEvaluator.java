@@ -30,10 +30,13 @@ import com.wwidesigner.note.Tuning;
  * 
  * @author Burton Patkau
  */
-public class WhistleEvaluator implements EvaluatorInterface
+public class WhistleEvaluator implements IncrementalEvaluatorInterface,
+		BufferedEvaluatorInterface
 {
 	protected WhistleCalculator  calculator;
 	protected InstrumentTuner  tuner;
+	// Tuning holding the fingering targets, reused for each evaluation.
+	protected Tuning targetTuning = new Tuning();
 
 	public WhistleEvaluator( WhistleCalculator calculator, InstrumentTuner tuner )
 	{
@@ -55,51 +58,64 @@ public class WhistleEvaluator implements EvaluatorInterface
 	public double[] calculateErrorVector(List<Fingering> fingeringTargets)
 	{
 		double[] errorVector = new double[fingeringTargets.size()];
-		double deviation;
+		calculateErrorVector(fingeringTargets, errorVector);
+		return errorVector;
+	}
 
-		Tuning targetTuning = new Tuning();
-		targetTuning.setFingering(fingeringTargets);
-		tuner.setTuning(targetTuning);
+	public void calculateErrorVector(List<Fingering> fingeringTargets,
+			double[] errorVector)
+	{
+		prepareErrors(fingeringTargets);
 
 		int i = 0;
 		for (Fingering target: fingeringTargets)
 		{
-			deviation = 0.0;
-			if ( target.getNote() != null && target.getNote().getFrequency() != null )
+			errorVector[i++] = calculateError(target);
+		}
+	}
+
+	public void prepareErrors(List<Fingering> fingeringTargets)
+	{
+		targetTuning.setFingering(fingeringTargets);
+		tuner.setTuning(targetTuning);
+	}
+
+	public double calculateError(Fingering target)
+	{
+		double deviation = 0.0;
+		if ( target.getNote() != null && target.getNote().getFrequency() != null )
+		{
+			double f = target.getNote().getFrequency();
+			if (tuner instanceof LinearXInstrumentTuner)
 			{
-				double f = target.getNote().getFrequency();
-				if (tuner instanceof LinearXInstrumentTuner)
-				{
-					// Reactances will be negative; subtract actual from target,
-					// so sign is positive for sharp notes and negative for flat notes.
-					double targetReactance = ((LinearXInstrumentTuner)tuner).getNominalX(f);
-					double calcReactance = calculator.calcZ(f, target).getImaginary();
-					deviation = (targetReactance - calcReactance)/f;
-				}
-				else if (tuner instanceof LinearVInstrumentTuner)
+				// Reactances will be negative; subtract actual from target,
+				// so sign is positive for sharp notes and negative for flat notes.
+				double targetReactance = ((LinearXInstrumentTuner)tuner).getNominalX(f);
+				double calcReactance = calculator.calcZ(f, target).getImaginary();
+				deviation = (targetReactance - calcReactance)/f;
+			}
+			else if (tuner instanceof LinearVInstrumentTuner)
+			{
+				// For velocity deviation, use percentage difference.
+				double windowLength = calculator.getInstrument().getMouthpiece().getAirstreamLength();
+				double targetVelocity = ((LinearVInstrumentTuner)tuner).getNominalV(f);
+				double calcVelocity = LinearVInstrumentTuner.velocity(f, windowLength, 
+						calculator.calcZ(f, target));
+				deviation = 100.0*(targetVelocity/calcVelocity) - 100.0;
+			}
+			else
+			{
+				Double predicted = tuner.predictedFrequency(target);
+				if (predicted == null )
 				{
-					// For velocity deviation, use percentage difference.
-					double windowLength = calculator.getInstrument().getMouthpiece().getAirstreamLength();
-					double targetVelocity = ((LinearVInstrumentTuner)tuner).getNominalV(f);
-					double calcVelocity = LinearVInstrumentTuner.velocity(f, windowLength, 
-							calculator.calcZ(f, target));
-					deviation = 100.0*(targetVelocity/calcVelocity) - 100.0;
+					deviation = 400.0;
 				}
-				else
-				{
-					Double predicted = tuner.predictedFrequency(target);
-					if (predicted == null )
-					{
-						deviation = 400.0;
-					}
-					else {
-						deviation = Note.cents(f, predicted);
+				else {
+					deviation = Note.cents(f, predicted);
 //							deviation = 100.0*(f/predicted) - 100.0;
-					}
 				}
 			}
-			errorVector[i++] = deviation; 
 		}
-		return errorVector;
+		return deviation;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,193 @@
+/**
+ * Compact, immutable form of a fingering, for evaluating an instrument.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.note;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Holds the open holes of a fingering as a bit mask, with the target
+ * frequency and optimization weight as primitives, so that evaluators and
+ * calculators can set up a fingering without walking a List&lt;Boolean&gt;
+ * or unboxing a Double on every call.
+ * <p>
+ * Bit i of the mask is set if hole i, in the order of Fingering.getOpenHole(),
+ * is open. Instances are interned: valueOf() returns the same instance for
+ * every fingering with the same holes, frequency and weight.
+ */
+public final class CompactFingering
+{
+	public static final int MAX_HOLES = 64;
+
+	private static final Map<CompactFingering, WeakReference<CompactFingering>> internTable = new WeakHashMap<CompactFingering, WeakReference<CompactFingering>>();
+
+	private final long openHoleMask;
+	private final int numberOfHoles;
+	private final double frequency;
+	private final int optimizationWeight;
+
+	private CompactFingering(long openHoleMask, int numberOfHoles,
+			double frequency, int optimizationWeight)
+	{
+		this.openHoleMask = openHoleMask;
+		this.numberOfHoles = numberOfHoles;
+		this.frequency = frequency;
+		this.optimizationWeight = optimizationWeight;
+	}
+
+	/**
+	 * Return the compact form of a fingering.
+	 * @param fingering - fingering with at most MAX_HOLES holes.
+	 * @return shared instance with the fingering's open holes, target
+	 *         frequency (NaN if none) and optimization weight.
+	 */
+	public static CompactFingering valueOf(Fingering fingering)
+	{
+		List<Boolean> openHoles = fingering.getOpenHole();
+		if (openHoles.size() > MAX_HOLES)
+		{
+			throw new RuntimeException("Compact fingering supports at most "
+					+ MAX_HOLES + " holes, not " + openHoles.size());
+		}
+		long mask = 0L;
+		int holeNr = 0;
+		for (Boolean isOpen : openHoles)
+		{
+			if (isOpen)
+			{
+				mask |= 1L << holeNr;
+			}
+			++holeNr;
+		}
+		double frequency = Double.NaN;
+		if (fingering.getNote() != null
+				&& fingering.getNote().getFrequency() != null)
+		{
+			frequency = fingering.getNote().getFrequency();
+		}
+		return intern(new CompactFingering(mask, holeNr, frequency,
+				fingering.getOptimizationWeight()));
+	}
+
+	private static CompactFingering intern(CompactFingering fingering)
+	{
+		synchronized (internTable)
+		{
+			WeakReference<CompactFingering> ref = internTable.get(fingering);
+			CompactFingering shared = (ref == null ? null : ref.get());
+			if (shared == null)
+			{
+				shared = fingering;
+				internTable.put(shared, new WeakReference<CompactFingering>(
+						shared));
+			}
+			return shared;
+		}
+	}
+
+	/**
+	 * @return bit mask with bit i set if hole i is open.
+	 */
+	public long getOpenHoleMask()
+	{
+		return openHoleMask;
+	}
+
+	public boolean isOpenHole(int holeNr)
+	{
+		return (openHoleMask & (1L << holeNr)) != 0L;
+	}
+
+	public boolean allHolesClosed()
+	{
+		return openHoleMask == 0L;
+	}
+
+	public int getNumberOfHoles()
+	{
+		return numberOfHoles;
+	}
+
+	/**
+	 * @return true if the fingering has a target frequency.
+	 */
+	public boolean hasFrequency()
+	{
+		return !Double.isNaN(frequency);
+	}
+
+	/**
+	 * @return target frequency, or NaN if the fingering has none.
+	 */
+	public double getFrequency()
+	{
+		return frequency;
+	}
+
+	/**
+	 * @return optimization weight, as from Fingering.getOptimizationWeight().
+	 */
+	public int getOptimizationWeight()
+	{
+		return optimizationWeight;
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+		{
+			return true;
+		}
+		if (!(obj instanceof CompactFingering))
+		{
+			return false;
+		}
+		CompactFingering other = (CompactFingering) obj;
+		return openHoleMask == other.openHoleMask
+				&& numberOfHoles == other.numberOfHoles
+				&& Double.doubleToLongBits(frequency) == Double
+						.doubleToLongBits(other.frequency)
+				&& optimizationWeight == other.optimizationWeight;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		long bits = Double.doubleToLongBits(frequency);
+		int hash = (int) (openHoleMask ^ (openHoleMask >>> 32));
+		hash = 31 * hash + numberOfHoles;
+		hash = 31 * hash + (int) (bits ^ (bits >>> 32));
+		hash = 31 * hash + optimizationWeight;
+		return hash;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder holeString = new StringBuilder();
+		for (int holeNr = 0; holeNr < numberOfHoles; ++holeNr)
+		{
+			holeString.append(isOpenHole(holeNr) ? 'O' : 'X');
+		}
+		return holeString.toString();
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * Compact form of a list of target fingerings, for evaluating an instrument.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.note;
+
+import java.util.List;
+
+/**
+ * Holds the CompactFingering of each fingering in a list of targets, built
+ * once and reused for as long as an evaluator is given the same list.
+ * Identical fingerings within the list, or in other tunings, share one
+ * CompactFingering.
+ * <p>
+ * A CompactTuning records the list and fingering instances it was built
+ * from; forList() builds a new one when given a different list or a list
+ * with different fingerings. Fingerings changed in place are not detected:
+ * callers that edit target fingerings must pass a new list, as the
+ * optimizers do whenever their targets change.
+ */
+public class CompactTuning
+{
+	protected final List<Fingering> source;
+	protected final Fingering[] sourceFingerings;
+	protected final CompactFingering[] fingerings;
+
+	public CompactTuning(List<Fingering> fingeringTargets)
+	{
+		source = fingeringTargets;
+		int nrFingerings = fingeringTargets.size();
+		sourceFingerings = fingeringTargets
+				.toArray(new Fingering[nrFingerings]);
+		fingerings = new CompactFingering[nrFingerings];
+		for (int i = 0; i < nrFingerings; ++i)
+		{
+			fingerings[i] = CompactFingering.valueOf(sourceFingerings[i]);
+		}
+	}
+
+	/**
+	 * Return a compact tuning for a list of fingerings, reusing a prior
+	 * one if it was built from the same list.
+	 * @param prior - compact tuning from a previous call, or null.
+	 * @param fingeringTargets - list of fingerings.
+	 */
+	public static CompactTuning forList(CompactTuning prior,
+			List<Fingering> fingeringTargets)
+	{
+		if (prior != null && prior.isBuiltFrom(fingeringTargets))
+		{
+			return prior;
+		}
+		return new CompactTuning(fingeringTargets);
+	}
+
+	/**
+	 * @return true if this was built from the same list, holding the same
+	 *         fingering instances in the same order.
+	 */
+	public boolean isBuiltFrom(List<Fingering> fingeringTargets)
+	{
+		if (fingeringTargets != source
+				|| fingeringTargets.size() != sourceFingerings.length)
+		{
+			return false;
+		}
+		for (int i = 0; i < sourceFingerings.length; ++i)
+		{
+			if (fingeringTargets.get(i) != sourceFingerings[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public int size()
+	{
+		return fingerings.length;
+	}
+
+	public CompactFingering get(int index)
+	{
+		return fingerings[index];
+	}
+
+	/**
+	 * Return the compact form of a fingering from the source list.
+	 * @return the shared CompactFingering, built now if the fingering is
+	 *         not from the source list.
+	 */
+	public CompactFingering get(Fingering fingering)
+	{
+		for (int i = 0; i < sourceFingerings.length; ++i)
+		{
+			if (sourceFingerings[i] == fingering)
+			{
+				return fingerings[i];
+			}
+		}
+		return CompactFingering.valueOf(fingering);
+	}
+}
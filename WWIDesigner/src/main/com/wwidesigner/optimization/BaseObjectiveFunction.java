@@ -18,6 +18,8 @@
  */
 package com.wwidesigner.optimization;
 
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 import org.apache.commons.math3.analysis.MultivariateFunction;
@@ -26,7 +28,9 @@ import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.util.FastMath;
 
 import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.modelling.BufferedEvaluatorInterface;
 import com.wwidesigner.modelling.EvaluatorInterface;
+import com.wwidesigner.modelling.IncrementalEvaluatorInterface;
 import com.wwidesigner.modelling.InstrumentCalculator;
 import com.wwidesigner.note.Fingering;
 import com.wwidesigner.note.TuningInterface;
@@ -65,7 +69,7 @@ public abstract class BaseObjectiveFunction implements MultivariateFunction,
 	// Recommended optimization method.
 	public enum OptimizerType
 	{
-		BrentOptimizer, BOBYQAOptimizer, CMAESOptimizer, MultiStartOptimizer, SimplexOptimizer, PowellOptimizer
+		BrentOptimizer, BOBYQAOptimizer, CMAESOptimizer, MultiStartOptimizer, SimplexOptimizer, PowellOptimizer, SurrogateOptimizer
 	}
 
 	protected OptimizerType optimizerType;
@@ -80,7 +84,68 @@ public abstract class BaseObjectiveFunction implements MultivariateFunction,
 	protected int tuningsDone; // Number of tuning error calculations.
 	protected int evaluationsDone; // Number of calculations of error norm.
 
+	// Error vectors already calculated, or null for no caching. Off by
+	// default: optimizers rarely evaluate exactly the same point twice, so
+	// a cache pays off only for callers that repeat points, or with a
+	// non-zero tolerance.
+	protected ErrorVectorCache errorVectorCache = null;
+	protected boolean lastErrorVectorCached; // Last error vector came from
+												// the cache.
+
 	protected boolean runTwoStageOptimization = false;
+	// Evaluators for a multi-stage optimization, or null for none.
+	// Supersedes firstStageEvaluator.
+	protected EvaluatorCascade evaluatorCascade;
+
+	// Geometric feasibility pre-check, off by default. An infeasible point
+	// within INFEASIBILITY_SCALE of the feasible region is evaluated as usual,
+	// plus a penalty that grows from zero with the square of the distance,
+	// so the objective is continuous across the boundary. Further out, the
+	// tuning calculation is skipped and the penalty alone is returned.
+	// Penalties are proportional to a fixed reference norm: the norm at the
+	// first point evaluated with the current evaluator, normally the
+	// initial point.
+	public static final double INFEASIBILITY_SCALE = 0.001; // Metres.
+	protected boolean feasibilityCheck = false;
+	protected boolean holeOverlapCheck = false;
+	protected double feasibilityReferenceNorm = Double.NaN;
+	protected int infeasiblePoints; // Number of points penalized.
+
+	// Bounded evaluation. When enabled, the optimizer sets a cutoff, and
+	// value() calculates errors one note at a time, stopping once the partial
+	// norm exceeds the cutoff. Requires an IncrementalEvaluatorInterface.
+	protected boolean boundedEvaluation = false;
+	protected double normCutoff = Double.POSITIVE_INFINITY;
+	protected double[] recentErrors; // Latest error at each target, used
+										// to put the worst notes first.
+	protected int abortedEvaluations; // Number of evaluations stopped at
+										// the cutoff.
+
+	// Work arrays reused by each evaluation, so that a long optimization
+	// does not allocate new ones for every point.
+	protected double[] errorBuffer;
+	protected double[] univariatePoint = new double[1];
+	protected double[] noteContribution;
+	protected Integer[] noteOrder;
+	protected Comparator<Integer> noteOrderComparator = new Comparator<Integer>()
+	{
+		public int compare(Integer i1, Integer i2)
+		{
+			return Double.compare(noteContribution[i2], noteContribution[i1]);
+		}
+	};
+
+	// Screening of multi-start candidates. When nrRefinedStarts is positive,
+	// every candidate start from the range processor is evaluated once,
+	// and only the best nrRefinedStarts candidates get a local search.
+	protected int nrRefinedStarts = 0;
+	protected boolean successiveHalving = false;
+	// Source of independent copies of this objective function, used to
+	// evaluate candidates concurrently. Optional.
+	protected ObjectiveFunctionFactory objectiveFactory;
+	// Radius of attraction for clustering multi-start local searches by
+	// basin, as a fraction of the bounds box; 0 for no clustering.
+	protected double basinAttractionRadius = 0.0;
 
 	/**
 	 * The constructor sets what is to be optimized.
@@ -101,6 +166,8 @@ public abstract class BaseObjectiveFunction implements MultivariateFunction,
 		rangeProcessor = null;
 		evaluationsDone = 0;
 		tuningsDone = 0;
+		infeasiblePoints = 0;
+		abortedEvaluations = 0;
 		constraints = new Constraints(calculator.getInstrument()
 				.getLengthType());
 	}
@@ -119,12 +186,101 @@ public abstract class BaseObjectiveFunction implements MultivariateFunction,
 	@Override
 	public double value(double[] point)
 	{
-		double[] errorVector = getErrorVector(point);
+		if (point.length != nrDimensions)
+		{
+			throw new DimensionMismatchException(point.length, nrDimensions);
+		}
+		setGeometryPoint(point);
+		if (!feasibilityCheck)
+		{
+			return calcPointNorm(point, true);
+		}
+
+		// Points evaluated before the reference norm is known, feasible or
+		// not, get a full calculation, and the first sets the reference.
+		boolean needReference = !hasFeasibilityReference();
+		double scaledDistance = InstrumentFeasibility.getInfeasibility(
+				calculator.getInstrument(), holeOverlapCheck)
+				/ INFEASIBILITY_SCALE;
+		if (scaledDistance > 0.0)
+		{
+			++infeasiblePoints;
+			if (scaledDistance >= 1.0 && !needReference)
+			{
+				++evaluationsDone;
+				return getInfeasibilityPenalty(scaledDistance)
+						+ getPenaltyScale();
+			}
+		}
+		double norm = calcPointNorm(point, !needReference);
+		if (needReference && !Double.isNaN(norm)
+				&& !Double.isInfinite(norm))
+		{
+			feasibilityReferenceNorm = norm;
+		}
+		if (scaledDistance > 0.0)
+		{
+			if (Double.isNaN(norm) || Double.isInfinite(norm))
+			{
+				// Calculators may fail on infeasible geometry.
+				return getInfeasibilityPenalty(scaledDistance)
+						+ getPenaltyScale();
+			}
+			norm += getInfeasibilityPenalty(scaledDistance);
+		}
+		return norm;
+	}
+
+	/**
+	 * Calculate the error norm for a point already set as the instrument
+	 * geometry.
+	 * 
+	 * @param allowBound
+	 *            - if true, and bounded evaluation is enabled, the result may
+	 *            be only a lower bound on the norm, if greater than
+	 *            normCutoff.
+	 */
+	protected double calcPointNorm(double[] point, boolean allowBound)
+	{
+		if (allowBound && boundedEvaluation
+				&& normCutoff < Double.POSITIVE_INFINITY
+				&& evaluator instanceof IncrementalEvaluatorInterface)
+		{
+			return calcBoundedNorm(point);
+		}
+		double[] errorVector = calcErrorVector(point);
 		++evaluationsDone;
-		tuningsDone += errorVector.length;
+		if (!lastErrorVectorCached)
+		{
+			tuningsDone += errorVector.length;
+		}
 		return calcNorm(errorVector);
 	}
 
+	/**
+	 * @return penalty added to the norm at an infeasible point, continuous
+	 *         and zero at the boundary of the feasible region.
+	 * @param scaledDistance
+	 *            - distance to feasibility, in units of INFEASIBILITY_SCALE.
+	 */
+	protected double getInfeasibilityPenalty(double scaledDistance)
+	{
+		return getPenaltyScale() * scaledDistance * scaledDistance;
+	}
+
+	/**
+	 * @return the reference norm for infeasibility penalties, or 1.0 if the
+	 *         reference norm is zero.
+	 */
+	protected double getPenaltyScale()
+	{
+		if (feasibilityReferenceNorm > 0.0)
+		{
+			return feasibilityReferenceNorm;
+		}
+		return 1.0;
+	}
+
 	/**
 	 * The univariate objective function to be optimized, a sum of squares of
 	 * the error value specific to the derived class.
@@ -140,9 +296,8 @@ public abstract class BaseObjectiveFunction implements MultivariateFunction,
 	@Override
 	public double value(double point)
 	{
-		double[] geometry = new double[1];
-		geometry[0] = point;
-		return value(geometry);
+		univariatePoint[0] = point;
+		return value(univariatePoint);
 	}
 
 	/**
@@ -153,6 +308,9 @@ public abstract class BaseObjectiveFunction implements MultivariateFunction,
 	public void setEvaluator(EvaluatorInterface evaluator)
 	{
 		this.evaluator = evaluator;
+		// Norms from the prior evaluator are not comparable.
+		feasibilityReferenceNorm = Double.NaN;
+		recentErrors = null;
 	}
 
 	public EvaluatorInterface getEvaluator()
@@ -160,8 +318,16 @@ public abstract class BaseObjectiveFunction implements MultivariateFunction,
 		return evaluator;
 	}
 
+	/**
+	 * @return evaluator for the first stage of a multi-stage optimization:
+	 *         the first stage of the evaluator cascade, if set.
+	 */
 	public EvaluatorInterface getFirstStageEvaluator()
 	{
+		if (evaluatorCascade != null)
+		{
+			return evaluatorCascade.getFirstStage().getEvaluator();
+		}
 		return firstStageEvaluator;
 	}
 
@@ -176,7 +342,9 @@ public abstract class BaseObjectiveFunction implements MultivariateFunction,
 	}
 
 	/**
-	 * Calculate errors at each fingering target.
+	 * Calculate errors at each fingering target. If the error vector cache
+	 * already holds the errors for this point, with the current evaluator,
+	 * only the instrument geometry is updated.
 	 * 
 	 * @param point
 	 *            - geometry values to test. point.length == nrDimensions.
@@ -190,10 +358,168 @@ public abstract class BaseObjectiveFunction implements MultivariateFunction,
 			throw new DimensionMismatchException(point.length, nrDimensions);
 		}
 		setGeometryPoint(point);
-		double[] errorVector = evaluator.calculateErrorVector(fingeringTargets);
+		return calcErrorVector(point).clone();
+	}
+
+	/**
+	 * Calculate errors at each fingering target, for a point already set as
+	 * the instrument geometry. With a BufferedEvaluatorInterface, the errors
+	 * are in an array that is reused by the next evaluation.
+	 */
+	protected double[] calcErrorVector(double[] point)
+	{
+		double[] errorVector = getErrorBuffer();
+		lastErrorVectorCached = (errorVectorCache != null && errorVectorCache
+				.get(point, evaluator, errorVector));
+		if (!lastErrorVectorCached)
+		{
+			if (evaluator instanceof BufferedEvaluatorInterface)
+			{
+				((BufferedEvaluatorInterface) evaluator).calculateErrorVector(
+						fingeringTargets, errorVector);
+			}
+			else
+			{
+				errorVector = evaluator.calculateErrorVector(fingeringTargets);
+			}
+			if (errorVectorCache != null)
+			{
+				errorVectorCache.put(point, evaluator, errorVector);
+			}
+		}
 		return errorVector;
 	}
 
+	/**
+	 * Calculate the error norm for a point already set as the instrument
+	 * geometry, one note at a time, stopping once the norm exceeds normCutoff.
+	 * Notes are taken in descending order of weighted squared error at the
+	 * last point evaluated, so that a poor point is usually rejected after
+	 * only a few notes. Only a complete error vector goes into the cache.
+	 * 
+	 * @return error norm, or a lower bound on the error norm if greater than
+	 *         normCutoff.
+	 */
+	protected double calcBoundedNorm(double[] point)
+	{
+		++evaluationsDone;
+		double[] errorVector = getErrorBuffer();
+		if (errorVectorCache != null
+				&& errorVectorCache.get(point, evaluator, errorVector))
+		{
+			lastErrorVectorCached = true;
+			return calcNorm(errorVector);
+		}
+		lastErrorVectorCached = false;
+
+		int nrNotes = fingeringTargets.size();
+		if (recentErrors == null || recentErrors.length != nrNotes)
+		{
+			recentErrors = new double[nrNotes];
+		}
+		IncrementalEvaluatorInterface incremental = (IncrementalEvaluatorInterface) evaluator;
+		incremental.prepareErrors(fingeringTargets);
+		double norm = 0.0;
+		int notesDone = 0;
+		for (int i : getNoteOrder())
+		{
+			Fingering target = fingeringTargets.get(i);
+			double err = incremental.calculateError(target);
+			++notesDone;
+			errorVector[i] = err;
+			recentErrors[i] = err;
+			int weight = target.getOptimizationWeight();
+			if (weight > 0)
+			{
+				norm += err * err * weight;
+			}
+			if (norm > normCutoff && notesDone < nrNotes)
+			{
+				++abortedEvaluations;
+				tuningsDone += notesDone;
+				return norm;
+			}
+		}
+		tuningsDone += notesDone;
+		if (errorVectorCache != null)
+		{
+			errorVectorCache.put(point, evaluator, errorVector);
+		}
+		return norm;
+	}
+
+	/**
+	 * @return indexes of the fingering targets, in descending order of
+	 *         weighted squared error at the last point evaluated.
+	 */
+	protected Integer[] getNoteOrder()
+	{
+		if (noteOrder == null || noteOrder.length != recentErrors.length)
+		{
+			noteContribution = new double[recentErrors.length];
+			noteOrder = new Integer[recentErrors.length];
+		}
+		for (int i = 0; i < noteOrder.length; ++i)
+		{
+			int weight = fingeringTargets.get(i).getOptimizationWeight();
+			noteContribution[i] = 0.0;
+			if (weight > 0)
+			{
+				// Unweighted notes go last. Before any errors are known,
+				// take the notes in order of weight.
+				noteContribution[i] = (recentErrors[i] * recentErrors[i] + Double.MIN_NORMAL)
+						* weight;
+			}
+			noteOrder[i] = i;
+		}
+		Arrays.sort(noteOrder, noteOrderComparator);
+		return noteOrder;
+	}
+
+	/**
+	 * @return the reusable array for the errors at each fingering target.
+	 */
+	protected double[] getErrorBuffer()
+	{
+		if (errorBuffer == null || errorBuffer.length != fingeringTargets.size())
+		{
+			errorBuffer = new double[fingeringTargets.size()];
+		}
+		return errorBuffer;
+	}
+
+	/**
+	 * @return true if the last error vector calculated came from the error
+	 *         vector cache, with no tuning calculations.
+	 */
+	public boolean isLastErrorVectorCached()
+	{
+		return lastErrorVectorCached;
+	}
+
+	/**
+	 * @return cache of error vectors, or {@code null} if error vectors are
+	 *         not cached.
+	 */
+	public ErrorVectorCache getErrorVectorCache()
+	{
+		return errorVectorCache;
+	}
+
+	/**
+	 * Set the cache of error vectors. No cache is set by default. Entries
+	 * remain valid only as long as the evaluator, physical parameters, and
+	 * geometry values outside the optimization point remain unchanged; clear
+	 * the cache after changing them.
+	 * 
+	 * @param errorVectorCache
+	 *            - cache to use, or {@code null} to disable caching.
+	 */
+	public void setErrorVectorCache(ErrorVectorCache errorVectorCache)
+	{
+		this.errorVectorCache = errorVectorCache;
+	}
+
 	/**
 	 * Calculate an error norm from an error vector, as the sum of squares.
 	 * Weight each squared error by the optimization weight from each Fingering.
@@ -217,8 +543,16 @@ public abstract class BaseObjectiveFunction implements MultivariateFunction,
 		return norm;
 	}
 
+	/**
+	 * @return true if the optimization is to run in stages, either with a
+	 *         first-stage evaluator or with an evaluator cascade.
+	 */
 	public boolean isRunTwoStageOptimization()
 	{
+		if (evaluatorCascade != null)
+		{
+			return evaluatorCascade.getNrStages() > 1;
+		}
 		return runTwoStageOptimization && firstStageEvaluator != null;
 	}
 
@@ -227,6 +561,39 @@ public abstract class BaseObjectiveFunction implements MultivariateFunction,
 		this.runTwoStageOptimization = runTwoStageOptimization;
 	}
 
+	/**
+	 * @return stages of a multi-stage optimization: the evaluator cascade if
+	 *         set, otherwise a two-stage cascade from the first-stage
+	 *         evaluator and the current evaluator, or {@code null} for a
+	 *         single-stage optimization.
+	 */
+	public EvaluatorCascade getEvaluatorCascade()
+	{
+		if (evaluatorCascade != null)
+		{
+			return evaluatorCascade;
+		}
+		if (isRunTwoStageOptimization())
+		{
+			return EvaluatorCascade.twoStage(firstStageEvaluator, evaluator);
+		}
+		return null;
+	}
+
+	/**
+	 * Set the evaluators for a multi-stage optimization, from cheapest to most
+	 * expensive. The last stage should use this objective function's
+	 * evaluator.
+	 * 
+	 * @param evaluatorCascade
+	 *            - stages to use, or {@code null} to use the first-stage
+	 *            evaluator, if any.
+	 */
+	public void setEvaluatorCascade(EvaluatorCascade evaluatorCascade)
+	{
+		this.evaluatorCascade = evaluatorCascade;
+	}
+
 	/**
 	 * Retrieve physical geometry values from the instrument. Specific values
 	 * depend on the derived class.
@@ -548,6 +915,198 @@ public abstract class BaseObjectiveFunction implements MultivariateFunction,
 		this.rangeProcessor = rangeProcessor;
 	}
 
+	/**
+	 * Screen multi-start candidates before doing any local searches.
+	 * 
+	 * @param nrRefinedStarts
+	 *            - number of best candidates to refine with a local search, or
+	 *            0 to do a local search from every candidate.
+	 * @param successiveHalving
+	 *            - if true, refine the candidates in rounds, dropping the worse
+	 *            half of the candidates after each round, and doubling the
+	 *            evaluation budget for those that remain.
+	 */
+	public void setStartScreening(int nrRefinedStarts, boolean successiveHalving)
+	{
+		this.nrRefinedStarts = nrRefinedStarts;
+		this.successiveHalving = successiveHalving;
+	}
+
+	public int getNrRefinedStarts()
+	{
+		return nrRefinedStarts;
+	}
+
+	public boolean isSuccessiveHalving()
+	{
+		return successiveHalving;
+	}
+
+	/**
+	 * @return true if a multi-start optimization should screen candidate
+	 *         starts before refining them.
+	 */
+	public boolean isScreenedMultiStart()
+	{
+		return isMultiStart() && nrRefinedStarts > 0
+				&& nrRefinedStarts < rangeProcessor.getNumberOfStarts();
+	}
+
+	/**
+	 * Cluster multi-start local searches by basin of attraction, abandoning
+	 * searches that enter the basin of an optimum already found.
+	 * 
+	 * @param attractionRadius
+	 *            - radius of attraction, as a fraction of the distance between
+	 *            the bounds in each dimension; 0 for no clustering.
+	 */
+	public void setBasinClustering(double attractionRadius)
+	{
+		this.basinAttractionRadius = attractionRadius;
+	}
+
+	public double getBasinAttractionRadius()
+	{
+		return basinAttractionRadius;
+	}
+
+	public ObjectiveFunctionFactory getObjectiveFactory()
+	{
+		return objectiveFactory;
+	}
+
+	public void setObjectiveFactory(ObjectiveFunctionFactory objectiveFactory)
+	{
+		this.objectiveFactory = objectiveFactory;
+	}
+
+	/**
+	 * Add statistics for evaluations done on behalf of this objective
+	 * function, for instance by replicas from the objective factory.
+	 * 
+	 * @param evaluations
+	 *            - number of error norm calculations.
+	 * @param tunings
+	 *            - number of tuning error calculations.
+	 */
+	public void addEvaluations(int evaluations, int tunings)
+	{
+		evaluationsDone += evaluations;
+		tuningsDone += tunings;
+	}
+
+	/**
+	 * Enable or disable the geometric feasibility pre-check in value(), off
+	 * by default. When enabled, a point whose instrument fails
+	 * InstrumentFeasibility gets a penalty proportional to the square of its
+	 * distance from the feasible region. Close to the feasible region, the
+	 * penalty is added to the norm, so the objective is continuous across
+	 * the boundary. Beyond INFEASIBILITY_SCALE, the point gets the penalty
+	 * plus the reference norm, without any tuning calculation, so the
+	 * objective has a step there, where the reference norm stands in for the
+	 * actual norm.
+	 */
+	public void setFeasibilityCheck(boolean feasibilityCheck)
+	{
+		this.feasibilityCheck = feasibilityCheck;
+	}
+
+	public boolean isFeasibilityCheck()
+	{
+		return feasibilityCheck;
+	}
+
+	/**
+	 * Include hole overlap in the feasibility pre-check. Suitable only for
+	 * instruments with all holes in a row: see InstrumentFeasibility.
+	 */
+	public void setHoleOverlapCheck(boolean holeOverlapCheck)
+	{
+		this.holeOverlapCheck = holeOverlapCheck;
+	}
+
+	public boolean isHoleOverlapCheck()
+	{
+		return holeOverlapCheck;
+	}
+
+	/**
+	 * Set the norm that scales infeasibility penalties. If not set, value()
+	 * uses the norm at the first point evaluated with the current evaluator;
+	 * setEvaluator() discards the reference.
+	 * 
+	 * @param referenceNorm
+	 *            - reference norm, or Double.NaN to take it from the next
+	 *            point evaluated.
+	 */
+	public void setFeasibilityReferenceNorm(double referenceNorm)
+	{
+		feasibilityReferenceNorm = referenceNorm;
+	}
+
+	public double getFeasibilityReferenceNorm()
+	{
+		return feasibilityReferenceNorm;
+	}
+
+	public boolean hasFeasibilityReference()
+	{
+		return !Double.isNaN(feasibilityReferenceNorm);
+	}
+
+	/**
+	 * Enable or disable bounded evaluation. When enabled, and the evaluator is
+	 * an IncrementalEvaluatorInterface, value() stops calculating errors once
+	 * the norm exceeds the cutoff set with setNormCutoff, and returns the
+	 * partial norm. Suitable for optimizers that only need to know that a
+	 * point is worse than the cutoff; not suitable for optimizers that model
+	 * the objective function, such as BOBYQA, or that test convergence on
+	 * the values of all their points, such as the simplex.
+	 */
+	public void setBoundedEvaluation(boolean boundedEvaluation)
+	{
+		this.boundedEvaluation = boundedEvaluation;
+	}
+
+	public boolean isBoundedEvaluation()
+	{
+		return boundedEvaluation;
+	}
+
+	/**
+	 * Set the norm above which bounded evaluations stop. Set by the optimizer
+	 * from the best value found so far.
+	 * 
+	 * @param normCutoff
+	 *            - cutoff, or Double.POSITIVE_INFINITY for full evaluation.
+	 */
+	public void setNormCutoff(double normCutoff)
+	{
+		this.normCutoff = normCutoff;
+	}
+
+	public double getNormCutoff()
+	{
+		return normCutoff;
+	}
+
+	/**
+	 * @return number of bounded evaluations stopped before all notes were
+	 *         evaluated.
+	 */
+	public int getNumberOfAbortedEvaluations()
+	{
+		return abortedEvaluations;
+	}
+
+	/**
+	 * @return number of evaluations penalized as geometrically infeasible.
+	 */
+	public int getNumberOfInfeasiblePoints()
+	{
+		return infeasiblePoints;
+	}
+
 	public int getNumberOfEvaluations()
 	{
 		return evaluationsDone;
@@ -0,0 +1,256 @@
+/**
+ * Cache of error vectors calculated by an objective function.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, least-recently-used cache of error vectors, keyed on a geometry
+ * point and the evaluator that calculated the errors. Geometry values are
+ * quantized to a specified tolerance before comparison; with a tolerance of
+ * zero, only identical points match.
+ * <p>
+ * Lookups reuse one probe key, and the buffered form of get() copies into
+ * the caller's array, so only put() allocates, and only for a new entry.
+ * Not thread-safe.
+ */
+public class ErrorVectorCache
+{
+	public static final int DEFAULT_CAPACITY = 1000;
+
+	protected final int capacity;
+	protected final double tolerance;
+	protected final LinkedHashMap<Key, double[]> entries;
+	protected final Key probe = new Key(new long[0], null);
+
+	// Statistics.
+	protected long hits;
+	protected long misses;
+
+	/**
+	 * Cache with default capacity, matching only identical points.
+	 */
+	public ErrorVectorCache()
+	{
+		this(DEFAULT_CAPACITY, 0.0);
+	}
+
+	/**
+	 * @param capacity
+	 *            - maximum number of error vectors to keep.
+	 * @param tolerance
+	 *            - quantization step for geometry values, in the units of the
+	 *            geometry point; 0.0 to match only identical points.
+	 */
+	public ErrorVectorCache(final int capacity, double tolerance)
+	{
+		this.capacity = capacity;
+		this.tolerance = tolerance;
+		this.entries = new LinkedHashMap<Key, double[]>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, double[]> eldest)
+			{
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Look up the error vector for a geometry point.
+	 *
+	 * @return a copy of the cached error vector, or {@code null} if none is
+	 *         cached.
+	 */
+	public double[] get(double[] point, Object evaluator)
+	{
+		double[] errorVector = entries.get(setProbe(point, evaluator));
+		if (errorVector == null)
+		{
+			++misses;
+			return null;
+		}
+		++hits;
+		return errorVector.clone();
+	}
+
+	/**
+	 * Look up the error vector for a geometry point, copying it into an
+	 * array supplied by the caller.
+	 *
+	 * @param errorVector
+	 *            - array to hold the cached errors.
+	 * @return true if an error vector of the same length was cached.
+	 */
+	public boolean get(double[] point, Object evaluator, double[] errorVector)
+	{
+		double[] cached = entries.get(setProbe(point, evaluator));
+		if (cached == null || cached.length != errorVector.length)
+		{
+			++misses;
+			return false;
+		}
+		++hits;
+		System.arraycopy(cached, 0, errorVector, 0, cached.length);
+		return true;
+	}
+
+	public void put(double[] point, Object evaluator, double[] errorVector)
+	{
+		Key key = setProbe(point, evaluator);
+		double[] cached = entries.get(key);
+		if (cached != null && cached.length == errorVector.length)
+		{
+			System.arraycopy(errorVector, 0, cached, 0, cached.length);
+			return;
+		}
+		entries.put(new Key(key.cells.clone(), evaluator), errorVector.clone());
+	}
+
+	/**
+	 * Remove all entries, and reset the statistics.
+	 */
+	public void clear()
+	{
+		entries.clear();
+		hits = 0;
+		misses = 0;
+	}
+
+	public int size()
+	{
+		return entries.size();
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	public double getTolerance()
+	{
+		return tolerance;
+	}
+
+	public long getHits()
+	{
+		return hits;
+	}
+
+	public long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * @return fraction of lookups that found a cached error vector.
+	 */
+	public double getHitRatio()
+	{
+		long lookups = hits + misses;
+		return lookups == 0 ? 0.0 : (double) hits / (double) lookups;
+	}
+
+	@Override
+	public String toString()
+	{
+		return hits + " cache hits, " + misses + " misses";
+	}
+
+	/**
+	 * Set the probe key for a geometry point and evaluator.
+	 *
+	 * @return the probe key, valid until the next lookup.
+	 */
+	protected Key setProbe(double[] point, Object evaluator)
+	{
+		if (probe.cells.length != point.length)
+		{
+			probe.cells = new long[point.length];
+		}
+		quantize(point, probe.cells);
+		probe.setEvaluator(evaluator);
+		return probe;
+	}
+
+	protected void quantize(double[] point, long[] cells)
+	{
+		for (int i = 0; i < point.length; i++)
+		{
+			if (tolerance > 0.0)
+			{
+				cells[i] = Math.round(point[i] / tolerance);
+			}
+			else
+			{
+				cells[i] = Double.doubleToLongBits(point[i]);
+			}
+		}
+	}
+
+	/**
+	 * Key of a cache entry. Only the probe key is ever changed, and it is
+	 * never stored in the cache.
+	 */
+	protected static class Key
+	{
+		protected long[] cells;
+		protected Object evaluator;
+		protected int hash;
+
+		public Key(long[] cells, Object evaluator)
+		{
+			this.cells = cells;
+			setEvaluator(evaluator);
+		}
+
+		/**
+		 * Set the evaluator, and recalculate the hash code for the current
+		 * cells.
+		 */
+		protected void setEvaluator(Object evaluator)
+		{
+			this.evaluator = evaluator;
+			this.hash = 31 * Arrays.hashCode(cells)
+					+ System.identityHashCode(evaluator);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Key))
+			{
+				return false;
+			}
+			Key other = (Key) obj;
+			return evaluator == other.evaluator
+					&& Arrays.equals(cells, other.cells);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * Sequence of evaluators of increasing cost and accuracy, for multi-stage optimization.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.wwidesigner.modelling.EvaluatorInterface;
+
+/**
+ * An ordered list of evaluators, from cheapest to most expensive, for a
+ * multi-stage optimization. The optimizer searches with the first stage's
+ * evaluator, then promotes the result to each following stage in turn; the
+ * last stage should use the objective function's own evaluator.
+ * <p>
+ * Each stage has:
+ * <ul>
+ * <li>an evaluation budget, as a fraction of the objective function's
+ * maximum evaluations. The last stage of a single-start optimization also
+ * gets whatever the earlier stages left unused.</li>
+ * <li>a promotion threshold. The optimizer repeats local searches with a
+ * stage's evaluator, each from the best point of the last, until a search
+ * improves the norm by less than this fraction of the norm at the start of
+ * the stage, or the stage budget runs out. A threshold of 1.0 promotes after
+ * a single search.</li>
+ * <li>a number of finalists. In a multi-start optimization, this many of
+ * the best points from the previous stage are refined with the stage's
+ * evaluator.</li>
+ * </ul>
+ */
+public class EvaluatorCascade
+{
+	public static class Stage
+	{
+		protected EvaluatorInterface evaluator;
+		protected double budgetFraction;
+		protected double promotionThreshold;
+		protected int nrFinalists;
+
+		public Stage(EvaluatorInterface evaluator, double budgetFraction,
+				double promotionThreshold, int nrFinalists)
+		{
+			this.evaluator = evaluator;
+			this.budgetFraction = budgetFraction;
+			this.promotionThreshold = promotionThreshold;
+			this.nrFinalists = nrFinalists;
+		}
+
+		public EvaluatorInterface getEvaluator()
+		{
+			return evaluator;
+		}
+
+		public double getBudgetFraction()
+		{
+			return budgetFraction;
+		}
+
+		public double getPromotionThreshold()
+		{
+			return promotionThreshold;
+		}
+
+		public int getNrFinalists()
+		{
+			return nrFinalists;
+		}
+
+		/**
+		 * @return evaluation budget for this stage, given the overall
+		 *         maximum, at least 1.
+		 */
+		public int getBudget(int maxEvaluations)
+		{
+			return Math.max((int) (budgetFraction * maxEvaluations), 1);
+		}
+	}
+
+	protected List<Stage> stages = new ArrayList<Stage>();
+
+	/**
+	 * Add a stage after the existing stages.
+	 *
+	 * @param evaluator
+	 *            - evaluator for this stage.
+	 * @param budgetFraction
+	 *            - evaluation budget, as a fraction of maximum evaluations.
+	 * @param promotionThreshold
+	 *            - move on to the next stage once a local search improves the
+	 *            norm by less than this fraction.
+	 * @param nrFinalists
+	 *            - in multi-start optimization, number of best points from
+	 *            the previous stage to refine.
+	 */
+	public EvaluatorCascade addStage(EvaluatorInterface evaluator,
+			double budgetFraction, double promotionThreshold, int nrFinalists)
+	{
+		stages.add(new Stage(evaluator, budgetFraction, promotionThreshold,
+				nrFinalists));
+		return this;
+	}
+
+	/**
+	 * Create the cascade for a conventional two-stage optimization: a full
+	 * search with the first-stage evaluator, followed by a single search with
+	 * the final evaluator, from the best point found.
+	 */
+	public static EvaluatorCascade twoStage(EvaluatorInterface firstStage,
+			EvaluatorInterface finalStage)
+	{
+		EvaluatorCascade cascade = new EvaluatorCascade();
+		cascade.addStage(firstStage, 1.0, 1.0, 1);
+		cascade.addStage(finalStage, 1.0 / 30.0, 1.0, 1);
+		return cascade;
+	}
+
+	public int getNrStages()
+	{
+		return stages.size();
+	}
+
+	public Stage getStage(int stageNr)
+	{
+		return stages.get(stageNr);
+	}
+
+	public Stage getFirstStage()
+	{
+		return stages.get(0);
+	}
+
+	public Stage getLastStage()
+	{
+		return stages.get(stages.size() - 1);
+	}
+}
@@ -0,0 +1,323 @@
+/**
+ * Sensitivity of predicted notes to each optimization dimension.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization;
+
+import java.util.List;
+
+import com.wwidesigner.modelling.InstrumentTuner;
+import com.wwidesigner.modelling.InstrumentTunerFactory;
+import com.wwidesigner.modelling.PerThreadExecutor;
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.note.Note;
+import com.wwidesigner.note.Tuning;
+import com.wwidesigner.optimization.Constraint.ConstraintType;
+
+/**
+ * Calculates the Jacobian of predicted pitch with respect to the geometry
+ * values of an objective function: for each note of the target tuning and
+ * each optimization dimension, the change in predicted cents per unit change
+ * in the dimension, at the current geometry.
+ * <p>
+ * Derivatives are central differences, with a step that is a fraction of
+ * the distance between the bounds. Dimensions are divided among threads by a
+ * PerThreadExecutor; each thread has its own objective function, from the
+ * objective function's ObjectiveFunctionFactory, and its own tuner. Without
+ * an objective function factory, all dimensions are evaluated on the calling
+ * thread. Predictions that throw an exception leave NaN sensitivities, and
+ * are counted and reported on System.out.
+ */
+public class GeometrySensitivity
+{
+	// Difference step, as a fraction of the distance between the bounds.
+	public static final double DEFAULT_STEP_FRACTION = 1.0e-3;
+	// Difference step, relative to the geometry value, without bounds.
+	protected static final double UNBOUNDED_STEP_FRACTION = 1.0e-3;
+	protected static final double MINIMUM_STEP = 1.0e-7;
+
+	protected BaseObjectiveFunction objective;
+	protected InstrumentTunerFactory tunerFactory;
+	protected double stepFraction = DEFAULT_STEP_FRACTION;
+	protected int maxThreads = Runtime.getRuntime().availableProcessors();
+
+	// Results of the last calculation.
+	protected Tuning targetTuning;
+	protected double[] point;
+	protected double[] step;
+	// Change in predicted cents per unit change in each geometry value,
+	// [note][dimension]; NaN where there is no prediction.
+	protected double[][] sensitivity;
+	// Threads of the last calculation, with the predictions that threw an
+	// exception.
+	protected PerThreadExecutor<Replica> executor;
+
+	/**
+	 * @param objective - objective function whose geometry values are the
+	 *            dimensions to test.
+	 * @param tunerFactory - source of tuners with the target tuning. Each
+	 *            tuner is attached to the instrument and calculator of one
+	 *            objective function.
+	 */
+	public GeometrySensitivity(BaseObjectiveFunction objective,
+			InstrumentTunerFactory tunerFactory)
+	{
+		this.objective = objective;
+		this.tunerFactory = tunerFactory;
+	}
+
+	/**
+	 * @param stepFraction - difference step, as a fraction of the distance
+	 *            between the bounds of each dimension.
+	 */
+	public void setStepFraction(double stepFraction)
+	{
+		this.stepFraction = stepFraction;
+	}
+
+	public void setMaxThreads(int maxThreads)
+	{
+		this.maxThreads = Math.max(maxThreads, 1);
+	}
+
+	/**
+	 * Calculate the sensitivity of every note to every dimension, at the
+	 * objective function's current geometry. The geometry is unchanged
+	 * afterwards.
+	 */
+	public void calculate() throws Exception
+	{
+		final int nrDimensions = objective.getNrDimensions();
+		point = objective.getGeometryPoint();
+		step = new double[nrDimensions];
+		double[] lowerBounds = objective.getLowerBounds();
+		double[] upperBounds = objective.getUpperBounds();
+		for (int i = 0; i < nrDimensions; ++i)
+		{
+			if (lowerBounds != null && upperBounds != null
+					&& upperBounds[i] > lowerBounds[i])
+			{
+				step[i] = stepFraction * (upperBounds[i] - lowerBounds[i]);
+			}
+			else
+			{
+				step[i] = UNBOUNDED_STEP_FRACTION * Math.abs(point[i]);
+			}
+			step[i] = Math.max(step[i], MINIMUM_STEP);
+		}
+
+		executor = new PerThreadExecutor<Replica>("Sensitivity calculation");
+		executor.getWorkers().add(
+				new Replica(objective, tunerFactory.createTuner()));
+		if (objective.getObjectiveFactory() != null)
+		{
+			executor.addWorkers(new PerThreadExecutor.WorkerFactory<Replica>()
+			{
+				public Replica createWorker() throws Exception
+				{
+					BaseObjectiveFunction replica = objective
+							.getObjectiveFactory().createObjectiveFunction();
+					replica.setGeometryPoint(point);
+					return new Replica(replica, tunerFactory.createTuner());
+				}
+			}, Math.min(maxThreads, nrDimensions));
+		}
+		targetTuning = executor.getWorker(0).tuner.getTuning();
+		sensitivity = new double[targetTuning.getFingering().size()][nrDimensions];
+
+		try
+		{
+			executor.run(nrDimensions,
+					new PerThreadExecutor.Task<Replica>()
+					{
+						public void run(Replica replica, int dimension)
+						{
+							calcDimension(replica.function, replica.tuner,
+									dimension);
+						}
+					});
+		}
+		finally
+		{
+			objective.setGeometryPoint(point);
+		}
+		executor.reportFailures();
+	}
+
+	/**
+	 * An objective function, with a tuner attached to its instrument and
+	 * calculator, for one thread.
+	 */
+	protected class Replica
+	{
+		protected BaseObjectiveFunction function;
+		protected InstrumentTuner tuner;
+
+		public Replica(BaseObjectiveFunction function, InstrumentTuner tuner)
+		{
+			this.function = function;
+			this.tuner = attachTuner(tuner, function);
+		}
+	}
+
+	/**
+	 * Point a tuner at the instrument and calculator of an objective
+	 * function.
+	 */
+	protected InstrumentTuner attachTuner(InstrumentTuner tuner,
+			BaseObjectiveFunction function)
+	{
+		tuner.setInstrument(function.getInstrument());
+		tuner.setCalculator(function.getCalculator());
+		return tuner;
+	}
+
+	/**
+	 * Calculate the sensitivity of every note to one dimension, by central
+	 * differences about the base point.
+	 */
+	protected void calcDimension(BaseObjectiveFunction function,
+			InstrumentTuner tuner, int dimension)
+	{
+		double[] testPoint = point.clone();
+		testPoint[dimension] = point[dimension] + step[dimension];
+		function.setGeometryPoint(testPoint);
+		double[] upper = predictFrequencies(tuner);
+		testPoint[dimension] = point[dimension] - step[dimension];
+		function.setGeometryPoint(testPoint);
+		double[] lower = predictFrequencies(tuner);
+		function.setGeometryPoint(point);
+		for (int note = 0; note < upper.length; ++note)
+		{
+			if (Double.isNaN(upper[note]) || Double.isNaN(lower[note]))
+			{
+				sensitivity[note][dimension] = Double.NaN;
+			}
+			else
+			{
+				sensitivity[note][dimension] = Note.cents(lower[note],
+						upper[note]) / (2.0 * step[dimension]);
+			}
+		}
+	}
+
+	/**
+	 * @return predicted frequency of each note in the target tuning, or NaN.
+	 */
+	protected double[] predictFrequencies(InstrumentTuner tuner)
+	{
+		List<Fingering> targets = tuner.getTuning().getFingering();
+		double[] frequencies = new double[targets.size()];
+		for (int note = 0; note < frequencies.length; ++note)
+		{
+			frequencies[note] = Double.NaN;
+			try
+			{
+				Double predicted = tuner.predictedFrequency(targets.get(note));
+				if (predicted != null)
+				{
+					frequencies[note] = predicted;
+				}
+			}
+			catch (RuntimeException e)
+			{
+				executor.recordFailure(e);
+			}
+		}
+		return frequencies;
+	}
+
+	/**
+	 * @return number of predictions that threw an exception in the last
+	 *         calculation; their notes have NaN sensitivity.
+	 */
+	public int getNumberOfFailedPredictions()
+	{
+		return executor == null ? 0 : executor.getNumberOfFailedPredictions();
+	}
+
+	/**
+	 * @return the target tuning used in the last calculation.
+	 */
+	public Tuning getTargetTuning()
+	{
+		return targetTuning;
+	}
+
+	public int getNumberOfNotes()
+	{
+		return sensitivity.length;
+	}
+
+	public int getNumberOfDimensions()
+	{
+		return point.length;
+	}
+
+	/**
+	 * @return change in predicted cents of a note per unit change in a
+	 *         geometry value, in metres for dimensional values; NaN if the
+	 *         note has no prediction.
+	 */
+	public double getSensitivity(int note, int dimension)
+	{
+		return sensitivity[note][dimension];
+	}
+
+	/**
+	 * @return difference step used for a dimension.
+	 */
+	public double getStep(int dimension)
+	{
+		return step[dimension];
+	}
+
+	/**
+	 * @return display name of a dimension, from the objective function's
+	 *         constraints if available.
+	 */
+	public String getDimensionName(int dimension)
+	{
+		Constraint constraint = getConstraint(dimension);
+		if (constraint != null && constraint.getDisplayName() != null)
+		{
+			return constraint.getDisplayName();
+		}
+		return "Dimension " + (dimension + 1);
+	}
+
+	/**
+	 * @return true if a dimension is a length, rather than a ratio.
+	 */
+	public boolean isDimensional(int dimension)
+	{
+		Constraint constraint = getConstraint(dimension);
+		return constraint == null
+				|| constraint.getType() == ConstraintType.DIMENSIONAL;
+	}
+
+	protected Constraint getConstraint(int dimension)
+	{
+		Constraints constraints = objective.getConstraints();
+		if (constraints == null || constraints.getConstraint() == null
+				|| constraints.getConstraint().size() != point.length)
+		{
+			return null;
+		}
+		return constraints.getConstraint().get(dimension);
+	}
+}
@@ -0,0 +1,174 @@
+/**
+ * Geometric feasibility check for instruments proposed by an optimizer.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization;
+
+import com.wwidesigner.geometry.BorePoint;
+import com.wwidesigner.geometry.Hole;
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.geometry.PositionInterface;
+
+/**
+ * Measures how far an instrument geometry is from being physically
+ * realizable, without any acoustic calculation. An instrument is infeasible
+ * if:
+ * <ul>
+ * <li>a bore diameter or hole diameter is not positive,</li>
+ * <li>the bore has no length,</li>
+ * <li>a hole centre lies above the mouthpiece or below the end of the bore,</li>
+ * <li>a hole is wider than the bore at its position, or</li>
+ * <li>optionally, two holes adjacent along the bore overlap.</li>
+ * </ul>
+ * The measure is the sum of the distances, in metres, by which each condition
+ * is violated, so it shrinks smoothly to zero as the geometry approaches the
+ * feasible region.
+ * 
+ * The hole overlap check considers only positions along the bore, so it
+ * rejects thumb holes and register holes that sit beside a finger hole on
+ * the other side of the bore; use it only for instruments with all holes in
+ * a row.
+ */
+public class InstrumentFeasibility
+{
+	// Smallest diameter considered positive, in metres.
+	public static final double MINIMUM_DIAMETER = 0.00001;
+
+	/**
+	 * Measure infeasibility, without checking for hole overlap.
+	 */
+	public static double getInfeasibility(Instrument instrument)
+	{
+		return getInfeasibility(instrument, false);
+	}
+
+	/**
+	 * @param instrument
+	 *            - instrument with dimensions in metres.
+	 * @param checkHoleOverlap
+	 *            - if true, holes that overlap along the bore are infeasible.
+	 * @return 0.0 if the instrument is feasible, otherwise the total distance,
+	 *         in metres, by which it violates the feasibility conditions.
+	 */
+	public static double getInfeasibility(Instrument instrument,
+			boolean checkHoleOverlap)
+	{
+		double infeasibility = 0.0;
+
+		PositionInterface[] borePoints = Instrument.sortList(instrument
+				.getBorePoint());
+		if (borePoints.length < 2)
+		{
+			return 0.0;
+		}
+		for (PositionInterface point : borePoints)
+		{
+			infeasibility += diameterShortfall(((BorePoint) point)
+					.getBoreDiameter());
+		}
+		double boreTop = borePoints[0].getBorePosition();
+		double boreBottom = borePoints[borePoints.length - 1].getBorePosition();
+		if (boreBottom <= boreTop)
+		{
+			infeasibility += boreTop - boreBottom + MINIMUM_DIAMETER;
+		}
+
+		double holeTop = boreTop;
+		if (instrument.getMouthpiece() != null)
+		{
+			holeTop = Math.max(holeTop, instrument.getMouthpiece()
+					.getPosition());
+		}
+		PositionInterface[] holes = Instrument.sortList(instrument.getHole());
+		Hole priorHole = null;
+		for (PositionInterface position : holes)
+		{
+			Hole hole = (Hole) position;
+			double holePosition = hole.getBorePosition();
+			double holeDiameter = hole.getDiameter();
+			infeasibility += diameterShortfall(holeDiameter);
+			if (holePosition <= holeTop)
+			{
+				infeasibility += holeTop - holePosition;
+			}
+			else if (holePosition >= boreBottom)
+			{
+				infeasibility += holePosition - boreBottom;
+			}
+			double boreDiameter = interpolateDiameter(borePoints, holePosition);
+			if (holeDiameter > boreDiameter)
+			{
+				infeasibility += holeDiameter - boreDiameter;
+			}
+			if (checkHoleOverlap && priorHole != null)
+			{
+				double gap = holePosition - priorHole.getBorePosition() - 0.5
+						* (holeDiameter + priorHole.getDiameter());
+				if (gap < 0.0)
+				{
+					infeasibility -= gap;
+				}
+			}
+			priorHole = hole;
+		}
+
+		return infeasibility;
+	}
+
+	protected static double diameterShortfall(double diameter)
+	{
+		if (diameter < MINIMUM_DIAMETER)
+		{
+			return MINIMUM_DIAMETER - diameter;
+		}
+		return 0.0;
+	}
+
+	/**
+	 * Bore diameter at a position, interpolated linearly between bore points,
+	 * and held constant beyond the ends of the bore.
+	 */
+	protected static double interpolateDiameter(PositionInterface[] borePoints,
+			double position)
+	{
+		BorePoint first = (BorePoint) borePoints[0];
+		if (position <= first.getBorePosition())
+		{
+			return first.getBoreDiameter();
+		}
+		for (int i = 1; i < borePoints.length; ++i)
+		{
+			BorePoint after = (BorePoint) borePoints[i];
+			if (position <= after.getBorePosition())
+			{
+				BorePoint before = (BorePoint) borePoints[i - 1];
+				double length = after.getBorePosition()
+						- before.getBorePosition();
+				if (length <= 0.0)
+				{
+					return after.getBoreDiameter();
+				}
+				double fraction = (position - before.getBorePosition())
+						/ length;
+				return before.getBoreDiameter() + fraction
+						* (after.getBoreDiameter() - before.getBoreDiameter());
+			}
+		}
+		return ((BorePoint) borePoints[borePoints.length - 1])
+				.getBoreDiameter();
+	}
+}
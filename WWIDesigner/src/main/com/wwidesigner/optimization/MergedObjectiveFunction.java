@@ -18,6 +18,8 @@ import com.wwidesigner.note.TuningInterface;
 public abstract class MergedObjectiveFunction extends BaseObjectiveFunction
 {
 	BaseObjectiveFunction[] components;
+	// Geometry of each component, reused by setGeometryPoint.
+	protected double[][] subPoints;
 
 	/**
 	 * Constructor for merged class.
@@ -92,10 +94,20 @@ public abstract class MergedObjectiveFunction extends BaseObjectiveFunction
 		{
 			throw new DimensionMismatchException(point.length, nrDimensions);
 		}
+		if (subPoints == null || subPoints.length != components.length)
+		{
+			subPoints = new double[components.length][];
+		}
 		int i = 0; // Index into point.
-		for (BaseObjectiveFunction component : components)
+		for (int c = 0; c < components.length; c++)
 		{
-			double[] subPoint = new double[component.getNrDimensions()];
+			BaseObjectiveFunction component = components[c];
+			if (subPoints[c] == null
+					|| subPoints[c].length != component.getNrDimensions())
+			{
+				subPoints[c] = new double[component.getNrDimensions()];
+			}
+			double[] subPoint = subPoints[c];
 			for (int j = 0; j < component.getNrDimensions(); j++)
 			{
 				subPoint[j] = point[i++];
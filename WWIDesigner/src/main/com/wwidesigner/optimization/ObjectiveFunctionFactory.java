@@ -0,0 +1,35 @@
+/**
+ * Interface for building independent copies of an objective function.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization;
+
+/**
+ * Builds replicas of an objective function. Each replica must have its own
+ * instrument, calculator and evaluator, so that replicas may be evaluated
+ * concurrently, and must otherwise be identical to the original: same
+ * dimensions, bounds, target tuning and evaluators.
+ */
+public interface ObjectiveFunctionFactory
+{
+	/**
+	 * @return a new, independent objective function.
+	 * @throws Exception
+	 *             if the objective function cannot be built.
+	 */
+	public BaseObjectiveFunction createObjectiveFunction() throws Exception;
+}
@@ -19,10 +19,23 @@
  */
 package com.wwidesigner.optimization;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.commons.math3.analysis.MultivariateFunction;
 import org.apache.commons.math3.exception.TooManyEvaluationsException;
 import org.apache.commons.math3.optim.ConvergenceChecker;
 import org.apache.commons.math3.optim.InitialGuess;
@@ -46,7 +59,11 @@ import org.apache.commons.math3.optim.univariate.UnivariatePointValuePair;
 import org.apache.commons.math3.random.MersenneTwister;
 
 import com.wwidesigner.modelling.EvaluatorInterface;
+import com.wwidesigner.optimization.distributed.OptimizationCoordinator;
+import com.wwidesigner.optimization.distributed.SharedSecretHandshake;
 import com.wwidesigner.optimization.multistart.AbstractRangeProcessor;
+import com.wwidesigner.optimization.multistart.BasinClusterer;
+import com.wwidesigner.optimization.multistart.BasinClusterer.KnownBasinException;
 import com.wwidesigner.optimization.multistart.RandomRangeProcessor;
 
 public class ObjectiveFunctionOptimizer
@@ -55,10 +72,37 @@ public class ObjectiveFunctionOptimizer
 
 	protected static double initialNorm; // Initial value of objective function.
 	protected static double finalNorm; // Final value of objective function.
+	protected static int localSearches; // Local searches in a multi-start.
+	protected static int screenedOutStarts; // Candidates dropped by screening.
+	protected static BasinClusterer lastBasins; // Optima found, if clustered.
 	protected static final boolean DEBUG_MODE = false;
 
 	// Number of evaluations in a single multi-start run.
 	private static int singleRunEvaluations;
+	// Known optima of the multi-start run in progress, if clustering
+	// local searches by basin.
+	private static BasinClusterer basins;
+
+	// Checkpoints of the optimization in progress: file to save them in,
+	// or null for no checkpoints, and minimum time between saves.
+	private static File checkpointFile = null;
+	private static long checkpointInterval = 0;
+	private static long lastCheckpointTime;
+	private static OptimizationCheckpoint checkpoint;
+	// Checkpoint for the next optimization to resume from.
+	private static OptimizationCheckpoint resumeState = null;
+
+	// Worker processes for multi-start local searches and screening, or
+	// null to do all the work in this process, and the secret they share.
+	private static List<InetSocketAddress> distributedWorkers = null;
+	private static byte[] workerSecret = null;
+
+	// With bounded evaluation, cutoff for CMAES, as a multiple of the best
+	// value found so far: CMAES ranks the better half of its population.
+	// The simplex is never bounded: its convergence check compares the value
+	// of every vertex from one iteration to the next, and truncated values
+	// of the vertices other than the best would fake or block convergence.
+	public static final double CMAES_CUTOFF_RATIO = 2.0;
 
 	/**
 	 * Print a vector of error values during optimization.
@@ -122,9 +166,22 @@ public class ObjectiveFunctionOptimizer
 		System.out.print(" target notes.");
 
 		long startTime = System.currentTimeMillis();
+		EvaluatorInterface originalEvaluator = objective.getEvaluator();
+		if (objective.getErrorVectorCache() != null)
+		{
+			// Discard errors from any earlier use of the objective.
+			objective.getErrorVectorCache().clear();
+		}
+		startCheckpoints(objective);
 		double[] startPoint = objective.getInitialPoint();
 		double[] errorVector = objective.getErrorVector(startPoint);
 		initialNorm = objective.calcNorm(errorVector);
+		if (objective.isFeasibilityCheck() && !Double.isNaN(initialNorm)
+				&& !Double.isInfinite(initialNorm))
+		{
+			// Scale infeasibility penalties by the norm at the start point.
+			objective.setFeasibilityReferenceNorm(initialNorm);
+		}
 		System.out.println();
 		printErrors("Initial error: ", initialNorm, errorVector);
 		finalNorm = initialNorm;
@@ -162,7 +219,8 @@ public class ObjectiveFunctionOptimizer
 			else if (optimizerType
 					.equals(BaseObjectiveFunction.OptimizerType.SimplexOptimizer))
 			{
-				// Multivariate optimization, without bounds.
+				// Multivariate optimization, without bounds, and without
+				// bounded evaluation.
 				SimplexOptimizer optimizer = new SimplexOptimizer(
 						convergenceChecker);
 				MultiDirectionalSimplex simplex = new MultiDirectionalSimplex(
@@ -190,6 +248,20 @@ public class ObjectiveFunctionOptimizer
 					objective.setGeometryPoint(outcome.getPoint());
 				}
 			}
+			else if (optimizerType
+					.equals(BaseObjectiveFunction.OptimizerType.SurrogateOptimizer))
+			{
+				// Multivariate optimization, with bounds, using a surrogate
+				// model to limit real evaluations.
+				SurrogateOptimizer optimizer = new SurrogateOptimizer(objective);
+				PointValuePair outcome;
+				outcome = optimizer.optimize(startPoint,
+						objective.getMaxEvaluations());
+				if (outcome != null)
+				{
+					objective.setGeometryPoint(outcome.getPoint());
+				}
+			}
 			else if (optimizerType
 					.equals(BaseObjectiveFunction.OptimizerType.CMAESOptimizer))
 			{
@@ -201,7 +273,8 @@ public class ObjectiveFunctionOptimizer
 						new MersenneTwister(), false, convergenceChecker);
 				outcome = optimizer.optimize(
 						GoalType.MINIMIZE,
-						new ObjectiveFunction(objective),
+						new ObjectiveFunction(boundedFunction(objective,
+								CMAES_CUTOFF_RATIO)),
 						new MaxEval(objective.getMaxEvaluations()),
 						MaxIter.unlimited(),
 						new InitialGuess(startPoint),
@@ -224,27 +297,28 @@ public class ObjectiveFunctionOptimizer
 						objective.getNrInterpolations(), trustRegion,
 						stoppingTrustRegion);
 
-				// Run optimization first with the first-stage evaluator, if
-				// specified
-				EvaluatorInterface originalEvaluator = objective.getEvaluator();
-				if (objective.isRunTwoStageOptimization())
+				// Run optimization first with the earlier stages of the
+				// evaluator cascade, if specified.
+				EvaluatorCascade cascade = objective.getEvaluatorCascade();
+				if (cascade != null)
 				{
-					objective.setEvaluator(objective.getFirstStageEvaluator());
-					outcome = optimizer.optimize(GoalType.MINIMIZE,
-							new ObjectiveFunction(objective), new MaxEval(
-									objective.getMaxEvaluations()), MaxIter
-									.unlimited(), new InitialGuess(startPoint),
-							new SimpleBounds(objective.getLowerBounds(),
-									objective.getUpperBounds()));
-					objective.setGeometryPoint(outcome.getPoint());
+					runCascadeStages(objective, optimizer, cascade);
+					objective.setEvaluator(cascade.getLastStage()
+							.getEvaluator());
 				}
 
-				objective.setEvaluator(originalEvaluator);
+				int remainingEvaluations = objective.getMaxEvaluations()
+						- objective.getNumberOfEvaluations();
+				if (remainingEvaluations <= 0)
+				{
+					// Earlier stages used the whole budget.
+					throw new TooManyEvaluationsException(
+							objective.getMaxEvaluations());
+				}
 				outcome = optimizer.optimize(
 						GoalType.MINIMIZE,
 						new ObjectiveFunction(objective),
-						new MaxEval(objective.getMaxEvaluations()
-								- objective.getNumberOfEvaluations()),
+						new MaxEval(remainingEvaluations),
 						MaxIter.unlimited(),
 						new InitialGuess(objective.getInitialPoint()),
 						new SimpleBounds(objective.getLowerBounds(), objective
@@ -262,15 +336,39 @@ public class ObjectiveFunctionOptimizer
 			e.printStackTrace();
 			return false;
 		}
+		finally
+		{
+			objective.setNormCutoff(Double.POSITIVE_INFINITY);
+			if (objective.getEvaluator() != originalEvaluator)
+			{
+				objective.setEvaluator(originalEvaluator);
+			}
+		}
 
 		System.out.print("Performed ");
 		System.out.print(objective.getNumberOfTunings());
 		System.out.print(" tuning calculations in ");
 		System.out.print(objective.getNumberOfEvaluations());
-		System.out.println(" error norm evaluations.");
+		System.out.print(" error norm evaluations");
+		if (objective.getErrorVectorCache() != null)
+		{
+			System.out.print(", " + objective.getErrorVectorCache());
+		}
+		if (objective.getNumberOfInfeasiblePoints() > 0)
+		{
+			System.out.print(", " + objective.getNumberOfInfeasiblePoints()
+					+ " infeasible points");
+		}
+		if (objective.getNumberOfAbortedEvaluations() > 0)
+		{
+			System.out.print(", " + objective.getNumberOfAbortedEvaluations()
+					+ " stopped at cutoff");
+		}
+		System.out.println(".");
 		errorVector = objective.getErrorVector(objective.getInitialPoint());
 		finalNorm = objective.calcNorm(errorVector);
 		printErrors("Final error:  ", finalNorm, errorVector);
+		endCheckpoints();
 		System.out.print("Residual error ratio: ");
 		System.out.println(finalNorm / initialNorm);
 		long elapsedTime = System.currentTimeMillis() - startTime;
@@ -290,6 +388,14 @@ public class ObjectiveFunctionOptimizer
 	 * objective.isRunTwoStageOptimization (if set true), doing the 30 starts
 	 * with the first stage evaluator, and then doing a final run with the
 	 * original evaluator - starting with the best result from the 30 starts.
+	 * With an evaluator cascade of more than two stages, the starts use the
+	 * first stage's evaluator and budget, and each later stage refines its
+	 * number of finalists from the stage before.
+	 * If objective.getBasinAttractionRadius() is positive, local searches that
+	 * enter the basin of an optimum already found are abandoned, and the
+	 * distinct optima are reported at the end. If distributed workers are set,
+	 * and the objective factory is Serializable, the starts are run on the
+	 * workers instead, each with an equal share of the evaluation budget.
 	 * 
 	 * @param objective
 	 *            - objective function to optimize
@@ -311,15 +417,24 @@ public class ObjectiveFunctionOptimizer
 		{
 			nrStarts = rangeProcessor.getNumberOfStarts();
 		}
+		rangeProcessor.setStaticValues(startPoint);
+		localSearches = 0;
+		screenedOutStarts = 0;
+		lastBasins = null;
+		if (objective.isScreenedMultiStart())
+		{
+			return optimizeScreenedMultiStart(objective, startPoint,
+					rangeProcessor);
+		}
 		PointValuePair[] optima = new PointValuePair[nrStarts];
-		int maxEvaluations = objective.getMaxEvaluations();
+		EvaluatorCascade cascade = objective.getEvaluatorCascade();
+		int maxEvaluations = getFirstStageBudget(objective, cascade);
 		int totalEvaluations = 0;
-		rangeProcessor.setStaticValues(startPoint);
 
 		// Multi-start loop.
 		double[] nextStart = startPoint.clone();
 		EvaluatorInterface originalEvaluator = objective.getEvaluator();
-		if (objective.isRunTwoStageOptimization())
+		if (cascade != null)
 		{
 			EvaluatorInterface firstStageEvaluator = objective
 					.getFirstStageEvaluator();
@@ -328,7 +443,76 @@ public class ObjectiveFunctionOptimizer
 			objective.setEvaluator(firstStageEvaluator);
 		}
 
-		for (int startNr = 0; startNr < nrStarts; ++startNr)
+		// Pick up from a checkpoint, if resuming.
+		int firstStart = 0;
+		if (checkpoint != null && checkpoint.getStartsCompleted() > 0)
+		{
+			firstStart = checkpoint.getStartsCompleted();
+			for (int startNr = 0; startNr < firstStart; ++startNr)
+			{
+				optima[startNr] = checkpoint.getOptimum(startNr);
+			}
+			rangeProcessor.skipVectors(checkpoint.getRangeProcessorPosition());
+			nextStart = checkpoint.getNextStart();
+			totalEvaluations = checkpoint.getMultiStartEvaluations();
+			if (checkpoint.getPhase() > OptimizationCheckpoint.FIRST_STAGE)
+			{
+				firstStart = nrStarts;
+			}
+			System.out.println("Resuming after " + checkpoint.getStartsCompleted()
+					+ " completed starts.");
+		}
+
+		OptimizationCoordinator coordinator = getCoordinator(objective);
+		if (coordinator != null && firstStart < nrStarts)
+		{
+			// Hand the remaining starts to the workers, sharing the
+			// remaining budget evenly among them.
+			int nrRemaining = nrStarts - firstStart;
+			double[][] starts = new double[nrRemaining][];
+			for (int i = 0; i < nrRemaining; ++i)
+			{
+				starts[i] = nextStart;
+				nextStart = rangeProcessor.nextVector();
+			}
+			System.out.println("Distributing " + nrRemaining + " starts among "
+					+ distributedWorkers.size() + " workers.");
+			PointValuePair[] outcomes = coordinator.localSearches(objective,
+					starts, (maxEvaluations - totalEvaluations) / nrRemaining,
+					objective.isRunTwoStageOptimization());
+			localSearches += nrRemaining;
+			for (int i = 0; i < nrRemaining; ++i)
+			{
+				int startNr = firstStart + i;
+				optima[startNr] = outcomes[i];
+				System.out.print("Start " + (int) (startNr + 1) + ": ");
+				if (outcomes[i] == null)
+				{
+					System.out.print("no valid solution found");
+				}
+				else
+				{
+					System.out.print("optimum " + outcomes[i].getValue());
+				}
+				System.out.println(" at start point "
+						+ Arrays.toString(starts[i]));
+				if (checkpoint != null)
+				{
+					checkpoint.addOptimum(outcomes[i]);
+				}
+			}
+			if (checkpoint != null)
+			{
+				checkpoint.setNextStart(nextStart);
+				checkpoint.setRangeProcessorPosition(nrStarts);
+				checkpoint.setMultiStartEvaluations(maxEvaluations);
+				saveCheckpoint(objective, false);
+			}
+			firstStart = nrStarts;
+		}
+
+		startBasinClustering(objective);
+		for (int startNr = firstStart; startNr < nrStarts; ++startNr)
 		{
 			if (totalEvaluations < maxEvaluations)
 			{
@@ -337,8 +521,17 @@ public class ObjectiveFunctionOptimizer
 						maxEvaluations - totalEvaluations, nextStart);
 				nextStart = rangeProcessor.nextVector();
 				totalEvaluations += singleRunEvaluations;
+				if (checkpoint != null)
+				{
+					checkpoint.addOptimum(optima[startNr]);
+					checkpoint.setNextStart(nextStart);
+					checkpoint.setRangeProcessorPosition(startNr + 1);
+					checkpoint.setMultiStartEvaluations(totalEvaluations);
+					saveCheckpoint(objective, false);
+				}
 			}
 		}
+		endBasinClustering();
 
 		sortPairs(GoalType.MINIMIZE, optima);
 
@@ -346,26 +539,513 @@ public class ObjectiveFunctionOptimizer
 		{
 			// Return the found point given the best objective function value.
 			System.out.println("Best optimum: " + optima[0].getValue());
-			if (objective.isRunTwoStageOptimization())
+			if (cascade != null)
 			{
-				System.out.println("Final run with evaluator: "
-						+ originalEvaluator.getClass().getSimpleName());
-				objective.setEvaluator(originalEvaluator);
-				optima[0] = doSingleStart(objective, startPoint,
-						objective.getMaxEvaluations() / 30,
-						optima[0].getPoint());
+				if (checkpoint != null)
+				{
+					checkpoint.setPhase(OptimizationCheckpoint.SECOND_STAGE);
+					saveCheckpoint(objective, true);
+				}
+				optima[0] = refineFinalists(objective, startPoint, cascade,
+						optima);
 			}
 		}
+		objective.setEvaluator(originalEvaluator);
 
 		return optima[0];
 	}
 
+	/**
+	 * Multi-start optimization that screens the candidate starts before doing
+	 * any local searches. Each candidate from the range processor is evaluated
+	 * once, concurrently if the objective has an objective factory, and a
+	 * BOBYQA search is run only from the best candidates. With successive
+	 * halving, the best candidates are refined in rounds: after each round,
+	 * the worse half is dropped, and the survivors continue from their best
+	 * points with double the evaluation budget. Recognizes
+	 * objective.isRunTwoStageOptimization, and the evaluator cascade, in the
+	 * same way as optimizeMultiStart.
+	 * 
+	 * @param objective
+	 *            - objective function to optimize
+	 * @param startPoint
+	 *            - initial geometry; the first candidate start.
+	 * @param rangeProcessor
+	 *            - generator for the remaining candidate starts.
+	 * @return best point and value found, or {@code null} if no good point
+	 *         found.
+	 */
+	protected static PointValuePair optimizeScreenedMultiStart(
+			BaseObjectiveFunction objective, double[] startPoint,
+			AbstractRangeProcessor rangeProcessor)
+	{
+		int nrCandidates = rangeProcessor.getNumberOfStarts();
+		int nrRefined = objective.getNrRefinedStarts();
+		EvaluatorCascade cascade = objective.getEvaluatorCascade();
+		int maxEvaluations = getFirstStageBudget(objective, cascade);
+		EvaluatorInterface originalEvaluator = objective.getEvaluator();
+		if (cascade != null)
+		{
+			EvaluatorInterface firstStageEvaluator = objective
+					.getFirstStageEvaluator();
+			System.out.println("Evaluator: "
+					+ firstStageEvaluator.getClass().getSimpleName());
+			objective.setEvaluator(firstStageEvaluator);
+		}
+
+		// Screening: one evaluation at each candidate.
+		PointValuePair[] candidates = new PointValuePair[nrCandidates];
+		double[][] candidatePoints = new double[nrCandidates][];
+		candidatePoints[0] = startPoint.clone();
+		for (int i = 1; i < nrCandidates; ++i)
+		{
+			candidatePoints[i] = rangeProcessor.nextVector();
+		}
+		double[] values = screenCandidates(objective, candidatePoints);
+		for (int i = 0; i < nrCandidates; ++i)
+		{
+			candidates[i] = new PointValuePair(candidatePoints[i], values[i]);
+		}
+		sortPairs(GoalType.MINIMIZE, candidates);
+		screenedOutStarts = Math.max(nrCandidates - nrRefined, 0);
+		System.out.println("Screened " + nrCandidates
+				+ " candidate starts, best " + candidates[0].getValue()
+				+ ", worst " + candidates[nrCandidates - 1].getValue()
+				+ ". Refining best " + nrRefined + ".");
+
+		int totalEvaluations = nrCandidates;
+		PointValuePair[] optima = new PointValuePair[nrRefined];
+		int startNr = 0;
+		if (objective.isSuccessiveHalving())
+		{
+			// Each round gets an equal share of the budget, divided
+			// evenly among the candidates that remain.
+			int nrRounds = 1;
+			for (int remaining = nrRefined; remaining > 1; remaining = (remaining + 1) / 2)
+			{
+				++nrRounds;
+			}
+			int roundBudget = (maxEvaluations - totalEvaluations) / nrRounds;
+			int nrSurvivors = nrRefined;
+			for (int i = 0; i < nrRefined; ++i)
+			{
+				optima[i] = candidates[i];
+			}
+			for (int round = 1; nrSurvivors > 0; ++round)
+			{
+				int startBudget = roundBudget / nrSurvivors;
+				if (nrSurvivors == 1)
+				{
+					startBudget = maxEvaluations - totalEvaluations;
+				}
+				if (startBudget <= objective.getNrInterpolations())
+				{
+					// Too few evaluations to build a local model.
+					break;
+				}
+				System.out.println("Round " + round + ": " + nrSurvivors
+						+ " starts, at most " + startBudget
+						+ " evaluations each.");
+				for (int i = 0; i < nrSurvivors; ++i)
+				{
+					System.out.print("Start " + (++startNr) + ": ");
+					PointValuePair outcome = doSingleStart(objective,
+							startPoint, startBudget, optima[i].getPoint(),
+							true);
+					totalEvaluations += singleRunEvaluations;
+					if (outcome != null
+							&& outcome.getValue() <= optima[i].getValue())
+					{
+						optima[i] = outcome;
+					}
+				}
+				sortPairs(GoalType.MINIMIZE, optima);
+				nrSurvivors = (nrSurvivors == 1) ? 0 : (nrSurvivors + 1) / 2;
+			}
+		}
+		else
+		{
+			startBasinClustering(objective);
+			for (int i = 0; i < nrRefined; ++i)
+			{
+				if (totalEvaluations < maxEvaluations)
+				{
+					System.out.print("Start " + (++startNr) + ": ");
+					optima[i] = doSingleStart(objective, startPoint,
+							maxEvaluations - totalEvaluations,
+							candidates[i].getPoint());
+					totalEvaluations += singleRunEvaluations;
+				}
+			}
+			endBasinClustering();
+			sortPairs(GoalType.MINIMIZE, optima);
+		}
+
+		if (optima[0] != null)
+		{
+			System.out.println("Best optimum: " + optima[0].getValue());
+			if (cascade != null)
+			{
+				optima[0] = refineFinalists(objective, startPoint, cascade,
+						optima);
+			}
+		}
+		objective.setEvaluator(originalEvaluator);
+
+		return optima[0];
+	}
+
+	/**
+	 * Evaluate the objective function once at each of a set of points. If the
+	 * objective has an objective factory, and more than one processor is
+	 * available, evaluate the points concurrently, using one replica of the
+	 * objective function per thread. If distributed workers are set, and the
+	 * objective factory is Serializable, evaluate the points on the workers.
+	 * With bounded evaluation, a point is evaluated only until it is clearly
+	 * worse than the best nrRefinedStarts points already seen by its thread.
+	 * 
+	 * @return objective function value at each point, or
+	 *         Double.POSITIVE_INFINITY where the evaluation failed.
+	 */
+	protected static double[] screenCandidates(
+			final BaseObjectiveFunction objective, final double[][] points)
+	{
+		OptimizationCoordinator coordinator = getCoordinator(objective);
+		if (coordinator != null)
+		{
+			return coordinator.evaluate(objective, points,
+					objective.isRunTwoStageOptimization());
+		}
+
+		final double[] values = new double[points.length];
+		int nrThreads = Math.min(Runtime.getRuntime().availableProcessors(),
+				points.length);
+		List<BaseObjectiveFunction> replicas = new ArrayList<BaseObjectiveFunction>();
+		if (objective.getObjectiveFactory() != null && nrThreads > 1)
+		{
+			if (objective.isFeasibilityCheck()
+					&& !objective.hasFeasibilityReference())
+			{
+				// Replicas must share one reference norm for their penalties
+				// to be comparable: take it from the first candidate.
+				objective.value(points[0]);
+			}
+			try
+			{
+				for (int i = 0; i < nrThreads; ++i)
+				{
+					BaseObjectiveFunction replica = objective
+							.getObjectiveFactory().createObjectiveFunction();
+					if (objective.isRunTwoStageOptimization()
+							&& replica.isRunTwoStageOptimization())
+					{
+						replica.setEvaluator(replica.getFirstStageEvaluator());
+					}
+					replica.setBoundedEvaluation(objective
+							.isBoundedEvaluation());
+					replica.setFeasibilityCheck(objective.isFeasibilityCheck());
+					replica.setHoleOverlapCheck(objective.isHoleOverlapCheck());
+					replica.setFeasibilityReferenceNorm(objective
+							.getFeasibilityReferenceNorm());
+					replicas.add(replica);
+				}
+			}
+			catch (Exception e)
+			{
+				System.out.println("Cannot copy objective function, "
+						+ "screening sequentially: " + e.getMessage());
+				replicas.clear();
+			}
+		}
+
+		final int nrKept = Math.max(objective.getNrRefinedStarts(), 1);
+		if (replicas.isEmpty())
+		{
+			PriorityQueue<Double> bestValues = new PriorityQueue<Double>(
+					nrKept + 1, Collections.reverseOrder());
+			for (int i = 0; i < points.length; ++i)
+			{
+				values[i] = screenValue(objective, points[i], bestValues,
+						nrKept);
+			}
+			objective.setNormCutoff(Double.POSITIVE_INFINITY);
+			return values;
+		}
+
+		final int stride = replicas.size();
+		ExecutorService executor = Executors.newFixedThreadPool(stride);
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		for (int t = 0; t < stride; ++t)
+		{
+			final int firstPoint = t;
+			final BaseObjectiveFunction replica = replicas.get(t);
+			results.add(executor.submit(new Callable<Integer>()
+			{
+				public Integer call()
+				{
+					PriorityQueue<Double> bestValues = new PriorityQueue<Double>(
+							nrKept + 1, Collections.reverseOrder());
+					for (int i = firstPoint; i < points.length; i += stride)
+					{
+						values[i] = screenValue(replica, points[i],
+								bestValues, nrKept);
+					}
+					return replica.getNumberOfTunings();
+				}
+			}));
+		}
+		try
+		{
+			for (Future<Integer> result : results)
+			{
+				objective.addEvaluations(0, result.get());
+			}
+			objective.addEvaluations(points.length, 0);
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException("Screening failed: " + e.getMessage());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+
+		return values;
+	}
+
+	/**
+	 * Evaluate a candidate point for screening. With bounded evaluation, stop
+	 * once the point is worse than the nrKept best values seen so far.
+	 * 
+	 * @param bestValues
+	 *            - best values seen so far, worst at the head; updated.
+	 */
+	private static double screenValue(BaseObjectiveFunction objective,
+			double[] point, PriorityQueue<Double> bestValues, int nrKept)
+	{
+		if (objective.isBoundedEvaluation() && bestValues.size() >= nrKept)
+		{
+			objective.setNormCutoff(bestValues.peek());
+		}
+		double value;
+		try
+		{
+			value = objective.value(point);
+		}
+		catch (RuntimeException e)
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+		bestValues.add(value);
+		if (bestValues.size() > nrKept)
+		{
+			bestValues.poll();
+		}
+		return value;
+	}
+
+	/**
+	 * @return evaluation budget for the multi-start phase: the budget of the
+	 *         first stage of the evaluator cascade, if any.
+	 */
+	protected static int getFirstStageBudget(BaseObjectiveFunction objective,
+			EvaluatorCascade cascade)
+	{
+		if (cascade == null)
+		{
+			return objective.getMaxEvaluations();
+		}
+		return cascade.getFirstStage().getBudget(
+				objective.getMaxEvaluations());
+	}
+
+	/**
+	 * Refine the best points of a multi-start optimization through the later
+	 * stages of an evaluator cascade. At each stage, the stage's finalists,
+	 * the best points from the previous stage, each get a local search with
+	 * the stage's evaluator, sharing the stage's budget.
+	 * 
+	 * @param optima
+	 *            - best points from the first stage, sorted best first.
+	 * @return best point and value from the last stage, or {@code null} if no
+	 *         good point found.
+	 */
+	protected static PointValuePair refineFinalists(
+			BaseObjectiveFunction objective, double[] startPoint,
+			EvaluatorCascade cascade, PointValuePair[] optima)
+	{
+		PointValuePair[] finalists = optima;
+		int lastStage = cascade.getNrStages() - 1;
+		for (int stageNr = 1; stageNr <= lastStage; ++stageNr)
+		{
+			EvaluatorCascade.Stage stage = cascade.getStage(stageNr);
+			int nrFinalists = 0;
+			while (nrFinalists < stage.getNrFinalists()
+					&& nrFinalists < finalists.length
+					&& finalists[nrFinalists] != null)
+			{
+				++nrFinalists;
+			}
+			if (nrFinalists == 0)
+			{
+				return null;
+			}
+			String evaluatorName = stage.getEvaluator().getClass()
+					.getSimpleName();
+			if (stageNr == lastStage && nrFinalists == 1)
+			{
+				System.out.println("Final run with evaluator: "
+						+ evaluatorName);
+			}
+			else
+			{
+				System.out.println("Stage " + (stageNr + 1) + ": refining "
+						+ nrFinalists + " finalists with evaluator: "
+						+ evaluatorName);
+			}
+			objective.setEvaluator(stage.getEvaluator());
+			int budget = stage.getBudget(objective.getMaxEvaluations())
+					/ nrFinalists;
+			PointValuePair[] outcomes = new PointValuePair[nrFinalists];
+			for (int i = 0; i < nrFinalists; ++i)
+			{
+				outcomes[i] = doSingleStart(objective, startPoint, budget,
+						finalists[i].getPoint());
+			}
+			sortPairs(GoalType.MINIMIZE, outcomes);
+			finalists = outcomes;
+		}
+		return finalists[0];
+	}
+
+	/**
+	 * Run the stages of an evaluator cascade before the last, leaving the
+	 * best point found as the objective's geometry. Each stage repeats BOBYQA
+	 * searches, each starting from the best point of the last, until a search
+	 * improves the norm by less than the stage's promotion threshold, as a
+	 * fraction of the norm at the start of the stage, or the stage's budget
+	 * runs out.
+	 */
+	protected static void runCascadeStages(BaseObjectiveFunction objective,
+			MultivariateOptimizer optimizer, EvaluatorCascade cascade)
+	{
+		int firstStage = 0;
+		if (checkpoint != null
+				&& checkpoint.getPhase() > OptimizationCheckpoint.FIRST_STAGE)
+		{
+			// Phase is one more than the number of stages completed.
+			firstStage = checkpoint.getPhase() - 1;
+			System.out.println(firstStage
+					+ " stages completed before checkpoint.");
+			objective.setGeometryPoint(checkpoint.getBestPoint());
+		}
+		for (int stageNr = firstStage; stageNr < cascade.getNrStages() - 1; ++stageNr)
+		{
+			EvaluatorCascade.Stage stage = cascade.getStage(stageNr);
+			objective.setEvaluator(stage.getEvaluator());
+			System.out.println("Stage " + (stageNr + 1) + " evaluator: "
+					+ stage.getEvaluator().getClass().getSimpleName());
+			int stageBudget = stage.getBudget(objective.getMaxEvaluations());
+			int stageEvaluations = 0;
+			double stageStartValue = Double.NaN;
+			PointValuePair best = null;
+			while (stageEvaluations < stageBudget)
+			{
+				BestPointTracker tracker = new BestPointTracker(objective);
+				try
+				{
+					optimizer.optimize(GoalType.MINIMIZE, new ObjectiveFunction(
+							tracker), new MaxEval(stageBudget - stageEvaluations),
+							MaxIter.unlimited(), new InitialGuess(objective
+									.getInitialPoint()), new SimpleBounds(
+									objective.getLowerBounds(), objective
+											.getUpperBounds()));
+				}
+				catch (TooManyEvaluationsException e)
+				{
+					// Stage budget used up; keep the best point found.
+				}
+				stageEvaluations += tracker.evaluations;
+				if (tracker.best == null)
+				{
+					break;
+				}
+				best = tracker.best;
+				objective.setGeometryPoint(best.getPoint());
+				if (Double.isNaN(stageStartValue))
+				{
+					stageStartValue = tracker.firstValue;
+				}
+				// Improvement relative to the norm at the start of the stage,
+				// so that tiny gains near a zero norm do not count.
+				double improvement = (tracker.firstValue - best.getValue())
+						/ stageStartValue;
+				if (!(improvement >= stage.getPromotionThreshold()))
+				{
+					break;
+				}
+			}
+			if (best != null && checkpoint != null)
+			{
+				checkpoint.setBest(best.getPoint(), best.getValue());
+				checkpoint.setPhase(stageNr + 2);
+				saveCheckpoint(objective, true);
+			}
+		}
+	}
+
+	/**
+	 * Run a single local optimization, as for one start of a multi-start
+	 * optimization: BOBYQA, or Brent for a single variable. Used by
+	 * OptimizationWorker, so that distributed starts search as local ones
+	 * do.
+	 * 
+	 * @return best point and value found, or {@code null} if no valid point
+	 *         found. If the search exhausts its budget, the best point
+	 *         evaluated.
+	 */
+	public static PointValuePair optimizeSingleStart(
+			BaseObjectiveFunction objective, double[] startPoint,
+			int maxEvaluations)
+	{
+		PointValuePair result = doSingleStart(objective, startPoint,
+				maxEvaluations, startPoint, true);
+		if (result != null && result.getValue() == Double.POSITIVE_INFINITY)
+		{
+			return null;
+		}
+		return result;
+	}
+
 	protected static PointValuePair doSingleStart(
 			BaseObjectiveFunction objective, double[] startPoint,
 			int maxEvaluations, double[] nextStart)
+	{
+		return doSingleStart(objective, startPoint, maxEvaluations, nextStart,
+				false);
+	}
+
+	/**
+	 * Run a single local optimization from a specified start point.
+	 * 
+	 * @param keepBest
+	 *            - if true, and the optimization exhausts its evaluation
+	 *            budget, return the best point evaluated rather than
+	 *            {@code null}.
+	 */
+	protected static PointValuePair doSingleStart(
+			BaseObjectiveFunction objective, double[] startPoint,
+			int maxEvaluations, double[] nextStart, boolean keepBest)
 	{
 		singleRunEvaluations = 0;
+		++localSearches;
 		PointValuePair result = null;
+		BestPointTracker tracker = new BestPointTracker(objective);
+		if (basins != null)
+		{
+			basins.startSearch();
+		}
 		try
 		{
 			int numVariables = objective.getNrDimensions();
@@ -380,13 +1060,12 @@ public class ObjectiveFunctionOptimizer
 						stoppingTrustRegion);
 				result = optimizer.optimize(
 						GoalType.MINIMIZE,
-						new ObjectiveFunction(objective),
+						new ObjectiveFunction(tracker),
 						new MaxEval(maxEvaluations),
 						MaxIter.unlimited(),
 						new InitialGuess(nextStart),
 						new SimpleBounds(objective.getLowerBounds(), objective
 								.getUpperBounds()));
-				singleRunEvaluations = optimizer.getEvaluations();
 			}
 			else
 			// Use Brent
@@ -401,7 +1080,7 @@ public class ObjectiveFunctionOptimizer
 								objective.getUpperBounds()[0], startPoint[0]));
 				result = new PointValuePair(
 						new double[] { outcome.getPoint() }, outcome.getValue());
-				singleRunEvaluations = optimizer.getEvaluations();
+				tracker.evaluations = optimizer.getEvaluations();
 			}
 			double value = result.getValue();
 			if (value == Double.POSITIVE_INFINITY)
@@ -411,11 +1090,31 @@ public class ObjectiveFunctionOptimizer
 			else
 			{
 				System.out.print("optimum " + result.getValue());
+				if (basins != null && numVariables > 1)
+				{
+					basins.addOptimum(result);
+				}
 			}
 		}
+		catch (KnownBasinException e)
+		{
+			result = e.getBasin().getOptimum();
+			System.out.print("abandoned after " + tracker.evaluations
+					+ " evaluations, in basin of optimum "
+					+ result.getValue());
+		}
 		catch (TooManyEvaluationsException e)
 		{
-			System.out.print("Exception: " + e.getMessage());
+			if (keepBest && tracker.best != null)
+			{
+				result = tracker.best;
+				System.out.print("best " + result.getValue() + " after "
+						+ tracker.evaluations + " evaluations");
+			}
+			else
+			{
+				System.out.print("Exception: " + e.getMessage());
+			}
 		}
 		// Thrown by BOBYQA for no apparent reason: a bug?
 		catch (NoSuchElementException e)
@@ -429,12 +1128,294 @@ public class ObjectiveFunctionOptimizer
 		}
 		finally
 		{
+			singleRunEvaluations = tracker.evaluations;
 			System.out.println(" at start point " + Arrays.toString(nextStart));
 		}
 
 		return result;
 	}
 
+	/**
+	 * Save checkpoints of subsequent optimizations to a file: after the first
+	 * stage of a two-stage optimization, and after each start of a multi-start
+	 * optimization, but no more often than a specified interval. The file is
+	 * deleted when an optimization completes. Screened multi-start
+	 * optimizations are not checkpointed.
+	 * 
+	 * @param file
+	 *            - file for checkpoints, or {@code null} for no checkpoints.
+	 * @param intervalSeconds
+	 *            - minimum time between checkpoints within a phase.
+	 */
+	public static void setCheckpointFile(File file, double intervalSeconds)
+	{
+		checkpointFile = file;
+		checkpointInterval = (long) (1000.0 * intervalSeconds);
+	}
+
+	public static File getCheckpointFile()
+	{
+		return checkpointFile;
+	}
+
+	/**
+	 * Resume an optimization from a checkpoint saved by an earlier, interrupted
+	 * call to optimizeObjectiveFunction. The objective function must be built
+	 * as it was for the interrupted optimization, from the same instrument,
+	 * tuning and constraints. Further checkpoints are saved to the same file.
+	 * 
+	 * @param objective
+	 *            - objective function to optimize
+	 * @param optimizerType
+	 *            - type of optimizer to use
+	 * @param file
+	 *            - checkpoint file.
+	 * @throws IOException
+	 *             if the checkpoint cannot be read, or does not match the
+	 *             objective function.
+	 */
+	public static boolean resumeObjectiveFunction(
+			BaseObjectiveFunction objective,
+			BaseObjectiveFunction.OptimizerType optimizerType, File file)
+			throws IOException
+	{
+		OptimizationCheckpoint saved = OptimizationCheckpoint.load(file);
+		try
+		{
+			saved.checkObjective(objective);
+		}
+		catch (RuntimeException e)
+		{
+			throw new IOException(e.getMessage());
+		}
+		if (checkpointFile == null || !checkpointFile.equals(file))
+		{
+			setCheckpointFile(file, 0.001 * checkpointInterval);
+		}
+		resumeState = saved;
+		return optimizeObjectiveFunction(objective, optimizerType);
+	}
+
+	protected static void startCheckpoints(BaseObjectiveFunction objective)
+	{
+		checkpoint = null;
+		if (checkpointFile != null)
+		{
+			checkpoint = new OptimizationCheckpoint(objective);
+			if (resumeState != null)
+			{
+				checkpoint = resumeState;
+				objective.addEvaluations(checkpoint.getEvaluationsDone(),
+						checkpoint.getTuningsDone());
+				System.out.println("Resuming optimization from "
+						+ checkpointFile.getPath());
+			}
+		}
+		resumeState = null;
+		lastCheckpointTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Save the current checkpoint, if checkpoints are enabled.
+	 * 
+	 * @param force
+	 *            - if true, save regardless of the checkpoint interval.
+	 */
+	protected static void saveCheckpoint(BaseObjectiveFunction objective,
+			boolean force)
+	{
+		if (checkpoint == null)
+		{
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if (!force && now - lastCheckpointTime < checkpointInterval)
+		{
+			return;
+		}
+		checkpoint.setEvaluations(objective);
+		try
+		{
+			checkpoint.save(checkpointFile);
+			lastCheckpointTime = now;
+		}
+		catch (IOException e)
+		{
+			System.out.println("Cannot save checkpoint: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * An optimization has completed: its checkpoint is no longer needed.
+	 */
+	protected static void endCheckpoints()
+	{
+		if (checkpoint != null)
+		{
+			checkpointFile.delete();
+		}
+		checkpoint = null;
+	}
+
+	/**
+	 * Send the local searches of subsequent multi-start optimizations, and the
+	 * evaluations for screening multi-start candidates, to worker processes.
+	 * Used only for objective functions whose objective factory is
+	 * Serializable. Local searches from distributed starts do not take part
+	 * in basin clustering.
+	 * 
+	 * @param workers
+	 *            - host and port of each OptimizationWorker, or {@code null}
+	 *            to do all the work in this process.
+	 * @param secret
+	 *            - secret shared with the workers; see SharedSecretHandshake.
+	 */
+	public static void setDistributedWorkers(List<InetSocketAddress> workers,
+			byte[] secret)
+	{
+		if (workers != null && !workers.isEmpty())
+		{
+			// Check the secret now, rather than at the next optimization.
+			new SharedSecretHandshake(secret);
+		}
+		distributedWorkers = workers;
+		workerSecret = secret == null ? null : secret.clone();
+	}
+
+	public static List<InetSocketAddress> getDistributedWorkers()
+	{
+		return distributedWorkers;
+	}
+
+	/**
+	 * @return a coordinator for distributing work on the objective function,
+	 *         or {@code null} if the work is to be done in this process.
+	 */
+	protected static OptimizationCoordinator getCoordinator(
+			BaseObjectiveFunction objective)
+	{
+		if (distributedWorkers == null || distributedWorkers.isEmpty()
+				|| !(objective.getObjectiveFactory() instanceof Serializable))
+		{
+			return null;
+		}
+		return new OptimizationCoordinator(distributedWorkers,
+				objective.getObjectiveFactory(), workerSecret);
+	}
+
+	/**
+	 * If the objective function calls for it, start clustering the local
+	 * searches of a multi-start optimization by basin of attraction.
+	 */
+	protected static void startBasinClustering(BaseObjectiveFunction objective)
+	{
+		basins = null;
+		if (objective.getBasinAttractionRadius() > 0.0)
+		{
+			basins = new BasinClusterer(objective.getLowerBounds(),
+					objective.getUpperBounds(),
+					objective.getBasinAttractionRadius());
+		}
+	}
+
+	/**
+	 * Report the distinct optima found since startBasinClustering, and stop
+	 * clustering.
+	 */
+	protected static void endBasinClustering()
+	{
+		if (basins != null)
+		{
+			basins.printBasins();
+		}
+		lastBasins = basins;
+		basins = null;
+	}
+
+	/**
+	 * Pass-through objective function that records the number of
+	 * evaluations, the first value, and the best point evaluated.
+	 */
+	protected static class BestPointTracker implements MultivariateFunction
+	{
+		protected final MultivariateFunction function;
+		protected PointValuePair best = null;
+		protected double firstValue = Double.NaN;
+		protected int evaluations = 0;
+
+		public BestPointTracker(MultivariateFunction function)
+		{
+			this.function = function;
+		}
+
+		@Override
+		public double value(double[] point)
+		{
+			double value = function.value(point);
+			if (++evaluations == 1)
+			{
+				firstValue = value;
+			}
+			if (best == null || value < best.getValue())
+			{
+				best = new PointValuePair(point, value);
+				if (basins != null)
+				{
+					basins.checkPoint(point, value);
+				}
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * Wrap an objective function for an optimizer that can use bounded
+	 * evaluation, if the objective function calls for it.
+	 * 
+	 * @param cutoffRatio
+	 *            - cutoff, as a multiple of the best value so far.
+	 */
+	protected static MultivariateFunction boundedFunction(
+			BaseObjectiveFunction objective, double cutoffRatio)
+	{
+		if (objective.isBoundedEvaluation())
+		{
+			return new NormCutoffTracker(objective, cutoffRatio, initialNorm);
+		}
+		return objective;
+	}
+
+	/**
+	 * Pass-through objective function that sets the cutoff for bounded
+	 * evaluation from the best value found so far.
+	 */
+	protected static class NormCutoffTracker implements MultivariateFunction
+	{
+		protected final BaseObjectiveFunction objective;
+		protected final double cutoffRatio;
+		protected double bestValue;
+
+		public NormCutoffTracker(BaseObjectiveFunction objective,
+				double cutoffRatio, double startValue)
+		{
+			this.objective = objective;
+			this.cutoffRatio = cutoffRatio;
+			this.bestValue = startValue;
+		}
+
+		@Override
+		public double value(double[] point)
+		{
+			objective.setNormCutoff(cutoffRatio * bestValue);
+			double value = objective.value(point);
+			if (value < bestValue)
+			{
+				bestValue = value;
+			}
+			return value;
+		}
+	}
+
 	/**
 	 * Sort PointValuePairs from best to worst, followed by {@code null}
 	 * elements.
@@ -480,4 +1461,32 @@ public class ObjectiveFunctionOptimizer
 	{
 		return finalNorm / initialNorm;
 	}
+
+	/**
+	 * @return number of local searches started by the most recent
+	 *         multi-start optimization, including those run by workers.
+	 */
+	public static int getNumberOfLocalSearches()
+	{
+		return localSearches;
+	}
+
+	/**
+	 * @return number of candidate starts that the most recent screened
+	 *         multi-start optimization evaluated but did not search from.
+	 */
+	public static int getNumberOfScreenedOutStarts()
+	{
+		return screenedOutStarts;
+	}
+
+	/**
+	 * @return distinct optima found by the most recent multi-start
+	 *         optimization that clustered its searches by basin, or
+	 *         {@code null} if it did not cluster them.
+	 */
+	public static BasinClusterer getBasins()
+	{
+		return lastBasins;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,277 @@
+/**
+ * Saved state of a long-running optimization, for resuming it later.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.commons.math3.optim.PointValuePair;
+
+import com.wwidesigner.optimization.distributed.RestrictedObjectInputStream;
+
+/**
+ * State of an optimization in ObjectiveFunctionOptimizer, saved between
+ * phases of a two-stage optimization and after each start of a multi-start
+ * optimization. Saved in Java serialized form.
+ */
+public class OptimizationCheckpoint implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	// Phases of an optimization.
+	public static final int FIRST_STAGE = 1; // Multi-start, or first stage of
+												// a two-stage optimization.
+	public static final int SECOND_STAGE = 2; // Final run with the original
+												// evaluator.
+	// With an evaluator cascade, phase n + 1 follows completion of stage n.
+
+	// Identification of the objective function, to check on resume.
+	protected String objectiveClass;
+	protected int nrDimensions;
+
+	protected int phase = FIRST_STAGE;
+
+	// Multi-start progress.
+	protected int startsCompleted = 0;
+	protected double[][] optimumPoints = new double[0][];
+	protected double[] optimumValues = new double[0];
+	protected int rangeProcessorPosition = 0; // Vectors taken from the
+												// range processor.
+	protected double[] nextStart;
+	protected int multiStartEvaluations = 0; // Evaluations counted against
+												// the multi-start budget.
+
+	// Overall progress.
+	protected int evaluationsDone = 0;
+	protected int tuningsDone = 0;
+	protected double[] bestPoint;
+	protected double bestValue = Double.POSITIVE_INFINITY;
+
+	public OptimizationCheckpoint(BaseObjectiveFunction objective)
+	{
+		objectiveClass = objective.getClass().getName();
+		nrDimensions = objective.getNrDimensions();
+	}
+
+	/**
+	 * Check that this checkpoint was saved from an objective function like
+	 * the one specified.
+	 *
+	 * @throws RuntimeException
+	 *             if the objective function does not match.
+	 */
+	public void checkObjective(BaseObjectiveFunction objective)
+	{
+		if (!objectiveClass.equals(objective.getClass().getName())
+				|| nrDimensions != objective.getNrDimensions())
+		{
+			throw new RuntimeException("Checkpoint is for " + objectiveClass
+					+ " with " + nrDimensions + " dimensions, not "
+					+ objective.getClass().getName() + " with "
+					+ objective.getNrDimensions() + " dimensions.");
+		}
+	}
+
+	/**
+	 * Record the outcome of a multi-start run.
+	 *
+	 * @param optimum
+	 *            - best point and value from the start, or null if the start
+	 *            found no valid solution.
+	 */
+	public void addOptimum(PointValuePair optimum)
+	{
+		int nrOptima = optimumValues.length;
+		double[][] points = new double[nrOptima + 1][];
+		double[] values = new double[nrOptima + 1];
+		System.arraycopy(optimumPoints, 0, points, 0, nrOptima);
+		System.arraycopy(optimumValues, 0, values, 0, nrOptima);
+		if (optimum == null)
+		{
+			values[nrOptima] = Double.NaN;
+		}
+		else
+		{
+			points[nrOptima] = optimum.getPoint();
+			values[nrOptima] = optimum.getValue();
+			if (optimum.getValue() < bestValue)
+			{
+				bestValue = optimum.getValue();
+				bestPoint = optimum.getPoint();
+			}
+		}
+		optimumPoints = points;
+		optimumValues = values;
+		++startsCompleted;
+	}
+
+	/**
+	 * @return optimum from start nr, or null if the start found no valid
+	 *         solution.
+	 */
+	public PointValuePair getOptimum(int startNr)
+	{
+		if (optimumPoints[startNr] == null)
+		{
+			return null;
+		}
+		return new PointValuePair(optimumPoints[startNr],
+				optimumValues[startNr]);
+	}
+
+	public void setEvaluations(BaseObjectiveFunction objective)
+	{
+		evaluationsDone = objective.getNumberOfEvaluations();
+		tuningsDone = objective.getNumberOfTunings();
+	}
+
+	public int getPhase()
+	{
+		return phase;
+	}
+
+	public void setPhase(int phase)
+	{
+		this.phase = phase;
+	}
+
+	public int getStartsCompleted()
+	{
+		return startsCompleted;
+	}
+
+	public int getRangeProcessorPosition()
+	{
+		return rangeProcessorPosition;
+	}
+
+	public void setRangeProcessorPosition(int rangeProcessorPosition)
+	{
+		this.rangeProcessorPosition = rangeProcessorPosition;
+	}
+
+	public double[] getNextStart()
+	{
+		return nextStart;
+	}
+
+	public void setNextStart(double[] nextStart)
+	{
+		this.nextStart = nextStart.clone();
+	}
+
+	public int getMultiStartEvaluations()
+	{
+		return multiStartEvaluations;
+	}
+
+	public void setMultiStartEvaluations(int multiStartEvaluations)
+	{
+		this.multiStartEvaluations = multiStartEvaluations;
+	}
+
+	public int getEvaluationsDone()
+	{
+		return evaluationsDone;
+	}
+
+	public int getTuningsDone()
+	{
+		return tuningsDone;
+	}
+
+	public double[] getBestPoint()
+	{
+		return bestPoint;
+	}
+
+	public double getBestValue()
+	{
+		return bestValue;
+	}
+
+	public void setBest(double[] point, double value)
+	{
+		bestPoint = point.clone();
+		bestValue = value;
+	}
+
+	/**
+	 * Write the checkpoint to a file. Writes to a temporary file first, then
+	 * renames it, so that an interrupted save leaves the prior checkpoint
+	 * intact.
+	 */
+	public void save(File file) throws IOException
+	{
+		File tempFile = new File(file.getPath() + ".tmp");
+		ObjectOutputStream out = new ObjectOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try
+		{
+			out.writeObject(this);
+		}
+		finally
+		{
+			out.close();
+		}
+		Files.move(tempFile.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Read a checkpoint saved by save(). Checkpoint files may sit in shared
+	 * directories, so the file may hold only a checkpoint: any other class
+	 * is refused before it is loaded.
+	 */
+	public static OptimizationCheckpoint load(File file) throws IOException
+	{
+		ObjectInputStream in = new RestrictedObjectInputStream(
+				new BufferedInputStream(new FileInputStream(file)),
+				OptimizationCheckpoint.class);
+		try
+		{
+			Object checkpoint = in.readObject();
+			if (!(checkpoint instanceof OptimizationCheckpoint))
+			{
+				throw new IOException("Not a checkpoint file: "
+						+ file.getPath());
+			}
+			return (OptimizationCheckpoint) checkpoint;
+		}
+		catch (ClassNotFoundException e)
+		{
+			throw new IOException("Not a checkpoint file: " + file.getPath(),
+					e);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,427 @@
+/**
+ * Objective function that scores a geometry across several playing conditions.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.modelling.InstrumentCalculator;
+import com.wwidesigner.note.Tuning;
+
+/**
+ * Objective function for robust optimization: scores each geometry across a
+ * set of scenarios, such as several temperatures and several blowing levels,
+ * as the weighted mean or the weighted worst case of the scenario error
+ * norms.
+ * <p>
+ * Each scenario is an ordinary objective function, with its own evaluator,
+ * and all must optimize the same geometry values. The first scenario is the
+ * nominal one: it supplies the bounds and constraints, and its instrument
+ * holds the optimized geometry.
+ * <p>
+ * Scenarios that share an InstrumentCalculator, for instance the same air
+ * properties at different blowing levels, form a group. Within a group, the
+ * geometry is set, and the instrument components updated, only once for each
+ * point, and the calculator's frequency-independent mouthpiece values carry
+ * over from one scenario to the next. Groups run concurrently, so each group
+ * must have its own calculator and instrument; the constructor rejects
+ * groups that share an instrument. Scenario calculators can
+ * share PhysicalParameters from PhysicalParametersCache.
+ * <p>
+ * The error vector is the concatenation of the scenario error vectors, in
+ * scenario order. Bounded evaluation is not supported.
+ */
+public class RobustObjectiveFunction extends BaseObjectiveFunction
+{
+	public enum Aggregation
+	{
+		WEIGHTED_MEAN, WORST_CASE
+	}
+
+	protected BaseObjectiveFunction[] scenarios;
+	protected double[] weights;
+	protected Aggregation aggregation;
+	// Indexes of the scenarios in each group; the first scenario of each
+	// group sets the geometry for the group.
+	protected List<int[]> groups;
+	// Offset of each scenario's errors in the combined error vector.
+	protected int[] offsets;
+	protected int maxThreads = Runtime.getRuntime().availableProcessors();
+	protected ExecutorService executor;
+
+	/**
+	 * Create a robust objective function with equal scenario weights.
+	 * @param scenarios - objective functions for each scenario; the first is
+	 *            the nominal scenario.
+	 * @param aggregation - how to combine the scenario norms.
+	 */
+	public RobustObjectiveFunction(List<BaseObjectiveFunction> scenarios,
+			Aggregation aggregation)
+	{
+		this(scenarios, null, aggregation);
+	}
+
+	/**
+	 * Create a robust objective function.
+	 * @param scenarios - objective functions for each scenario; the first is
+	 *            the nominal scenario.
+	 * @param weights - relative weight of each scenario, or null for equal
+	 *            weights.
+	 * @param aggregation - how to combine the scenario norms.
+	 */
+	public RobustObjectiveFunction(List<BaseObjectiveFunction> scenarios,
+			double[] weights, Aggregation aggregation)
+	{
+		super(scenarios.get(0).getCalculator(), new Tuning(), scenarios.get(
+				0).getEvaluator());
+		BaseObjectiveFunction nominal = scenarios.get(0);
+		this.scenarios = scenarios.toArray(new BaseObjectiveFunction[scenarios
+				.size()]);
+		if (weights == null)
+		{
+			this.weights = new double[scenarios.size()];
+			Arrays.fill(this.weights, 1.0);
+		}
+		else
+		{
+			if (weights.length != scenarios.size())
+			{
+				throw new DimensionMismatchException(weights.length,
+						scenarios.size());
+			}
+			this.weights = weights.clone();
+		}
+		this.aggregation = aggregation;
+		fingeringTargets = nominal.fingeringTargets;
+		nrDimensions = nominal.getNrDimensions();
+		optimizerType = nominal.getOptimizerType();
+		maxEvaluations = nominal.getMaxEvaluations();
+		rangeProcessor = nominal.getRangeProcessor();
+		feasibilityCheck = nominal.isFeasibilityCheck();
+		holeOverlapCheck = nominal.isHoleOverlapCheck();
+		setConstraints();
+		lowerBounds = nominal.getLowerBounds();
+		upperBounds = nominal.getUpperBounds();
+
+		groups = new ArrayList<int[]>();
+		List<InstrumentCalculator> groupCalculators = new ArrayList<InstrumentCalculator>();
+		List<Instrument> groupInstruments = new ArrayList<Instrument>();
+		offsets = new int[this.scenarios.length + 1];
+		for (int s = 0; s < this.scenarios.length; ++s)
+		{
+			BaseObjectiveFunction scenario = this.scenarios[s];
+			if (scenario.getNrDimensions() != nrDimensions)
+			{
+				throw new DimensionMismatchException(
+						scenario.getNrDimensions(), nrDimensions);
+			}
+			// Errors are cached here, for all scenarios together.
+			scenario.setErrorVectorCache(null);
+			offsets[s + 1] = offsets[s] + scenario.fingeringTargets.size();
+
+			int g = groupCalculators.indexOf(scenario.getCalculator());
+			if (g < 0)
+			{
+				Instrument instrument = scenario.getCalculator()
+						.getInstrument();
+				for (Instrument groupInstrument : groupInstruments)
+				{
+					if (groupInstrument == instrument)
+					{
+						throw new RuntimeException("Scenario " + s
+								+ " shares an instrument, but not a calculator,"
+								+ " with an earlier scenario.");
+					}
+				}
+				groupCalculators.add(scenario.getCalculator());
+				groupInstruments.add(instrument);
+				groups.add(new int[] { s });
+			}
+			else
+			{
+				int[] group = Arrays.copyOf(groups.get(g),
+						groups.get(g).length + 1);
+				group[group.length - 1] = s;
+				groups.set(g, group);
+			}
+		}
+	}
+
+	public BaseObjectiveFunction[] getScenarios()
+	{
+		return scenarios;
+	}
+
+	public Aggregation getAggregation()
+	{
+		return aggregation;
+	}
+
+	public int getNumberOfGroups()
+	{
+		return groups.size();
+	}
+
+	/**
+	 * Set the maximum number of scenario groups to evaluate at once.
+	 */
+	public void setMaxThreads(int maxThreads)
+	{
+		this.maxThreads = Math.max(maxThreads, 1);
+		shutdown();
+	}
+
+	/**
+	 * Stop the threads used to evaluate scenario groups. They are restarted
+	 * if needed.
+	 */
+	public void shutdown()
+	{
+		if (executor != null)
+		{
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Set the geometry of the nominal scenario. The geometry of other
+	 * scenario groups is set as they are evaluated.
+	 */
+	@Override
+	public void setGeometryPoint(double[] point)
+	{
+		scenarios[0].setGeometryPoint(point);
+	}
+
+	@Override
+	public double[] getGeometryPoint()
+	{
+		return scenarios[0].getGeometryPoint();
+	}
+
+	@Override
+	public void setLowerBounds(double[] lowerBounds)
+	{
+		super.setLowerBounds(lowerBounds);
+		for (BaseObjectiveFunction scenario : scenarios)
+		{
+			scenario.setLowerBounds(lowerBounds);
+		}
+	}
+
+	@Override
+	public void setUpperBounds(double[] upperBounds)
+	{
+		super.setUpperBounds(upperBounds);
+		for (BaseObjectiveFunction scenario : scenarios)
+		{
+			scenario.setUpperBounds(upperBounds);
+		}
+	}
+
+	/**
+	 * Bounded evaluation is not supported across scenarios: value() always
+	 * calculates complete error vectors.
+	 */
+	@Override
+	public void setBoundedEvaluation(boolean boundedEvaluation)
+	{
+		this.boundedEvaluation = false;
+	}
+
+	/**
+	 * @return the total number of weighted notes, over all scenarios.
+	 */
+	@Override
+	public int getNrNotes()
+	{
+		int nrNotes = 0;
+		for (BaseObjectiveFunction scenario : scenarios)
+		{
+			nrNotes += scenario.getNrNotes();
+		}
+		return nrNotes;
+	}
+
+	/**
+	 * Calculate errors for every scenario, with the nominal geometry already
+	 * set to point.
+	 *
+	 * @return concatenation of the scenario error vectors.
+	 */
+	@Override
+	protected double[] calcErrorVector(double[] point)
+	{
+		double[] errorVector = null;
+		if (errorVectorCache != null)
+		{
+			errorVector = errorVectorCache.get(point, evaluator);
+		}
+		lastErrorVectorCached = (errorVector != null);
+		if (errorVector == null)
+		{
+			errorVector = calcScenarioErrors(point);
+			if (errorVectorCache != null)
+			{
+				errorVectorCache.put(point, evaluator, errorVector);
+			}
+		}
+		return errorVector;
+	}
+
+	protected double[] calcScenarioErrors(final double[] point)
+	{
+		final double[] errorVector = new double[offsets[scenarios.length]];
+		int nrThreads = Math.min(maxThreads, groups.size());
+		if (nrThreads <= 1)
+		{
+			for (int g = 0; g < groups.size(); ++g)
+			{
+				calcGroupErrors(g, point, errorVector);
+			}
+			return errorVector;
+		}
+
+		if (executor == null)
+		{
+			executor = Executors.newFixedThreadPool(nrThreads - 1,
+					new ThreadFactory()
+					{
+						public Thread newThread(Runnable r)
+						{
+							Thread thread = new Thread(r);
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		}
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		for (int g = 1; g < groups.size(); ++g)
+		{
+			final int group = g;
+			results.add(executor.submit(new Callable<Integer>()
+			{
+				public Integer call()
+				{
+					calcGroupErrors(group, point, errorVector);
+					return group;
+				}
+			}));
+		}
+		// The nominal group runs on this thread.
+		calcGroupErrors(0, point, errorVector);
+		try
+		{
+			for (Future<Integer> result : results)
+			{
+				result.get();
+			}
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException("Scenario evaluation failed: "
+					+ e.getMessage(), e);
+		}
+		return errorVector;
+	}
+
+	/**
+	 * Calculate errors for the scenarios in one group, storing them in the
+	 * combined error vector.
+	 */
+	protected void calcGroupErrors(int g, double[] point, double[] errorVector)
+	{
+		int[] group = groups.get(g);
+		if (g > 0)
+		{
+			// The nominal geometry is already set.
+			scenarios[group[0]].setGeometryPoint(point);
+		}
+		for (int s : group)
+		{
+			BaseObjectiveFunction scenario = scenarios[s];
+			double[] errors = scenario.getEvaluator().calculateErrorVector(
+					scenario.fingeringTargets);
+			System.arraycopy(errors, 0, errorVector, offsets[s],
+					errors.length);
+		}
+	}
+
+	/**
+	 * @param errorVector - combined error vector, from getErrorVector().
+	 * @return error norm of each scenario.
+	 */
+	public double[] getScenarioNorms(double[] errorVector)
+	{
+		double[] norms = new double[scenarios.length];
+		for (int s = 0; s < scenarios.length; ++s)
+		{
+			norms[s] = scenarios[s].calcNorm(Arrays.copyOfRange(errorVector,
+					offsets[s], offsets[s + 1]));
+		}
+		return norms;
+	}
+
+	/**
+	 * Combine the scenario norms, as a weighted mean or as the largest
+	 * weighted norm.
+	 *
+	 * @param errorVector - combined error vector, from getErrorVector().
+	 */
+	@Override
+	public double calcNorm(double[] errorVector)
+	{
+		double[] norms = getScenarioNorms(errorVector);
+		double norm = 0.0;
+		double totalWeight = 0.0;
+		for (int s = 0; s < norms.length; ++s)
+		{
+			if (aggregation == Aggregation.WORST_CASE)
+			{
+				norm = Math.max(norm, weights[s] * norms[s]);
+			}
+			else
+			{
+				norm += weights[s] * norms[s];
+				totalWeight += weights[s];
+			}
+		}
+		if (aggregation == Aggregation.WEIGHTED_MEAN && totalWeight > 0.0)
+		{
+			norm /= totalWeight;
+		}
+		return norm;
+	}
+
+	@Override
+	protected void setConstraints()
+	{
+		constraints = scenarios[0].getConstraints();
+	}
+}
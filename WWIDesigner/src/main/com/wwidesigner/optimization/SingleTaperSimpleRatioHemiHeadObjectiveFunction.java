@@ -190,6 +190,7 @@ public class SingleTaperSimpleRatioHemiHeadObjectiveFunction extends
 			borePoints.add(newPoint);
 		}
 		calculator.getInstrument().setBorePoint(borePoints);
+		calculator.getInstrument().setHemisphericalHead(true);
 		calculator.getInstrument().updateComponents();
 	}
 
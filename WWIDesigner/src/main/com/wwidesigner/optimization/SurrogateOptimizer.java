@@ -0,0 +1,528 @@
+/**
+ * Optimizer that searches a radial-basis-function model of the error vector.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.math3.analysis.MultivariateFunction;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.DecompositionSolver;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+import org.apache.commons.math3.optim.InitialGuess;
+import org.apache.commons.math3.optim.MaxEval;
+import org.apache.commons.math3.optim.MaxIter;
+import org.apache.commons.math3.optim.PointValuePair;
+import org.apache.commons.math3.optim.SimpleBounds;
+import org.apache.commons.math3.optim.nonlinear.scalar.GoalType;
+import org.apache.commons.math3.optim.nonlinear.scalar.ObjectiveFunction;
+import org.apache.commons.math3.optim.nonlinear.scalar.noderiv.BOBYQAOptimizer;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomGenerator;
+
+/**
+ * Surrogate-model-assisted optimizer, for objective functions whose
+ * evaluators are expensive. After each real evaluation, it fits a cubic
+ * radial basis function interpolant, with a linear tail, to each element of
+ * the error vector over all the geometry points evaluated so far. The
+ * surrogate error norm is the objective function's norm of the interpolated
+ * errors, so the surrogate keeps the sum-of-squares form of the real norm.
+ * <p>
+ * Each iteration proposes one point for real evaluation: the minimum of the
+ * surrogate norm within a box of half-width sigma around the best point,
+ * found with BOBYQA on the surrogate. If that point is too close to a point
+ * already evaluated, the proposal is instead the best of a set of random
+ * perturbations of the best point, scored on a weighted mix of surrogate norm
+ * and distance from evaluated points. Sigma doubles after a run of
+ * successes, and halves after a run of failures; the search stops when sigma
+ * falls below a minimum, or the evaluation budget runs out.
+ * <p>
+ * Work is done in a unit box, scaled from the objective function's bounds.
+ */
+public class SurrogateOptimizer
+{
+	public static final long DEFAULT_SEED = 20140101L;
+	// Initial and limiting box half-widths, as a fraction of the bounds.
+	public static final double INITIAL_SIGMA = 0.1;
+	public static final double MAXIMUM_SIGMA = 0.2;
+	public static final double MINIMUM_SIGMA = 1.0e-4;
+	// Relative improvement needed for a proposal to count as a success.
+	public static final double SUCCESS_TOLERANCE = 1.0e-6;
+	public static final int SUCCESS_LIMIT = 3;
+	// Random candidates per dimension, when the surrogate minimum is
+	// too close to an evaluated point.
+	public static final int CANDIDATES_PER_DIMENSION = 100;
+	// The surrogate is fitted to at most max(MIN_MAX_FIT_POINTS,
+	// 10 * (nrDimensions + 1)) points, to bound the cost of fitting it.
+	public static final int MIN_MAX_FIT_POINTS = 50;
+	// Weights of surrogate norm, against distance, for random candidates.
+	protected static final double[] CANDIDATE_WEIGHTS = { 0.3, 0.5, 0.8,
+			0.95 };
+
+	protected BaseObjectiveFunction objective;
+	protected int nrDimensions;
+	protected int nrNotes;
+	protected double[] lowerBounds;
+	protected double[] upperBounds;
+	protected RandomGenerator random;
+
+	// Points evaluated, in the unit box, with their error vectors and norms.
+	protected List<double[]> points = new ArrayList<double[]>();
+	protected List<double[]> errors = new ArrayList<double[]>();
+	protected List<Double> values = new ArrayList<Double>();
+	// Points where evaluation failed; kept out of the surrogate.
+	protected List<double[]> failedPoints = new ArrayList<double[]>();
+
+	// Surrogate: the points it interpolates, and its coefficients, with
+	// one column for each element of the error vector; one row for each
+	// point, then nrDimensions + 1 rows for the linear tail.
+	protected List<double[]> fitPoints = new ArrayList<double[]>();
+	protected double[][] coefficients;
+
+	protected int bestIndex = -1;
+	protected int evaluations;
+	protected int surrogateFits;
+
+	public SurrogateOptimizer(BaseObjectiveFunction objective)
+	{
+		this(objective, DEFAULT_SEED);
+	}
+
+	public SurrogateOptimizer(BaseObjectiveFunction objective, long seed)
+	{
+		this.objective = objective;
+		nrDimensions = objective.getNrDimensions();
+		nrNotes = objective.getNrNotes();
+		lowerBounds = objective.getLowerBounds();
+		upperBounds = objective.getUpperBounds();
+		random = new MersenneTwister(seed);
+	}
+
+	/**
+	 * Minimize the objective function, starting from a specified point.
+	 *
+	 * @param startPoint
+	 *            - initial geometry, within the bounds.
+	 * @param maxEvaluations
+	 *            - limit on real evaluations of the objective function.
+	 * @return best point and norm found.
+	 */
+	public PointValuePair optimize(double[] startPoint, int maxEvaluations)
+	{
+		double sigma = INITIAL_SIGMA;
+		double[] start = toUnit(startPoint);
+
+		// Initial design: the start point, and a step of sigma along
+		// each axis, away from the nearer bound.
+		evaluate(start);
+		for (int i = 0; i < nrDimensions && evaluations < maxEvaluations; ++i)
+		{
+			double[] point = start.clone();
+			point[i] += (start[i] <= 0.5) ? sigma : -sigma;
+			evaluate(point);
+		}
+		for (int i = 0; i < nrDimensions && evaluations < maxEvaluations; ++i)
+		{
+			double[] point = start.clone();
+			point[i] += (start[i] <= 0.5) ? -sigma : sigma;
+			point[i] = Math.max(0.0, Math.min(1.0, point[i]));
+			if (distanceToNearest(point) > 0.0)
+			{
+				evaluate(point);
+			}
+		}
+
+		int successes = 0;
+		int failures = 0;
+		int failureLimit = Math.max(nrDimensions, 4);
+		int iteration = 0;
+		while (evaluations < maxEvaluations && sigma >= MINIMUM_SIGMA
+				&& bestIndex >= 0)
+		{
+			fitSurrogate();
+			double[] best = points.get(bestIndex);
+			double bestValue = values.get(bestIndex);
+			double[] proposal = minimizeSurrogate(best, sigma);
+			if (proposal == null || distanceToNearest(proposal) < 0.01 * sigma)
+			{
+				double weight = CANDIDATE_WEIGHTS[iteration
+						% CANDIDATE_WEIGHTS.length];
+				proposal = chooseCandidate(best, sigma, weight);
+			}
+			++iteration;
+			double value = evaluate(proposal);
+			if (value < bestValue - SUCCESS_TOLERANCE * Math.abs(bestValue))
+			{
+				failures = 0;
+				if (++successes >= SUCCESS_LIMIT)
+				{
+					sigma = Math.min(2.0 * sigma, MAXIMUM_SIGMA);
+					successes = 0;
+				}
+			}
+			else
+			{
+				successes = 0;
+				if (++failures >= failureLimit)
+				{
+					sigma *= 0.5;
+					failures = 0;
+				}
+			}
+		}
+
+		System.out.println("Surrogate optimizer: " + evaluations
+				+ " real evaluations, " + surrogateFits + " surrogate fits.");
+		if (bestIndex < 0)
+		{
+			return null;
+		}
+		return new PointValuePair(fromUnit(points.get(bestIndex)),
+				values.get(bestIndex));
+	}
+
+	public int getNumberOfEvaluations()
+	{
+		return evaluations;
+	}
+
+	/**
+	 * Evaluate the real objective function at a point in the unit box, and
+	 * record the outcome.
+	 *
+	 * @return error norm, or Double.POSITIVE_INFINITY if evaluation failed.
+	 */
+	protected double evaluate(double[] unitPoint)
+	{
+		++evaluations;
+		double[] errorVector;
+		try
+		{
+			errorVector = objective.getErrorVector(fromUnit(unitPoint));
+		}
+		catch (RuntimeException e)
+		{
+			errorVector = null;
+		}
+		objective.addEvaluations(1, (errorVector == null
+				|| objective.isLastErrorVectorCached()) ? 0 : nrNotes);
+		double value = Double.POSITIVE_INFINITY;
+		if (errorVector != null)
+		{
+			value = objective.calcNorm(errorVector);
+		}
+		if (Double.isNaN(value) || Double.isInfinite(value))
+		{
+			failedPoints.add(unitPoint);
+			return Double.POSITIVE_INFINITY;
+		}
+		points.add(unitPoint);
+		errors.add(errorVector);
+		values.add(value);
+		if (bestIndex < 0 || value < values.get(bestIndex))
+		{
+			bestIndex = values.size() - 1;
+		}
+		return value;
+	}
+
+	/**
+	 * Fit the radial basis function surrogate to the points evaluated: all of
+	 * them, or if there are too many, those nearest the best point.
+	 */
+	protected void fitSurrogate()
+	{
+		int maxPoints = Math.max(MIN_MAX_FIT_POINTS, 10 * (nrDimensions + 1));
+		List<Integer> selected = new ArrayList<Integer>();
+		for (int i = 0; i < points.size(); ++i)
+		{
+			selected.add(i);
+		}
+		if (selected.size() > maxPoints)
+		{
+			final double[] best = points.get(bestIndex);
+			Collections.sort(selected, new Comparator<Integer>()
+			{
+				public int compare(Integer i1, Integer i2)
+				{
+					return Double.compare(distance(best, points.get(i1)),
+							distance(best, points.get(i2)));
+				}
+			});
+			selected = selected.subList(0, maxPoints);
+		}
+		fitPoints.clear();
+		for (int i : selected)
+		{
+			fitPoints.add(points.get(i));
+		}
+
+		int nrPoints = fitPoints.size();
+		int size = nrPoints + nrDimensions + 1;
+		double[][] system = new double[size][size];
+		double[][] rhs = new double[size][nrNotes];
+		for (int i = 0; i < nrPoints; ++i)
+		{
+			double[] pointI = fitPoints.get(i);
+			for (int j = 0; j < i; ++j)
+			{
+				double phi = basis(distance(pointI, fitPoints.get(j)));
+				system[i][j] = phi;
+				system[j][i] = phi;
+			}
+			system[i][nrPoints] = 1.0;
+			system[nrPoints][i] = 1.0;
+			for (int k = 0; k < nrDimensions; ++k)
+			{
+				system[i][nrPoints + 1 + k] = pointI[k];
+				system[nrPoints + 1 + k][i] = pointI[k];
+			}
+			System.arraycopy(errors.get(selected.get(i)), 0, rhs[i], 0,
+					nrNotes);
+		}
+		RealMatrix matrix = new Array2DRowRealMatrix(system, false);
+		DecompositionSolver solver = new LUDecomposition(matrix).getSolver();
+		if (!solver.isNonSingular())
+		{
+			// Too few points, or points in a lower-dimensional subspace.
+			solver = new SingularValueDecomposition(matrix).getSolver();
+		}
+		coefficients = solver.solve(new Array2DRowRealMatrix(rhs, false))
+				.getData();
+		++surrogateFits;
+	}
+
+	/**
+	 * @return surrogate error vector at a point in the unit box.
+	 */
+	protected double[] predictErrors(double[] unitPoint)
+	{
+		int nrFitted = fitPoints.size();
+		double[] prediction = new double[nrNotes];
+		for (int i = 0; i < nrFitted; ++i)
+		{
+			double phi = basis(distance(unitPoint, fitPoints.get(i)));
+			double[] row = coefficients[i];
+			for (int n = 0; n < nrNotes; ++n)
+			{
+				prediction[n] += phi * row[n];
+			}
+		}
+		double[] constantRow = coefficients[nrFitted];
+		for (int n = 0; n < nrNotes; ++n)
+		{
+			prediction[n] += constantRow[n];
+		}
+		for (int k = 0; k < nrDimensions; ++k)
+		{
+			double[] row = coefficients[nrFitted + 1 + k];
+			for (int n = 0; n < nrNotes; ++n)
+			{
+				prediction[n] += unitPoint[k] * row[n];
+			}
+		}
+		return prediction;
+	}
+
+	protected double predictNorm(double[] unitPoint)
+	{
+		return objective.calcNorm(predictErrors(unitPoint));
+	}
+
+	/**
+	 * Find the minimum of the surrogate norm within a box of half-width sigma
+	 * around a point, clipped to the unit box.
+	 *
+	 * @return minimum point, or {@code null} if the search failed.
+	 */
+	protected double[] minimizeSurrogate(double[] centre, double sigma)
+	{
+		if (nrDimensions < 2)
+		{
+			// BOBYQA needs at least two dimensions.
+			return null;
+		}
+		double[] lower = new double[nrDimensions];
+		double[] upper = new double[nrDimensions];
+		double minWidth = 1.0;
+		for (int k = 0; k < nrDimensions; ++k)
+		{
+			lower[k] = Math.max(0.0, centre[k] - sigma);
+			upper[k] = Math.min(1.0, centre[k] + sigma);
+			minWidth = Math.min(minWidth, upper[k] - lower[k]);
+		}
+		if (minWidth <= 0.0)
+		{
+			return null;
+		}
+		BOBYQAOptimizer optimizer = new BOBYQAOptimizer(2 * nrDimensions + 1,
+				0.25 * minWidth, 1.0e-4 * MINIMUM_SIGMA);
+		try
+		{
+			PointValuePair outcome = optimizer.optimize(GoalType.MINIMIZE,
+					new ObjectiveFunction(new MultivariateFunction()
+					{
+						@Override
+						public double value(double[] point)
+						{
+							return predictNorm(point);
+						}
+					}), new MaxEval(200 * nrDimensions), MaxIter.unlimited(),
+					new InitialGuess(centre), new SimpleBounds(lower, upper));
+			return outcome.getPoint();
+		}
+		catch (RuntimeException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Choose among random perturbations of a point, favouring a low surrogate
+	 * norm with the specified weight, and distance from evaluated points with
+	 * the remaining weight.
+	 */
+	protected double[] chooseCandidate(double[] centre, double sigma,
+			double weight)
+	{
+		int nrCandidates = CANDIDATES_PER_DIMENSION * nrDimensions;
+		double[][] candidates = new double[nrCandidates][];
+		double[] norms = new double[nrCandidates];
+		double[] distances = new double[nrCandidates];
+		double minNorm = Double.POSITIVE_INFINITY;
+		double maxNorm = Double.NEGATIVE_INFINITY;
+		double minDistance = Double.POSITIVE_INFINITY;
+		double maxDistance = Double.NEGATIVE_INFINITY;
+		for (int c = 0; c < nrCandidates; ++c)
+		{
+			double[] candidate = centre.clone();
+			for (int k = 0; k < nrDimensions; ++k)
+			{
+				candidate[k] += sigma * random.nextGaussian();
+				// Reflect off the bounds.
+				if (candidate[k] < 0.0)
+				{
+					candidate[k] = Math.min(-candidate[k], 1.0);
+				}
+				else if (candidate[k] > 1.0)
+				{
+					candidate[k] = Math.max(2.0 - candidate[k], 0.0);
+				}
+			}
+			candidates[c] = candidate;
+			norms[c] = predictNorm(candidate);
+			distances[c] = distanceToNearest(candidate);
+			minNorm = Math.min(minNorm, norms[c]);
+			maxNorm = Math.max(maxNorm, norms[c]);
+			minDistance = Math.min(minDistance, distances[c]);
+			maxDistance = Math.max(maxDistance, distances[c]);
+		}
+
+		int bestCandidate = 0;
+		double bestScore = Double.POSITIVE_INFINITY;
+		for (int c = 0; c < nrCandidates; ++c)
+		{
+			double normScore = 1.0;
+			if (maxNorm > minNorm)
+			{
+				normScore = (norms[c] - minNorm) / (maxNorm - minNorm);
+			}
+			double distanceScore = 1.0;
+			if (maxDistance > minDistance)
+			{
+				distanceScore = (maxDistance - distances[c])
+						/ (maxDistance - minDistance);
+			}
+			double score = weight * normScore + (1.0 - weight)
+					* distanceScore;
+			if (score < bestScore)
+			{
+				bestScore = score;
+				bestCandidate = c;
+			}
+		}
+		return candidates[bestCandidate];
+	}
+
+	/**
+	 * @return distance from a point in the unit box to the nearest point
+	 *         evaluated.
+	 */
+	protected double distanceToNearest(double[] unitPoint)
+	{
+		double nearest = Double.POSITIVE_INFINITY;
+		for (double[] point : points)
+		{
+			nearest = Math.min(nearest, distance(unitPoint, point));
+		}
+		for (double[] point : failedPoints)
+		{
+			nearest = Math.min(nearest, distance(unitPoint, point));
+		}
+		return nearest;
+	}
+
+	protected static double distance(double[] x, double[] y)
+	{
+		double sum = 0.0;
+		for (int k = 0; k < x.length; ++k)
+		{
+			double diff = x[k] - y[k];
+			sum += diff * diff;
+		}
+		return Math.sqrt(sum);
+	}
+
+	/**
+	 * Cubic radial basis function.
+	 */
+	protected static double basis(double r)
+	{
+		return r * r * r;
+	}
+
+	protected double[] toUnit(double[] point)
+	{
+		double[] unitPoint = new double[nrDimensions];
+		for (int k = 0; k < nrDimensions; ++k)
+		{
+			double range = upperBounds[k] - lowerBounds[k];
+			if (range > 0.0)
+			{
+				unitPoint[k] = (point[k] - lowerBounds[k]) / range;
+			}
+		}
+		return unitPoint;
+	}
+
+	protected double[] fromUnit(double[] unitPoint)
+	{
+		double[] point = new double[nrDimensions];
+		for (int k = 0; k < nrDimensions; ++k)
+		{
+			point[k] = lowerBounds[k] + unitPoint[k]
+					* (upperBounds[k] - lowerBounds[k]);
+		}
+		return point;
+	}
+}
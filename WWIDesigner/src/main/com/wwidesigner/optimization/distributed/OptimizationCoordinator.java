@@ -0,0 +1,395 @@
+/**
+ * Client that farms out optimization work to worker processes.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.math3.optim.PointValuePair;
+
+import com.wwidesigner.optimization.BaseObjectiveFunction;
+import com.wwidesigner.optimization.ObjectiveFunctionFactory;
+
+/**
+ * Distributes the local searches of a multi-start optimization, or batches of
+ * objective function evaluations, among OptimizationWorkers. Each worker
+ * builds its own copy of the objective function from a serializable
+ * ObjectiveFunctionFactory. Work is handed out one request at a time, so
+ * faster workers take on more of it. If a worker fails, its connection
+ * drops, or it does not reply within the request timeout, its request is
+ * reassigned to another worker; if no workers remain, the outstanding
+ * requests are run locally.
+ * <p>
+ * The coordinator authenticates each worker with a SharedSecretHandshake, and
+ * accepts only WorkResults from it; see OptimizationWorker for the trust
+ * model.
+ */
+public class OptimizationCoordinator
+{
+	public static final int CONNECT_TIMEOUT = 5000; // Milliseconds.
+	public static final int DEFAULT_REQUEST_TIMEOUT = 600000; // Milliseconds.
+
+	protected List<InetSocketAddress> workerAddresses;
+	protected ObjectiveFunctionFactory factory;
+	protected SharedSecretHandshake handshake;
+	// Longest wait for any one reply from a worker, in milliseconds.
+	protected int requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+
+	// State of the requests in progress.
+	protected LinkedList<WorkRequest> pending;
+	protected WorkResult[] results;
+	protected int inFlight;
+
+	/**
+	 * @param workerAddresses
+	 *            - host and port of each worker.
+	 * @param factory
+	 *            - builds the objective function; must be Serializable, and
+	 *            its classes available to, and accepted by, the workers.
+	 * @param secret
+	 *            - secret shared with the workers; see SharedSecretHandshake.
+	 */
+	public OptimizationCoordinator(List<InetSocketAddress> workerAddresses,
+			ObjectiveFunctionFactory factory, byte[] secret)
+	{
+		if (!(factory instanceof Serializable))
+		{
+			throw new RuntimeException("Objective factory "
+					+ factory.getClass().getSimpleName()
+					+ " cannot be sent to workers.");
+		}
+		this.workerAddresses = workerAddresses;
+		this.factory = factory;
+		this.handshake = new SharedSecretHandshake(secret);
+	}
+
+	public int getRequestTimeout()
+	{
+		return requestTimeout;
+	}
+
+	/**
+	 * @param requestTimeout
+	 *            - longest wait, in milliseconds, for a worker to reply to a
+	 *            request, before giving the request to another worker. Must
+	 *            allow for the longest local search.
+	 */
+	public void setRequestTimeout(int requestTimeout)
+	{
+		this.requestTimeout = requestTimeout;
+	}
+
+	/**
+	 * Run a BOBYQA search from each of a set of start points.
+	 *
+	 * @param objective
+	 *            - objective function whose statistics are updated with the
+	 *            work done.
+	 * @param maxEvaluations
+	 *            - evaluation budget for each search.
+	 * @param firstStage
+	 *            - if true, and the objective function calls for a two-stage
+	 *            optimization, search with the first-stage evaluator.
+	 * @return best point and value from each start, or {@code null} where a
+	 *         start found no valid solution.
+	 */
+	public PointValuePair[] localSearches(BaseObjectiveFunction objective,
+			double[][] startPoints, int maxEvaluations, boolean firstStage)
+	{
+		List<WorkRequest> requests = new ArrayList<WorkRequest>();
+		for (int i = 0; i < startPoints.length; ++i)
+		{
+			requests.add(WorkRequest.localSearch(i, startPoints[i],
+					maxEvaluations, firstStage));
+		}
+		WorkResult[] outcomes = runRequests(objective, requests);
+
+		PointValuePair[] optima = new PointValuePair[startPoints.length];
+		for (int i = 0; i < optima.length; ++i)
+		{
+			optima[i] = outcomes[i].getOptimum();
+		}
+		return optima;
+	}
+
+	/**
+	 * Evaluate the objective function at each of a set of points, in batches
+	 * spread across the workers.
+	 *
+	 * @return objective function value at each point, or
+	 *         Double.POSITIVE_INFINITY where the evaluation failed.
+	 */
+	public double[] evaluate(BaseObjectiveFunction objective,
+			double[][] points, boolean firstStage)
+	{
+		// Two batches per worker, to even out the load.
+		int nrBatches = Math.min(2 * workerAddresses.size(), points.length);
+		nrBatches = Math.max(nrBatches, 1);
+		int batchSize = (points.length + nrBatches - 1) / nrBatches;
+		List<WorkRequest> requests = new ArrayList<WorkRequest>();
+		for (int first = 0; first < points.length; first += batchSize)
+		{
+			int size = Math.min(batchSize, points.length - first);
+			double[][] batch = new double[size][];
+			System.arraycopy(points, first, batch, 0, size);
+			requests.add(WorkRequest.evaluate(requests.size(), batch,
+					firstStage));
+		}
+		WorkResult[] outcomes = runRequests(objective, requests);
+
+		double[] values = new double[points.length];
+		int i = 0;
+		for (int r = 0; r < outcomes.length; ++r)
+		{
+			WorkResult outcome = outcomes[r];
+			int size = requests.get(r).getPoints().length;
+			for (int j = 0; j < size; ++j, ++i)
+			{
+				if (outcome.getValues() == null)
+				{
+					values[i] = Double.POSITIVE_INFINITY;
+				}
+				else
+				{
+					values[i] = outcome.getValues()[j];
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Run a set of requests on the workers, and wait for all of them to
+	 * complete.
+	 *
+	 * @return result of each request, indexed by request id.
+	 */
+	protected WorkResult[] runRequests(BaseObjectiveFunction objective,
+			List<WorkRequest> requests)
+	{
+		pending = new LinkedList<WorkRequest>(requests);
+		results = new WorkResult[requests.size()];
+		inFlight = 0;
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(
+				workerAddresses.size(), 1));
+		List<Future<Integer>> workers = new ArrayList<Future<Integer>>();
+		for (final InetSocketAddress address : workerAddresses)
+		{
+			workers.add(executor.submit(new Callable<Integer>()
+			{
+				public Integer call()
+				{
+					return serveWorker(address);
+				}
+			}));
+		}
+		int requestsDone = 0;
+		try
+		{
+			for (Future<Integer> worker : workers)
+			{
+				requestsDone += worker.get();
+			}
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException("Distributed optimization failed: "
+					+ e.getMessage());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+
+		if (!pending.isEmpty())
+		{
+			System.out.println("No workers available, running "
+					+ pending.size() + " requests locally.");
+			runLocally();
+		}
+		else
+		{
+			System.out.println(requestsDone + " requests completed by "
+					+ workerAddresses.size() + " workers.");
+		}
+
+		for (WorkResult result : results)
+		{
+			objective.addEvaluations(result.getEvaluations(),
+					result.getTunings());
+			if (result.getError() != null)
+			{
+				System.out.println("Request " + result.getRequestId()
+						+ " failed: " + result.getError());
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Hand out requests to one worker until none remain.
+	 *
+	 * @return number of requests the worker completed.
+	 */
+	protected int serveWorker(InetSocketAddress address)
+	{
+		int requestsDone = 0;
+		WorkRequest request = null;
+		Socket socket = new Socket();
+		try
+		{
+			socket.connect(address, CONNECT_TIMEOUT);
+			// A worker that hangs, but keeps its connection open, gets a
+			// SocketTimeoutException, and loses its request like any other.
+			socket.setSoTimeout(requestTimeout);
+			handshake.runAsCoordinator(socket);
+			ObjectOutputStream out = new ObjectOutputStream(
+					new BufferedOutputStream(socket.getOutputStream()));
+			out.writeObject(factory);
+			out.flush();
+			ObjectInputStream in = new RestrictedObjectInputStream(
+					new BufferedInputStream(socket.getInputStream()),
+					WorkResult.class);
+			WorkResult reply = (WorkResult) in.readObject();
+			if (reply.getRequestId() != OptimizationWorker.JOB_ACCEPTED)
+			{
+				throw new IOException("Worker did not accept the job");
+			}
+			if (reply.getError() != null)
+			{
+				throw new IOException(reply.getError());
+			}
+
+			while ((request = nextRequest()) != null)
+			{
+				out.writeObject(request);
+				out.reset();
+				out.flush();
+				WorkResult result = (WorkResult) in.readObject();
+				// Results are stored by request id, so a reply to any other
+				// request would take the wrong slot.
+				if (!result.isReplyTo(request))
+				{
+					throw new IOException("Worker reply does not match request "
+							+ request.getRequestId());
+				}
+				completed(result);
+				request = null;
+				++requestsDone;
+			}
+			out.writeObject(null);
+			out.flush();
+		}
+		catch (Exception e)
+		{
+			System.out.print("Worker " + address + " lost: " + e);
+			if (request != null)
+			{
+				System.out.print("; reassigning request "
+						+ request.getRequestId());
+				reassign(request);
+			}
+			System.out.println(".");
+		}
+		finally
+		{
+			try
+			{
+				socket.close();
+			}
+			catch (IOException e)
+			{
+			}
+		}
+		return requestsDone;
+	}
+
+	/**
+	 * @return next request to send to a worker, or {@code null} if all
+	 *         requests are complete. While other workers have requests in
+	 *         progress, waits in case they fail and their requests need
+	 *         reassigning.
+	 */
+	protected synchronized WorkRequest nextRequest()
+			throws InterruptedException
+	{
+		while (pending.isEmpty() && inFlight > 0)
+		{
+			wait();
+		}
+		WorkRequest request = pending.poll();
+		if (request != null)
+		{
+			++inFlight;
+		}
+		return request;
+	}
+
+	protected synchronized void completed(WorkResult result)
+	{
+		results[result.getRequestId()] = result;
+		--inFlight;
+		notifyAll();
+	}
+
+	protected synchronized void reassign(WorkRequest request)
+	{
+		pending.addFirst(request);
+		--inFlight;
+		notifyAll();
+	}
+
+	/**
+	 * Run the outstanding requests on a local copy of the objective function.
+	 */
+	protected void runLocally()
+	{
+		BaseObjectiveFunction localObjective;
+		try
+		{
+			localObjective = factory.createObjectiveFunction();
+		}
+		catch (Exception e)
+		{
+			throw new RuntimeException("Cannot build objective function: "
+					+ e.getMessage(), e);
+		}
+		WorkRequest request;
+		while ((request = pending.poll()) != null)
+		{
+			WorkResult result = OptimizationWorker.process(localObjective,
+					request);
+			results[result.getRequestId()] = result;
+		}
+	}
+}
@@ -0,0 +1,401 @@
+/**
+ * Server that performs optimization work on behalf of a coordinator.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.wwidesigner.modelling.EvaluatorInterface;
+import com.wwidesigner.optimization.BaseObjectiveFunction;
+import com.wwidesigner.optimization.ObjectiveFunctionFactory;
+import com.wwidesigner.optimization.ObjectiveFunctionOptimizer;
+
+/**
+ * Accepts connections from an OptimizationCoordinator, one at a time, and
+ * performs the work it requests. The protocol, over a plain TCP connection in
+ * Java serialized form, is:
+ * <ul>
+ * <li>Coordinator and worker run a SharedSecretHandshake, before either reads
+ * an object; the worker drops connections that fail it.</li>
+ * <li>Coordinator sends a serializable ObjectiveFunctionFactory; the worker
+ * builds its own objective function from it, and replies with a WorkResult
+ * with request id -1, carrying an error message if the build failed.</li>
+ * <li>Coordinator sends any number of WorkRequests; the worker replies to
+ * each with a WorkResult.</li>
+ * <li>Coordinator sends {@code null}, or closes the connection, to end the
+ * job.</li>
+ * </ul>
+ * Trust model: deserializing an object can run code from any serializable
+ * class on the classpath, so the worker reads objects only from coordinators
+ * that know its secret, and then accepts only the factory classes it was
+ * given, WorkRequest, and the JDK classes they contain. A coordinator that
+ * knows the secret is trusted: the factory it sends can direct the worker to
+ * read study files, and runs with the worker's permissions. The connection is
+ * not encrypted, so its work can be observed, or altered, on the network.
+ * By default the worker listens only on the loopback interface; to serve
+ * other hosts, name a bind address explicitly, and use it only on a trusted
+ * network.
+ * <p>
+ * Run from the command line to serve coordinators in other JVMs; see main().
+ */
+public class OptimizationWorker implements Runnable
+{
+	public static final int DEFAULT_PORT = 7390;
+	public static final int JOB_ACCEPTED = -1; // Request id of the reply to
+												// the objective factory.
+	public static final int HANDSHAKE_TIMEOUT = 10000; // Milliseconds.
+	// Objective factory that workers run from the command line accept by
+	// default.
+	public static final String STUDY_FACTORY_CLASS = "com.wwidesigner.gui.StudyObjectiveFactory";
+
+	protected ServerSocket serverSocket;
+	protected SharedSecretHandshake handshake;
+	protected Class<?>[] acceptedClasses;
+	protected volatile boolean stopped = false;
+
+	/**
+	 * Create a worker that listens only on the loopback interface, for
+	 * coordinators on the same host.
+	 * 
+	 * @param port
+	 *            - TCP port to listen on; 0 to use any free port.
+	 * @param secret
+	 *            - secret shared with the coordinators; see
+	 *            SharedSecretHandshake.
+	 * @param factoryClasses
+	 *            - ObjectiveFunctionFactory classes to accept from
+	 *            coordinators.
+	 */
+	public OptimizationWorker(int port, byte[] secret,
+			Class<?>... factoryClasses) throws IOException
+	{
+		this(port, null, secret, factoryClasses);
+	}
+
+	/**
+	 * @param port
+	 *            - TCP port to listen on; 0 to use any free port.
+	 * @param bindAddress
+	 *            - local address to listen on, or {@code null} for the
+	 *            loopback interface only.
+	 * @param secret
+	 *            - secret shared with the coordinators; see
+	 *            SharedSecretHandshake.
+	 * @param factoryClasses
+	 *            - ObjectiveFunctionFactory classes to accept from
+	 *            coordinators.
+	 */
+	public OptimizationWorker(int port, InetAddress bindAddress,
+			byte[] secret, Class<?>... factoryClasses) throws IOException
+	{
+		handshake = new SharedSecretHandshake(secret);
+		List<Class<?>> classes = new ArrayList<Class<?>>();
+		for (Class<?> factoryClass : factoryClasses)
+		{
+			if (!ObjectiveFunctionFactory.class.isAssignableFrom(factoryClass))
+			{
+				throw new RuntimeException(factoryClass.getName()
+						+ " is not an objective function factory.");
+			}
+			classes.add(factoryClass);
+		}
+		classes.add(WorkRequest.class);
+		classes.add(WorkRequest.RequestType.class);
+		acceptedClasses = classes.toArray(new Class<?>[classes.size()]);
+		if (bindAddress == null)
+		{
+			bindAddress = InetAddress.getLoopbackAddress();
+		}
+		serverSocket = new ServerSocket(port, 50, bindAddress);
+	}
+
+	public int getPort()
+	{
+		return serverSocket.getLocalPort();
+	}
+
+	public InetAddress getBindAddress()
+	{
+		return serverSocket.getInetAddress();
+	}
+
+	/**
+	 * Serve coordinators until closed.
+	 */
+	@Override
+	public void run()
+	{
+		while (!stopped)
+		{
+			Socket socket;
+			try
+			{
+				socket = serverSocket.accept();
+			}
+			catch (IOException e)
+			{
+				if (!stopped)
+				{
+					System.out.println("Worker cannot accept connection: "
+							+ e.getMessage());
+				}
+				return;
+			}
+			try
+			{
+				if (authenticate(socket))
+				{
+					serve(socket);
+				}
+			}
+			catch (Exception e)
+			{
+				System.out.println("Worker lost connection: " + e.getMessage());
+			}
+			finally
+			{
+				try
+				{
+					socket.close();
+				}
+				catch (IOException e)
+				{
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stop accepting connections.
+	 */
+	public void close()
+	{
+		stopped = true;
+		try
+		{
+			serverSocket.close();
+		}
+		catch (IOException e)
+		{
+		}
+	}
+
+	/**
+	 * Run the handshake on a new connection, giving up if the coordinator
+	 * does not complete it within HANDSHAKE_TIMEOUT.
+	 * 
+	 * @return true if the coordinator knows the secret.
+	 */
+	protected boolean authenticate(Socket socket) throws IOException
+	{
+		socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+		try
+		{
+			handshake.runAsWorker(socket);
+		}
+		catch (IOException e)
+		{
+			System.out.println("Worker rejected connection from "
+					+ socket.getRemoteSocketAddress() + ": " + e.getMessage());
+			return false;
+		}
+		// Requests can be far apart while the coordinator waits on other
+		// workers.
+		socket.setSoTimeout(0);
+		socket.setKeepAlive(true);
+		return true;
+	}
+
+	/**
+	 * Carry out one job from an authenticated coordinator.
+	 */
+	protected void serve(Socket socket) throws IOException,
+			ClassNotFoundException
+	{
+		ObjectOutputStream out = new ObjectOutputStream(
+				new BufferedOutputStream(socket.getOutputStream()));
+		out.flush();
+		ObjectInputStream in = new RestrictedObjectInputStream(
+				new BufferedInputStream(socket.getInputStream()),
+				acceptedClasses);
+
+		ObjectiveFunctionFactory factory = (ObjectiveFunctionFactory) in
+				.readObject();
+		BaseObjectiveFunction objective = null;
+		WorkResult reply = new WorkResult(JOB_ACCEPTED);
+		try
+		{
+			objective = factory.createObjectiveFunction();
+		}
+		catch (Exception e)
+		{
+			reply.setError("Cannot build objective function: "
+					+ e.getMessage());
+		}
+		out.writeObject(reply);
+		out.flush();
+		if (objective == null)
+		{
+			return;
+		}
+
+		while (true)
+		{
+			WorkRequest request;
+			try
+			{
+				request = (WorkRequest) in.readObject();
+			}
+			catch (EOFException e)
+			{
+				return;
+			}
+			if (request == null)
+			{
+				return;
+			}
+			out.writeObject(process(objective, request));
+			out.reset();
+			out.flush();
+		}
+	}
+
+	/**
+	 * Carry out a work request, using a specified objective function.
+	 */
+	public static WorkResult process(BaseObjectiveFunction objective,
+			WorkRequest request)
+	{
+		WorkResult result = new WorkResult(request.getRequestId());
+		EvaluatorInterface originalEvaluator = objective.getEvaluator();
+		if (request.isFirstStage() && objective.isRunTwoStageOptimization())
+		{
+			objective.setEvaluator(objective.getFirstStageEvaluator());
+		}
+		int evaluationsBefore = objective.getNumberOfEvaluations();
+		int tuningsBefore = objective.getNumberOfTunings();
+		try
+		{
+			if (request.getRequestType() == WorkRequest.RequestType.LOCAL_SEARCH)
+			{
+				result.setOptimum(ObjectiveFunctionOptimizer
+						.optimizeSingleStart(objective,
+								request.getPoints()[0],
+								request.getMaxEvaluations()));
+			}
+			else
+			{
+				double[][] points = request.getPoints();
+				double[] values = new double[points.length];
+				for (int i = 0; i < points.length; ++i)
+				{
+					try
+					{
+						values[i] = objective.value(points[i]);
+					}
+					catch (RuntimeException e)
+					{
+						values[i] = Double.POSITIVE_INFINITY;
+					}
+				}
+				result.setValues(values);
+			}
+		}
+		catch (RuntimeException e)
+		{
+			result.setError(e.getMessage());
+		}
+		finally
+		{
+			objective.setEvaluator(originalEvaluator);
+		}
+		result.setWorkDone(objective.getNumberOfEvaluations()
+				- evaluationsBefore, objective.getNumberOfTunings()
+				- tuningsBefore);
+		return result;
+	}
+
+	/**
+	 * Run a worker from the command line. The shared secret is taken from
+	 * environment variable SharedSecretHandshake.SECRET_VARIABLE, rather than
+	 * the command line, where other users of the host could see it.
+	 *
+	 * @param args
+	 *            - optional TCP port number, optional local address to listen
+	 *            on (default loopback only), and optional names of the
+	 *            objective factory classes to accept (default
+	 *            STUDY_FACTORY_CLASS).
+	 */
+	public static void main(String[] args)
+	{
+		int port = DEFAULT_PORT;
+		if (args.length > 0)
+		{
+			port = Integer.parseInt(args[0]);
+		}
+		byte[] secret = SharedSecretHandshake.secretFromEnvironment();
+		if (secret == null)
+		{
+			System.out.println("Cannot start worker: set the secret in "
+					+ SharedSecretHandshake.SECRET_VARIABLE + ".");
+			return;
+		}
+		try
+		{
+			InetAddress bindAddress = null;
+			if (args.length > 1)
+			{
+				bindAddress = InetAddress.getByName(args[1]);
+			}
+			Class<?>[] factoryClasses;
+			if (args.length > 2)
+			{
+				factoryClasses = new Class<?>[args.length - 2];
+				for (int i = 2; i < args.length; ++i)
+				{
+					factoryClasses[i - 2] = Class.forName(args[i]);
+				}
+			}
+			else
+			{
+				factoryClasses = new Class<?>[] { Class
+						.forName(STUDY_FACTORY_CLASS) };
+			}
+			OptimizationWorker worker = new OptimizationWorker(port,
+					bindAddress, secret, factoryClasses);
+			System.out.println("Optimization worker listening on "
+					+ worker.getBindAddress().getHostAddress()
+					+ ", port " + worker.getPort());
+			worker.run();
+		}
+		catch (Exception e)
+		{
+			System.out.println("Cannot start worker: " + e.getMessage());
+		}
+	}
+}
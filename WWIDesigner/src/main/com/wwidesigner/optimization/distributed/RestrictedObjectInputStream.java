@@ -0,0 +1,113 @@
+/**
+ * Object input stream that only accepts a fixed set of classes.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization.distributed;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * ObjectInputStream that refuses, before loading it, any class not on an
+ * explicit list, so that a connection cannot make the reader instantiate
+ * arbitrary serializable classes from its classpath. The list holds the
+ * message classes the reader expects, plus the JDK classes that those
+ * messages and the objective factories contain. Arrays of primitives, and
+ * of listed classes, are accepted; proxy classes never are.
+ */
+public class RestrictedObjectInputStream extends ObjectInputStream
+{
+	/**
+	 * JDK classes accepted from any connection. The elements of accepted
+	 * collections pass the same check.
+	 */
+	public static final String[] JDK_CLASSES = { "java.lang.String",
+			"java.lang.Enum", "java.lang.Number", "java.lang.Boolean",
+			"java.lang.Integer", "java.lang.Long", "java.lang.Double",
+			"java.util.ArrayList", "java.util.HashMap",
+			"java.util.LinkedHashMap" };
+
+	protected Set<String> acceptedClasses;
+
+	/**
+	 * @param in
+	 *            - stream to read from.
+	 * @param classes
+	 *            - classes to accept, in addition to JDK_CLASSES.
+	 */
+	public RestrictedObjectInputStream(InputStream in, Class<?>... classes)
+			throws IOException
+	{
+		super(in);
+		acceptedClasses = new HashSet<String>(Arrays.asList(JDK_CLASSES));
+		for (Class<?> acceptedClass : classes)
+		{
+			acceptedClasses.add(acceptedClass.getName());
+		}
+	}
+
+	@Override
+	protected Class<?> resolveClass(ObjectStreamClass desc)
+			throws IOException, ClassNotFoundException
+	{
+		if (!isAccepted(desc.getName()))
+		{
+			throw new InvalidClassException(desc.getName(),
+					"class not accepted from this connection");
+		}
+		return super.resolveClass(desc);
+	}
+
+	@Override
+	protected Class<?> resolveProxyClass(String[] interfaces)
+			throws IOException, ClassNotFoundException
+	{
+		throw new InvalidClassException("Proxy classes not accepted from this connection");
+	}
+
+	/**
+	 * @param name
+	 *            - class name, as given by Class.getName().
+	 */
+	protected boolean isAccepted(String name)
+	{
+		int dimensions = 0;
+		while (dimensions < name.length() && name.charAt(dimensions) == '[')
+		{
+			++dimensions;
+		}
+		if (dimensions == 0)
+		{
+			return acceptedClasses.contains(name);
+		}
+		String element = name.substring(dimensions);
+		if (element.length() == 1)
+		{
+			// Array of a primitive type.
+			return true;
+		}
+		return element.startsWith("L") && element.endsWith(";")
+				&& acceptedClasses.contains(element.substring(1,
+						element.length() - 1));
+	}
+}
@@ -0,0 +1,156 @@
+/**
+ * Mutual authentication of a coordinator and worker by a shared secret.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization.distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Challenge-response handshake that a coordinator and worker run on a new
+ * connection, before either reads an object from it. Each side sends a random
+ * challenge, and answers the other side's challenge with an HMAC-SHA256 of
+ * it, keyed by the shared secret. The answer is labelled with the role of the
+ * side giving it, so an answer obtained from one connection cannot be
+ * reflected back on another. The secret itself never crosses the connection.
+ * The handshake authenticates the peer only; the traffic that follows is
+ * neither encrypted nor signed.
+ */
+public class SharedSecretHandshake
+{
+	public static final int MIN_SECRET_LENGTH = 16; // Bytes.
+	// Environment variable from which workers run from the command line
+	// take the secret.
+	public static final String SECRET_VARIABLE = "WWIDESIGNER_WORKER_SECRET";
+
+	protected static final String ALGORITHM = "HmacSHA256";
+	protected static final int CHALLENGE_LENGTH = 32; // Bytes.
+	protected static final int ANSWER_LENGTH = 32; // Bytes, for SHA-256.
+	protected static final byte COORDINATOR_ROLE = 'C';
+	protected static final byte WORKER_ROLE = 'W';
+
+	protected static final SecureRandom random = new SecureRandom();
+
+	protected final byte[] secret;
+
+	/**
+	 * @param secret
+	 *            - secret shared by the coordinator and its workers, at least
+	 *            MIN_SECRET_LENGTH bytes.
+	 */
+	public SharedSecretHandshake(byte[] secret)
+	{
+		if (secret == null || secret.length < MIN_SECRET_LENGTH)
+		{
+			throw new RuntimeException("Worker secret must be at least "
+					+ MIN_SECRET_LENGTH + " bytes.");
+		}
+		this.secret = secret.clone();
+	}
+
+	/**
+	 * @return UTF-8 bytes of the secret in environment variable
+	 *         SECRET_VARIABLE, or {@code null} if it is not set.
+	 */
+	public static byte[] secretFromEnvironment()
+	{
+		String value = System.getenv(SECRET_VARIABLE);
+		if (value == null)
+		{
+			return null;
+		}
+		return value.getBytes(Charset.forName("UTF-8"));
+	}
+
+	/**
+	 * Run the handshake on the coordinator end of a connection.
+	 * 
+	 * @throws IOException
+	 *             if the worker does not know the secret, or the connection
+	 *             fails.
+	 */
+	public void runAsCoordinator(Socket socket) throws IOException
+	{
+		run(socket, COORDINATOR_ROLE, WORKER_ROLE);
+	}
+
+	/**
+	 * Run the handshake on the worker end of a connection.
+	 * 
+	 * @throws IOException
+	 *             if the coordinator does not know the secret, or the
+	 *             connection fails.
+	 */
+	public void runAsWorker(Socket socket) throws IOException
+	{
+		run(socket, WORKER_ROLE, COORDINATOR_ROLE);
+	}
+
+	protected void run(Socket socket, byte ownRole, byte peerRole)
+			throws IOException
+	{
+		// Unbuffered, so that nothing past the handshake is consumed.
+		DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+		DataInputStream in = new DataInputStream(socket.getInputStream());
+
+		byte[] challenge = new byte[CHALLENGE_LENGTH];
+		random.nextBytes(challenge);
+		out.write(challenge);
+		out.flush();
+		byte[] peerChallenge = new byte[CHALLENGE_LENGTH];
+		in.readFully(peerChallenge);
+
+		out.write(answer(ownRole, peerChallenge));
+		out.flush();
+		byte[] peerAnswer = new byte[ANSWER_LENGTH];
+		in.readFully(peerAnswer);
+		// MessageDigest.isEqual takes the same time wherever the answers
+		// differ.
+		if (!MessageDigest.isEqual(peerAnswer, answer(peerRole, challenge)))
+		{
+			throw new IOException("Peer " + socket.getRemoteSocketAddress()
+					+ " does not know the worker secret");
+		}
+	}
+
+	protected byte[] answer(byte role, byte[] challenge)
+	{
+		try
+		{
+			Mac mac = Mac.getInstance(ALGORITHM);
+			mac.init(new SecretKeySpec(secret, ALGORITHM));
+			mac.update(role);
+			mac.update(challenge);
+			return mac.doFinal();
+		}
+		catch (GeneralSecurityException e)
+		{
+			throw new RuntimeException("Cannot compute " + ALGORITHM + ": "
+					+ e.getMessage(), e);
+		}
+	}
+}
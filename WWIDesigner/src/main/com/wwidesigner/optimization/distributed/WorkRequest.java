@@ -0,0 +1,99 @@
+/**
+ * Request from an optimization coordinator to a worker.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization.distributed;
+
+import java.io.Serializable;
+
+/**
+ * A unit of work for an OptimizationWorker: either a local search from a
+ * single start point, or evaluation of a batch of points.
+ */
+public class WorkRequest implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	public enum RequestType
+	{
+		LOCAL_SEARCH, EVALUATE
+	}
+
+	protected RequestType requestType;
+	protected int requestId; // Identifies the request in the reply.
+	protected double[][] points; // Start point, or points to evaluate.
+	protected int maxEvaluations; // Evaluation budget for a local search.
+	protected boolean firstStage; // Use the objective's first-stage evaluator.
+
+	/**
+	 * Request a BOBYQA search from a single start point.
+	 */
+	public static WorkRequest localSearch(int requestId, double[] startPoint,
+			int maxEvaluations, boolean firstStage)
+	{
+		WorkRequest request = new WorkRequest(RequestType.LOCAL_SEARCH,
+				requestId, firstStage);
+		request.points = new double[][] { startPoint.clone() };
+		request.maxEvaluations = maxEvaluations;
+		return request;
+	}
+
+	/**
+	 * Request the objective function value at each of a batch of points.
+	 */
+	public static WorkRequest evaluate(int requestId, double[][] points,
+			boolean firstStage)
+	{
+		WorkRequest request = new WorkRequest(RequestType.EVALUATE, requestId,
+				firstStage);
+		request.points = points;
+		return request;
+	}
+
+	protected WorkRequest(RequestType requestType, int requestId,
+			boolean firstStage)
+	{
+		this.requestType = requestType;
+		this.requestId = requestId;
+		this.firstStage = firstStage;
+	}
+
+	public RequestType getRequestType()
+	{
+		return requestType;
+	}
+
+	public int getRequestId()
+	{
+		return requestId;
+	}
+
+	public double[][] getPoints()
+	{
+		return points;
+	}
+
+	public int getMaxEvaluations()
+	{
+		return maxEvaluations;
+	}
+
+	public boolean isFirstStage()
+	{
+		return firstStage;
+	}
+}
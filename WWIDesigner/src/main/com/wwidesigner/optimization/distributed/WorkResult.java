@@ -0,0 +1,127 @@
+/**
+ * Reply from an optimization worker to the coordinator.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization.distributed;
+
+import java.io.Serializable;
+
+import org.apache.commons.math3.optim.PointValuePair;
+
+/**
+ * Outcome of a WorkRequest. For a local search, holds the optimum found, if
+ * any; for a batch evaluation, the value at each point. Also reports the work
+ * done, so that the coordinator can keep the objective function statistics.
+ */
+public class WorkResult implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	protected int requestId;
+	protected double[] point; // Optimum from a local search, or null.
+	protected double[] values; // Optimum value, or value at each point.
+	protected int evaluations;
+	protected int tunings;
+	protected String error; // Description of a failure, or null.
+
+	public WorkResult(int requestId)
+	{
+		this.requestId = requestId;
+	}
+
+	public int getRequestId()
+	{
+		return requestId;
+	}
+
+	/**
+	 * @return true if this result has the id of a specified request, and
+	 *         results of the shape that request calls for.
+	 */
+	public boolean isReplyTo(WorkRequest request)
+	{
+		if (requestId != request.getRequestId())
+		{
+			return false;
+		}
+		if (request.getRequestType() == WorkRequest.RequestType.LOCAL_SEARCH)
+		{
+			return point == null
+					|| (point.length == request.getPoints()[0].length
+							&& values != null && values.length == 1);
+		}
+		return values == null || values.length == request.getPoints().length;
+	}
+
+	/**
+	 * @return optimum from a local search, or {@code null} if the search found
+	 *         no valid solution.
+	 */
+	public PointValuePair getOptimum()
+	{
+		if (point == null)
+		{
+			return null;
+		}
+		return new PointValuePair(point, values[0]);
+	}
+
+	public void setOptimum(PointValuePair optimum)
+	{
+		if (optimum != null)
+		{
+			point = optimum.getPoint();
+			values = new double[] { optimum.getValue() };
+		}
+	}
+
+	public double[] getValues()
+	{
+		return values;
+	}
+
+	public void setValues(double[] values)
+	{
+		this.values = values;
+	}
+
+	public int getEvaluations()
+	{
+		return evaluations;
+	}
+
+	public int getTunings()
+	{
+		return tunings;
+	}
+
+	public void setWorkDone(int evaluations, int tunings)
+	{
+		this.evaluations = evaluations;
+		this.tunings = tunings;
+	}
+
+	public String getError()
+	{
+		return error;
+	}
+
+	public void setError(String error)
+	{
+		this.error = error;
+	}
+}
@@ -59,6 +59,20 @@ public abstract class AbstractRangeProcessor implements RandomVectorGenerator
 
 	public abstract double[] nextVector();
 
+	/**
+	 * Discard vectors, as if nextVector() had been called a specified number
+	 * of times. Used to continue an interrupted multi-start run.
+	 * 
+	 * @param nrVectors
+	 */
+	public void skipVectors(int nrVectors)
+	{
+		for (int i = 0; i < nrVectors; ++i)
+		{
+			nextVector();
+		}
+	}
+
 	public int getNumberOfStarts()
 	{
 		return numberOfSetsToGenerate;
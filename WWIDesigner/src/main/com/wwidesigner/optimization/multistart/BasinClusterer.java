@@ -0,0 +1,261 @@
+package com.wwidesigner.optimization.multistart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.math3.optim.PointValuePair;
+
+/**
+ * Clustering of multi-start local searches by basin of attraction, in the
+ * style of multi-level single linkage. Remembers the distinct local optima
+ * found so far, and the descent trajectories that reached them. A local search
+ * whose current point comes within the attraction radius of a known optimum,
+ * or of a better point on a trajectory that led to a known optimum, is
+ * presumed to be heading to that optimum, and can be abandoned.
+ *
+ * Distances are measured with each dimension scaled to the range between its
+ * bounds, so the attraction radius is a fraction of the bounds box.
+ */
+public class BasinClusterer
+{
+	/**
+	 * Thrown to abandon a local search that has entered the basin of a known
+	 * optimum.
+	 */
+	public static class KnownBasinException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+		protected final Basin basin;
+
+		public KnownBasinException(Basin basin)
+		{
+			super("Entered basin of known optimum " + basin.getValue());
+			this.basin = basin;
+		}
+
+		public Basin getBasin()
+		{
+			return basin;
+		}
+	}
+
+	/**
+	 * A distinct local optimum, with the trajectories that reached it.
+	 */
+	public static class Basin
+	{
+		protected PointValuePair optimum;
+		protected double[] scaledOptimum;
+		protected List<double[]> trajectoryPoints = new ArrayList<double[]>();
+		protected List<Double> trajectoryValues = new ArrayList<Double>();
+		protected int nrSearches = 0; // Searches that ended here.
+		protected int nrAbandoned = 0; // Searches abandoned on the way here.
+
+		public PointValuePair getOptimum()
+		{
+			return optimum;
+		}
+
+		public double getValue()
+		{
+			return optimum.getValue();
+		}
+
+		public int getNrSearches()
+		{
+			return nrSearches;
+		}
+
+		public int getNrAbandoned()
+		{
+			return nrAbandoned;
+		}
+	}
+
+	protected double[] lowerBounds;
+	protected double[] range;
+	protected double attractionRadius;
+	protected List<Basin> basins = new ArrayList<Basin>();
+
+	// Descent trajectory of the local search in progress.
+	protected List<double[]> currentPoints = new ArrayList<double[]>();
+	protected List<Double> currentValues = new ArrayList<Double>();
+
+	/**
+	 * @param lowerBounds
+	 *            - lower bound of each dimension.
+	 * @param upperBounds
+	 *            - upper bound of each dimension.
+	 * @param attractionRadius
+	 *            - radius of attraction, as a fraction of the bounds box.
+	 */
+	public BasinClusterer(double[] lowerBounds, double[] upperBounds,
+			double attractionRadius)
+	{
+		this.lowerBounds = lowerBounds.clone();
+		this.range = new double[lowerBounds.length];
+		for (int i = 0; i < range.length; i++)
+		{
+			range[i] = upperBounds[i] - lowerBounds[i];
+			if (range[i] <= 0.0)
+			{
+				range[i] = 1.0;
+			}
+		}
+		this.attractionRadius = attractionRadius;
+	}
+
+	/**
+	 * Begin tracking a new local search.
+	 */
+	public void startSearch()
+	{
+		currentPoints.clear();
+		currentValues.clear();
+	}
+
+	/**
+	 * Record a new best point of the local search in progress, and check
+	 * whether the search has entered the basin of a known optimum.
+	 *
+	 * @param point
+	 *            - point that improves on the best value of the current
+	 *            search.
+	 * @param value
+	 *            - objective function value at point.
+	 * @throws KnownBasinException
+	 *             if the point is within the attraction radius of a known
+	 *             optimum, or of a point on a known trajectory with a value no
+	 *             worse than this one.
+	 */
+	public void checkPoint(double[] point, double value)
+	{
+		double[] scaled = scale(point);
+		currentPoints.add(scaled);
+		currentValues.add(value);
+		for (Basin basin : basins)
+		{
+			if (distance(scaled, basin.scaledOptimum) < attractionRadius)
+			{
+				abandon(basin);
+			}
+			for (int i = 0; i < basin.trajectoryPoints.size(); i++)
+			{
+				if (basin.trajectoryValues.get(i) <= value
+						&& distance(scaled, basin.trajectoryPoints.get(i)) < attractionRadius)
+				{
+					abandon(basin);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Record the result of a completed local search, either as a new distinct
+	 * optimum, or as another search ending at a known optimum.
+	 *
+	 * @return the basin of the optimum.
+	 */
+	public Basin addOptimum(PointValuePair optimum)
+	{
+		double[] scaled = scale(optimum.getPoint());
+		Basin target = null;
+		for (Basin basin : basins)
+		{
+			if (distance(scaled, basin.scaledOptimum) < attractionRadius)
+			{
+				target = basin;
+				break;
+			}
+		}
+		if (target == null)
+		{
+			target = new Basin();
+			basins.add(target);
+		}
+		if (target.optimum == null
+				|| optimum.getValue() < target.optimum.getValue())
+		{
+			target.optimum = optimum;
+			target.scaledOptimum = scaled;
+		}
+		++target.nrSearches;
+		keepTrajectory(target);
+		return target;
+	}
+
+	/**
+	 * @return the distinct optima found, best first.
+	 */
+	public List<Basin> getBasins()
+	{
+		List<Basin> sorted = new ArrayList<Basin>(basins);
+		Collections.sort(sorted, new Comparator<Basin>()
+		{
+			public int compare(Basin b1, Basin b2)
+			{
+				return Double.compare(b1.getValue(), b2.getValue());
+			}
+		});
+		return sorted;
+	}
+
+	public double getAttractionRadius()
+	{
+		return attractionRadius;
+	}
+
+	/**
+	 * Print the distinct optima found, with their norms.
+	 */
+	public void printBasins()
+	{
+		List<Basin> sorted = getBasins();
+		System.out.println("Found " + sorted.size() + " distinct optima:");
+		for (Basin basin : sorted)
+		{
+			System.out.println("  optimum " + basin.getValue() + " from "
+					+ basin.nrSearches + " searches, "
+					+ basin.nrAbandoned + " abandoned, at "
+					+ Arrays.toString(basin.optimum.getPoint()));
+		}
+	}
+
+	protected void abandon(Basin basin)
+	{
+		++basin.nrAbandoned;
+		keepTrajectory(basin);
+		throw new KnownBasinException(basin);
+	}
+
+	protected void keepTrajectory(Basin basin)
+	{
+		basin.trajectoryPoints.addAll(currentPoints);
+		basin.trajectoryValues.addAll(currentValues);
+		startSearch();
+	}
+
+	protected double[] scale(double[] point)
+	{
+		double[] scaled = new double[point.length];
+		for (int i = 0; i < point.length; i++)
+		{
+			scaled[i] = (point[i] - lowerBounds[i]) / range[i];
+		}
+		return scaled;
+	}
+
+	protected static double distance(double[] p1, double[] p2)
+	{
+		double sum = 0.0;
+		for (int i = 0; i < p1.length; i++)
+		{
+			double diff = p1[i] - p2[i];
+			sum += diff * diff;
+		}
+		return Math.sqrt(sum);
+	}
+}
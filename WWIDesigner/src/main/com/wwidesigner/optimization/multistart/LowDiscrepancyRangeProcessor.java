@@ -0,0 +1,160 @@
+package com.wwidesigner.optimization.multistart;
+
+import org.apache.commons.math3.random.HaltonSequenceGenerator;
+import org.apache.commons.math3.random.MersenneTwister;
+import org.apache.commons.math3.random.RandomVectorGenerator;
+import org.apache.commons.math3.random.SobolSequenceGenerator;
+
+/**
+ * Range processor that generates start points from a low-discrepancy
+ * sequence, Sobol or Halton, over the dimensions that vary. Unlike a grid, the
+ * points cover the bounds box evenly for any number of starts and any number
+ * of dimensions.
+ *
+ * The sequence is scrambled with a random shift (a Cranley-Patterson
+ * rotation), taken from a seeded generator, so that a given seed always
+ * produces the same points. The Halton sequence is additionally scrambled with
+ * the Faure-Lemieux weights. To continue a sequence in a later run, construct
+ * the processor with the same seed and start at the index from
+ * getSequenceIndex().
+ */
+public class LowDiscrepancyRangeProcessor extends AbstractRangeProcessor
+{
+	public enum SequenceType
+	{
+		SOBOL, HALTON
+	}
+
+	public static final long DEFAULT_SEED = 20140101L;
+
+	protected SequenceType sequenceType;
+	protected long seed;
+	protected RandomVectorGenerator generator;
+	protected double[] shift; // Random shift for each varying dimension.
+	protected int sequenceIndex; // Index of the next point in the sequence.
+
+	/**
+	 * Create a Sobol range processor with the default seed.
+	 */
+	public LowDiscrepancyRangeProcessor(double[] lowerBound,
+			double[] upperBound, int[] indicesToVary, int numberOfStarts)
+	{
+		this(lowerBound, upperBound, indicesToVary, numberOfStarts,
+				SequenceType.SOBOL, DEFAULT_SEED, 0);
+	}
+
+	/**
+	 * @param sequenceType
+	 *            - SOBOL or HALTON.
+	 * @param seed
+	 *            - seed for the scrambling.
+	 * @param startIndex
+	 *            - index in the sequence of the first point to generate; 0 to
+	 *            start a new sequence.
+	 */
+	public LowDiscrepancyRangeProcessor(double[] lowerBound,
+			double[] upperBound, int[] indicesToVary, int numberOfStarts,
+			SequenceType sequenceType, long seed, int startIndex)
+	{
+		super(lowerBound, upperBound, indicesToVary, numberOfStarts);
+		this.sequenceType = sequenceType;
+		this.seed = seed;
+
+		int dimension = Math.max(numberOfValuesToVary, 1);
+		MersenneTwister random = new MersenneTwister(seed);
+		shift = new double[dimension];
+		for (int i = 0; i < dimension; i++)
+		{
+			shift[i] = random.nextDouble();
+		}
+		skipTo(startIndex);
+	}
+
+	@Override
+	public double[] nextVector()
+	{
+		double[] point = generator.nextVector();
+		++sequenceIndex;
+		int vectorLength = lowVector.length;
+		double[] vector = new double[vectorLength];
+		int j = 0;
+
+		for (int i = 0; i < vectorLength; i++)
+		{
+			if (valuesToVary[i])
+			{
+				double fraction = point[j] + shift[j];
+				if (fraction >= 1.0)
+				{
+					fraction -= 1.0;
+				}
+				vector[i] = lowVector[i] + range[i] * fraction;
+				++j;
+			}
+			else
+			{
+				vector[i] = lowVector[i];
+			}
+		}
+
+		return vector;
+	}
+
+	/**
+	 * Position the sequence so that the next vector generated is point
+	 * {@code index} of the sequence.
+	 */
+	public void skipTo(int index)
+	{
+		// The generators' skipTo(i) returns point i, leaving point i+1
+		// as the next point, so skip to the point before index.
+		if (sequenceType == SequenceType.HALTON)
+		{
+			HaltonSequenceGenerator halton = new HaltonSequenceGenerator(
+					shift.length);
+			if (index > 0)
+			{
+				halton.skipTo(index - 1);
+			}
+			generator = halton;
+		}
+		else
+		{
+			SobolSequenceGenerator sobol = new SobolSequenceGenerator(
+					shift.length);
+			if (index > 0)
+			{
+				sobol.skipTo(index - 1);
+			}
+			generator = sobol;
+		}
+		sequenceIndex = index;
+	}
+
+	@Override
+	public void skipVectors(int nrVectors)
+	{
+		skipTo(sequenceIndex + nrVectors);
+	}
+
+	/**
+	 * @return index in the sequence of the next point to be generated. Use
+	 *         this as the startIndex of a new processor, with the same seed,
+	 *         to continue the sequence.
+	 */
+	public int getSequenceIndex()
+	{
+		return sequenceIndex;
+	}
+
+	public SequenceType getSequenceType()
+	{
+		return sequenceType;
+	}
+
+	public long getSeed()
+	{
+		return seed;
+	}
+
+}
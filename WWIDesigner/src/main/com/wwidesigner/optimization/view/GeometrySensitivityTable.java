@@ -0,0 +1,135 @@
+/**
+ * Display a tabular report of the sensitivity of notes to geometry values.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.optimization.view;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.text.DecimalFormat;
+
+import javax.swing.JFrame;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+
+import com.wwidesigner.note.Note;
+import com.wwidesigner.optimization.GeometrySensitivity;
+
+/**
+ * Display a tabular report of a geometry sensitivity calculation: for each
+ * note, the change in predicted cents per millimetre change in each
+ * dimensional geometry value, or per 0.01 change in each ratio.
+ */
+public class GeometrySensitivityTable extends DefaultTableModel
+{
+	protected static final int COLUMN_WIDTH = 12;
+	protected static final int NOTE_COLUMN_WIDTH = 18;
+	protected static final double LENGTH_UNIT = 0.001; // Metres.
+	protected static final double RATIO_UNIT = 0.01;
+
+	String title;
+	DecimalFormat format_00;
+
+	public GeometrySensitivityTable(String title)
+	{
+		this.title = title;
+		format_00 = new DecimalFormat("#0.00");
+	}
+
+	public void buildTable(GeometrySensitivity sensitivity)
+	{
+		int nrDimensions = sensitivity.getNumberOfDimensions();
+		double[] unit = new double[nrDimensions];
+		addColumn("Note");
+		for (int dim = 0; dim < nrDimensions; ++dim)
+		{
+			if (sensitivity.isDimensional(dim))
+			{
+				unit[dim] = LENGTH_UNIT;
+				addColumn(sensitivity.getDimensionName(dim) + " (c/mm)");
+			}
+			else
+			{
+				unit[dim] = RATIO_UNIT;
+				addColumn(sensitivity.getDimensionName(dim) + " (c/0.01)");
+			}
+		}
+
+		for (int note = 0; note < sensitivity.getNumberOfNotes(); ++note)
+		{
+			Object[] row = new Object[nrDimensions + 1];
+			Note target = sensitivity.getTargetTuning().getFingering()
+					.get(note).getNote();
+			row[0] = target == null ? "" : target.getName();
+			for (int dim = 0; dim < nrDimensions; ++dim)
+			{
+				double value = sensitivity.getSensitivity(note, dim);
+				row[dim + 1] = Double.isNaN(value) ? " " : format_00
+						.format(value * unit[dim]);
+			}
+			addRow(row);
+		}
+	}
+
+	public void printTable(OutputStream os)
+	{
+		PrintWriter pw = new PrintWriter(os);
+		pw.println(title);
+		// Dimension names are often wider than the columns.
+		String columnFormat = " %" + COLUMN_WIDTH + "s";
+		pw.printf("%-" + NOTE_COLUMN_WIDTH + "s", getColumnName(0));
+		for (int col = 1; col < getColumnCount(); col++)
+		{
+			pw.printf(columnFormat, getColumnName(col));
+		}
+		pw.println();
+		for (int row = 0; row < getRowCount(); row++)
+		{
+			pw.printf("%-" + NOTE_COLUMN_WIDTH + "s", getValueAt(row, 0));
+			for (int col = 1; col < getColumnCount(); col++)
+			{
+				pw.printf(columnFormat, getValueAt(row, col));
+			}
+			pw.println();
+		}
+		pw.println();
+		pw.flush();
+	}
+
+	public void showTable(final boolean exitOnClose)
+	{
+		final TableModel model = this;
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				JTable table = new JTable(model);
+				JFrame frame = new JFrame(title);
+				if (exitOnClose)
+				{
+					frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+				}
+				frame.setSize(800, 400);
+				frame.getContentPane().add(new JScrollPane(table));
+				frame.setVisible(true);
+			}
+		});
+	}
+}
@@ -350,6 +350,14 @@ public class PhysicalParameters
 		return m_xv;
 	}
 
+	/**
+	 * @return relative humidity, in percent of saturation humidity
+	 */
+	public double getHumidity()
+	{
+		return mHumidity;
+	}
+
 	/**
 	 * @return the speed of sound, in m/s.
 	 */
@@ -494,4 +502,12 @@ public class PhysicalParameters
 	{
 		return mKappa;
 	}
+
+	/**
+	 * @return Prandtl number, dimensionless
+	 */
+	public double getPrandtl()
+	{
+		return mPrandtl;
+	}
 }
@@ -0,0 +1,159 @@
+/**
+ * Shared cache of PhysicalParameters instances, keyed by quantized air properties.
+ *
+ * Copyright (C) 2014, Edward Kort, Antoine Lefebvre, Burton Patkau.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.wwidesigner.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.wwidesigner.util.Constants.TemperatureType;
+
+/**
+ * Cache of PhysicalParameters instances, for studies that evaluate an
+ * instrument under many air conditions. PhysicalParameters.setProperties
+ * evaluates a long chain of exp, pow and sqrt calls; this cache does that
+ * once for each distinct condition.
+ * <p>
+ * Air properties are rounded to the nearest multiple of a quantization step
+ * before lookup, and the cached instance is built from the rounded values,
+ * so that equal keys always give identical parameters. The steps are well
+ * below any difference in conditions that affects tuning noticeably.
+ * <p>
+ * Instances returned from the cache are shared, possibly between threads.
+ * Callers must not modify them with setProperties().
+ */
+public class PhysicalParametersCache
+{
+	/** Quantization step for temperature, in Celsius. */
+	public static final double TEMPERATURE_STEP = 0.01;
+	/** Quantization step for pressure, in kPa. */
+	public static final double PRESSURE_STEP = 0.001;
+	/** Quantization step for relative humidity, in percent. */
+	public static final double HUMIDITY_STEP = 0.1;
+	/** Quantization step for molar fraction of CO2, in mol/mol. */
+	public static final double CO2_STEP = 1.0e-6;
+
+	// The cache is cleared when it reaches this size.
+	protected static final int MAXIMUM_SIZE = 10000;
+
+	private static final ConcurrentHashMap<Key, PhysicalParameters> cache = new ConcurrentHashMap<Key, PhysicalParameters>();
+
+	private PhysicalParametersCache()
+	{
+	}
+
+	/**
+	 * Return physical parameters of air for specified properties.
+	 * @param temperature - air temperature, in Celsius
+	 * @param pressure - air pressure, in kPa
+	 * @param relHumidity - relative humidity, in percent of saturation humidity
+	 * @param xCO2 - molar fraction of CO2, in mol/mol
+	 * @return shared PhysicalParameters for the quantized properties.
+	 */
+	public static PhysicalParameters get(double temperature, double pressure,
+			double relHumidity, double xCO2)
+	{
+		Key key = new Key(Math.round(temperature / TEMPERATURE_STEP),
+				Math.round(pressure / PRESSURE_STEP),
+				Math.round(relHumidity / HUMIDITY_STEP),
+				Math.round(xCO2 / CO2_STEP));
+		PhysicalParameters params = cache.get(key);
+		if (params != null)
+		{
+			return params;
+		}
+		params = new PhysicalParameters(key.temperature * TEMPERATURE_STEP,
+				TemperatureType.C, key.pressure * PRESSURE_STEP, key.humidity
+						* HUMIDITY_STEP, key.xCO2 * CO2_STEP);
+		if (cache.size() >= MAXIMUM_SIZE)
+		{
+			cache.clear();
+		}
+		PhysicalParameters existing = cache.putIfAbsent(key, params);
+		return existing == null ? params : existing;
+	}
+
+	/**
+	 * Return physical parameters of air at a specified elevation, with
+	 * standard sea-level barometric pressure.
+	 * @param temperature - air temperature, in Celsius
+	 * @param elevation - elevation, in metres
+	 * @param relHumidity - relative humidity, in percent of saturation humidity
+	 * @param xCO2 - molar fraction of CO2, in mol/mol
+	 */
+	public static PhysicalParameters getAtElevation(double temperature,
+			double elevation, double relHumidity, double xCO2)
+	{
+		return get(temperature, PhysicalParameters.pressureAt(elevation),
+				relHumidity, xCO2);
+	}
+
+	/**
+	 * @return number of parameter sets currently cached.
+	 */
+	public static int size()
+	{
+		return cache.size();
+	}
+
+	public static void clear()
+	{
+		cache.clear();
+	}
+
+	/**
+	 * Quantized air properties.
+	 */
+	protected static final class Key
+	{
+		final long temperature;
+		final long pressure;
+		final long humidity;
+		final long xCO2;
+
+		Key(long temperature, long pressure, long humidity, long xCO2)
+		{
+			this.temperature = temperature;
+			this.pressure = pressure;
+			this.humidity = humidity;
+			this.xCO2 = xCO2;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Key))
+			{
+				return false;
+			}
+			Key other = (Key) obj;
+			return temperature == other.temperature
+					&& pressure == other.pressure
+					&& humidity == other.humidity && xCO2 == other.xCO2;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			long hash = temperature;
+			hash = 31 * hash + pressure;
+			hash = 31 * hash + humidity;
+			hash = 31 * hash + xCO2;
+			return (int) (hash ^ (hash >>> 32));
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ *
+ */
+package com.wwidesigner.geometry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.wwidesigner.modelling.InstrumentCalculator;
+import com.wwidesigner.modelling.NAFCalculator;
+import com.wwidesigner.modelling.SimpleInstrumentTuner;
+import com.wwidesigner.note.Note;
+import com.wwidesigner.note.Tuning;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests of bore-profile simplification in Instrument.updateComponents, on a
+ * densely-measured bore.
+ */
+public class BoreSimplificationTest
+{
+	static final int NrMeasurements = 300;
+
+	@Test
+	public final void testDenseBore() throws Exception
+	{
+		SimpleInstrumentTuner tuner = new SimpleInstrumentTuner();
+		tuner.setInstrument(
+				"com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_geometry.xml",
+				true);
+		tuner.setTuning(
+				"com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_tuning.xml",
+				true);
+		tuner.setParams(new PhysicalParameters(22.0, TemperatureType.C));
+		InstrumentCalculator calculator = new NAFCalculator();
+		tuner.setCalculator(calculator);
+		Instrument instrument = calculator.getInstrument();
+
+		// Measure the bore at closely-spaced points, with a gentle bulge
+		// added to the tapered profile.
+		List<BorePoint> original = instrument.getBorePoint();
+		double top = original.get(0).getBorePosition();
+		double bottom = original.get(original.size() - 1).getBorePosition();
+		List<BorePoint> measured = new ArrayList<BorePoint>();
+		for (int i = 0; i <= NrMeasurements; i++)
+		{
+			double position = top + (bottom - top) * i / NrMeasurements;
+			double diameter = BorePoint.getInterpolatedExtrapolatedBoreDiameter(
+					original, position)
+					* (1.0 + 0.02 * Math.sin(Math.PI * i / NrMeasurements));
+			measured.add(new BorePoint(position, diameter));
+		}
+		instrument.setBorePoint(measured);
+		instrument.updateComponents();
+		int allSections = countSections(instrument);
+		Tuning exact = tuner.getPredictedTuning();
+
+		instrument.setBoreSimplificationTolerance(0.001);
+		instrument.updateComponents();
+		int fewerSections = countSections(instrument);
+		Tuning simplified = tuner.getPredictedTuning();
+
+		assertEquals("Bore points changed", NrMeasurements + 1, instrument
+				.getBorePoint().size());
+		assertTrue("Too many bore sections: " + fewerSections,
+				fewerSections * 5 < allSections);
+		for (int i = 0; i < exact.getFingering().size(); ++i)
+		{
+			Note exactNote = exact.getFingering().get(i).getNote();
+			Note simplifiedNote = simplified.getFingering().get(i).getNote();
+			assertEquals(exactNote.getName() + " differs", 0.0, Note.cents(
+					exactNote.getFrequency(), simplifiedNote.getFrequency()),
+					0.5);
+		}
+	}
+
+	protected static int countSections(Instrument instrument)
+	{
+		int sections = instrument.getMouthpiece().getHeadspace().size();
+		for (ComponentInterface component : instrument.getComponents())
+		{
+			if (component instanceof BoreSection)
+			{
+				++sections;
+			}
+		}
+		return sections;
+	}
+}
@@ -10,6 +10,7 @@ import org.apache.commons.math3.complex.Complex;
 import org.junit.Test;
 
 import com.wwidesigner.geometry.BoreSection;
+import com.wwidesigner.math.ComplexTrig;
 import com.wwidesigner.math.StateVector;
 import com.wwidesigner.math.TransferMatrix;
 import com.wwidesigner.util.Constants.TemperatureType;
@@ -120,4 +121,35 @@ public class CalculationTest
 		}
 	}
 
+	@Test
+	public final void testComplexTrig()
+	{
+		double[][] arguments = { { 0.0, 0.0 }, { 1.0e-9, 2.5 },
+				{ 0.003, 4.1 }, { 1.2, -0.7 }, { -3.0, 25.0 }, { 30.0, 0.4 } };
+		double[] result = new double[4];
+		for (double[] arg : arguments)
+		{
+			Complex z = new Complex(arg[0], arg[1]);
+			ComplexTrig.sinCos(arg[0], arg[1], result);
+			assertComplexEquals("sin" + z, z.sin(), result[0], result[1]);
+			assertComplexEquals("cos" + z, z.cos(), result[2], result[3]);
+			ComplexTrig.sinhCosh(arg[0], arg[1], result);
+			assertComplexEquals("sinh" + z, z.sinh(), result[0], result[1]);
+			assertComplexEquals("cosh" + z, z.cosh(), result[2], result[3]);
+			ComplexTrig.divide(z.getReal() + 1.0, 2.0, arg[0], arg[1] + 0.5,
+					result, 1);
+			assertComplexEquals("divide" + z, new Complex(arg[0] + 1.0, 2.0)
+					.divide(new Complex(arg[0], arg[1] + 0.5)), result[1],
+					result[2]);
+		}
+	}
+
+	protected static void assertComplexEquals(String message,
+			Complex expected, double re, double im)
+	{
+		double tolerance = 1.0e-14 * Math.max(expected.abs(), 1.0e-300);
+		assertEquals(message + ".real", expected.getReal(), re, tolerance);
+		assertEquals(message + ".imag", expected.getImaginary(), im, tolerance);
+	}
+
 }
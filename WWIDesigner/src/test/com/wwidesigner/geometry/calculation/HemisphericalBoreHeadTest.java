@@ -0,0 +1,240 @@
+/**
+ *
+ */
+package com.wwidesigner.geometry.calculation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+
+import com.wwidesigner.geometry.BorePoint;
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.geometry.SphericalCapSection;
+import com.wwidesigner.geometry.bind.GeometryBindFactory;
+import com.wwidesigner.math.StateVector;
+import com.wwidesigner.math.TransferMatrix;
+import com.wwidesigner.modelling.InstrumentCalculator;
+import com.wwidesigner.modelling.NAFCalculator;
+import com.wwidesigner.modelling.ReactanceEvaluator;
+import com.wwidesigner.modelling.SimpleInstrumentTuner;
+import com.wwidesigner.note.Note;
+import com.wwidesigner.note.Tuning;
+import com.wwidesigner.optimization.SingleTaperSimpleRatioHemiHeadObjectiveFunction;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests of the spherical-cap sections that model a hemispherical bore head,
+ * against fine stacks of cones on the same sphere.
+ */
+public class HemisphericalBoreHeadTest
+{
+	static final double HeadRadius = 0.0127;
+	static final double MouthpieceDepth = 0.4 * HeadRadius;
+
+	/**
+	 * Transfer matrix of a stack of cones, following a sphere between two
+	 * depths below its pole.
+	 */
+	protected static TransferMatrix coneStack(double waveNumber,
+			double sourceDepth, double loadDepth, int nrCones,
+			PhysicalParameters params)
+	{
+		TransferMatrix tm = null;
+		for (int i = 0; i < nrCones; ++i)
+		{
+			double depth1 = sourceDepth + (loadDepth - sourceDepth) * i
+					/ nrCones;
+			double depth2 = sourceDepth + (loadDepth - sourceDepth) * (i + 1)
+					/ nrCones;
+			TransferMatrix cone = Tube.calcConeMatrix(waveNumber,
+					Math.abs(depth2 - depth1), radiusAt(depth1),
+					radiusAt(depth2), params);
+			tm = (tm == null) ? cone : tm.multiply(cone);
+		}
+		return tm;
+	}
+
+	protected static double radiusAt(double depth)
+	{
+		return Math.sqrt(depth * (2.0 * HeadRadius - depth));
+	}
+
+	@Test
+	public final void testSphericalZone()
+	{
+		PhysicalParameters params = new PhysicalParameters(25.,
+				TemperatureType.C);
+		SphericalCapSection zone = new SphericalCapSection(HeadRadius,
+				MouthpieceDepth, HeadRadius);
+		SphericalCapSection cap = new SphericalCapSection(HeadRadius, 0.0,
+				MouthpieceDepth);
+		assertEquals("Cap volume incorrect", Math.PI * MouthpieceDepth
+				* MouthpieceDepth * (HeadRadius - MouthpieceDepth / 3.0),
+				cap.getVolume(), 1.0e-15);
+		assertEquals("Hemisphere volume incorrect", 2.0 / 3.0 * Math.PI
+				* HeadRadius * HeadRadius * HeadRadius, cap.getVolume()
+				+ zone.getVolume(), 1.0e-15);
+
+		for (double freq : new double[] { 300.0, 1000.0, 3000.0, 8000.0 })
+		{
+			double waveNumber = params.calcWaveNumber(freq);
+
+			// Zone below the mouthpiece, seen from above, closed and open
+			// at the equator.
+			TransferMatrix tm = HemisphericalBoreHead.calcTransferMatrix(
+					waveNumber, zone, false, params);
+			TransferMatrix stack = coneStack(waveNumber, MouthpieceDepth,
+					HeadRadius, 500, params);
+			assertEquals("Determinant incorrect", 1.0, tm.determinant()
+					.getReal(), 1.0e-9);
+			assertReactanceEquals("Closed zone at " + freq, stack,
+					tm, StateVector.ClosedEnd());
+			assertReactanceEquals("Open zone at " + freq, stack, tm,
+					StateVector.OpenEnd());
+
+			// Cap above the mouthpiece, seen from below, closed at the pole.
+			tm = HemisphericalBoreHead.calcTransferMatrix(waveNumber, cap,
+					true, params);
+			stack = coneStack(waveNumber, MouthpieceDepth,
+					1.0e-4 * HeadRadius, 400, params);
+			assertReactanceEquals("Headspace at " + freq, stack, tm,
+					StateVector.ClosedEnd());
+		}
+	}
+
+	protected static void assertReactanceEquals(String message,
+			TransferMatrix expected, TransferMatrix actual, StateVector load)
+	{
+		Complex zExpected = expected.multiply(load).getImpedance();
+		Complex zActual = actual.multiply(load).getImpedance();
+		assertEquals(message, zExpected.getImaginary(),
+				zActual.getImaginary(),
+				0.01 * Math.abs(zExpected.getImaginary()));
+	}
+
+	@Test
+	public final void testHemiHeadInstrument() throws Exception
+	{
+		SimpleInstrumentTuner tuner = new SimpleInstrumentTuner();
+		tuner.setInstrument(
+				"com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_geometry.xml",
+				true);
+		tuner.setTuning(
+				"com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_tuning.xml",
+				true);
+		tuner.setParams(new PhysicalParameters(22.0, TemperatureType.C));
+		InstrumentCalculator calculator = new NAFCalculator();
+		tuner.setCalculator(calculator);
+
+		// The objective function replaces the top of the bore with a
+		// hemispherical head.
+		SingleTaperSimpleRatioHemiHeadObjectiveFunction objective = new SingleTaperSimpleRatioHemiHeadObjectiveFunction(
+				calculator, tuner.getTuning(), new ReactanceEvaluator(
+						calculator));
+		objective.setGeometryPoint(objective.getGeometryPoint());
+		Instrument instrument = calculator.getInstrument();
+		assertEquals("Headspace not merged", 1, instrument.getMouthpiece()
+				.getHeadspace().size());
+		assertTrue("Headspace not a spherical cap", instrument
+				.getMouthpiece().getHeadspace().get(0) instanceof SphericalCapSection);
+		assertTrue("Bore head not a spherical cap", instrument
+				.getComponents().get(0) instanceof SphericalCapSection);
+		Tuning capTuning = tuner.getPredictedTuning();
+
+		// The head is saved with the instrument, so it survives saving the
+		// instrument to XML, in its original units, and reading it back.
+		instrument.convertToLengthType();
+		StringWriter writer = new StringWriter();
+		GeometryBindFactory.getInstance().marshalToXml(instrument, writer);
+		String xml = writer.toString();
+		assertTrue("Head not saved", xml.contains("hemisphericalHead"));
+		tuner.setInstrument(xml);
+		instrument = calculator.getInstrument();
+		assertTrue("Reloaded head not flagged",
+				instrument.isHemisphericalHead());
+		assertTrue("Reloaded head not a spherical cap", instrument
+				.getComponents().get(0) instanceof SphericalCapSection);
+		Tuning reloadedTuning = tuner.getPredictedTuning();
+		// Differences come only from the round trip through inches, which
+		// scales the instrument by about 1.0e-6; the 10-cone head differs
+		// by over 0.3 cents.
+		for (int i = 0; i < capTuning.getFingering().size(); ++i)
+		{
+			Note capNote = capTuning.getFingering().get(i).getNote();
+			Note reloadedNote = reloadedTuning.getFingering().get(i).getNote();
+			assertEquals(capNote.getName() + " differs after reloading", 0.0,
+					Note.cents(reloadedNote.getFrequency(),
+							capNote.getFrequency()), 0.01);
+		}
+
+		// Without the flag, the same bore keeps its cones.
+		Instrument unflagged = (Instrument) GeometryBindFactory.getInstance()
+				.unmarshalXml(xml.replaceAll(
+						"<[^>]*hemisphericalHead>[^<]*</[^>]*hemisphericalHead>",
+						""), true);
+		assertTrue("Head flagged", !unflagged.isHemisphericalHead());
+		unflagged.updateComponents();
+		assertTrue("Unflagged head a spherical cap", !(unflagged
+				.getComponents().get(0) instanceof SphericalCapSection));
+
+		// Replace the head with a fine stack of plain bore points.
+		List<BorePoint> headPoints = instrument.getBorePoint();
+		HemisphericalBoreHead.HeadPoint head = HemisphericalBoreHead
+				.findHemiHead(headPoints, Tube.MINIMUM_CONE_LENGTH);
+		double headDiameter = head.getHeadDiameter();
+		List<BorePoint> finePoints = new ArrayList<BorePoint>();
+		finePoints.add(new BorePoint(head.getPolePosition(), 0.00001));
+		int nrPoints = 400;
+		for (int i = 1; i <= nrPoints; ++i)
+		{
+			double diameter = headDiameter
+					* Math.sin(0.5 * Math.PI * i / nrPoints);
+			double depth = (headDiameter - Math.sqrt(Math.max(headDiameter
+					* headDiameter - diameter * diameter, 0.0))) / 2.;
+			finePoints.add(new BorePoint(head.getPolePosition() + depth,
+					diameter));
+		}
+		double equator = head.getPolePosition() + headDiameter / 2.;
+		for (BorePoint point : headPoints)
+		{
+			if (point.getBorePosition() > equator + Tube.MINIMUM_CONE_LENGTH)
+			{
+				finePoints.add(new BorePoint(point.getBorePosition(), point
+						.getBoreDiameter()));
+			}
+		}
+		assertNotNull("Fine head not recognized", HemisphericalBoreHead
+				.findHemiHead(finePoints, Tube.MINIMUM_CONE_LENGTH));
+		// Move one point slightly off the sphere.
+		BorePoint offPoint = finePoints.get(nrPoints / 2);
+		offPoint.setBorePosition(offPoint.getBorePosition() + 3.0
+				* Tube.MINIMUM_CONE_LENGTH);
+		assertNull("Point off the head ignored", HemisphericalBoreHead
+				.findHemiHead(finePoints, Tube.MINIMUM_CONE_LENGTH));
+		offPoint.setBorePosition(offPoint.getBorePosition() - 3.0
+				* Tube.MINIMUM_CONE_LENGTH);
+		instrument.setHemisphericalHead(false);
+		instrument.setBorePoint(finePoints);
+		instrument.updateComponents();
+		assertTrue("Plain bore points merged",
+				instrument.getMouthpiece().getHeadspace().size() > 1);
+		Tuning fineTuning = tuner.getPredictedTuning();
+
+		for (int i = 0; i < capTuning.getFingering().size(); ++i)
+		{
+			Note capNote = capTuning.getFingering().get(i).getNote();
+			Note fineNote = fineTuning.getFingering().get(i).getNote();
+			assertEquals(capNote.getName() + " differs", 0.0, Note.cents(
+					fineNote.getFrequency(), capNote.getFrequency()), 0.02);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ *
+ */
+package com.wwidesigner.geometry.calculation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.geometry.Mouthpiece;
+import com.wwidesigner.modelling.InstrumentCalculator;
+import com.wwidesigner.modelling.NAFCalculator;
+import com.wwidesigner.modelling.SimpleInstrumentTuner;
+import com.wwidesigner.modelling.WhistleCalculator;
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests that mouthpiece calculators rebuild their prepared values when the
+ * mouthpiece or the air properties change in place.
+ */
+public class PreparedMouthpieceTest
+{
+	@Test
+	public final void testNafMouthpiece() throws Exception
+	{
+		checkInvalidation(NAFCalculator.class,
+				"com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_geometry.xml",
+				"com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_tuning.xml");
+	}
+
+	@Test
+	public final void testWhistleMouthpiece() throws Exception
+	{
+		checkInvalidation(WhistleCalculator.class,
+				"com/wwidesigner/optimization/example/Optimized-D-Whistle.xml",
+				"com/wwidesigner/optimization/example/D-tuning.xml");
+	}
+
+	/**
+	 * Compare a calculator that is re-used across changes to the mouthpiece
+	 * and air properties against a fresh calculator for each change.
+	 */
+	protected void checkInvalidation(
+			Class<? extends InstrumentCalculator> calculatorClass,
+			String instrumentFile, String tuningFile) throws Exception
+	{
+		InstrumentCalculator calculator = calculatorClass
+				.getDeclaredConstructor().newInstance();
+		SimpleInstrumentTuner tuner = new SimpleInstrumentTuner();
+		tuner.setInstrument(instrumentFile, true);
+		tuner.setTuning(tuningFile, true);
+		PhysicalParameters params = new PhysicalParameters(22.0,
+				TemperatureType.C);
+		tuner.setParams(params);
+		tuner.setCalculator(calculator);
+		Instrument instrument = calculator.getInstrument();
+		Fingering fingering = tuner.getTuning().getFingering().get(0);
+		double freq = fingering.getNote().getFrequency();
+
+		Complex original = calculator.calcZ(freq, fingering);
+		assertEquals("Repeated call differs", original,
+				calculator.calcZ(freq, fingering));
+
+		// Change the window in place.
+		Mouthpiece.Fipple fipple = instrument.getMouthpiece().getFipple();
+		fipple.setWindowLength(fipple.getWindowLength() * 1.1);
+		Complex longer = calculator.calcZ(freq, fingering);
+		InstrumentCalculator fresh = calculatorClass
+				.getDeclaredConstructor().newInstance();
+		fresh.setInstrument(instrument);
+		fresh.setPhysicalParameters(params);
+		assertTrue("Window change ignored", !longer.equals(original));
+		assertComplexEquals("Window change", fresh.calcZ(freq, fingering),
+				longer);
+
+		// Change the air properties in place.
+		params.setProperties(30.0, params.getPressure(), params.getHumidity(),
+				params.get_xCO2());
+		fresh = calculatorClass.getDeclaredConstructor().newInstance();
+		fresh.setInstrument(instrument);
+		fresh.setPhysicalParameters(params);
+		Complex warmer = calculator.calcZ(freq, fingering);
+		assertTrue("Temperature change ignored", !warmer.equals(longer));
+		assertComplexEquals("Temperature change",
+				fresh.calcZ(freq, fingering), warmer);
+	}
+
+	protected static void assertComplexEquals(String message,
+			Complex expected, Complex actual)
+	{
+		assertEquals(message, 0.0, expected.subtract(actual).abs(),
+				1.0e-12 * expected.abs());
+	}
+}
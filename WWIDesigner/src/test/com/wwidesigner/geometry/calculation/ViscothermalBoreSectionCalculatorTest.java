@@ -0,0 +1,119 @@
+/**
+ *
+ */
+package com.wwidesigner.geometry.calculation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+
+import com.wwidesigner.geometry.BoreSection;
+import com.wwidesigner.math.TransferMatrix;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests of the tabulated Zwikker-Kosten loss model, against direct
+ * evaluation, the Poiseuille limit, and the simple wall-loss model.
+ */
+public class ViscothermalBoreSectionCalculatorTest
+{
+	@Test
+	public final void testLossFunction()
+	{
+		// Small argument: F(x) = 1 - i*x^2/8 - x^4/48 + ...
+		double x = 0.01;
+		Complex f = ViscothermalLosses.calcF(x);
+		assertEquals(1.0 - Math.pow(x, 4) / 48.0, f.getReal(), 1.0e-14);
+		assertEquals(-x * x / 8.0, f.getImaginary(), 1.0e-14);
+
+		// The asymptotic expansion continues the continued fraction.
+		double max = ViscothermalLosses.MAXIMUM_SHEAR_NUMBER;
+		Complex below = ViscothermalLosses.calcF(max);
+		Complex above = ViscothermalLosses.calcF(max * (1.0 + 1.0e-12));
+		assertEquals(0.0, below.subtract(above).abs() / below.abs(), 1.0e-8);
+
+		// Tabulated ratios match direct evaluation.
+		ViscothermalLosses losses = new ViscothermalLosses(
+				new PhysicalParameters(20.0, TemperatureType.C));
+		Random random = new Random(7);
+		double[] ratios = new double[4];
+		for (int i = 0; i < 2000; ++i)
+		{
+			double shearNumber = 0.01 * Math.pow(1.0e7, random.nextDouble());
+			losses.calcRatios(shearNumber, ratios);
+			Complex[] exact = losses.calcExactRatios(shearNumber);
+			assertEquals("kRatio at " + shearNumber, 0.0, new Complex(
+					ratios[0], ratios[1]).subtract(exact[0]).abs()
+					/ exact[0].abs(), 1.0e-7);
+			assertEquals("zRatio at " + shearNumber, 0.0, new Complex(
+					ratios[2], ratios[3]).subtract(exact[1]).abs()
+					/ exact[1].abs(), 1.0e-7);
+		}
+	}
+
+	@Test
+	public final void testPoiseuilleLimit()
+	{
+		// A short capillary at low frequency has flow resistance
+		// 8*eta*L/(pi*r^4).
+		PhysicalParameters params = new PhysicalParameters(25.0,
+				TemperatureType.C);
+		double radius = 0.0001;
+		double length = 0.001;
+		BoreSection capillary = new BoreSection(length, radius, radius);
+		TransferMatrix tm = new ViscothermalBoreSectionCalculator()
+				.calcTransferMatrix(capillary, params.calcWaveNumber(20.0),
+						params);
+		double resistance = 8.0 * params.getEta() * length
+				/ (Math.PI * Math.pow(radius, 4));
+		assertEquals(resistance, tm.getPU().getReal(), 0.001 * resistance);
+	}
+
+	@Test
+	public final void testWideBore()
+	{
+		// For wide bores, the full model agrees with the first-order
+		// wall-loss correction, apart from the small loss term in the
+		// characteristic impedance that the simple model omits.
+		PhysicalParameters params = new PhysicalParameters(25.0,
+				TemperatureType.C);
+		BoreSectionCalculator simple = new SimpleBoreSectionCalculator();
+		BoreSectionCalculator viscothermal = new ViscothermalBoreSectionCalculator();
+		BoreSection[] sections = new BoreSection[] {
+				new BoreSection(0.1, 0.008, 0.008),
+				new BoreSection(0.1, 0.008, 0.006),
+				new BoreSection(0.1, 0.006, 0.009) };
+		for (BoreSection section : sections)
+		{
+			for (double freq : new double[] { 300.0, 1100.0, 2700.0 })
+			{
+				double waveNumber = params.calcWaveNumber(freq);
+				TransferMatrix expected = simple.calcTransferMatrix(section,
+						waveNumber, params);
+				TransferMatrix actual = viscothermal.calcTransferMatrix(
+						section, waveNumber, params);
+				assertEquals("Determinant incorrect", 1.0, actual
+						.determinant().getReal(), 1.0e-9);
+				assertComplexEquals("PP at " + freq, expected.getPP(),
+						actual.getPP());
+				assertComplexEquals("PU at " + freq, expected.getPU(),
+						actual.getPU());
+				assertComplexEquals("UP at " + freq, expected.getUP(),
+						actual.getUP());
+				assertComplexEquals("UU at " + freq, expected.getUU(),
+						actual.getUU());
+			}
+		}
+	}
+
+	protected static void assertComplexEquals(String message,
+			Complex expected, Complex actual)
+	{
+		assertEquals(message, 0.0, expected.subtract(actual).abs()
+				/ expected.abs(), 0.01);
+	}
+}
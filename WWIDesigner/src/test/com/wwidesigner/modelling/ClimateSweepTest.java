@@ -0,0 +1,133 @@
+/**
+ *
+ */
+package com.wwidesigner.modelling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+import com.wwidesigner.util.PhysicalParametersCache;
+
+/**
+ * Tests for the climate sweep over temperature, humidity and elevation.
+ */
+public class ClimateSweepTest
+{
+	protected static final String INSTRUMENT_FILE = "com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_geometry.xml";
+	protected static final String TUNING_FILE = "com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_tuning.xml";
+
+	protected static final double[] TEMPERATURES = { 5.0, 20.0, 35.0 };
+	protected static final double[] HUMIDITIES = { 45.0 };
+	protected static final double[] ELEVATIONS = { 0.0, 2000.0 };
+
+	protected static InstrumentTunerFactory factory = new InstrumentTunerFactory()
+	{
+		public InstrumentTuner createTuner() throws Exception
+		{
+			InstrumentTuner tuner = new SimpleInstrumentTuner();
+			tuner.setInstrument(INSTRUMENT_FILE, true);
+			tuner.setTuning(TUNING_FILE, true);
+			tuner.setParams(new PhysicalParameters(20.0, TemperatureType.C));
+			tuner.setCalculator(new NAFCalculator());
+			return tuner;
+		}
+	};
+
+	@Test
+	public final void testSweep() throws Exception
+	{
+		ClimateSweep sweep = new ClimateSweep(factory, TEMPERATURES,
+				HUMIDITIES, ELEVATIONS);
+		sweep.setMaxThreads(3);
+		sweep.sweep();
+		assertEquals("Number of cells", 6, sweep.getNumberOfCells());
+
+		// Cell 2 is 20 C, 45% humidity, sea level: the reference condition.
+		assertEquals(20.0, sweep.getTemperature(2), 0.0);
+		assertEquals(0.0, sweep.getElevation(2), 0.0);
+		for (int note = 0; note < sweep.getNumberOfNotes(); ++note)
+		{
+			double drift = sweep.getDrift(2, note);
+			if (!Double.isNaN(drift))
+			{
+				assertEquals("Drift at reference", 0.0, drift, 1.0e-9);
+			}
+			// Warmer air gives higher frequencies.
+			assertTrue("Warm cell not sharp", sweep.getDrift(4, note) > 10.0);
+			assertTrue("Cold cell not flat", sweep.getDrift(0, note) < -10.0);
+		}
+
+		// Compare one cell with a direct, sequential prediction.
+		int cell = 5;
+		InstrumentTuner tuner = factory.createTuner();
+		tuner.setParams(new PhysicalParameters(35.0, TemperatureType.C,
+				PhysicalParameters.pressureAt(2000.0), 45.0,
+				ClimateSweep.DEFAULT_CO2));
+		List<Fingering> predicted = tuner.getPredictedTuning().getFingering();
+		for (int note = 0; note < predicted.size(); ++note)
+		{
+			Double expected = predicted.get(note).getNote().getFrequency();
+			if (expected != null)
+			{
+				assertEquals("Prediction at cell " + cell, expected,
+						sweep.getPredictedFrequency(cell, note),
+						1.0e-6 * expected);
+			}
+		}
+	}
+
+	@Test
+	public final void testSequentialMatchesParallel() throws Exception
+	{
+		ClimateSweep parallel = new ClimateSweep(factory, TEMPERATURES,
+				HUMIDITIES, ELEVATIONS);
+		parallel.setMaxThreads(4);
+		parallel.sweep();
+		ClimateSweep sequential = new ClimateSweep(factory, TEMPERATURES,
+				HUMIDITIES, ELEVATIONS);
+		sequential.setMaxThreads(1);
+		sequential.sweep();
+		for (int cell = 0; cell <= parallel.getNumberOfCells(); ++cell)
+		{
+			for (int note = 0; note < parallel.getNumberOfNotes(); ++note)
+			{
+				assertEquals(sequential.getPredictedFrequency(cell, note),
+						parallel.getPredictedFrequency(cell, note), 0.0);
+			}
+		}
+
+		ClimateSweepTable table = new ClimateSweepTable("Climate sweep",
+				true);
+		table.buildTable(parallel);
+		assertEquals("Rows", parallel.getNumberOfNotes() + 1,
+				table.getRowCount());
+		assertEquals("Columns", parallel.getNumberOfCells() + 2,
+				table.getColumnCount());
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		table.printTable(os);
+		assertTrue("Table not printed", os.toString().contains("35.0C/45.0%/2000m"));
+	}
+
+	@Test
+	public final void testParametersCache()
+	{
+		PhysicalParameters params = PhysicalParametersCache.get(21.0,
+				101.325, 45.0, 0.000390);
+		assertSame("Within quantization step", params,
+				PhysicalParametersCache.get(21.001, 101.3252, 45.02, 0.0003901));
+		assertTrue("Different condition", params != PhysicalParametersCache
+				.get(21.1, 101.325, 45.0, 0.000390));
+		assertEquals(21.0, params.getTemperature(), 1.0e-9);
+		assertEquals(101.325, params.getPressure(), 1.0e-9);
+		assertEquals(45.0, params.getHumidity(), 1.0e-9);
+	}
+}
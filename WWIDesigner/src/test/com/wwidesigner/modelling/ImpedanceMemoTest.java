@@ -0,0 +1,122 @@
+/**
+ *
+ */
+package com.wwidesigner.modelling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+
+import com.wwidesigner.geometry.Hole;
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.note.Tuning;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests of the memo of recent impedances in InstrumentCalculator, on a
+ * whistle.
+ */
+public class ImpedanceMemoTest
+{
+	protected static final String INSTRUMENT_FILE = "com/wwidesigner/optimization/example/Optimized-D-Whistle.xml";
+	protected static final String TUNING_FILE = "com/wwidesigner/optimization/example/D-tuning.xml";
+
+	protected static InstrumentTuner createTuner(boolean memoEnabled)
+			throws Exception
+	{
+		InstrumentTuner tuner = new LinearVInstrumentTuner(5);
+		tuner.setInstrument(INSTRUMENT_FILE, true);
+		tuner.setTuning(TUNING_FILE, true);
+		tuner.setParams(new PhysicalParameters(20.0, TemperatureType.C));
+		tuner.setCalculator(new WhistleCalculator());
+		tuner.getCalculator().setZMemoEnabled(memoEnabled);
+		// Setting the calculator has already used it, to calibrate the
+		// tuner's velocity estimates.
+		tuner.getCalculator().resetZMemoCounters();
+		return tuner;
+	}
+
+	@Test
+	public final void testSamePrediction() throws Exception
+	{
+		InstrumentTuner plain = createTuner(false);
+		Tuning expected = plain.getPredictedTuning();
+		assertEquals(0, plain.getCalculator().getNumberOfZMemoHits());
+
+		InstrumentTuner memo = createTuner(true);
+		Tuning actual = memo.getPredictedTuning();
+		List<Fingering> expectedNotes = expected.getFingering();
+		List<Fingering> actualNotes = actual.getFingering();
+		assertEquals(expectedNotes.size(), actualNotes.size());
+		for (int i = 0; i < expectedNotes.size(); ++i)
+		{
+			assertEquals(expectedNotes.get(i).getNote().getFrequency(),
+					actualNotes.get(i).getNote().getFrequency());
+			assertEquals(expectedNotes.get(i).getNote().getFrequencyMin(),
+					actualNotes.get(i).getNote().getFrequencyMin());
+			assertEquals(expectedNotes.get(i).getNote().getFrequencyMax(),
+					actualNotes.get(i).getNote().getFrequencyMax());
+		}
+
+		// The memo answers some of the repeated requests, without changing
+		// the number of requests made.
+		InstrumentCalculator calculator = memo.getCalculator();
+		assertEquals(plain.getCalculator().getNumberOfZCalls(),
+				calculator.getNumberOfZCalls());
+		assertTrue("No duplicate calls eliminated",
+				calculator.getNumberOfZMemoHits() > 0);
+		System.out.println("Impedance memo: "
+				+ calculator.getNumberOfZMemoHits() + " of "
+				+ calculator.getNumberOfZCalls() + " calls to calcZ answered.");
+		calculator.resetZMemoCounters();
+		assertEquals(0, calculator.getNumberOfZCalls());
+		assertEquals(0, calculator.getNumberOfZMemoHits());
+	}
+
+	@Test
+	public final void testInvalidation() throws Exception
+	{
+		InstrumentTuner tuner = createTuner(true);
+		InstrumentCalculator calculator = tuner.getCalculator();
+		Instrument instrument = calculator.getInstrument();
+		Fingering first = tuner.getTuning().getFingering().get(0);
+		Fingering last = tuner.getTuning().getFingering().get(3);
+		double freq = first.getNote().getFrequency();
+
+		Complex z = calculator.calcZ(freq, first);
+		assertEquals(z, calculator.calcZ(freq, first));
+		assertEquals(1, calculator.getNumberOfZMemoHits());
+
+		// A different fingering.
+		Complex zLast = calculator.calcZ(freq, last);
+		assertTrue("Fingering change not detected", !zLast.equals(z));
+		assertEquals(1, calculator.getNumberOfZMemoHits());
+
+		// Changed geometry, after updateComponents.
+		calculator.setFingering(first);
+		Hole hole = instrument.getHole().get(0);
+		hole.setDiameter(hole.getDiameter() + 0.0005);
+		instrument.updateComponents();
+		Complex zChanged = calculator.calcZ(freq);
+		assertTrue("Geometry change not detected", !zChanged.equals(z));
+		assertEquals(1, calculator.getNumberOfZMemoHits());
+
+		// Changed air properties, in place.
+		calculator.getPhysicalParameters().setProperties(25.0, 101.325, 45.0,
+				0.000390);
+		Complex zWarm = calculator.calcZ(freq);
+		assertTrue("Air property change not detected", !zWarm.equals(zChanged));
+		assertEquals(1, calculator.getNumberOfZMemoHits());
+
+		// Each result matches a calculator without the memo.
+		calculator.setZMemoEnabled(false);
+		assertEquals(zWarm, calculator.calcZ(freq));
+		assertEquals(1, calculator.getNumberOfZMemoHits());
+	}
+}
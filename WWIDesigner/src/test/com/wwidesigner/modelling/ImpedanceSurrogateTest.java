@@ -0,0 +1,133 @@
+/**
+ *
+ */
+package com.wwidesigner.modelling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.note.Note;
+import com.wwidesigner.note.Tuning;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests of playing-range searches on a rational impedance surrogate,
+ * against searches on the true impedance.
+ */
+public class ImpedanceSurrogateTest
+{
+	private static String instrumentFile_NAF = "com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_geometry.xml";
+	private static String tuningFile_NAF = "com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_tuning.xml";
+	private static String instrumentFile_Whistle = "com/wwidesigner/optimization/example/Optimized-D-Whistle.xml";
+	private static String tuningFile_Whistle = "com/wwidesigner/optimization/example/D-tuning.xml";
+
+	/**
+	 * Whistle calculator that counts impedance calculations.
+	 */
+	protected static class CountingWhistleCalculator extends WhistleCalculator
+	{
+		int nrCalcZ = 0;
+
+		@Override
+		public Complex calcZ(double freq)
+		{
+			++nrCalcZ;
+			return super.calcZ(freq);
+		}
+	}
+
+	@Test
+	public void testSurrogateAccuracy() throws Exception
+	{
+		SimpleInstrumentTuner tuner = new SimpleInstrumentTuner();
+		tuner.setInstrument(instrumentFile_NAF, true);
+		tuner.setTuning(tuningFile_NAF, true);
+		tuner.setParams(new PhysicalParameters(72.0, TemperatureType.F));
+		tuner.setCalculator(new NAFCalculator());
+
+		Fingering fingering = tuner.getTuning().getFingering().get(0);
+		InstrumentCalculator calculator = tuner.getCalculator();
+		calculator.setFingering(fingering);
+		double freq = fingering.getNote().getFrequency();
+		ImpedanceSurrogate surrogate = new ImpedanceSurrogate(calculator,
+				freq / 1.2, freq * 1.2);
+		assertTrue("Surrogate not accurate", surrogate.isAccurate());
+		assertEquals(15, surrogate.getNumberOfEvaluations());
+		double zMax = 0.0;
+		double maxError = 0.0;
+		for (int i = 0; i <= 100; ++i)
+		{
+			double f = freq / 1.2 + i * (freq * 1.2 - freq / 1.2) / 100.0;
+			Complex z = calculator.calcZ(f);
+			zMax = Math.max(zMax, z.abs());
+			maxError = Math.max(maxError, z.subtract(surrogate.value(f)).abs());
+		}
+		assertTrue("Surrogate error too large", maxError / zMax < 1.0e-3);
+
+		// Nominal frequencies match the exact search.
+		Tuning exact = tuner.getPredictedTuning();
+		tuner.setUseImpedanceSurrogate(true);
+		Tuning approximate = tuner.getPredictedTuning();
+		for (int i = 0; i < exact.getFingering().size(); ++i)
+		{
+			Note exactNote = exact.getFingering().get(i).getNote();
+			Note approxNote = approximate.getFingering().get(i).getNote();
+			assertEquals(exactNote.getName() + " nominal frequency differs", 0.0,
+					Note.cents(exactNote.getFrequency(), approxNote.getFrequency()),
+					0.001);
+		}
+	}
+
+	@Test
+	public void testWhistlePlayingRanges() throws Exception
+	{
+		CountingWhistleCalculator calculator = new CountingWhistleCalculator();
+		LinearVInstrumentTuner tuner = new LinearVInstrumentTuner(4);
+		tuner.setParams(new PhysicalParameters(27.0, TemperatureType.C));
+		tuner.setInstrument(instrumentFile_Whistle, true);
+		tuner.setTuning(tuningFile_Whistle, true);
+		tuner.setCalculator(calculator);
+
+		calculator.nrCalcZ = 0;
+		Tuning exact = tuner.getPredictedTuning();
+		int exactCalcZ = calculator.nrCalcZ;
+		tuner.setUseImpedanceSurrogate(true);
+		calculator.nrCalcZ = 0;
+		Tuning approximate = tuner.getPredictedTuning();
+		int approxCalcZ = calculator.nrCalcZ;
+		System.out.println("Whistle playing ranges: " + exactCalcZ
+				+ " impedance calculations exact, " + approxCalcZ
+				+ " with surrogate.");
+		assertTrue("Surrogate saved no impedance calculations",
+				approxCalcZ < exactCalcZ);
+
+		List<Fingering> exactFingering = exact.getFingering();
+		List<Fingering> approxFingering = approximate.getFingering();
+		for (int i = 0; i < exactFingering.size(); ++i)
+		{
+			Note exactNote = exactFingering.get(i).getNote();
+			Note approxNote = approxFingering.get(i).getNote();
+			String name = exactNote.getName();
+			assertNotNull(name + " fmax missing", approxNote.getFrequencyMax());
+			assertEquals(name + " fmax differs", 0.0, Note.cents(
+					exactNote.getFrequencyMax(), approxNote.getFrequencyMax()),
+					0.001);
+			// The exact search only locates the minimum of Im(Z)/Re(Z)
+			// to about 0.2 cents.
+			assertEquals(name + " fmin differs", 0.0, Note.cents(
+					exactNote.getFrequencyMin(), approxNote.getFrequencyMin()),
+					0.2);
+			assertEquals(name + " fnom differs", 0.0, Note.cents(
+					exactNote.getFrequency(), approxNote.getFrequency()),
+					0.001);
+		}
+	}
+}
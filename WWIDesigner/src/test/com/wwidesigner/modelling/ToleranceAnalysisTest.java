@@ -0,0 +1,174 @@
+/**
+ *
+ */
+package com.wwidesigner.modelling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import com.wwidesigner.modelling.ToleranceAnalysis.Dimension;
+import com.wwidesigner.modelling.ToleranceAnalysis.Distribution;
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests of the Monte Carlo tolerance analysis, on a NAF.
+ */
+public class ToleranceAnalysisTest
+{
+	protected static final String INSTRUMENT_FILE = "com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_geometry.xml";
+	protected static final String TUNING_FILE = "com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_tuning.xml";
+
+	protected static InstrumentTunerFactory factory = new InstrumentTunerFactory()
+	{
+		public InstrumentTuner createTuner() throws Exception
+		{
+			InstrumentTuner tuner = new SimpleInstrumentTuner();
+			tuner.setInstrument(INSTRUMENT_FILE, true);
+			tuner.setTuning(TUNING_FILE, true);
+			tuner.setParams(new PhysicalParameters(22.0, TemperatureType.C));
+			tuner.setCalculator(new NAFCalculator());
+			return tuner;
+		}
+	};
+
+	protected void setTolerances(ToleranceAnalysis analysis)
+	{
+		analysis.setTolerance(Dimension.HOLE_POSITION, Distribution.NORMAL,
+				0.0005);
+		analysis.setTolerance(Dimension.HOLE_DIAMETER, Distribution.UNIFORM,
+				0.0002);
+		analysis.setTolerance(Dimension.BORE_DIAMETER, Distribution.NORMAL,
+				0.0001);
+		analysis.setTolerance(Dimension.WINDOW_LENGTH, Distribution.UNIFORM,
+				0.0002);
+	}
+
+	@Test
+	public final void testZeroTolerance() throws Exception
+	{
+		ToleranceAnalysis analysis = new ToleranceAnalysis(factory);
+		analysis.setTolerance(Dimension.HOLE_DIAMETER, Distribution.NORMAL,
+				0.0);
+		analysis.analyze(20);
+		assertEquals(0, analysis.getNumberOfFailedPredictions());
+		assertNull(analysis.getFirstFailure());
+		for (int note = 0; note < analysis.getNumberOfNotes(); ++note)
+		{
+			double nominal = analysis.getNominalDeviation(note);
+			if (!Double.isNaN(nominal))
+			{
+				assertEquals("Low percentile", nominal,
+						analysis.getPercentile(note, 0.0), 1.0e-9);
+				assertEquals("High percentile", nominal,
+						analysis.getPercentile(note, 100.0), 1.0e-9);
+			}
+		}
+	}
+
+	@Test
+	public final void testPercentileBands() throws Exception
+	{
+		int nrSamples = 2000;
+		ToleranceAnalysis analysis = new ToleranceAnalysis(factory);
+		setTolerances(analysis);
+		long start = System.currentTimeMillis();
+		analysis.analyze(nrSamples);
+		System.out.println("Tolerance analysis of " + nrSamples
+				+ " samples took "
+				+ (System.currentTimeMillis() - start) / 1000.0 + " seconds.");
+		assertEquals(nrSamples, analysis.getNumberOfSamples());
+		for (int note = 0; note < analysis.getNumberOfNotes(); ++note)
+		{
+			double nominal = analysis.getNominalDeviation(note);
+			if (Double.isNaN(nominal))
+			{
+				continue;
+			}
+			assertEquals("Predictions", nrSamples,
+					analysis.getNumberOfPredictions(note));
+			double low = analysis.getPercentile(note, 5.0);
+			double median = analysis.getPercentile(note, 50.0);
+			double high = analysis.getPercentile(note, 95.0);
+			assertTrue("Band empty", low < median && median < high);
+			assertTrue("Band too wide", high - low < 50.0);
+			assertEquals("Median far from nominal", nominal, median,
+					0.25 * (high - low));
+		}
+
+		ToleranceAnalysisTable table = new ToleranceAnalysisTable(
+				"Tolerance analysis");
+		table.buildTable(analysis);
+		assertEquals(analysis.getNumberOfNotes(), table.getRowCount());
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		table.printTable(os);
+		System.out.print(os.toString());
+	}
+
+	@Test
+	public final void testFailedPredictions() throws Exception
+	{
+		// Tuners that fail on the first note.
+		InstrumentTunerFactory failingFactory = new InstrumentTunerFactory()
+		{
+			public InstrumentTuner createTuner() throws Exception
+			{
+				InstrumentTuner tuner = new SimpleInstrumentTuner()
+				{
+					@Override
+					public Double predictedFrequency(Fingering fingering)
+					{
+						if (fingering == getTuning().getFingering().get(0))
+						{
+							throw new RuntimeException("Test failure");
+						}
+						return super.predictedFrequency(fingering);
+					}
+				};
+				tuner.setInstrument(INSTRUMENT_FILE, true);
+				tuner.setTuning(TUNING_FILE, true);
+				tuner.setParams(new PhysicalParameters(22.0,
+						TemperatureType.C));
+				tuner.setCalculator(new NAFCalculator());
+				return tuner;
+			}
+		};
+		int nrSamples = 10;
+		ToleranceAnalysis analysis = new ToleranceAnalysis(failingFactory);
+		setTolerances(analysis);
+		analysis.setMaxThreads(2);
+		analysis.analyze(nrSamples);
+		assertEquals("Failures, with nominal", nrSamples + 1,
+				analysis.getNumberOfFailedPredictions());
+		assertEquals("Test failure", analysis.getFirstFailure().getMessage());
+		assertEquals(0, analysis.getNumberOfPredictions(0));
+		assertEquals(nrSamples, analysis.getNumberOfPredictions(1));
+	}
+
+	@Test
+	public final void testThreadIndependence() throws Exception
+	{
+		ToleranceAnalysis parallel = new ToleranceAnalysis(factory);
+		setTolerances(parallel);
+		parallel.setMaxThreads(4);
+		parallel.analyze(40);
+		ToleranceAnalysis sequential = new ToleranceAnalysis(factory);
+		setTolerances(sequential);
+		sequential.setMaxThreads(1);
+		sequential.analyze(40);
+		for (int sample = 0; sample < 40; ++sample)
+		{
+			for (int note = 0; note < parallel.getNumberOfNotes(); ++note)
+			{
+				assertEquals(sequential.getDeviation(sample, note),
+						parallel.getDeviation(sample, note), 0.0);
+			}
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/**
+ *
+ */
+package com.wwidesigner.modelling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.wwidesigner.geometry.Hole;
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.note.Note;
+import com.wwidesigner.note.Tuning;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests of the shared cache of predicted tunings, on a whistle.
+ */
+public class TuningPredictionCacheTest
+{
+	protected static final String INSTRUMENT_FILE = "com/wwidesigner/optimization/example/Optimized-D-Whistle.xml";
+	protected static final String TUNING_FILE = "com/wwidesigner/optimization/example/D-tuning.xml";
+
+	protected static InstrumentTuner createTuner(int blowingLevel,
+			double temperature, TuningPredictionCache cache) throws Exception
+	{
+		InstrumentTuner tuner = new LinearVInstrumentTuner(blowingLevel);
+		tuner.setInstrument(INSTRUMENT_FILE, true);
+		tuner.setTuning(TUNING_FILE, true);
+		tuner.setParams(new PhysicalParameters(temperature, TemperatureType.C));
+		tuner.setCalculator(new WhistleCalculator());
+		tuner.setPredictionCache(cache);
+		return tuner;
+	}
+
+	protected static void assertSameTuning(Tuning expected, Tuning actual)
+	{
+		List<Fingering> expectedNotes = expected.getFingering();
+		List<Fingering> actualNotes = actual.getFingering();
+		assertEquals(expectedNotes.size(), actualNotes.size());
+		for (int i = 0; i < expectedNotes.size(); ++i)
+		{
+			Note expectedNote = expectedNotes.get(i).getNote();
+			Note actualNote = actualNotes.get(i).getNote();
+			assertEquals(expectedNote.getName(), actualNote.getName());
+			assertEquals(expectedNote.getFrequency(), actualNote.getFrequency());
+			assertEquals(expectedNote.getFrequencyMin(),
+					actualNote.getFrequencyMin());
+			assertEquals(expectedNote.getFrequencyMax(),
+					actualNote.getFrequencyMax());
+			assertEquals(expectedNotes.get(i).getOpenHole(), actualNotes.get(i)
+					.getOpenHole());
+		}
+	}
+
+	@Test
+	public final void testSharedPredictions() throws Exception
+	{
+		TuningPredictionCache cache = new TuningPredictionCache();
+		Tuning uncached = createTuner(5, 20.0, null).getPredictedTuning();
+
+		Tuning first = createTuner(5, 20.0, cache).getPredictedTuning();
+		assertEquals(0, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertSameTuning(uncached, first);
+		boolean hasRange = false;
+		for (Fingering fingering : first.getFingering())
+		{
+			if (fingering.getNote().getFrequencyMax() != null)
+			{
+				hasRange = true;
+			}
+		}
+		assertTrue("No playing ranges predicted", hasRange);
+
+		// A second view of the same instrument shares the prediction, and
+		// cannot change the cached copy.
+		first.getFingering().get(0).getNote().setFrequency(1.0);
+		Tuning second = createTuner(5, 20.0, cache).getPredictedTuning();
+		assertEquals(1, cache.getHitCount());
+		assertSameTuning(uncached, second);
+
+		// Blowing level, air conditions and geometry are part of the key.
+		createTuner(7, 20.0, cache).getPredictedTuning();
+		createTuner(5, 25.0, cache).getPredictedTuning();
+		InstrumentTuner tuner = createTuner(5, 20.0, cache);
+		Hole hole = tuner.getInstrument().getHole().get(0);
+		hole.setDiameter(hole.getDiameter() + 0.0001);
+		tuner.getInstrument().updateComponents();
+		Tuning changed = tuner.getPredictedTuning();
+		assertEquals(1, cache.getHitCount());
+		assertEquals(4, cache.getMissCount());
+		assertEquals(4, cache.size());
+		assertTrue("Changed geometry gave same prediction", !changed
+				.getFingering().get(0).getNote().getFrequency()
+				.equals(uncached.getFingering().get(0).getNote().getFrequency()));
+	}
+
+	@Test
+	public final void testCapacity() throws Exception
+	{
+		TuningPredictionCache cache = new TuningPredictionCache(2);
+		createTuner(3, 20.0, cache).getPredictedTuning();
+		createTuner(5, 20.0, cache).getPredictedTuning();
+		createTuner(3, 20.0, cache).getPredictedTuning();
+		createTuner(7, 20.0, cache).getPredictedTuning();
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getHitCount());
+		// Level 5 was least recently used, and has been discarded.
+		createTuner(3, 20.0, cache).getPredictedTuning();
+		createTuner(5, 20.0, cache).getPredictedTuning();
+		assertEquals(2, cache.getHitCount());
+		assertEquals(4, cache.getMissCount());
+	}
+}
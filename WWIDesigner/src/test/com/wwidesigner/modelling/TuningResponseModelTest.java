@@ -0,0 +1,207 @@
+/**
+ *
+ */
+package com.wwidesigner.modelling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.wwidesigner.geometry.Hole;
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.geometry.bind.GeometryBindFactory;
+import com.wwidesigner.note.Note;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests of the local response model and live tuning preview, on a NAF whose
+ * dimensions are in inches.
+ */
+public class TuningResponseModelTest
+{
+	protected static final String INSTRUMENT_FILE = "com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_geometry.xml";
+	protected static final String TUNING_FILE = "com/wwidesigner/modelling/example/NAF_D_minor_cherry_actual_tuning.xml";
+
+	protected static InstrumentTunerFactory factory = new InstrumentTunerFactory()
+	{
+		public InstrumentTuner createTuner() throws Exception
+		{
+			InstrumentTuner tuner = new SimpleInstrumentTuner();
+			tuner.setTuning(TUNING_FILE, true);
+			tuner.setParams(new PhysicalParameters(22.0, TemperatureType.C));
+			tuner.setCalculator(new NAFCalculator());
+			return tuner;
+		}
+	};
+
+	protected static Instrument getInstrument() throws Exception
+	{
+		return (Instrument) GeometryBindFactory.getInstance().unmarshalXml(
+				INSTRUMENT_FILE, true, true);
+	}
+
+	/**
+	 * @return an instrument with the diameter of one hole and position of
+	 *         another changed, in inches.
+	 */
+	protected static Instrument getEditedInstrument(double change)
+			throws Exception
+	{
+		Instrument instrument = getInstrument();
+		Hole hole = instrument.getHole().get(2);
+		hole.setDiameter(hole.getDiameter() + change);
+		hole = instrument.getHole().get(4);
+		hole.setBorePosition(hole.getBorePosition() - change);
+		return instrument;
+	}
+
+	protected static double[] predict(Instrument instrument) throws Exception
+	{
+		InstrumentTuner tuner = factory.createTuner();
+		tuner.setInstrument(instrument);
+		return new TuningResponseModel(factory).predictFrequencies(tuner);
+	}
+
+	@Test
+	public final void testEstimate() throws Exception
+	{
+		TuningResponseModel model = new TuningResponseModel(factory);
+		model.setMaxThreads(2);
+		model.build(getInstrument());
+		assertTrue(model.isBuilt());
+		assertEquals("Predictions failed", 0,
+				model.getNumberOfFailedPredictions());
+
+		// At the base geometry, the estimate is the exact prediction.
+		double[] estimate = model.estimateFrequencies(getInstrument());
+		for (int note = 0; note < model.getNumberOfNotes(); ++note)
+		{
+			double base = model.getBaseFrequency(note);
+			if (!Double.isNaN(base))
+			{
+				assertEquals(base, estimate[note], 0.0);
+			}
+		}
+
+		// A small edit, within the trust region, is estimated to a fraction
+		// of the change it makes.
+		Instrument edited = getEditedInstrument(0.01);
+		assertTrue(model.isWithinTrustRegion(edited));
+		estimate = model.estimateFrequencies(edited);
+		double[] exact = predict(getEditedInstrument(0.01));
+		int nrChecked = 0;
+		for (int note = 0; note < model.getNumberOfNotes(); ++note)
+		{
+			double base = model.getBaseFrequency(note);
+			if (Double.isNaN(base) || Double.isNaN(exact[note]))
+			{
+				continue;
+			}
+			double change = Note.cents(base, exact[note]);
+			double error = Note.cents(exact[note], estimate[note]);
+			assertTrue("Estimate of note " + note + " off by " + error,
+					Math.abs(error) <= 0.05 * Math.abs(change) + 0.05);
+			++nrChecked;
+		}
+		assertTrue("No notes checked", nrChecked > 0);
+
+		// Large and structural edits are outside the trust region.
+		assertFalse(model.isWithinTrustRegion(getEditedInstrument(0.05)));
+		Instrument fewerHoles = getInstrument();
+		fewerHoles.getHole().remove(0);
+		assertFalse(model.isWithinTrustRegion(fewerHoles));
+		assertNull(model.estimateFrequencies(fewerHoles));
+		Instrument moved = getInstrument();
+		moved.getMouthpiece().setPosition(
+				moved.getMouthpiece().getPosition() + 0.001);
+		assertFalse(model.isWithinTrustRegion(moved));
+
+		// Sequential calculation gives the same model.
+		TuningResponseModel sequential = new TuningResponseModel(factory);
+		sequential.setMaxThreads(1);
+		sequential.build(getInstrument());
+		for (int note = 0; note < model.getNumberOfNotes(); ++note)
+		{
+			for (int dim = 0; dim < model.getNumberOfDimensions(); ++dim)
+			{
+				assertEquals(sequential.getGradient(note, dim),
+						model.getGradient(note, dim), 0.0);
+			}
+		}
+	}
+
+	protected static void waitForPreview(TuningPreview preview)
+			throws Exception
+	{
+		long deadline = System.currentTimeMillis() + 120000;
+		while (preview.isPending())
+		{
+			assertTrue("Preview not ready", System.currentTimeMillis() < deadline);
+			Thread.sleep(20);
+		}
+	}
+
+	@Test
+	public final void testPreview() throws Exception
+	{
+		TuningPreview preview = new TuningPreview(new TuningResponseModel(
+				factory));
+		final int[] nrChanges = new int[1];
+		preview.setListener(new TuningPreview.PreviewListener()
+		{
+			public void previewChanged(TuningPreview changedPreview)
+			{
+				synchronized (nrChanges)
+				{
+					++nrChanges[0];
+				}
+			}
+		});
+		try
+		{
+			// The first update is an exact prediction, in the background.
+			preview.update(getInstrument());
+			assertTrue(preview.isPending());
+			waitForPreview(preview);
+			assertNull(preview.getErrorMessage());
+			assertTrue(preview.isExact());
+			double[] exact = predict(getInstrument());
+			for (int note = 0; note < preview.getNumberOfNotes(); ++note)
+			{
+				assertEquals(exact[note], preview.getFrequency(note), 0.0);
+			}
+
+			// A small edit is estimated immediately.
+			preview.update(getEditedInstrument(0.01));
+			assertFalse(preview.isPending());
+			assertFalse(preview.isExact());
+
+			// A large edit is predicted exactly, in the background.
+			preview.update(getEditedInstrument(0.05));
+			assertTrue(preview.isPending());
+			waitForPreview(preview);
+			assertTrue(preview.isExact());
+			exact = predict(getEditedInstrument(0.05));
+			for (int note = 0; note < preview.getNumberOfNotes(); ++note)
+			{
+				assertEquals(exact[note], preview.getFrequency(note), 0.0);
+				Note target = preview.getTargetTuning().getFingering()
+						.get(note).getNote();
+				assertNotNull(target);
+			}
+			synchronized (nrChanges)
+			{
+				assertTrue("Listener not called", nrChanges[0] >= 4);
+			}
+		}
+		finally
+		{
+			preview.shutdown();
+		}
+	}
+}
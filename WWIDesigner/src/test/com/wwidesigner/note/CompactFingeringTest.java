@@ -0,0 +1,116 @@
+/**
+ *
+ */
+package com.wwidesigner.note;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.wwidesigner.modelling.InstrumentCalculator;
+import com.wwidesigner.modelling.InstrumentTuner;
+import com.wwidesigner.modelling.ReactanceEvaluator;
+import com.wwidesigner.modelling.SimpleInstrumentTuner;
+import com.wwidesigner.modelling.WhistleCalculator;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests of the compact fingering and tuning forms used in evaluation.
+ */
+public class CompactFingeringTest
+{
+	protected static final String INSTRUMENT_FILE = "com/wwidesigner/optimization/example/Optimized-D-Whistle.xml";
+	protected static final String TUNING_FILE = "com/wwidesigner/optimization/example/D-tuning.xml";
+
+	protected static Fingering createFingering(boolean[] openHoles,
+			Double frequency)
+	{
+		Fingering fingering = new Fingering();
+		fingering.setOpenHoles(openHoles);
+		Note note = new Note();
+		note.setFrequency(frequency);
+		fingering.setNote(note);
+		return fingering;
+	}
+
+	@Test
+	public final void testCompactForm()
+	{
+		boolean[] holes = { false, true, true, false, false, true };
+		CompactFingering compact = CompactFingering.valueOf(createFingering(
+				holes, 440.0));
+		assertEquals(holes.length, compact.getNumberOfHoles());
+		assertEquals(0x26L, compact.getOpenHoleMask());
+		for (int i = 0; i < holes.length; ++i)
+		{
+			assertEquals(holes[i], compact.isOpenHole(i));
+		}
+		assertEquals("XOOXXO", compact.toString());
+		assertEquals(440.0, compact.getFrequency(), 0.0);
+		assertEquals(1, compact.getOptimizationWeight());
+		assertFalse(compact.allHolesClosed());
+
+		// Identical fingerings share one instance.
+		assertSame(compact,
+				CompactFingering.valueOf(createFingering(holes, 440.0)));
+		assertNotSame(compact,
+				CompactFingering.valueOf(createFingering(holes, 441.0)));
+
+		CompactFingering closed = CompactFingering.valueOf(createFingering(
+				new boolean[6], null));
+		assertTrue(closed.allHolesClosed());
+		assertFalse(closed.hasFrequency());
+	}
+
+	@Test
+	public final void testEvaluation() throws Exception
+	{
+		InstrumentTuner tuner = new SimpleInstrumentTuner();
+		tuner.setInstrument(INSTRUMENT_FILE, true);
+		tuner.setTuning(TUNING_FILE, true);
+		tuner.setParams(new PhysicalParameters(20.0, TemperatureType.C));
+		tuner.setCalculator(new WhistleCalculator());
+		InstrumentCalculator calculator = tuner.getCalculator();
+		calculator.setZMemoEnabled(false);
+		List<Fingering> targets = tuner.getTuning().getFingering();
+
+		// The mask gives the same impedance as the list of open holes.
+		CompactTuning compactTargets = new CompactTuning(targets);
+		assertEquals(targets.size(), compactTargets.size());
+		double[] expected = new double[targets.size()];
+		for (int i = 0; i < targets.size(); ++i)
+		{
+			Fingering target = targets.get(i);
+			double freq = target.getNote().getFrequency();
+			expected[i] = -calculator.calcZ(freq, target).getImaginary();
+			assertSame(compactTargets.get(i), compactTargets.get(target));
+			assertEquals(calculator.calcZ(freq, target),
+					calculator.calcZ(compactTargets.get(i)));
+		}
+
+		ReactanceEvaluator evaluator = new ReactanceEvaluator(calculator);
+		double[] errors = evaluator.calculateErrorVector(targets);
+		for (int i = 0; i < targets.size(); ++i)
+		{
+			assertEquals(expected[i], errors[i], 0.0);
+		}
+
+		// The compact form is reused for the same list, and rebuilt for
+		// another.
+		assertTrue(CompactTuning.forList(compactTargets, targets) == compactTargets);
+		List<Fingering> fewerTargets = new ArrayList<Fingering>(targets);
+		fewerTargets.remove(0);
+		assertFalse(CompactTuning.forList(compactTargets, fewerTargets) == compactTargets);
+		errors = evaluator.calculateErrorVector(fewerTargets);
+		assertEquals(targets.size() - 1, errors.length);
+		assertEquals(expected[1], errors[0], 0.0);
+	}
+}
@@ -0,0 +1,172 @@
+/**
+ *
+ */
+package com.wwidesigner.optimization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.optim.PointValuePair;
+import org.apache.commons.math3.optim.nonlinear.scalar.GoalType;
+import org.junit.Test;
+
+import com.wwidesigner.modelling.NAFCalculator;
+import com.wwidesigner.modelling.ReactanceEvaluator;
+import com.wwidesigner.optimization.multistart.RandomRangeProcessor;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests of bounded evaluation in BaseObjectiveFunction, which stops
+ * calculating note errors once the norm exceeds a cutoff.
+ */
+public class BoundedEvaluationTest extends AbstractOptimizationTest
+{
+	protected void setupHoleSize() throws Exception
+	{
+		setInputInstrumentXML("com/wwidesigner/optimization/example/G7HoleNAF.xml");
+		setInputTuningXML("com/wwidesigner/optimization/example/G7HoleNAFTuning.xml");
+		setParams(new PhysicalParameters(22.22, TemperatureType.C));
+		setCalculator(new NAFCalculator());
+		setup();
+		evaluator = new ReactanceEvaluator(calculator);
+		objective = new HoleSizeObjectiveFunction(calculator, tuning, evaluator);
+		objective.setErrorVectorCache(null);
+	}
+
+	@Test
+	public final void testBoundedNorm() throws Exception
+	{
+		setupHoleSize();
+		int nrNotes = objective.getNrNotes();
+		double[] point = objective.getGeometryPoint();
+		double fullNorm = objective.value(point);
+		double[] worsePoint = point.clone();
+		for (int i = 0; i < worsePoint.length; ++i)
+		{
+			worsePoint[i] *= 1.5;
+		}
+		double worseNorm = objective.value(worsePoint);
+		assertTrue(worseNorm > fullNorm);
+
+		// Below the cutoff, bounded evaluation gives the full norm.
+		objective.setBoundedEvaluation(true);
+		objective.setNormCutoff(2.0 * fullNorm);
+		int tunings = objective.getNumberOfTunings();
+		assertEquals("Bounded norm differs", fullNorm, objective.value(point),
+				1.0e-10 * fullNorm);
+		assertEquals(nrNotes, objective.getNumberOfTunings() - tunings);
+		assertEquals(0, objective.getNumberOfAbortedEvaluations());
+
+		// Above the cutoff, it gives a lower bound from fewer notes.
+		objective.setNormCutoff(fullNorm);
+		tunings = objective.getNumberOfTunings();
+		double bound = objective.value(worsePoint);
+		assertTrue("Bound not above cutoff", bound > fullNorm);
+		assertTrue("Bound above norm", bound <= worseNorm * (1.0 + 1.0e-10));
+		assertTrue("No notes skipped",
+				objective.getNumberOfTunings() - tunings < nrNotes);
+		assertEquals(1, objective.getNumberOfAbortedEvaluations());
+
+		// Without a cutoff, evaluation is complete.
+		objective.setNormCutoff(Double.POSITIVE_INFINITY);
+		assertEquals(worseNorm, objective.value(worsePoint),
+				1.0e-10 * worseNorm);
+		assertEquals(1, objective.getNumberOfAbortedEvaluations());
+	}
+
+	@Test
+	public final void testSimplexUnbounded() throws Exception
+	{
+		setupHoleSize();
+		objective.setMaxEvaluations(400);
+		double[] startPoint = objective.getGeometryPoint();
+		double[] lower = new double[startPoint.length];
+		double[] upper = new double[startPoint.length];
+		for (int i = 0; i < startPoint.length; ++i)
+		{
+			lower[i] = 0.7 * startPoint[i];
+			upper[i] = 1.3 * startPoint[i];
+		}
+		objective.setLowerBounds(lower);
+		objective.setUpperBounds(upper);
+		ObjectiveFunctionOptimizer.optimizeObjectiveFunction(objective,
+				BaseObjectiveFunction.OptimizerType.SimplexOptimizer);
+		double fullNorm = ObjectiveFunctionOptimizer.getFinalNorm();
+		double[] fullPoint = objective.getGeometryPoint();
+		int fullEvaluations = objective.getNumberOfEvaluations();
+
+		// The simplex compares every vertex across iterations, so it does
+		// not use bounded evaluation, and takes the same path with it on.
+		objective.setGeometryPoint(startPoint);
+		objective.setBoundedEvaluation(true);
+		ObjectiveFunctionOptimizer.optimizeObjectiveFunction(objective,
+				BaseObjectiveFunction.OptimizerType.SimplexOptimizer);
+		assertEquals("Simplex evaluation bounded", 0,
+				objective.getNumberOfAbortedEvaluations());
+		assertEquals("Simplex result differs", fullNorm,
+				ObjectiveFunctionOptimizer.getFinalNorm(), 1.0e-10 * fullNorm);
+		assertTrue("Simplex point differs",
+				Arrays.equals(fullPoint, objective.getGeometryPoint()));
+		assertEquals("Simplex evaluations differ", 2 * fullEvaluations,
+				objective.getNumberOfEvaluations());
+	}
+
+	@Test
+	public final void testBoundedScreening() throws Exception
+	{
+		setupHoleSize();
+		int nrKept = 4;
+		objective.setStartScreening(nrKept, false);
+		double[] point = objective.getGeometryPoint();
+		double[] lower = new double[point.length];
+		double[] upper = new double[point.length];
+		for (int i = 0; i < point.length; ++i)
+		{
+			lower[i] = 0.7 * point[i];
+			upper[i] = 1.3 * point[i];
+		}
+		RandomRangeProcessor rangeProcessor = new RandomRangeProcessor(lower,
+				upper, null, 40);
+		double[][] points = new double[40][];
+		for (int i = 0; i < points.length; ++i)
+		{
+			points[i] = rangeProcessor.nextVector();
+		}
+
+		double[] values = ObjectiveFunctionOptimizer.screenCandidates(
+				objective, points);
+		int fullTunings = objective.getNumberOfTunings();
+		objective.setBoundedEvaluation(true);
+		double[] boundedValues = ObjectiveFunctionOptimizer.screenCandidates(
+				objective, points);
+		int boundedTunings = objective.getNumberOfTunings() - fullTunings;
+		System.out.println("Screening used " + fullTunings
+				+ " tunings with full evaluation, " + boundedTunings
+				+ " with bounded evaluation.");
+		assertTrue("Bounded screening saved nothing",
+				boundedTunings < fullTunings);
+
+		// The same candidates survive screening.
+		PointValuePair[] full = new PointValuePair[points.length];
+		PointValuePair[] bounded = new PointValuePair[points.length];
+		for (int i = 0; i < points.length; ++i)
+		{
+			full[i] = new PointValuePair(points[i], values[i]);
+			bounded[i] = new PointValuePair(points[i], boundedValues[i]);
+			assertTrue("Bound above norm",
+					boundedValues[i] <= values[i] * (1.0 + 1.0e-10));
+		}
+		ObjectiveFunctionOptimizer.sortPairs(GoalType.MINIMIZE, full);
+		ObjectiveFunctionOptimizer.sortPairs(GoalType.MINIMIZE, bounded);
+		for (int i = 0; i < nrKept; ++i)
+		{
+			assertTrue("Survivor " + i + " differs", Arrays.equals(
+					full[i].getPoint(), bounded[i].getPoint()));
+			assertEquals(full[i].getValue(), bounded[i].getValue(),
+					1.0e-10 * full[i].getValue());
+		}
+	}
+}
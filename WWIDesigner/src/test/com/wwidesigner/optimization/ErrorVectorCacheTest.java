@@ -0,0 +1,102 @@
+/**
+ *
+ */
+package com.wwidesigner.optimization;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of ErrorVectorCache lookup, quantization, and eviction.
+ */
+public class ErrorVectorCacheTest
+{
+	protected static final Object EVALUATOR_1 = new Object();
+	protected static final Object EVALUATOR_2 = new Object();
+
+	@Test
+	public final void testLookup()
+	{
+		ErrorVectorCache cache = new ErrorVectorCache();
+		double[] point = { 0.3, 0.01, 0.005 };
+		double[] errors = { 1.0, -2.0, 3.0 };
+
+		assertNull(cache.get(point, EVALUATOR_1));
+		cache.put(point, EVALUATOR_1, errors);
+		assertArrayEquals(errors, cache.get(point.clone(), EVALUATOR_1), 0.0);
+		assertNull("Different evaluator matched",
+				cache.get(point, EVALUATOR_2));
+		assertNull("Different point matched",
+				cache.get(new double[] { 0.3, 0.01, 0.0050001 }, EVALUATOR_1));
+
+		// Cached vector must not change with the caller's copy.
+		errors[0] = 99.0;
+		assertEquals(1.0, cache.get(point, EVALUATOR_1)[0], 0.0);
+		assertEquals(2, cache.getHits());
+		assertEquals(3, cache.getMisses());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getHits());
+	}
+
+	@Test
+	public final void testBufferedLookup()
+	{
+		ErrorVectorCache cache = new ErrorVectorCache();
+		double[] point = { 0.3, 0.01 };
+		double[] errors = { 1.0, -2.0, 3.0 };
+		double[] buffer = new double[3];
+
+		assertFalse(cache.get(point, EVALUATOR_1, buffer));
+		cache.put(point, EVALUATOR_1, errors);
+		assertTrue(cache.get(point.clone(), EVALUATOR_1, buffer));
+		assertArrayEquals(errors, buffer, 0.0);
+		assertFalse("Wrong length matched",
+				cache.get(point, EVALUATOR_1, new double[2]));
+
+		// Replacing an entry keeps one entry, with the new errors.
+		errors[0] = 99.0;
+		cache.put(point, EVALUATOR_1, errors);
+		errors[0] = 0.0;
+		assertEquals(1, cache.size());
+		assertTrue(cache.get(point, EVALUATOR_1, buffer));
+		assertEquals(99.0, buffer[0], 0.0);
+		assertEquals(2, cache.getHits());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public final void testQuantization()
+	{
+		ErrorVectorCache cache = new ErrorVectorCache(10, 1.0e-6);
+		cache.put(new double[] { 0.3, 0.01 }, EVALUATOR_1,
+				new double[] { 5.0 });
+		assertArrayEquals(new double[] { 5.0 }, cache.get(new double[] {
+				0.3000001, 0.0099999 }, EVALUATOR_1), 0.0);
+		assertNull(cache.get(new double[] { 0.300002, 0.01 }, EVALUATOR_1));
+	}
+
+	@Test
+	public final void testEviction()
+	{
+		ErrorVectorCache cache = new ErrorVectorCache(2, 0.0);
+		cache.put(new double[] { 1.0 }, EVALUATOR_1, new double[] { 1.0 });
+		cache.put(new double[] { 2.0 }, EVALUATOR_1, new double[] { 2.0 });
+		// Use point 1, so that point 2 is least recently used.
+		cache.get(new double[] { 1.0 }, EVALUATOR_1);
+		cache.put(new double[] { 3.0 }, EVALUATOR_1, new double[] { 3.0 });
+
+		assertEquals(2, cache.size());
+		assertNull(cache.get(new double[] { 2.0 }, EVALUATOR_1));
+		assertArrayEquals(new double[] { 1.0 },
+				cache.get(new double[] { 1.0 }, EVALUATOR_1), 0.0);
+		assertArrayEquals(new double[] { 3.0 },
+				cache.get(new double[] { 3.0 }, EVALUATOR_1), 0.0);
+	}
+}
@@ -0,0 +1,245 @@
+/**
+ *
+ */
+package com.wwidesigner.optimization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.geometry.bind.GeometryBindFactory;
+import com.wwidesigner.modelling.BufferedEvaluatorInterface;
+import com.wwidesigner.modelling.InstrumentCalculator;
+import com.wwidesigner.modelling.PlayingRange;
+import com.wwidesigner.modelling.SimpleInstrumentTuner;
+import com.wwidesigner.modelling.WhistleCalculator;
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.note.Tuning;
+import com.wwidesigner.note.bind.NoteBindFactory;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests that the objective function and evaluator pipeline reuses its work
+ * arrays, and the tuners their playing-range calculator, rather than
+ * allocating new ones for each evaluation.
+ */
+public class EvaluationAllocationTest
+{
+	protected static final String INSTRUMENT_FILE = "com/wwidesigner/optimization/example/Optimized-D-Whistle.xml";
+	protected static final String TUNING_FILE = "com/wwidesigner/optimization/example/D-tuning.xml";
+	protected static final int NR_EVALUATIONS = 20000;
+
+	/**
+	 * Evaluator with errors that depend only on the fingering index, so
+	 * that the cost of the objective function itself is measured.
+	 */
+	protected static class FixedEvaluator implements BufferedEvaluatorInterface
+	{
+		protected int calls = 0;
+
+		public double[] calculateErrorVector(List<Fingering> fingeringTargets)
+		{
+			double[] errorVector = new double[fingeringTargets.size()];
+			calculateErrorVector(fingeringTargets, errorVector);
+			return errorVector;
+		}
+
+		public void calculateErrorVector(List<Fingering> fingeringTargets,
+				double[] errorVector)
+		{
+			++calls;
+			for (int i = 0; i < errorVector.length; ++i)
+			{
+				errorVector[i] = 0.5 * i;
+			}
+		}
+	}
+
+	/**
+	 * Objective function whose geometry is just a stored point, with the
+	 * default error vector cache and feasibility check settings.
+	 */
+	protected static class PointObjectiveFunction extends BaseObjectiveFunction
+	{
+		protected double[] geometry;
+
+		public PointObjectiveFunction(InstrumentCalculator calculator,
+				Tuning tuning, FixedEvaluator evaluator, int nrDimensions)
+		{
+			super(calculator, tuning, evaluator);
+			this.nrDimensions = nrDimensions;
+			geometry = new double[nrDimensions];
+		}
+
+		@Override
+		public double[] getGeometryPoint()
+		{
+			return geometry.clone();
+		}
+
+		@Override
+		public void setGeometryPoint(double[] point)
+		{
+			System.arraycopy(point, 0, geometry, 0, nrDimensions);
+		}
+
+		@Override
+		protected void setConstraints()
+		{
+		}
+	}
+
+	protected static class MergedPointObjectiveFunction extends
+			MergedObjectiveFunction
+	{
+		public MergedPointObjectiveFunction(InstrumentCalculator calculator,
+				Tuning tuning, FixedEvaluator evaluator)
+		{
+			super(calculator, tuning, evaluator);
+			components = new BaseObjectiveFunction[2];
+			components[0] = new PointObjectiveFunction(calculator, tuning,
+					evaluator, 2);
+			components[1] = new PointObjectiveFunction(calculator, tuning,
+					evaluator, 3);
+			sumDimensions();
+		}
+	}
+
+	/**
+	 * Skip the rest of a test unless the JVM can report the bytes each
+	 * thread allocates.
+	 */
+	protected static void assumeAllocationTracking()
+	{
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) threadBean)
+						.isThreadAllocatedMemorySupported()
+				&& ((com.sun.management.ThreadMXBean) threadBean)
+						.isThreadAllocatedMemoryEnabled());
+	}
+
+	protected static long allocatedBytes()
+	{
+		return ((com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean()).getThreadAllocatedBytes(Thread
+				.currentThread().getId());
+	}
+
+	/**
+	 * @return average bytes allocated per evaluation, after warming up.
+	 */
+	protected static double bytesPerEvaluation(BaseObjectiveFunction objective,
+			double[] point)
+	{
+		double norm = 0.0;
+		for (int i = 0; i < NR_EVALUATIONS; ++i)
+		{
+			point[0] = 0.001 * (i % 7);
+			norm += objective.value(point);
+		}
+		long before = allocatedBytes();
+		for (int i = 0; i < NR_EVALUATIONS; ++i)
+		{
+			point[0] = 0.001 * (i % 7);
+			norm += objective.value(point);
+		}
+		long after = allocatedBytes();
+		assertTrue(norm > 0.0);
+		return (after - before) / (double) NR_EVALUATIONS;
+	}
+
+	@Test
+	public final void testObjectiveAllocation() throws Exception
+	{
+		Instrument instrument = (Instrument) GeometryBindFactory.getInstance()
+				.unmarshalXml(INSTRUMENT_FILE, true, true);
+		Tuning tuning = (Tuning) NoteBindFactory.getInstance().unmarshalXml(
+				TUNING_FILE, true, true);
+		WhistleCalculator calculator = new WhistleCalculator(instrument,
+				new PhysicalParameters(20.0, TemperatureType.C));
+
+		FixedEvaluator evaluator = new FixedEvaluator();
+		BaseObjectiveFunction objective = new PointObjectiveFunction(
+				calculator, tuning, evaluator, 2);
+		assertNull(objective.getErrorVectorCache());
+		assertFalse(objective.isFeasibilityCheck());
+		double[] errors = objective.getErrorVector(new double[2]);
+		assertEquals(tuning.getFingering().size(), errors.length);
+		assertEquals(0.5, errors[1], 0.0);
+		// Callers of getErrorVector get their own copy.
+		objective.value(new double[2]);
+		assertTrue(errors != objective.getErrorVector(new double[2]));
+
+		assumeAllocationTracking();
+		double bytes = bytesPerEvaluation(objective, new double[2]);
+		System.out.println("Objective function: " + bytes
+				+ " bytes per evaluation.");
+		assertTrue("Objective function allocates " + bytes
+				+ " bytes per evaluation", bytes < 8.0);
+
+		BaseObjectiveFunction merged = new MergedPointObjectiveFunction(
+				calculator, tuning, evaluator);
+		bytes = bytesPerEvaluation(merged, new double[5]);
+		System.out.println("Merged objective function: " + bytes
+				+ " bytes per evaluation.");
+		assertTrue("Merged objective function allocates " + bytes
+				+ " bytes per evaluation", bytes < 8.0);
+		assertEquals(2 * 2 * NR_EVALUATIONS + 3, evaluator.calls);
+
+		// With a cache, repeated points are answered from the cache, also
+		// without allocation.
+		objective.setErrorVectorCache(new ErrorVectorCache());
+		bytes = bytesPerEvaluation(objective, new double[2]);
+		System.out.println("Objective function with cache hits: " + bytes
+				+ " bytes per evaluation.");
+		assertTrue("Cache lookups allocate " + bytes + " bytes per evaluation",
+				bytes < 8.0);
+		assertEquals(2 * 2 * NR_EVALUATIONS + 3 + 7, evaluator.calls);
+	}
+
+	@Test
+	public final void testTunerReuse() throws Exception
+	{
+		final PlayingRange[] ranges = new PlayingRange[2];
+		SimpleInstrumentTuner tuner = new SimpleInstrumentTuner()
+		{
+			@Override
+			public Double predictedFrequency(Fingering fingering)
+			{
+				PlayingRange range = createPlayingRange(fingering);
+				ranges[ranges[0] == null ? 0 : 1] = range;
+				return super.predictedFrequency(fingering);
+			}
+		};
+		tuner.setInstrument(INSTRUMENT_FILE, true);
+		tuner.setTuning(TUNING_FILE, true);
+		tuner.setParams(new PhysicalParameters(20.0, TemperatureType.C));
+		tuner.setCalculator(new WhistleCalculator());
+		List<Fingering> fingerings = tuner.getTuning().getFingering();
+
+		// One playing-range calculator serves every note, and gives the same
+		// predictions as a new one for each note.
+		Double first = tuner.predictedFrequency(fingerings.get(0));
+		Double second = tuner.predictedFrequency(fingerings.get(1));
+		assertSame(ranges[0], ranges[1]);
+		InstrumentCalculator calculator = tuner.getCalculator();
+		assertEquals(new PlayingRange(calculator, fingerings.get(0))
+				.findXZero(fingerings.get(0).getNote().getFrequency()), first,
+				0.0);
+		assertEquals(new PlayingRange(calculator, fingerings.get(1))
+				.findXZero(fingerings.get(1).getNote().getFrequency()),
+				second, 0.0);
+	}
+}
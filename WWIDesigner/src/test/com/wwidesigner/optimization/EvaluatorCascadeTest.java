@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package com.wwidesigner.optimization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.modelling.NAFCalculator;
+import com.wwidesigner.modelling.ReactanceEvaluator;
+import com.wwidesigner.modelling.ReflectionEvaluator;
+import com.wwidesigner.optimization.HolePositionObjectiveFunction.BoreLengthAdjustmentType;
+import com.wwidesigner.optimization.multistart.RandomRangeProcessor;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests of multi-stage optimization with an EvaluatorCascade, on a one-hole
+ * NAF.
+ */
+public class EvaluatorCascadeTest extends AbstractOptimizationTest
+{
+	protected void setupOneHole() throws Exception
+	{
+		setInputInstrumentXML("com/wwidesigner/optimization/example/1HoleNAF1.xml");
+		setInputTuningXML("com/wwidesigner/optimization/example/1HoleNAF1Tuning.xml");
+		setParams(new PhysicalParameters(22.22, TemperatureType.C));
+		setCalculator(new NAFCalculator());
+		setup();
+		setLowerBound(new double[] { 0.20, 0.25, 0.0075 });
+		setUpperBound(new double[] { 0.4, 1.0, 0.010 });
+		evaluator = new ReactanceEvaluator(calculator);
+		objective = new HoleFromTopObjectiveFunction(calculator, tuning,
+				evaluator, BoreLengthAdjustmentType.PRESERVE_TAPER);
+		objective.setMaxEvaluations(20000);
+	}
+
+	protected void checkOneHole(Instrument optimizedInstrument)
+	{
+		assertEquals("Bore length incorrect", 11.46,
+				getBoreLength(optimizedInstrument), 0.1);
+		assertTrue("Residual error too large",
+				ObjectiveFunctionOptimizer.getResidualErrorRatio() < 0.01);
+	}
+
+	@Test
+	public final void testTwoStageCascade() throws Exception
+	{
+		setupOneHole();
+		assertNull(objective.getEvaluatorCascade());
+		ReflectionEvaluator firstStage = new ReflectionEvaluator(calculator);
+		objective.setFirstStageEvaluator(firstStage);
+		objective.setRunTwoStageOptimization(true);
+		EvaluatorCascade cascade = objective.getEvaluatorCascade();
+		assertEquals(2, cascade.getNrStages());
+		assertSame(firstStage, cascade.getFirstStage().getEvaluator());
+		assertSame(evaluator, cascade.getLastStage().getEvaluator());
+		assertEquals(20000, cascade.getFirstStage().getBudget(20000));
+	}
+
+	@Test
+	public final void testSingleStartCascade() throws Exception
+	{
+		setupOneHole();
+		objective.setEvaluatorCascade(new EvaluatorCascade()
+				.addStage(new ReflectionEvaluator(calculator), 0.5, 0.01, 1)
+				.addStage(evaluator, 0.5, 1.0, 1));
+		assertTrue(objective.isRunTwoStageOptimization());
+
+		Instrument optimizedInstrument = doInstrumentOptimization("Single-start cascade");
+		checkOneHole(optimizedInstrument);
+		assertSame("Evaluator not restored", evaluator,
+				objective.getEvaluator());
+	}
+
+	@Test
+	public final void testMultiStartCascade() throws Exception
+	{
+		setupOneHole();
+		objective.setRangeProcessor(new RandomRangeProcessor(lowerBound,
+				upperBound, null, 20));
+		// Starts with reflection; the best three refined with a separate
+		// reactance evaluator; the best of those finished with the
+		// objective's own evaluator.
+		objective.setEvaluatorCascade(new EvaluatorCascade()
+				.addStage(new ReflectionEvaluator(calculator), 0.8, 1.0, 1)
+				.addStage(new ReactanceEvaluator(calculator), 0.1, 1.0, 3)
+				.addStage(evaluator, 0.05, 1.0, 1));
+
+		Instrument optimizedInstrument = doInstrumentOptimization("Multi-start cascade");
+		checkOneHole(optimizedInstrument);
+		assertTrue("Evaluation budget exceeded",
+				objective.getNumberOfEvaluations() <= 20000);
+	}
+}
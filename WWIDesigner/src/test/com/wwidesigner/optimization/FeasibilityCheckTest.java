@@ -0,0 +1,185 @@
+/**
+ *
+ */
+package com.wwidesigner.optimization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.wwidesigner.geometry.Hole;
+import com.wwidesigner.modelling.EvaluatorInterface;
+import com.wwidesigner.modelling.NAFCalculator;
+import com.wwidesigner.modelling.ReactanceEvaluator;
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.optimization.HolePositionObjectiveFunction.BoreLengthAdjustmentType;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests of InstrumentFeasibility, and of the feasibility pre-check in
+ * BaseObjectiveFunction.
+ */
+public class FeasibilityCheckTest extends AbstractOptimizationTest
+{
+	/**
+	 * Evaluator that counts its tuning calculations.
+	 */
+	protected static class CountingEvaluator implements EvaluatorInterface
+	{
+		protected EvaluatorInterface evaluator;
+		protected int calls = 0;
+
+		public CountingEvaluator(EvaluatorInterface evaluator)
+		{
+			this.evaluator = evaluator;
+		}
+
+		public double[] calculateErrorVector(List<Fingering> fingeringTargets)
+		{
+			++calls;
+			return evaluator.calculateErrorVector(fingeringTargets);
+		}
+	}
+
+	protected void setupOneHole() throws Exception
+	{
+		setInputInstrumentXML("com/wwidesigner/optimization/example/1HoleNAF1.xml");
+		setInputTuningXML("com/wwidesigner/optimization/example/1HoleNAF1Tuning.xml");
+		setParams(new PhysicalParameters(22.22, TemperatureType.C));
+		setCalculator(new NAFCalculator());
+		setup();
+	}
+
+	@Test
+	public final void testInfeasibility() throws Exception
+	{
+		setInputInstrumentXML("com/wwidesigner/optimization/example/G7HoleNAF.xml");
+		setInputTuningXML("com/wwidesigner/optimization/example/G7HoleNAFTuning.xml");
+		setParams(new PhysicalParameters(22.22, TemperatureType.C));
+		setCalculator(new NAFCalculator());
+		setup();
+		assertEquals("Valid instrument is infeasible", 0.0,
+				InstrumentFeasibility.getInfeasibility(instrument), 0.0);
+		// The thumb hole sits beside the top finger hole.
+		double thumbOverlap = InstrumentFeasibility.getInfeasibility(
+				instrument, true);
+		assertTrue("Thumb hole does not overlap", thumbOverlap > 0.0);
+
+		// Move the second hole to overlap the first by 1 mm.
+		Hole[] holes = instrument.getHole().toArray(new Hole[0]);
+		Hole first = holes[0];
+		Hole second = holes[1];
+		double originalPosition = second.getBorePosition();
+		double direction = Math.signum(originalPosition
+				- first.getBorePosition());
+		second.setBorePosition(first.getBorePosition() + direction
+				* (0.5 * (first.getDiameter() + second.getDiameter()) - 0.001));
+		assertEquals("Hole overlap", thumbOverlap + 0.001,
+				InstrumentFeasibility.getInfeasibility(instrument, true), 1.0e-9);
+		assertEquals("Overlap checked by default", 0.0,
+				InstrumentFeasibility.getInfeasibility(instrument), 0.0);
+		second.setBorePosition(originalPosition);
+
+		// Make a hole wider than the bore.
+		double originalDiameter = first.getDiameter();
+		double boreDiameter = instrument.getBorePoint().get(0)
+				.getBoreDiameter();
+		first.setDiameter(boreDiameter + 0.050);
+		assertTrue("Oversized hole is feasible",
+				InstrumentFeasibility.getInfeasibility(instrument) > 0.0);
+		first.setDiameter(originalDiameter);
+
+		// Move a hole below the end of the bore.
+		first.setBorePosition(10.0);
+		assertTrue("Hole below bore end is feasible",
+				InstrumentFeasibility.getInfeasibility(instrument) > 9.0);
+	}
+
+	@Test
+	public final void testPenalty() throws Exception
+	{
+		setupOneHole();
+		CountingEvaluator counter = new CountingEvaluator(
+				new ReactanceEvaluator(calculator));
+		objective = new HoleFromTopObjectiveFunction(calculator, tuning,
+				counter, BoreLengthAdjustmentType.PRESERVE_TAPER);
+		assertFalse("Check on by default", objective.isFeasibilityCheck());
+		objective.setFeasibilityCheck(true);
+		double[] point = objective.getGeometryPoint();
+		double feasibleNorm = objective.value(point);
+		assertEquals(1, counter.calls);
+		assertEquals("Reference is not the first norm", feasibleNorm,
+				objective.getFeasibilityReferenceNorm(), 0.0);
+
+		// Holes much wider than the bore.
+		double[] wideHole = point.clone();
+		wideHole[2] = 0.050;
+		double penalty = objective.value(wideHole);
+		wideHole[2] = 0.060;
+		double largerPenalty = objective.value(wideHole);
+		assertEquals("Calculator used for infeasible point", 1, counter.calls);
+		assertTrue("Penalty too small", penalty > feasibleNorm);
+		assertTrue("Penalty does not grow with distance",
+				largerPenalty > penalty);
+		assertEquals(3, objective.getNumberOfEvaluations());
+		assertEquals(2, objective.getNumberOfInfeasiblePoints());
+
+		// The penalty does not depend on the points evaluated before.
+		double[] worsePoint = point.clone();
+		worsePoint[2] = 0.5 * point[2];
+		assertTrue(objective.value(worsePoint) > feasibleNorm);
+		assertEquals(largerPenalty, objective.value(wideHole), 0.0);
+
+		// Without the check, the point is evaluated.
+		objective.setFeasibilityCheck(false);
+		objective.value(wideHole);
+		assertEquals(3, counter.calls);
+	}
+
+	@Test
+	public final void testPenaltyContinuity() throws Exception
+	{
+		setupOneHole();
+		CountingEvaluator counter = new CountingEvaluator(
+				new ReactanceEvaluator(calculator));
+		objective = new HoleFromTopObjectiveFunction(calculator, tuning,
+				counter, BoreLengthAdjustmentType.PRESERVE_TAPER);
+		objective.setFeasibilityCheck(true);
+		double[] point = objective.getGeometryPoint();
+
+		// Find the bore diameter at the hole, from the infeasibility of a
+		// hole 50 mm wide.
+		double[] edgePoint = point.clone();
+		edgePoint[2] = 0.050;
+		objective.setGeometryPoint(edgePoint);
+		edgePoint[2] = 0.050 - InstrumentFeasibility
+				.getInfeasibility(calculator.getInstrument());
+
+		// An infeasible first point is evaluated in full, sets the reference,
+		// and still gets a penalty.
+		double[] farPoint = point.clone();
+		farPoint[2] = edgePoint[2] + 0.002;
+		double farValue = objective.value(farPoint);
+		assertEquals(1, counter.calls);
+		double reference = objective.getFeasibilityReferenceNorm();
+		assertTrue("No reference set", reference > 0.0);
+		assertEquals("Wrong penalty", reference * 5.0, farValue,
+				1.0e-6 * farValue);
+		assertEquals(1, objective.getNumberOfInfeasiblePoints());
+
+		// Close to the boundary, the point is evaluated, and the objective
+		// is continuous across the boundary.
+		double edgeValue = objective.value(edgePoint);
+		edgePoint[2] += 0.000001;
+		double nearValue = objective.value(edgePoint);
+		assertEquals(3, counter.calls);
+		assertEquals(2, objective.getNumberOfInfeasiblePoints());
+		assertEquals("Objective not continuous", edgeValue, nearValue,
+				1.0e-3 * edgeValue);
+	}
+}
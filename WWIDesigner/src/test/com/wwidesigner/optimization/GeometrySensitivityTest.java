@@ -0,0 +1,148 @@
+/**
+ *
+ */
+package com.wwidesigner.optimization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import com.wwidesigner.modelling.InstrumentTuner;
+import com.wwidesigner.modelling.InstrumentTunerFactory;
+import com.wwidesigner.modelling.NAFCalculator;
+import com.wwidesigner.modelling.ReactanceEvaluator;
+import com.wwidesigner.modelling.SimpleInstrumentTuner;
+import com.wwidesigner.note.Note;
+import com.wwidesigner.optimization.view.GeometrySensitivityTable;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests of the geometry sensitivity calculation, for hole sizes of a NAF.
+ */
+public class GeometrySensitivityTest extends AbstractOptimizationTest
+{
+	protected InstrumentTunerFactory tunerFactory = new InstrumentTunerFactory()
+	{
+		public InstrumentTuner createTuner() throws Exception
+		{
+			InstrumentTuner tuner = new SimpleInstrumentTuner();
+			tuner.setTuning(getTuningFromXml());
+			tuner.setParams(params);
+			return tuner;
+		}
+	};
+
+	protected ObjectiveFunctionFactory objectiveFactory = new ObjectiveFunctionFactory()
+	{
+		public BaseObjectiveFunction createObjectiveFunction()
+				throws Exception
+		{
+			return buildObjective();
+		}
+	};
+
+	protected BaseObjectiveFunction buildObjective() throws Exception
+	{
+		NAFCalculator nafCalculator = new NAFCalculator();
+		nafCalculator.setInstrument(getInstrumentFromXml());
+		nafCalculator.setPhysicalParameters(params);
+		BaseObjectiveFunction function = new HoleSizeObjectiveFunction(
+				nafCalculator, tuning, new ReactanceEvaluator(nafCalculator));
+		double[] lower = new double[function.getNrDimensions()];
+		double[] upper = new double[function.getNrDimensions()];
+		for (int i = 0; i < lower.length; ++i)
+		{
+			lower[i] = 0.002;
+			upper[i] = 0.012;
+		}
+		function.setLowerBounds(lower);
+		function.setUpperBounds(upper);
+		return function;
+	}
+
+	protected void setupNaf() throws Exception
+	{
+		setInputInstrumentXML("com/wwidesigner/optimization/example/G7HoleNAF.xml");
+		setInputTuningXML("com/wwidesigner/optimization/example/G7HoleNAFTuning.xml");
+		setParams(new PhysicalParameters(22.22, TemperatureType.C));
+		tuning = getTuningFromXml();
+	}
+
+	@Test
+	public final void testHoleSizeSensitivity() throws Exception
+	{
+		setupNaf();
+		BaseObjectiveFunction function = buildObjective();
+		function.setObjectiveFactory(objectiveFactory);
+		double[] point = function.getGeometryPoint();
+		GeometrySensitivity sensitivity = new GeometrySensitivity(function,
+				tunerFactory);
+		sensitivity.setMaxThreads(3);
+		sensitivity.calculate();
+		assertEquals(point.length, sensitivity.getNumberOfDimensions());
+		assertEquals(tuning.getFingering().size(),
+				sensitivity.getNumberOfNotes());
+		double[] after = function.getGeometryPoint();
+		for (int i = 0; i < point.length; ++i)
+		{
+			assertEquals("Geometry not restored", point[i], after[i], 0.0);
+		}
+
+		// Compare with a forward difference over a larger step.
+		int dimension = point.length - 1;
+		double delta = 0.0001;
+		InstrumentTuner tuner = tunerFactory.createTuner();
+		tuner.setInstrument(function.getInstrument());
+		tuner.setCalculator(function.getCalculator());
+		double[] larger = point.clone();
+		larger[dimension] += delta;
+		int nrChecked = 0;
+		for (int note = 0; note < sensitivity.getNumberOfNotes(); ++note)
+		{
+			function.setGeometryPoint(point);
+			Double base = tuner.predictedFrequency(tuning.getFingering()
+					.get(note));
+			function.setGeometryPoint(larger);
+			Double changed = tuner.predictedFrequency(tuning.getFingering()
+					.get(note));
+			if (base == null || changed == null)
+			{
+				continue;
+			}
+			double expected = Note.cents(base, changed) / delta;
+			double actual = sensitivity.getSensitivity(note, dimension);
+			assertEquals("Sensitivity of note " + note, expected, actual,
+					0.05 * Math.abs(expected) + 10.0);
+			++nrChecked;
+		}
+		assertTrue("No notes checked", nrChecked > 0);
+		function.setGeometryPoint(point);
+
+		// Sequential calculation, without replicas, gives the same values.
+		BaseObjectiveFunction single = buildObjective();
+		GeometrySensitivity sequential = new GeometrySensitivity(single,
+				tunerFactory);
+		sequential.setMaxThreads(1);
+		sequential.calculate();
+		for (int note = 0; note < sensitivity.getNumberOfNotes(); ++note)
+		{
+			for (int dim = 0; dim < point.length; ++dim)
+			{
+				assertEquals(sequential.getSensitivity(note, dim),
+						sensitivity.getSensitivity(note, dim), 0.0);
+			}
+		}
+
+		GeometrySensitivityTable table = new GeometrySensitivityTable(
+				"Hole size sensitivity");
+		table.buildTable(sensitivity);
+		assertEquals(point.length + 1, table.getColumnCount());
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		table.printTable(os);
+		System.out.print(os.toString());
+	}
+}
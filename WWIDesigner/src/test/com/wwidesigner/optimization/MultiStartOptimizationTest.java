@@ -0,0 +1,639 @@
+/**
+ *
+ */
+package com.wwidesigner.optimization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.modelling.EvaluatorInterface;
+import com.wwidesigner.modelling.NAFCalculator;
+import com.wwidesigner.modelling.ReactanceEvaluator;
+import com.wwidesigner.optimization.HolePositionObjectiveFunction.BoreLengthAdjustmentType;
+import com.wwidesigner.note.Fingering;
+import com.wwidesigner.optimization.distributed.OptimizationCoordinator;
+import com.wwidesigner.optimization.distributed.OptimizationWorker;
+import com.wwidesigner.optimization.distributed.RestrictedObjectInputStream;
+import com.wwidesigner.optimization.distributed.SharedSecretHandshake;
+import com.wwidesigner.optimization.distributed.WorkRequest;
+import com.wwidesigner.optimization.distributed.WorkResult;
+import com.wwidesigner.optimization.multistart.BasinClusterer;
+import com.wwidesigner.optimization.multistart.LowDiscrepancyRangeProcessor;
+import com.wwidesigner.optimization.multistart.RandomRangeProcessor;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests of the multi-start variations in ObjectiveFunctionOptimizer, on a
+ * one-hole NAF.
+ */
+public class MultiStartOptimizationTest extends AbstractOptimizationTest
+{
+	protected static final byte[] WORKER_SECRET = "test secret, 16 bytes or more"
+			.getBytes();
+
+	protected void setupOneHole() throws Exception
+	{
+		setInputInstrumentXML("com/wwidesigner/optimization/example/1HoleNAF1.xml");
+		setInputTuningXML("com/wwidesigner/optimization/example/1HoleNAF1Tuning.xml");
+		setParams(new PhysicalParameters(22.22, TemperatureType.C));
+		setCalculator(new NAFCalculator());
+		setup();
+		setLowerBound(new double[] { 0.20, 0.25, 0.0075 });
+		setUpperBound(new double[] { 0.4, 1.0, 0.010 });
+		evaluator = new ReactanceEvaluator(calculator);
+		objective = new HoleFromTopObjectiveFunction(calculator, tuning,
+				evaluator, BoreLengthAdjustmentType.PRESERVE_TAPER);
+		objective.setRangeProcessor(new RandomRangeProcessor(lowerBound,
+				upperBound, null, 20));
+		objective.setMaxEvaluations(20000);
+	}
+
+	protected void checkOneHole(Instrument optimizedInstrument)
+	{
+		assertEquals("Bore length incorrect", 11.46,
+				getBoreLength(optimizedInstrument), 0.1);
+		assertTrue("Residual error too large",
+				ObjectiveFunctionOptimizer.getResidualErrorRatio() < 0.01);
+	}
+
+	/**
+	 * Optimize the one-hole NAF with plain multi-start, as a baseline for the
+	 * variations.
+	 * 
+	 * @return number of evaluations used.
+	 */
+	protected int doPlainMultiStart() throws Exception
+	{
+		setupOneHole();
+		Instrument optimizedInstrument = doInstrumentOptimization("Plain multi-start");
+		checkOneHole(optimizedInstrument);
+		return objective.getNumberOfEvaluations();
+	}
+
+	@Test
+	public final void testScreenedMultiStart()
+	{
+		try
+		{
+			int plainEvaluations = doPlainMultiStart();
+			int plainSearches = ObjectiveFunctionOptimizer
+					.getNumberOfLocalSearches();
+			assertEquals("Plain multi-start screened", 0,
+					ObjectiveFunctionOptimizer.getNumberOfScreenedOutStarts());
+
+			setupOneHole();
+			objective.setStartScreening(4, false);
+
+			Instrument optimizedInstrument = doInstrumentOptimization("Screened multi-start");
+			checkOneHole(optimizedInstrument);
+			assertEquals("Candidates not screened out", 16,
+					ObjectiveFunctionOptimizer.getNumberOfScreenedOutStarts());
+			assertEquals("Wrong number of local searches", 4,
+					ObjectiveFunctionOptimizer.getNumberOfLocalSearches());
+			assertTrue("No fewer local searches than " + plainSearches,
+					plainSearches > 4);
+			assertTrue("No fewer evaluations than " + plainEvaluations,
+					objective.getNumberOfEvaluations() < plainEvaluations);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public final void testSuccessiveHalving()
+	{
+		try
+		{
+			setupOneHole();
+			objective.setStartScreening(4, true);
+
+			Instrument optimizedInstrument = doInstrumentOptimization("Successive halving");
+			checkOneHole(optimizedInstrument);
+			assertTrue("Evaluation budget exceeded",
+					objective.getNumberOfEvaluations() <= 20000);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public final void testBasinClustering()
+	{
+		try
+		{
+			int plainEvaluations = doPlainMultiStart();
+			assertNull("Plain multi-start clustered",
+					ObjectiveFunctionOptimizer.getBasins());
+
+			setupOneHole();
+			objective.setBasinClustering(0.05);
+
+			Instrument optimizedInstrument = doInstrumentOptimization("Basin clustering");
+			checkOneHole(optimizedInstrument);
+			BasinClusterer basins = ObjectiveFunctionOptimizer.getBasins();
+			assertNotNull("No basins recorded", basins);
+			int nrAbandoned = 0;
+			for (BasinClusterer.Basin basin : basins.getBasins())
+			{
+				nrAbandoned += basin.getNrAbandoned();
+			}
+			assertTrue("No searches abandoned", nrAbandoned > 0);
+			assertTrue("No basins merged", basins.getBasins().size() < ObjectiveFunctionOptimizer
+					.getNumberOfLocalSearches());
+			assertTrue("No fewer evaluations than " + plainEvaluations,
+					objective.getNumberOfEvaluations() < plainEvaluations);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Stands in for the JVM dying part way through an optimization.
+	 */
+	protected static class SimulatedCrash extends Error
+	{
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * Evaluator that crashes after a specified number of evaluations.
+	 */
+	protected static class CrashingEvaluator implements EvaluatorInterface
+	{
+		protected EvaluatorInterface evaluator;
+		protected int evaluationsLeft;
+
+		public CrashingEvaluator(EvaluatorInterface evaluator,
+				int evaluationsLeft)
+		{
+			this.evaluator = evaluator;
+			this.evaluationsLeft = evaluationsLeft;
+		}
+
+		public double[] calculateErrorVector(List<Fingering> fingeringTargets)
+		{
+			if (--evaluationsLeft < 0)
+			{
+				throw new SimulatedCrash();
+			}
+			return evaluator.calculateErrorVector(fingeringTargets);
+		}
+	}
+
+	@Test
+	public final void testCheckpointResume()
+	{
+		File checkpointFile = null;
+		try
+		{
+			checkpointFile = File.createTempFile("optimization", ".ckpt");
+			ObjectiveFunctionOptimizer.setCheckpointFile(checkpointFile, 0.0);
+
+			// Interrupt an optimization part way through the starts.
+			setupOneHole();
+			objective.setRangeProcessor(new LowDiscrepancyRangeProcessor(
+					lowerBound, upperBound, null, 8));
+			objective.setEvaluator(new CrashingEvaluator(evaluator, 400));
+			try
+			{
+				doInstrumentOptimization("Interrupted multi-start");
+				fail("Optimization not interrupted");
+			}
+			catch (SimulatedCrash e)
+			{
+			}
+			OptimizationCheckpoint saved = OptimizationCheckpoint
+					.load(checkpointFile);
+			assertTrue("No starts completed", saved.getStartsCompleted() > 0);
+			assertTrue("All starts completed", saved.getStartsCompleted() < 8);
+
+			// Resume with a fresh instrument and objective function.
+			setupOneHole();
+			objective.setRangeProcessor(new LowDiscrepancyRangeProcessor(
+					lowerBound, upperBound, null, 8));
+			objective.setLowerBounds(lowerBound);
+			objective.setUpperBounds(upperBound);
+			assertTrue("Resume failed", ObjectiveFunctionOptimizer
+					.resumeObjectiveFunction(objective,
+							objective.getOptimizerType(), checkpointFile));
+			assertTrue("Evaluations not restored",
+					objective.getNumberOfEvaluations() > 400);
+			assertFalse("Checkpoint not removed", checkpointFile.exists());
+
+			instrument.convertToLengthType();
+			checkOneHole(instrument);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+		finally
+		{
+			ObjectiveFunctionOptimizer.setCheckpointFile(null, 0.0);
+			if (checkpointFile != null)
+			{
+				checkpointFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * A checkpoint file that holds any other class is refused.
+	 */
+	@Test
+	public final void testCheckpointClasses()
+	{
+		File checkpointFile = null;
+		try
+		{
+			checkpointFile = File.createTempFile("optimization", ".ckpt");
+			ObjectOutputStream out = new ObjectOutputStream(
+					new FileOutputStream(checkpointFile));
+			out.writeObject(new Date());
+			out.close();
+			try
+			{
+				OptimizationCheckpoint.load(checkpointFile);
+				fail("Date loaded as a checkpoint");
+			}
+			catch (InvalidClassException e)
+			{
+			}
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+		finally
+		{
+			if (checkpointFile != null)
+			{
+				checkpointFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Builds the one-hole objective function, on a worker.
+	 */
+	protected static class OneHoleFactory implements
+			ObjectiveFunctionFactory, Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		public BaseObjectiveFunction createObjectiveFunction()
+				throws Exception
+		{
+			MultiStartOptimizationTest test = new MultiStartOptimizationTest();
+			test.setupOneHole();
+			test.objective.setLowerBounds(test.lowerBound);
+			test.objective.setUpperBounds(test.upperBound);
+			return test.objective;
+		}
+	}
+
+	protected static final int DROP = 0;
+	protected static final int HANG = 1;
+	protected static final int WRONG_REPLY = 2;
+
+	/**
+	 * Worker that fails its first request: it drops the connection, never
+	 * replies and keeps the connection open, or replies with another
+	 * request id.
+	 */
+	protected static class FailingWorker extends OptimizationWorker
+	{
+		protected int failure;
+
+		public FailingWorker(int failure) throws IOException
+		{
+			super(0, WORKER_SECRET, OneHoleFactory.class);
+			this.failure = failure;
+		}
+
+		@Override
+		protected void serve(Socket socket) throws IOException,
+				ClassNotFoundException
+		{
+			ObjectOutputStream out = new ObjectOutputStream(
+					new BufferedOutputStream(socket.getOutputStream()));
+			out.flush();
+			ObjectInputStream in = new ObjectInputStream(
+					new BufferedInputStream(socket.getInputStream()));
+			in.readObject();
+			out.writeObject(new WorkResult(JOB_ACCEPTED));
+			out.flush();
+			WorkRequest request = (WorkRequest) in.readObject();
+			if (failure == HANG)
+			{
+				// Returns only when the coordinator closes the connection.
+				while (in.read() >= 0)
+				{
+				}
+			}
+			else if (failure == WRONG_REPLY)
+			{
+				out.writeObject(new WorkResult(request.getRequestId() + 1));
+				out.flush();
+				in.read();
+			}
+		}
+	}
+
+	protected static List<InetSocketAddress> startWorkers(
+			List<OptimizationWorker> workers)
+	{
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		for (OptimizationWorker worker : workers)
+		{
+			new Thread(worker).start();
+			addresses.add(new InetSocketAddress("localhost", worker.getPort()));
+		}
+		return addresses;
+	}
+
+	/**
+	 * @return objective function values at points near the initial point.
+	 */
+	protected double[] localValues(double[][] points)
+	{
+		objective.setLowerBounds(lowerBound);
+		objective.setUpperBounds(upperBound);
+		double[] values = new double[points.length];
+		for (int i = 0; i < points.length; ++i)
+		{
+			points[i] = objective.getInitialPoint();
+			points[i][0] *= 1.0 + 0.01 * i;
+			values[i] = objective.value(points[i]);
+		}
+		return values;
+	}
+
+	@Test
+	public final void testDistributedMultiStart()
+	{
+		List<OptimizationWorker> workers = new ArrayList<OptimizationWorker>();
+		try
+		{
+			workers.add(new OptimizationWorker(0, WORKER_SECRET,
+					OneHoleFactory.class));
+			workers.add(new OptimizationWorker(0, WORKER_SECRET,
+					OneHoleFactory.class));
+			workers.add(new FailingWorker(DROP));
+			List<InetSocketAddress> addresses = startWorkers(workers);
+
+			setupOneHole();
+			objective.setObjectiveFactory(new OneHoleFactory());
+
+			// Batch evaluations on the workers match local evaluations.
+			double[][] points = new double[10][];
+			double[] localValues = localValues(points);
+			OptimizationCoordinator coordinator = new OptimizationCoordinator(
+					addresses, objective.getObjectiveFactory(), WORKER_SECRET);
+			double[] workerValues = coordinator.evaluate(objective, points,
+					false);
+			for (int i = 0; i < points.length; ++i)
+			{
+				assertEquals("Worker evaluation differs", localValues[i],
+						workerValues[i], 1.0e-10 * localValues[i]);
+			}
+
+			setupOneHole();
+			objective.setObjectiveFactory(new OneHoleFactory());
+			ObjectiveFunctionOptimizer.setDistributedWorkers(addresses,
+					WORKER_SECRET);
+			Instrument optimizedInstrument = doInstrumentOptimization("Distributed multi-start");
+			checkOneHole(optimizedInstrument);
+			assertTrue("Worker evaluations not counted",
+					objective.getNumberOfEvaluations() > 1000);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+		finally
+		{
+			ObjectiveFunctionOptimizer.setDistributedWorkers(null, null);
+			for (OptimizationWorker worker : workers)
+			{
+				worker.close();
+			}
+		}
+	}
+
+	/**
+	 * A worker searches a single-variable objective function with Brent, as
+	 * a local search would.
+	 */
+	@Test
+	public final void testWorkerSingleVariable()
+	{
+		try
+		{
+			setupOneHole();
+			BaseObjectiveFunction lengthObjective = new LengthObjectiveFunction(
+					calculator, tuning, evaluator);
+			lengthObjective.setLowerBounds(new double[] { 0.20 });
+			lengthObjective.setUpperBounds(new double[] { 0.40 });
+			double[] start = lengthObjective.getInitialPoint();
+			double startValue = lengthObjective.value(start);
+			WorkResult result = OptimizationWorker.process(lengthObjective,
+					WorkRequest.localSearch(0, start, 1000, false));
+			assertNull("Single-variable search failed", result.getError());
+			assertNotNull("No optimum found", result.getOptimum());
+			assertTrue("Search did not improve",
+					result.getOptimum().getValue() < startValue);
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public final void testWorkerTimeout()
+	{
+		checkWorkerFailure(HANG);
+	}
+
+	@Test
+	public final void testWrongReply()
+	{
+		checkWorkerFailure(WRONG_REPLY);
+	}
+
+	/**
+	 * Check that the request given to a failing worker goes to the other
+	 * worker, with the same results as local evaluation.
+	 */
+	protected void checkWorkerFailure(int failure)
+	{
+		List<OptimizationWorker> workers = new ArrayList<OptimizationWorker>();
+		try
+		{
+			workers.add(new FailingWorker(failure));
+			workers.add(new OptimizationWorker(0, WORKER_SECRET,
+					OneHoleFactory.class));
+			List<InetSocketAddress> addresses = startWorkers(workers);
+
+			setupOneHole();
+			objective.setObjectiveFactory(new OneHoleFactory());
+			double[][] points = new double[10][];
+			double[] localValues = localValues(points);
+			OptimizationCoordinator coordinator = new OptimizationCoordinator(
+					addresses, objective.getObjectiveFactory(), WORKER_SECRET);
+			coordinator.setRequestTimeout(2000);
+
+			// The request sent to the failing worker times out, or its reply
+			// is rejected, and it goes to the other worker.
+			long start = System.currentTimeMillis();
+			double[] workerValues = coordinator.evaluate(objective, points,
+					false);
+			assertTrue("Coordinator waited on failing worker",
+					System.currentTimeMillis() - start < 20000);
+			for (int i = 0; i < points.length; ++i)
+			{
+				assertEquals("Worker evaluation differs", localValues[i],
+						workerValues[i], 1.0e-10 * localValues[i]);
+			}
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+		finally
+		{
+			for (OptimizationWorker worker : workers)
+			{
+				worker.close();
+			}
+		}
+	}
+
+	@Test
+	public final void testWorkerSecurity()
+	{
+		List<OptimizationWorker> workers = new ArrayList<OptimizationWorker>();
+		try
+		{
+			OptimizationWorker worker = new OptimizationWorker(0,
+					WORKER_SECRET, OneHoleFactory.class);
+			workers.add(worker);
+			assertTrue("Worker not limited to loopback", worker
+					.getBindAddress().isLoopbackAddress());
+			List<InetSocketAddress> addresses = startWorkers(workers);
+
+			// A coordinator without the secret cannot get past the handshake.
+			Socket socket = new Socket();
+			try
+			{
+				socket.connect(addresses.get(0), 5000);
+				socket.setSoTimeout(5000);
+				new SharedSecretHandshake(
+						"some other secret of 16 bytes".getBytes())
+						.runAsCoordinator(socket);
+				fail("Handshake succeeded with the wrong secret");
+			}
+			catch (IOException e)
+			{
+			}
+			finally
+			{
+				socket.close();
+			}
+
+			// Its work runs locally instead.
+			setupOneHole();
+			objective.setObjectiveFactory(new OneHoleFactory());
+			double[][] points = new double[4][];
+			double[] localValues = localValues(points);
+			OptimizationCoordinator coordinator = new OptimizationCoordinator(
+					addresses, objective.getObjectiveFactory(),
+					"some other secret of 16 bytes".getBytes());
+			double[] values = coordinator.evaluate(objective, points, false);
+			for (int i = 0; i < points.length; ++i)
+			{
+				assertEquals("Local evaluation differs", localValues[i],
+						values[i], 1.0e-10 * localValues[i]);
+			}
+
+			// Only the expected classes are read from a connection.
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(WorkRequest.evaluate(0, points, false));
+			out.writeObject(new Date());
+			out.close();
+			ObjectInputStream in = new RestrictedObjectInputStream(
+					new ByteArrayInputStream(bytes.toByteArray()),
+					WorkRequest.class, WorkRequest.RequestType.class);
+			assertEquals(points.length,
+					((WorkRequest) in.readObject()).getPoints().length);
+			try
+			{
+				in.readObject();
+				fail("Restricted stream read a Date");
+			}
+			catch (InvalidClassException e)
+			{
+			}
+			in.close();
+		}
+		catch (Exception e)
+		{
+			fail(e.getMessage());
+		}
+		finally
+		{
+			for (OptimizationWorker worker : workers)
+			{
+				worker.close();
+			}
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		MultiStartOptimizationTest test = new MultiStartOptimizationTest();
+		test.testScreenedMultiStart();
+		test.testSuccessiveHalving();
+		test.testBasinClustering();
+		test.testCheckpointResume();
+		test.testCheckpointClasses();
+		test.testDistributedMultiStart();
+		test.testWorkerSingleVariable();
+		test.testWorkerTimeout();
+		test.testWrongReply();
+		test.testWorkerSecurity();
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ *
+ */
+package com.wwidesigner.optimization;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.wwidesigner.optimization.multistart.LowDiscrepancyRangeProcessor;
+import com.wwidesigner.optimization.multistart.LowDiscrepancyRangeProcessor.SequenceType;
+
+/**
+ * Tests of the start points from LowDiscrepancyRangeProcessor.
+ */
+public class RangeProcessorTest
+{
+	protected static final double[] LOWER = { 0.2, 0.0, 0.003, 0.5, -1.0 };
+	protected static final double[] UPPER = { 0.4, 1.0, 0.010, 1.5, 1.0 };
+	protected static final int[] VARY = { 0, 1, 2, 4 };
+
+	@Test
+	public final void testBoundsAndStaticValues()
+	{
+		for (SequenceType type : SequenceType.values())
+		{
+			LowDiscrepancyRangeProcessor processor = new LowDiscrepancyRangeProcessor(
+					LOWER, UPPER, VARY, 50, type, 17L, 0);
+			processor.setStaticValues(new double[] { 0.3, 0.5, 0.005, 0.75,
+					0.0 });
+			for (int i = 0; i < 50; i++)
+			{
+				double[] point = processor.nextVector();
+				assertEquals("Static value changed", 0.75, point[3], 0.0);
+				for (int j = 0; j < point.length; j++)
+				{
+					assertTrue("Point below bounds", point[j] >= LOWER[j]);
+					assertTrue("Point above bounds", point[j] <= UPPER[j]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public final void testReproducibleAndContinued()
+	{
+		for (SequenceType type : SequenceType.values())
+		{
+			LowDiscrepancyRangeProcessor first = new LowDiscrepancyRangeProcessor(
+					LOWER, UPPER, null, 20, type, 42L, 0);
+			LowDiscrepancyRangeProcessor same = new LowDiscrepancyRangeProcessor(
+					LOWER, UPPER, null, 20, type, 42L, 0);
+			for (int i = 0; i < 10; i++)
+			{
+				assertArrayEquals("Same seed, different point",
+						first.nextVector(), same.nextVector(), 0.0);
+			}
+			assertEquals(10, first.getSequenceIndex());
+
+			// Continue the sequence in a new processor.
+			LowDiscrepancyRangeProcessor continued = new LowDiscrepancyRangeProcessor(
+					LOWER, UPPER, null, 20, type, 42L,
+					first.getSequenceIndex());
+			for (int i = 0; i < 10; i++)
+			{
+				assertArrayEquals("Continued sequence differs",
+						first.nextVector(), continued.nextVector(), 0.0);
+			}
+		}
+	}
+
+	@Test
+	public final void testEvenCoverage()
+	{
+		// The first 32 Sobol points put one point in each 1/32 of the range
+		// of every dimension, regardless of the random shift.
+		int nrPoints = 32;
+		LowDiscrepancyRangeProcessor processor = new LowDiscrepancyRangeProcessor(
+				LOWER, UPPER, null, nrPoints, SequenceType.SOBOL, 3L, 0);
+		boolean[][] binUsed = new boolean[LOWER.length][nrPoints];
+		for (int i = 0; i < nrPoints; i++)
+		{
+			double[] point = processor.nextVector();
+			for (int j = 0; j < point.length; j++)
+			{
+				int bin = (int) ((point[j] - LOWER[j]) / (UPPER[j] - LOWER[j]) * nrPoints);
+				bin = Math.min(bin, nrPoints - 1);
+				assertTrue("Two points in one bin", !binUsed[j][bin]);
+				binUsed[j][bin] = true;
+			}
+		}
+	}
+}
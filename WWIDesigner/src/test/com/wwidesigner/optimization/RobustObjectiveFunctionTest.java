@@ -0,0 +1,190 @@
+/**
+ *
+ */
+package com.wwidesigner.optimization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.wwidesigner.geometry.Instrument;
+import com.wwidesigner.modelling.CentDeviationEvaluator;
+import com.wwidesigner.modelling.InstrumentCalculator;
+import com.wwidesigner.modelling.LinearVInstrumentTuner;
+import com.wwidesigner.modelling.WhistleCalculator;
+import com.wwidesigner.optimization.BaseObjectiveFunction.OptimizerType;
+import com.wwidesigner.optimization.RobustObjectiveFunction.Aggregation;
+import com.wwidesigner.util.PhysicalParametersCache;
+
+/**
+ * Tests of robust optimization of whistle hole sizes over two temperatures
+ * and three blowing levels.
+ */
+public class RobustObjectiveFunctionTest extends AbstractOptimizationTest
+{
+	protected static final double[] TEMPERATURES = { 10.0, 30.0 };
+	protected static final int[] BLOWING_LEVELS = { 3, 5, 7 };
+
+	protected void setupWhistle() throws Exception
+	{
+		setInputInstrumentXML("com/wwidesigner/optimization/example/Optimized-D-Whistle.xml");
+		setInputTuningXML("com/wwidesigner/optimization/example/D-tuning.xml");
+		tuning = getTuningFromXml();
+	}
+
+	/**
+	 * Build one hole-size objective function for each scenario. Scenarios
+	 * at the same temperature share a calculator and instrument.
+	 */
+	protected List<BaseObjectiveFunction> buildScenarios() throws Exception
+	{
+		List<BaseObjectiveFunction> scenarios = new ArrayList<BaseObjectiveFunction>();
+		for (double temperature : TEMPERATURES)
+		{
+			Instrument scenarioInstrument = getInstrumentFromXml();
+			InstrumentCalculator scenarioCalculator = new WhistleCalculator();
+			scenarioCalculator.setInstrument(scenarioInstrument);
+			scenarioCalculator.setPhysicalParameters(PhysicalParametersCache
+					.get(temperature, 101.325, 45.0, 0.000390));
+			for (int level : BLOWING_LEVELS)
+			{
+				scenarios.add(new HoleSizeObjectiveFunction(scenarioCalculator,
+						tuning, new CentDeviationEvaluator(scenarioCalculator,
+								new LinearVInstrumentTuner(level))));
+			}
+		}
+		return scenarios;
+	}
+
+	@Test
+	public final void testScenarioNorms() throws Exception
+	{
+		setupWhistle();
+		RobustObjectiveFunction robust = new RobustObjectiveFunction(
+				buildScenarios(), Aggregation.WEIGHTED_MEAN);
+		assertEquals("Scenario groups", TEMPERATURES.length,
+				robust.getNumberOfGroups());
+		double[] point = robust.getGeometryPoint();
+		for (int i = 0; i < point.length; ++i)
+		{
+			point[i] *= 1.05;
+		}
+		double[] errorVector = robust.getErrorVector(point);
+		double robustNorm = robust.calcNorm(errorVector);
+
+		// Compare against each scenario evaluated alone.
+		List<BaseObjectiveFunction> standalone = buildScenarios();
+		double sum = 0.0;
+		double worst = 0.0;
+		for (BaseObjectiveFunction scenario : standalone)
+		{
+			double norm = scenario.value(point);
+			sum += norm;
+			worst = Math.max(worst, norm);
+		}
+		assertEquals("Weighted mean", sum / standalone.size(), robustNorm,
+				1.0e-9 * robustNorm);
+
+		RobustObjectiveFunction worstCase = new RobustObjectiveFunction(
+				buildScenarios(), Aggregation.WORST_CASE);
+		assertEquals("Worst case", worst, worstCase.value(point),
+				1.0e-9 * worst);
+
+		// Sequential evaluation gives the same errors.
+		RobustObjectiveFunction sequential = new RobustObjectiveFunction(
+				buildScenarios(), Aggregation.WEIGHTED_MEAN);
+		sequential.setMaxThreads(1);
+		double[] sequentialErrors = sequential.getErrorVector(point);
+		assertEquals("Error vector length", errorVector.length,
+				sequentialErrors.length);
+		for (int i = 0; i < errorVector.length; ++i)
+		{
+			assertEquals(sequentialErrors[i], errorVector[i], 0.0);
+		}
+		robust.shutdown();
+		worstCase.shutdown();
+	}
+
+	@Test
+	public final void testSharedInstrument() throws Exception
+	{
+		setupWhistle();
+		// Two calculators, at different temperatures, on one instrument.
+		Instrument sharedInstrument = getInstrumentFromXml();
+		List<BaseObjectiveFunction> scenarios = new ArrayList<BaseObjectiveFunction>();
+		for (double temperature : TEMPERATURES)
+		{
+			InstrumentCalculator scenarioCalculator = new WhistleCalculator();
+			scenarioCalculator.setInstrument(sharedInstrument);
+			scenarioCalculator.setPhysicalParameters(PhysicalParametersCache
+					.get(temperature, 101.325, 45.0, 0.000390));
+			scenarios.add(new HoleSizeObjectiveFunction(scenarioCalculator,
+					tuning, new CentDeviationEvaluator(scenarioCalculator,
+							new LinearVInstrumentTuner(5))));
+		}
+		try
+		{
+			new RobustObjectiveFunction(scenarios, Aggregation.WORST_CASE);
+			fail("Groups sharing an instrument accepted");
+		}
+		catch (RuntimeException e)
+		{
+			assertTrue(e.getMessage(), e.getMessage().contains("instrument"));
+		}
+	}
+
+	@Test
+	public final void testRobustOptimization() throws Exception
+	{
+		setupWhistle();
+		RobustObjectiveFunction robust = new RobustObjectiveFunction(
+				buildScenarios(), Aggregation.WORST_CASE);
+		double[] point = robust.getGeometryPoint();
+		double[] lower = new double[point.length];
+		double[] upper = new double[point.length];
+		for (int i = 0; i < point.length; ++i)
+		{
+			lower[i] = 0.7 * point[i];
+			upper[i] = 1.3 * point[i];
+			point[i] *= 1.1;
+		}
+		robust.setLowerBounds(lower);
+		robust.setUpperBounds(upper);
+		robust.setGeometryPoint(point);
+		robust.setMaxEvaluations(2000);
+		double initialNorm = robust.value(point);
+
+		ObjectiveFunctionOptimizer.optimizeObjectiveFunction(robust,
+				OptimizerType.BOBYQAOptimizer);
+		double finalNorm = ObjectiveFunctionOptimizer.getFinalNorm();
+		assertTrue("Robust optimization did not improve worst case",
+				finalNorm < 0.9 * initialNorm);
+		assertEquals("Final norm", finalNorm,
+				robust.value(robust.getGeometryPoint()), 1.0e-9 * finalNorm);
+		robust.shutdown();
+
+		// Optimizing for the nominal scenario alone leaves a larger worst
+		// case.
+		BaseObjectiveFunction nominal = buildScenarios().get(0);
+		nominal.setLowerBounds(lower);
+		nominal.setUpperBounds(upper);
+		nominal.setGeometryPoint(point);
+		nominal.setMaxEvaluations(2000);
+		ObjectiveFunctionOptimizer.optimizeObjectiveFunction(nominal,
+				OptimizerType.BOBYQAOptimizer);
+		RobustObjectiveFunction check = new RobustObjectiveFunction(
+				buildScenarios(), Aggregation.WORST_CASE);
+		double nominalWorst = check.value(nominal.getGeometryPoint());
+		System.out.println("Worst case " + finalNorm
+				+ " after robust optimization, " + nominalWorst
+				+ " after nominal optimization.");
+		assertTrue("Robust optimum worse than nominal optimum",
+				finalNorm < nominalWorst);
+		check.shutdown();
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ *
+ */
+package com.wwidesigner.optimization;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.wwidesigner.modelling.CentDeviationEvaluator;
+import com.wwidesigner.modelling.NAFCalculator;
+import com.wwidesigner.modelling.ReactanceEvaluator;
+import com.wwidesigner.modelling.WhistleCalculator;
+import com.wwidesigner.optimization.BaseObjectiveFunction.OptimizerType;
+import com.wwidesigner.util.Constants.TemperatureType;
+import com.wwidesigner.util.PhysicalParameters;
+
+/**
+ * Tests of the surrogate-model-assisted optimizer, comparing the number of
+ * real evaluations it needs against BOBYQA on hole-size optimizations of a NAF
+ * and a whistle, from perturbed hole sizes.
+ */
+public class SurrogateOptimizerTest extends AbstractOptimizationTest
+{
+	// Ratio of surrogate final norm to BOBYQA final norm that still counts
+	// as reaching the same optimum.
+	protected static final double NORM_TOLERANCE = 1.05;
+
+	protected void setupNaf() throws Exception
+	{
+		setInputInstrumentXML("com/wwidesigner/optimization/example/G7HoleNAF.xml");
+		setInputTuningXML("com/wwidesigner/optimization/example/G7HoleNAFTuning.xml");
+		setParams(new PhysicalParameters(22.22, TemperatureType.C));
+		setCalculator(new NAFCalculator());
+		setup();
+		evaluator = new ReactanceEvaluator(calculator);
+		objective = new HoleSizeObjectiveFunction(calculator, tuning, evaluator);
+		perturbHoleSizes();
+	}
+
+	protected void setupWhistle() throws Exception
+	{
+		setInputInstrumentXML("com/wwidesigner/optimization/example/Optimized-D-Whistle.xml");
+		setInputTuningXML("com/wwidesigner/optimization/example/D-tuning.xml");
+		setParams(new PhysicalParameters(27.0, TemperatureType.C));
+		setCalculator(new WhistleCalculator());
+		setup();
+		evaluator = new CentDeviationEvaluator(calculator);
+		objective = new HoleSizeObjectiveFunction(calculator, tuning, evaluator);
+		perturbHoleSizes();
+	}
+
+	/**
+	 * Start from 10% larger holes, with bounds of 70% to 130% of the
+	 * original sizes.
+	 */
+	protected void perturbHoleSizes()
+	{
+		double[] point = objective.getGeometryPoint();
+		double[] lower = new double[point.length];
+		double[] upper = new double[point.length];
+		for (int i = 0; i < point.length; ++i)
+		{
+			lower[i] = 0.7 * point[i];
+			upper[i] = 1.3 * point[i];
+			point[i] *= 1.1;
+		}
+		objective.setLowerBounds(lower);
+		objective.setUpperBounds(upper);
+		objective.setGeometryPoint(point);
+		objective.setMaxEvaluations(2000);
+	}
+
+	/**
+	 * Optimize with the current objective function and a specified
+	 * optimizer.
+	 *
+	 * @return { real evaluations, final norm }.
+	 */
+	protected double[] runOptimizer(OptimizerType optimizerType)
+	{
+		objective.setOptimizerType(optimizerType);
+		ObjectiveFunctionOptimizer.optimizeObjectiveFunction(objective,
+				optimizerType);
+		return new double[] { objective.getNumberOfEvaluations(),
+				ObjectiveFunctionOptimizer.getFinalNorm() };
+	}
+
+	protected void compareOptimizers(String title, double[] bobyqa,
+			double[] surrogate)
+	{
+		System.out.println(title + ": BOBYQA used " + (int) bobyqa[0]
+				+ " evaluations to reach norm " + bobyqa[1]
+				+ "; surrogate optimizer used " + (int) surrogate[0]
+				+ " evaluations to reach norm " + surrogate[1] + ", saving "
+				+ Math.round(100.0 * (1.0 - surrogate[0] / bobyqa[0])) + "%.");
+		assertTrue(title + ": surrogate optimum too high",
+				surrogate[1] <= NORM_TOLERANCE * bobyqa[1]);
+		assertTrue(title + ": surrogate optimizer saved no evaluations",
+				surrogate[0] < bobyqa[0]);
+	}
+
+	@Test
+	public final void testNafHoleSizes() throws Exception
+	{
+		setupNaf();
+		double[] bobyqa = runOptimizer(OptimizerType.BOBYQAOptimizer);
+		setupNaf();
+		double[] surrogate = runOptimizer(OptimizerType.SurrogateOptimizer);
+		compareOptimizers("NAF hole sizes", bobyqa, surrogate);
+	}
+
+	@Test
+	public final void testWhistleHoleSizes() throws Exception
+	{
+		setupWhistle();
+		double[] bobyqa = runOptimizer(OptimizerType.BOBYQAOptimizer);
+		setupWhistle();
+		double[] surrogate = runOptimizer(OptimizerType.SurrogateOptimizer);
+		compareOptimizers("Whistle hole sizes", bobyqa, surrogate);
+	}
+}